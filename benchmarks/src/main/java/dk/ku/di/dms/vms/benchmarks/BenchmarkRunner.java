@@ -0,0 +1,19 @@
+package dk.ku.di.dms.vms.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+/**
+ * Entry point for running the suites from the IDE.
+ * Accepts the same arguments as the JMH command line, e.g. "UniqueHashBufferIndex -p numberOfRecords=100000".
+ * The forked JVMs receive --enable-preview and the jdk.internal.misc exports through each suite's @Fork.
+ */
+public final class BenchmarkRunner {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        new Runner(new CommandLineOptions(args)).run();
+    }
+
+}
@@ -0,0 +1,66 @@
+package dk.ku.di.dms.vms.benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic key streams used to drive the benchmarks.
+ * Keys are always drawn from [1, numberOfKeys], so a stream
+ * can be replayed against an index populated with the same range.
+ * A fixed seed keeps runs comparable across forks and machines.
+ */
+public enum KeyDistribution {
+
+    SEQUENTIAL,
+
+    UNIFORM,
+
+    // skewed towards a small set of hot keys, as found in popular products and sellers
+    ZIPF;
+
+    private static final long SEED = 42;
+
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    public int[] generate(int numberOfKeys, int length){
+        int[] keys = new int[length];
+        SplittableRandom random = new SplittableRandom(SEED);
+        switch (this){
+            case SEQUENTIAL -> {
+                for(int i = 0; i < length; i++){
+                    keys[i] = (i % numberOfKeys) + 1;
+                }
+            }
+            case UNIFORM -> {
+                for(int i = 0; i < length; i++){
+                    keys[i] = random.nextInt(numberOfKeys) + 1;
+                }
+            }
+            case ZIPF -> {
+                double[] cdf = zipfCdf(numberOfKeys);
+                for(int i = 0; i < length; i++){
+                    int pos = Arrays.binarySearch(cdf, random.nextDouble());
+                    // binary search returns (-(insertion point) - 1) when not found
+                    keys[i] = (pos >= 0 ? pos : -pos - 1) + 1;
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static double[] zipfCdf(int numberOfKeys){
+        double[] cdf = new double[numberOfKeys];
+        double sum = 0;
+        for(int i = 0; i < numberOfKeys; i++){
+            sum += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cdf[i] = sum;
+        }
+        for(int i = 0; i < numberOfKeys; i++){
+            cdf[i] = cdf[i] / sum;
+        }
+        // guard against rounding leaving the last bucket below 1
+        cdf[numberOfKeys - 1] = 1.0;
+        return cdf;
+    }
+
+}
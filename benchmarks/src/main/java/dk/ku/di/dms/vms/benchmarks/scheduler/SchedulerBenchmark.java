@@ -0,0 +1,106 @@
+package dk.ku.di.dms.vms.benchmarks.scheduler;
+
+import dk.ku.di.dms.vms.benchmarks.KeyDistribution;
+import dk.ku.di.dms.vms.modb.api.enums.ExecutionModeEnum;
+import dk.ku.di.dms.vms.modb.common.transaction.ITransactionManager;
+import dk.ku.di.dms.vms.sdk.core.metadata.VmsMetadataLoader;
+import dk.ku.di.dms.vms.sdk.core.metadata.VmsRuntimeMetadata;
+import dk.ku.di.dms.vms.sdk.core.operational.InboundEvent;
+import dk.ku.di.dms.vms.sdk.core.scheduler.VmsTransactionScheduler;
+import dk.ku.di.dms.vms.sdk.core.scheduler.executor.TaskExecutorTypeEnum;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatch of a batch of ordered transactions through the scheduler, from the input queue
+ * until every task has reported completion. Tasks run no database operations,
+ * so the score is dominated by the scheduling decisions and the thread hand-offs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview",
+        "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+        "--add-opens", "java.base/jdk.internal.misc=ALL-UNNAMED" })
+public class SchedulerBenchmark {
+
+    private static final int BATCH_SIZE = 1_000;
+
+    @Param({ "1", "4", "8" })
+    public int numberOfThreads;
+
+    @Param({ "SINGLE_THREADED", "PARTITIONED", "PARALLEL" })
+    public ExecutionModeEnum executionMode;
+
+    // the number of threads does not apply to the common pool and to virtual threads
+    @Param({ "COMMON", "FIXED", "WORK_STEALING", "VIRTUAL" })
+    public TaskExecutorTypeEnum taskExecutor;
+
+    // only affects partitioned tasks: a skewed distribution makes tasks of the same partition conflict
+    @Param({ "UNIFORM", "ZIPF" })
+    public KeyDistribution distribution;
+
+    @Param({ "1000" })
+    public int numberOfPartitions;
+
+    private BlockingQueue<InboundEvent> inputQueue;
+
+    private VmsTransactionScheduler scheduler;
+
+    private String queue;
+
+    private SyntheticInput[] inputs;
+
+    private final AtomicLong completed = new AtomicLong(0);
+
+    private long lastTid;
+
+    private long batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        VmsRuntimeMetadata vmsRuntimeMetadata = VmsMetadataLoader.load(SyntheticService.class.getPackageName());
+        this.inputQueue = new LinkedBlockingQueue<>();
+        this.scheduler = VmsTransactionScheduler.build("synthetic", this.inputQueue,
+                vmsRuntimeMetadata.queueToVmsTransactionMap(), new ITransactionManager() { },
+                result -> this.completed.incrementAndGet(), this.taskExecutor, this.numberOfThreads, 0);
+        Thread schedulerThread = Thread.ofPlatform().name("vms-transaction-scheduler").daemon().start(this.scheduler);
+        assert schedulerThread.isAlive();
+
+        this.queue = this.executionMode.name().toLowerCase();
+        int[] keys = this.distribution.generate(this.numberOfPartitions, BATCH_SIZE);
+        this.inputs = new SyntheticInput[BATCH_SIZE];
+        for(int i = 0; i < BATCH_SIZE; i++){
+            this.inputs[i] = new SyntheticInput(keys[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        this.scheduler.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long dispatch(){
+        this.batch++;
+        long target = this.completed.get() + BATCH_SIZE;
+        for(int i = 0; i < BATCH_SIZE; i++){
+            long tid = this.lastTid + 1;
+            this.inputQueue.add(new InboundEvent(tid, this.lastTid, this.batch, this.queue, SyntheticInput.class, this.inputs[i]));
+            this.lastTid = tid;
+        }
+        // parallel and partitioned tasks may finish out of order, so wait for all of them
+        while(this.completed.get() < target){
+            Thread.onSpinWait();
+        }
+        return this.lastTid;
+    }
+
+}
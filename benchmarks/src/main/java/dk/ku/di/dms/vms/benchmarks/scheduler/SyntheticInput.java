@@ -0,0 +1,20 @@
+package dk.ku.di.dms.vms.benchmarks.scheduler;
+
+import dk.ku.di.dms.vms.modb.api.annotations.Event;
+
+@Event
+public final class SyntheticInput {
+
+    public int key;
+
+    public SyntheticInput(){}
+
+    public SyntheticInput(int key) {
+        this.key = key;
+    }
+
+    public int getKey() {
+        return this.key;
+    }
+
+}
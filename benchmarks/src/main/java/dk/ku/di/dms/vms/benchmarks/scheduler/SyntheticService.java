@@ -0,0 +1,38 @@
+package dk.ku.di.dms.vms.benchmarks.scheduler;
+
+import dk.ku.di.dms.vms.modb.api.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static dk.ku.di.dms.vms.modb.api.enums.TransactionTypeEnum.R;
+import static dk.ku.di.dms.vms.modb.api.enums.TransactionTypeEnum.W;
+
+/**
+ * One transactional method per execution mode.
+ * Every method burns the same amount of CPU, so differences across modes come from the scheduler.
+ */
+@Microservice("synthetic")
+public final class SyntheticService {
+
+    private static final long WORK_TOKENS = 100;
+
+    @Inbound(values = {"single_threaded"})
+    @Transactional(type=W)
+    public void singleThreaded(SyntheticInput in) {
+        Blackhole.consumeCPU(WORK_TOKENS);
+    }
+
+    @Inbound(values = {"partitioned"})
+    @Transactional(type=W)
+    @PartitionBy(clazz = SyntheticInput.class, method = "getKey")
+    public void partitioned(SyntheticInput in) {
+        Blackhole.consumeCPU(WORK_TOKENS);
+    }
+
+    @Inbound(values = {"parallel"})
+    @Transactional(type=R)
+    @Parallel
+    public void parallel(SyntheticInput in) {
+        Blackhole.consumeCPU(WORK_TOKENS);
+    }
+
+}
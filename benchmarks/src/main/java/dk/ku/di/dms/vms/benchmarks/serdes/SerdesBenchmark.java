@@ -0,0 +1,104 @@
+package dk.ku.di.dms.vms.benchmarks.serdes;
+
+import dk.ku.di.dms.vms.modb.common.serdes.IVmsSerdesProxy;
+import dk.ku.di.dms.vms.modb.common.serdes.VmsSerdesProxyBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of event payloads through the default serdes proxy,
+ * the path every input and output event crosses in the event handler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview",
+        "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+        "--add-opens", "java.base/jdk.internal.misc=ALL-UNNAMED" })
+public class SerdesBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int numberOfItems;
+
+    private IVmsSerdesProxy serdes;
+
+    private SyntheticOrder order;
+
+    private String orderJson;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        this.serdes = VmsSerdesProxyBuilder.build();
+        List<SyntheticItem> items = new ArrayList<>(this.numberOfItems);
+        for(int i = 1; i <= this.numberOfItems; i++){
+            items.add(new SyntheticItem(i % 10, i, "product_" + i, 9.99f * i, i % 5 + 1));
+        }
+        this.order = new SyntheticOrder(1, "order_1", new Date(0), 9.99f * this.numberOfItems, items);
+        this.orderJson = this.serdes.serialize(this.order, SyntheticOrder.class);
+    }
+
+    @Benchmark
+    public String serialize(){
+        return this.serdes.serialize(this.order, SyntheticOrder.class);
+    }
+
+    @Benchmark
+    public SyntheticOrder deserialize(){
+        return this.serdes.deserialize(this.orderJson, SyntheticOrder.class);
+    }
+
+    public static final class SyntheticOrder {
+
+        public int customerId;
+
+        public String orderId;
+
+        public Date timestamp;
+
+        public float totalAmount;
+
+        public List<SyntheticItem> items;
+
+        public SyntheticOrder(){}
+
+        public SyntheticOrder(int customerId, String orderId, Date timestamp, float totalAmount, List<SyntheticItem> items) {
+            this.customerId = customerId;
+            this.orderId = orderId;
+            this.timestamp = timestamp;
+            this.totalAmount = totalAmount;
+            this.items = items;
+        }
+
+    }
+
+    public static final class SyntheticItem {
+
+        public int sellerId;
+
+        public int productId;
+
+        public String productName;
+
+        public float unitPrice;
+
+        public int quantity;
+
+        public SyntheticItem(){}
+
+        public SyntheticItem(int sellerId, int productId, String productName, float unitPrice, int quantity) {
+            this.sellerId = sellerId;
+            this.productId = productId;
+            this.productName = productName;
+            this.unitPrice = unitPrice;
+            this.quantity = quantity;
+        }
+
+    }
+
+}
@@ -0,0 +1,83 @@
+package dk.ku.di.dms.vms.benchmarks.serdes;
+
+import dk.ku.di.dms.vms.modb.common.schema.network.transaction.TransactionEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wire encoding of transaction events, including the precedence map
+ * that grows with the number of virtual microservices taking part in a transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview",
+        "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+        "--add-opens", "java.base/jdk.internal.misc=ALL-UNNAMED" })
+public class TransactionEventBenchmark {
+
+    @Param({ "1", "4", "8" })
+    public int numberOfVms;
+
+    @Param({ "64", "1024" })
+    public int payloadSize;
+
+    private byte[][] identifiers;
+
+    private long[] lastTids;
+
+    private String payload;
+
+    private TransactionEvent.PayloadRaw payloadRaw;
+
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        this.identifiers = new byte[this.numberOfVms][];
+        this.lastTids = new long[this.numberOfVms];
+        for(int i = 0; i < this.numberOfVms; i++){
+            this.identifiers[i] = ("vms_" + i).getBytes(StandardCharsets.UTF_8);
+            this.lastTids[i] = 1_000_000L + i;
+        }
+        char[] chars = new char[this.payloadSize];
+        Arrays.fill(chars, 'a');
+        this.payload = new String(chars);
+        this.payloadRaw = TransactionEvent.of(1_000_010L, 100L, "synthetic_event", this.payload,
+                TransactionEvent.precedenceMapOf(this.identifiers, this.lastTids));
+        this.buffer = ByteBuffer.allocateDirect(this.payloadRaw.totalSize() + 1 + Integer.BYTES);
+        TransactionEvent.write(this.buffer, this.payloadRaw);
+    }
+
+    @Benchmark
+    public byte[] precedenceMapOf(){
+        return TransactionEvent.precedenceMapOf(this.identifiers, this.lastTids);
+    }
+
+    @Benchmark
+    public ByteBuffer encode(){
+        TransactionEvent.PayloadRaw raw = TransactionEvent.of(1_000_010L, 100L, "synthetic_event", this.payload,
+                TransactionEvent.precedenceMapOf(this.identifiers, this.lastTids));
+        this.buffer.clear();
+        TransactionEvent.write(this.buffer, raw);
+        return this.buffer;
+    }
+
+    /**
+     * Decoding as done by a receiving VMS, which only looks up its own entry in the precedence map
+     */
+    @Benchmark
+    public long decode(){
+        // skip message type and size
+        this.buffer.position(1 + Integer.BYTES);
+        TransactionEvent.Payload decoded = TransactionEvent.read(this.buffer);
+        return TransactionEvent.lastTidOf(decoded.precedenceMap(), this.identifiers[this.numberOfVms - 1]);
+    }
+
+}
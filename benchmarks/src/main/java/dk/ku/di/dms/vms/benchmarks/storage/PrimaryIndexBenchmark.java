@@ -0,0 +1,135 @@
+package dk.ku.di.dms.vms.benchmarks.storage;
+
+import dk.ku.di.dms.vms.benchmarks.KeyDistribution;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.SimpleKey;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
+import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dk.ku.di.dms.vms.benchmarks.storage.UniqueHashBufferIndexBenchmark.record;
+
+/**
+ * Multi-version primary index on top of a populated {@link UniqueHashBufferIndex}.
+ * Reads go either straight to the underlying index or through a version chain,
+ * and writes follow the path taken by a committed transaction.
+ * Use the JMH -t option to run the same workload with concurrent threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview",
+        "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+        "--add-opens", "java.base/jdk.internal.misc=ALL-UNNAMED" })
+public class PrimaryIndexBenchmark {
+
+    private static final int OPERATIONS = 10_000;
+
+    @Param({ "10000", "1000000" })
+    public int numberOfRecords;
+
+    @Param({ "SEQUENTIAL", "UNIFORM", "ZIPF" })
+    public KeyDistribution distribution;
+
+    private UniqueHashBufferIndex underlyingIndex;
+
+    private PrimaryIndex primaryIndex;
+
+    private IKey[] keys;
+
+    private Object[][] records;
+
+    private final AtomicLong tid = new AtomicLong(0);
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        this.underlyingIndex = UniqueHashBufferIndexBenchmark.build(this.numberOfRecords);
+        for(int i = 1; i <= this.numberOfRecords; i++){
+            this.underlyingIndex.insert(SimpleKey.of(i), record(i));
+        }
+        int[] stream = this.distribution.generate(this.numberOfRecords, OPERATIONS);
+        this.keys = new IKey[OPERATIONS];
+        this.records = new Object[OPERATIONS][];
+        for(int i = 0; i < OPERATIONS; i++){
+            this.keys[i] = SimpleKey.of(stream[i]);
+            this.records[i] = record(stream[i]);
+        }
+    }
+
+    /**
+     * Version chains are never pruned while no checkpoint happens,
+     * so a fresh multi-version layer per iteration keeps them from growing across the run
+     */
+    @Setup(Level.Iteration)
+    public void setUpIteration(){
+        this.primaryIndex = PrimaryIndex.build(this.underlyingIndex);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        this.underlyingIndex.reset();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void lookupCommitted(Blackhole blackhole){
+        TransactionContext txCtx = new TransactionContext(this.tid.get() + 1, this.tid.get(), true);
+        for(IKey key : this.keys){
+            blackhole.consume(this.primaryIndex.lookupByKey(txCtx, key));
+        }
+    }
+
+    /**
+     * Installs one version per key of the stream before each iteration,
+     * so the measured lookups only resolve the floor entry of a version chain
+     */
+    @State(Scope.Benchmark)
+    public static class VersionChains {
+
+        TransactionContext readCtx;
+
+        @Setup(Level.Iteration)
+        public void setUp(PrimaryIndexBenchmark benchmark){
+            long writerTid = benchmark.tid.incrementAndGet();
+            TransactionContext writeCtx = new TransactionContext(writerTid, writerTid - 1, false);
+            for(int i = 0; i < OPERATIONS; i++){
+                benchmark.primaryIndex.upsert(writeCtx, benchmark.keys[i], benchmark.records[i]);
+            }
+            benchmark.primaryIndex.installWrites(writeCtx);
+            writeCtx.release();
+            this.readCtx = new TransactionContext(writerTid + 1, writerTid, true);
+        }
+
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void lookupVersioned(VersionChains versionChains, Blackhole blackhole){
+        for(IKey key : this.keys){
+            blackhole.consume(this.primaryIndex.lookupByKey(versionChains.readCtx, key));
+        }
+    }
+
+    /**
+     * One single-record transaction per operation, from upsert to installing the write set
+     */
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void upsertAndInstall(){
+        for(int i = 0; i < OPERATIONS; i++){
+            long currentTid = this.tid.incrementAndGet();
+            TransactionContext txCtx = new TransactionContext(currentTid, currentTid - 1, false);
+            this.primaryIndex.upsert(txCtx, this.keys[i], this.records[i]);
+            this.primaryIndex.installWrites(txCtx);
+            txCtx.release();
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package dk.ku.di.dms.vms.benchmarks.storage;
+
+import dk.ku.di.dms.vms.benchmarks.KeyDistribution;
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.SimpleKey;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
+import dk.ku.di.dms.vms.modb.storage.record.IRecordBufferFactory;
+import dk.ku.di.dms.vms.modb.storage.record.RecordBufferContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Off-heap hash index operations, without the multi-version layer on top.
+ * Each invocation replays the whole key stream, so scores are reported per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview",
+        "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+        "--add-opens", "java.base/jdk.internal.misc=ALL-UNNAMED" })
+public class UniqueHashBufferIndexBenchmark {
+
+    private static final int OPERATIONS = 100_000;
+
+    static final Schema SCHEMA = new Schema(
+            new String[]{ "id", "seller_id", "price", "name" },
+            new DataType[]{ DataType.INT, DataType.INT, DataType.FLOAT, DataType.STRING },
+            new int[]{ 0 }, null, false);
+
+    @Param({ "10000", "1000000" })
+    public int numberOfRecords;
+
+    @Param({ "SEQUENTIAL", "UNIFORM", "ZIPF" })
+    public KeyDistribution distribution;
+
+    private UniqueHashBufferIndex index;
+
+    private IKey[] keys;
+
+    private Object[][] records;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        this.index = build(this.numberOfRecords);
+        for(int i = 1; i <= this.numberOfRecords; i++){
+            this.index.insert(SimpleKey.of(i), record(i));
+        }
+        int[] stream = this.distribution.generate(this.numberOfRecords, OPERATIONS);
+        this.keys = new IKey[OPERATIONS];
+        this.records = new Object[OPERATIONS][];
+        for(int i = 0; i < OPERATIONS; i++){
+            this.keys[i] = SimpleKey.of(stream[i]);
+            this.records[i] = record(stream[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        this.index.reset();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void lookupByKey(Blackhole blackhole){
+        for(IKey key : this.keys){
+            blackhole.consume(this.index.lookupByKey(key));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void exists(Blackhole blackhole){
+        for(IKey key : this.keys){
+            blackhole.consume(this.index.exists(key));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void upsert(){
+        for(int i = 0; i < OPERATIONS; i++){
+            this.index.upsert(this.keys[i], this.records[i]);
+        }
+    }
+
+    /**
+     * Population from empty, including every resize the table goes through
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public int insertWithGrowth(){
+        int capacity = UniqueHashBufferIndex.capacityFor(16);
+        RecordBufferContext[] current = { RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(SCHEMA, capacity)) };
+        IRecordBufferFactory factory = new IRecordBufferFactory() {
+            @Override
+            public RecordBufferContext allocate(long sizeInBytes) {
+                return RecordBufferContext.allocate(sizeInBytes);
+            }
+            @Override
+            public void onResize(RecordBufferContext oldBuffer, RecordBufferContext newBuffer) {
+                current[0] = newBuffer;
+            }
+        };
+        UniqueHashBufferIndex growing = new UniqueHashBufferIndex(current[0], SCHEMA, SCHEMA.getPrimaryKeyColumns(), capacity, factory);
+        for(int i = 1; i <= this.numberOfRecords; i++){
+            growing.insert(SimpleKey.of(i), record(i));
+        }
+        int finalCapacity = growing.capacity();
+        // reset releases the retired buffers, the live one is released here so invocations do not accumulate memory
+        growing.reset();
+        current[0].close();
+        return finalCapacity;
+    }
+
+    static UniqueHashBufferIndex build(int numberOfRecords){
+        int capacity = UniqueHashBufferIndex.capacityFor(numberOfRecords);
+        RecordBufferContext context = RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(SCHEMA, capacity));
+        return new UniqueHashBufferIndex(context, SCHEMA, SCHEMA.getPrimaryKeyColumns(), capacity, IRecordBufferFactory.inMemory());
+    }
+
+    static Object[] record(int id){
+        return new Object[]{ id, id % 100, (float) id, "product" };
+    }
+
+}
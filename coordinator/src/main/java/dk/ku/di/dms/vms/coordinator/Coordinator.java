@@ -2,6 +2,7 @@ package dk.ku.di.dms.vms.coordinator;
 
 import dk.ku.di.dms.vms.coordinator.batch.BatchAlgo;
 import dk.ku.di.dms.vms.coordinator.batch.BatchContext;
+import dk.ku.di.dms.vms.coordinator.batch.BatchWindow;
 import dk.ku.di.dms.vms.coordinator.election.schema.LeaderRequest;
 import dk.ku.di.dms.vms.coordinator.options.CoordinatorOptions;
 import dk.ku.di.dms.vms.coordinator.options.VmsWorkerOptions;
@@ -110,6 +111,9 @@ public final class Coordinator extends ModbHttpServer {
 
     private final BlockingQueue<Object> coordinatorQueue;
 
+    // shared by the transaction workers. resized as batches complete if adaptive
+    private final BatchWindow batchWindow;
+
     private final Map<String, IVmsWorker> vmsWorkerContainerMap;
 
     private final List<Tuple<TransactionWorker, Thread>> transactionWorkers;
@@ -201,6 +205,11 @@ public final class Coordinator extends ModbHttpServer {
         // to hold actions spawned by events received by different VMSs
         this.coordinatorQueue = new LinkedBlockingQueue<>();
 
+        this.batchWindow = options.isAdaptiveBatchWindow() ?
+                BatchWindow.adaptive(options.getBatchWindow(), options.getMinBatchWindow(), options.getMaxBatchWindow(),
+                        options.getCommitLatencySlo(), options.getMaxTransactionsPerBatch()) :
+                BatchWindow.fixed(options.getBatchWindow());
+
         // batch commit metadata
         long dummyBatchOffset = startingBatchOffset - 1;
         this.batchOffsetPendingCommit = startingBatchOffset;
@@ -286,7 +295,7 @@ public final class Coordinator extends ModbHttpServer {
             }
             var txInputQueue = this.transactionInputDeques.get(idx-1);
             TransactionWorker txWorker = TransactionWorker.build(idx, txInputQueue, initTid,
-                    this.options.getMaxTransactionsPerBatch(), this.options.getBatchWindow(),
+                    this.options.getMaxTransactionsPerBatch(), this.batchWindow,
                     numWorkers, precedenceMapInputQueue, precedenceMapOutputQueue, this.transactionMap,
                     this.vmsIdentifiersPerDAG, this.vmsWorkerContainerMap, this.coordinatorQueue, this.serdesProxy);
             Thread txWorkerThread = Thread.ofPlatform()
@@ -573,7 +582,7 @@ public final class Coordinator extends ModbHttpServer {
                             httpHandler
                     );
                     try { NetworkUtils.configure(channel, options.getOsBufferSize()); } catch (IOException ignored) { }
-                    readCompletionHandler.process(request);
+                    readCompletionHandler.start();
                 } else {
                     LOGGER.log(WARNING,"Leader: A node is trying to connect without a presentation message. \n" + request);
                     buffer.clear();
@@ -703,6 +712,7 @@ public final class Coordinator extends ModbHttpServer {
         if(batchContext.batchOffset == this.batchOffsetPendingCommit){
             this.numTIDsCommitted.updateAndGet(i -> i + batchContext.numTIDsOverall);
             this.sendCommitCommandToVMSs(batchContext);
+            this.batchWindow.batchCompleted(System.currentTimeMillis() - batchContext.sealTime);
             this.batchOffsetPendingCommit = batchContext.batchOffset + 1;
             // making this implementation order-independent, so not assuming batch commit are received in order
             BatchContext nextBatchContext = this.batchContextMap.get( this.batchOffsetPendingCommit );
@@ -29,6 +29,9 @@ public final class BatchContext {
 
     public long lastTid;
 
+    // when the batch was sealed. used to observe the commit latency
+    public long sealTime;
+
     public BatchContext(long batchOffset) {
         this.batchOffset = batchOffset;
         this.terminalVMSs = new HashSet<>();
@@ -40,6 +43,7 @@ public final class BatchContext {
                      Map<String, Long> previousBatchPerVms, Map<String,Integer> numberOfTIDsPerVms){
         this.numTIDsOverall = numTIDsOverall;
         this.lastTid = lastTid;
+        this.sealTime = System.currentTimeMillis();
         // immutable
         this.previousBatchPerVms = previousBatchPerVms;
         this.numberOfTIDsPerVms = numberOfTIDsPerVms;
@@ -0,0 +1,113 @@
+package dk.ku.di.dms.vms.coordinator.batch;
+
+/**
+ * The time a transaction worker waits for inputs before closing a batch.
+ * <p>
+ * A fixed window trades latency for throughput regardless of the load. An adaptive window
+ * targets a commit latency instead: a transaction waits up to a window to be sealed in a batch,
+ * and then until the batch completes in all terminal VMSs. So the window is set to the latency target
+ * minus the (smoothed) completion latency reported by the coordinator. Since completion takes longer
+ * as batches grow, a high load shrinks the window and a low load grows it back.
+ * Besides, waiting longer than the time to fill a batch at the observed input rate is pointless,
+ * as the worker seals the batch once the maximum number of transactions is reached.
+ * The window is kept between the configured bounds and moves halfway toward its target on every update,
+ * to not oscillate with the noise of individual batches.
+ * <p>
+ * Thread-safe. Transaction workers report sealed batches and the coordinator reports completed batches.
+ */
+public final class BatchWindow {
+
+    // weight of the newest observation in the moving averages
+    private static final double ALPHA = 0.2;
+
+    private final boolean adaptive;
+
+    private final int minWindow;
+
+    private final int maxWindow;
+
+    private final int commitLatencySlo;
+
+    private final int maxTransactionsPerBatch;
+
+    private volatile int window;
+
+    // transactions per millisecond, per worker. negative if not observed yet
+    private double inputRate = -1;
+
+    // milliseconds from sealing a batch to its commit. negative if not observed yet
+    private double completionLatency = -1;
+
+    public static BatchWindow fixed(int window){
+        return new BatchWindow(false, window, window, window, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param initialWindow used until the first batch completes
+     * @param commitLatencySlo the target time between the arrival of a transaction and its commit, in milliseconds
+     */
+    public static BatchWindow adaptive(int initialWindow, int minWindow, int maxWindow,
+                                       int commitLatencySlo, int maxTransactionsPerBatch){
+        if(minWindow <= 0 || minWindow > maxWindow){
+            throw new IllegalArgumentException("Invalid batch window bounds: ["+minWindow+", "+maxWindow+"]");
+        }
+        return new BatchWindow(true, Math.clamp(initialWindow, minWindow, maxWindow),
+                minWindow, maxWindow, commitLatencySlo, maxTransactionsPerBatch);
+    }
+
+    private BatchWindow(boolean adaptive, int window, int minWindow, int maxWindow,
+                        int commitLatencySlo, int maxTransactionsPerBatch) {
+        this.adaptive = adaptive;
+        this.window = window;
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.commitLatencySlo = commitLatencySlo;
+        this.maxTransactionsPerBatch = maxTransactionsPerBatch;
+    }
+
+    /**
+     * @return the current window in milliseconds
+     */
+    public int get(){
+        return this.window;
+    }
+
+    /**
+     * @param numTIDs the transactions sealed in the batch
+     * @param elapsed milliseconds since the previous batch of the worker was sealed
+     */
+    public void batchSealed(long numTIDs, long elapsed){
+        if(!this.adaptive || elapsed <= 0) return;
+        synchronized (this){
+            double rate = (double) numTIDs / elapsed;
+            this.inputRate = this.inputRate < 0 ? rate : (ALPHA * rate) + ((1 - ALPHA) * this.inputRate);
+            this.update();
+        }
+    }
+
+    /**
+     * @param latency milliseconds from sealing the batch to its commit
+     */
+    public void batchCompleted(long latency){
+        if(!this.adaptive || latency < 0) return;
+        synchronized (this){
+            this.completionLatency = this.completionLatency < 0 ? latency : (ALPHA * latency) + ((1 - ALPHA) * this.completionLatency);
+            this.update();
+        }
+    }
+
+    private void update(){
+        if(this.completionLatency < 0) return;
+        double target = this.commitLatencySlo - this.completionLatency;
+        if(this.inputRate > 0){
+            target = Math.min(target, this.maxTransactionsPerBatch / this.inputRate);
+        }
+        double next = this.window + ((target - this.window) / 2);
+        this.window = Math.clamp(Math.round(next), this.minWindow, this.maxWindow);
+    }
+
+    public boolean isAdaptive(){
+        return this.adaptive;
+    }
+
+}
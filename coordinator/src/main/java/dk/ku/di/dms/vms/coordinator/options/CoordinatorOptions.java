@@ -13,6 +13,16 @@ public final class CoordinatorOptions {
     // the batch window. a second by default
     private int batchWindow = 1000;
 
+    // adaptive batch window. disabled by default, in which case the batch window is fixed
+    private boolean adaptiveBatchWindow = false;
+
+    private int minBatchWindow;
+
+    private int maxBatchWindow;
+
+    // target time from the arrival of a transaction to its commit
+    private int commitLatencySlo;
+
     private int maxTransactionsPerBatch = Integer.MAX_VALUE;
 
     // thread pool to execute tasks, e.g., batch replication to replicas
@@ -93,6 +103,33 @@ public final class CoordinatorOptions {
         return this;
     }
 
+    /**
+     * The batch window starts as configured and is then resized between the bounds to meet the commit latency target
+     */
+    public CoordinatorOptions withAdaptiveBatchWindow(int minBatchWindow, int maxBatchWindow, int commitLatencySlo) {
+        this.adaptiveBatchWindow = true;
+        this.minBatchWindow = minBatchWindow;
+        this.maxBatchWindow = maxBatchWindow;
+        this.commitLatencySlo = commitLatencySlo;
+        return this;
+    }
+
+    public boolean isAdaptiveBatchWindow() {
+        return this.adaptiveBatchWindow;
+    }
+
+    public int getMinBatchWindow() {
+        return this.minBatchWindow;
+    }
+
+    public int getMaxBatchWindow() {
+        return this.maxBatchWindow;
+    }
+
+    public int getCommitLatencySlo() {
+        return this.commitLatencySlo;
+    }
+
     public CoordinatorOptions withMaxTransactionsPerBatch(int maxTransactionsPerBatch) {
         this.maxTransactionsPerBatch = maxTransactionsPerBatch;
         return this;
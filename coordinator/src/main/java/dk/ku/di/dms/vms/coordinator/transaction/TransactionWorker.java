@@ -1,12 +1,14 @@
 package dk.ku.di.dms.vms.coordinator.transaction;
 
 import dk.ku.di.dms.vms.coordinator.batch.BatchContext;
+import dk.ku.di.dms.vms.coordinator.batch.BatchWindow;
 import dk.ku.di.dms.vms.coordinator.vms.IVmsWorker;
 import dk.ku.di.dms.vms.modb.common.runnable.StoppableRunnable;
 import dk.ku.di.dms.vms.modb.common.schema.network.node.VmsNode;
 import dk.ku.di.dms.vms.modb.common.schema.network.transaction.TransactionEvent;
 import dk.ku.di.dms.vms.modb.common.serdes.IVmsSerdesProxy;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -22,11 +24,15 @@ public final class TransactionWorker extends StoppableRunnable {
     private long startingTidBatch;
     private long tid;
     private final int maxNumberOfTIDsBatch;
-    private final int batchWindow;
+    private final BatchWindow batchWindow;
+    // when the last batch was sealed, to observe the input rate
+    private long lastSealTime;
     private final int numWorkers;
 
     private final Map<String, TransactionDAG> transactionMap;
     private final Map<String, VmsTracking[]> vmsPerTransactionMap;
+    // identifiers of the VMSs in the same order of vmsPerTransactionMap, used to encode precedence maps
+    private final Map<String, byte[][]> vmsIdentifiersPerTransactionMap;
     private final Map<String, VmsTracking> vmsTrackingMap;
     private final Map<String, IVmsWorker> vmsWorkerContainerMap;
 
@@ -56,7 +62,25 @@ public final class TransactionWorker extends StoppableRunnable {
         }
     }
 
-    private record PendingTransactionInput (long tid, long batch, TransactionInput input, Set<String> pendingVMSs, Map<String, Long> previousTidPerVms){}
+    /**
+     * @param previousTidPerVms follows the order of the VMSs in vmsPerTransactionMap
+     */
+    private record PendingTransactionInput (long tid, long batch, TransactionInput input, Set<String> pendingVMSs, long[] previousTidPerVms){}
+
+    public static TransactionWorker build(int id, Deque<TransactionInput> inputQueue,
+                                          long startingTid, int maxNumberOfTIDsBatch,
+                                          int batchWindow, int numWorkers,
+                                          Queue<Map<String, PrecedenceInfo>> precedenceMapInputQueue,
+                                          Queue<Map<String, PrecedenceInfo>> precedenceMapOutputQueue,
+                                          Map<String, TransactionDAG> transactionMap,
+                                          Map<String, VmsNode[]> vmsIdentifiersPerDAG,
+                                          Map<String, IVmsWorker> vmsWorkerContainerMap,
+                                          Queue<Object> coordinatorQueue,
+                                          IVmsSerdesProxy serdesProxy){
+        return build(id, inputQueue, startingTid, maxNumberOfTIDsBatch, BatchWindow.fixed(batchWindow), numWorkers,
+                precedenceMapInputQueue, precedenceMapOutputQueue, transactionMap, vmsIdentifiersPerDAG,
+                vmsWorkerContainerMap, coordinatorQueue, serdesProxy);
+    }
 
     /**
      * Build private VmsTracking objects
@@ -64,7 +88,7 @@ public final class TransactionWorker extends StoppableRunnable {
     @SuppressWarnings("ToArrayCallWithZeroLengthArrayArgument")
     public static TransactionWorker build(int id, Deque<TransactionInput> inputQueue,
                                           long startingTid, int maxNumberOfTIDsBatch,
-                                          int batchWindow, int numWorkers,
+                                          BatchWindow batchWindow, int numWorkers,
                                           Queue<Map<String, PrecedenceInfo>> precedenceMapInputQueue,
                                           Queue<Map<String, PrecedenceInfo>> precedenceMapOutputQueue,
                                           Map<String, TransactionDAG> transactionMap,
@@ -90,7 +114,7 @@ public final class TransactionWorker extends StoppableRunnable {
     }
 
     private TransactionWorker(int id, Deque<TransactionInput> inputQueue,
-                              long startingTidBatch, int maxNumberOfTIDsBatch, int batchWindow, int numWorkers,
+                              long startingTidBatch, int maxNumberOfTIDsBatch, BatchWindow batchWindow, int numWorkers,
                               Queue<Map<String, PrecedenceInfo>> precedenceMapInputQueue,
                               Queue<Map<String, PrecedenceInfo>> precedenceMapOutputQueue,
                               Map<String, TransactionDAG> transactionMap, Map<String, VmsTracking[]> vmsPerTransactionMap,
@@ -107,6 +131,15 @@ public final class TransactionWorker extends StoppableRunnable {
         this.precedenceMapOutputQueue = precedenceMapOutputQueue;
         this.transactionMap = transactionMap;
         this.vmsPerTransactionMap = vmsPerTransactionMap;
+        this.vmsIdentifiersPerTransactionMap = new HashMap<>(vmsPerTransactionMap.size());
+        for(var txEntry : vmsPerTransactionMap.entrySet()){
+            VmsTracking[] vmsList = txEntry.getValue();
+            byte[][] identifiers = new byte[vmsList.length][];
+            for(int i = 0; i < vmsList.length; i++){
+                identifiers[i] = vmsList[i].identifier.getBytes(StandardCharsets.UTF_8);
+            }
+            this.vmsIdentifiersPerTransactionMap.put(txEntry.getKey(), identifiers);
+        }
         this.vmsTrackingMap = vmsTrackingMap;
         this.vmsWorkerContainerMap = vmsWorkerContainerMap;
         this.serdesProxy = serdesProxy;
@@ -129,9 +162,10 @@ public final class TransactionWorker extends StoppableRunnable {
         TransactionInput data;
         long lastTidBatch;
         long end;
+        this.lastSealTime = System.currentTimeMillis();
         while (this.isRunning()) {
             lastTidBatch = this.getLastTidNextBatch();
-            end = System.currentTimeMillis() + this.batchWindow;
+            end = System.currentTimeMillis() + this.batchWindow.get();
             do {
                 // drain transaction inputs
                 while ((data = this.inputQueue.poll()) != null &&
@@ -178,15 +212,15 @@ public final class TransactionWorker extends StoppableRunnable {
         VmsTracking inputVms = this.vmsTrackingMap.get(event.targetVms);
         VmsTracking[] vmsList = this.vmsPerTransactionMap.get(transactionDAG.name);
 
-        // this hashmap can be reused
-        Map<String, Long> previousTidPerVms = new HashMap<>(vmsList.length);
+        long[] previousTidPerVms = new long[vmsList.length];
 
         // if any vms in the dag shows a previous batch offset, then this input must be marked as pending
         // until we get the precedence from the transaction worker that precedes this one in the ring,
         // we cannot submit this input
         Set<String> pendingVMSs = new HashSet<>();
-        for (var vms_ : vmsList) {
-            previousTidPerVms.put(vms_.identifier, vms_.lastTid);
+        for (int i = 0; i < vmsList.length; i++) {
+            VmsTracking vms_ = vmsList[i];
+            previousTidPerVms[i] = vms_.lastTid;
             if(vms_.batch != this.batchContext.batchOffset){
                 // previous batch will be updated later, when precedence map is received from another worker
                 vms_.batch = this.batchContext.batchOffset;
@@ -205,16 +239,17 @@ public final class TransactionWorker extends StoppableRunnable {
         if(!pendingVMSs.isEmpty()) {
             this.generatePendingTransactionInput(pendingVMSs, previousTidPerVms, transactionInput);
         } else {
-            String precedenceMapStr = this.serdesProxy.serializeMap(previousTidPerVms);
+            byte[] precedenceMap = TransactionEvent.precedenceMapOf(
+                    this.vmsIdentifiersPerTransactionMap.get(transactionDAG.name), previousTidPerVms);
             TransactionEvent.PayloadRaw txEvent = TransactionEvent.of(this.tid, this.batchContext.batchOffset,
-                    transactionInput.event.name, transactionInput.event.payload, precedenceMapStr);
-            LOGGER.log(DEBUG,"Leader: Transaction worker "+id+" adding event "+event.name+" to "+inputVms.identifier+" worker:\n"+txEvent+"\n"+previousTidPerVms);
+                    transactionInput.event.name, transactionInput.event.payload, precedenceMap);
+            LOGGER.log(DEBUG,"Leader: Transaction worker "+id+" adding event "+event.name+" to "+inputVms.identifier+" worker:\n"+txEvent+"\n"+Arrays.toString(previousTidPerVms));
             this.vmsWorkerContainerMap.get(inputVms.identifier).queueTransactionEvent(txEvent);
         }
         this.tid++;
     }
 
-    private void generatePendingTransactionInput(Set<String> pendingVMSs, Map<String, Long> previousTidPerVms, TransactionInput transactionInput) {
+    private void generatePendingTransactionInput(Set<String> pendingVMSs, long[] previousTidPerVms, TransactionInput transactionInput) {
         // this has to be emitted when batch info from previous worker in the ring arrives
         long lastBatchOffset = this.batchContext.batchOffset - this.numWorkers;
         PendingTransactionInput pendingInput = new PendingTransactionInput(
@@ -267,21 +302,23 @@ public final class TransactionWorker extends StoppableRunnable {
             TransactionDAG transactionDAG = this.transactionMap.get(pendingInput.input.name);
             VmsTracking[] vmsList = this.vmsPerTransactionMap.get(transactionDAG.name);
 
-            for (VmsTracking vms_ : vmsList) {
+            for (int i = 0; i < vmsList.length; i++) {
+                VmsTracking vms_ = vmsList[i];
                 PrecedenceInfo precedenceInfo = precedenceMap.get(vms_.identifier);
                 if(pendingInput.pendingVMSs.contains(vms_.identifier)) {
-                    pendingInput.previousTidPerVms.put(vms_.identifier, precedenceInfo.lastTid);
+                    pendingInput.previousTidPerVms[i] = precedenceInfo.lastTid;
                 }
                 // update precedence info for next pending input
                 precedenceInfo.lastTid = vms_.lastTid;
             }
 
-            String precedenceMapStr = this.serdesProxy.serializeMap(pendingInput.previousTidPerVms);
+            byte[] precedenceMapBytes = TransactionEvent.precedenceMapOf(
+                    this.vmsIdentifiersPerTransactionMap.get(transactionDAG.name), pendingInput.previousTidPerVms);
             EventIdentifier event = transactionDAG.inputEvents.get(pendingInput.input.event.name);
             VmsTracking inputVms = this.vmsTrackingMap.get(event.targetVms);
             TransactionEvent.PayloadRaw txEvent = TransactionEvent.of(pendingInput.tid, pendingInput.batch,
-                    pendingInput.input.event.name, pendingInput.input.event.payload, precedenceMapStr);
-            LOGGER.log(DEBUG,"Leader: Transaction worker "+id+" adding event "+event.name+" to "+inputVms.identifier+" worker:\n"+txEvent+"\n"+pendingInput.previousTidPerVms);
+                    pendingInput.input.event.name, pendingInput.input.event.payload, precedenceMapBytes);
+            LOGGER.log(DEBUG,"Leader: Transaction worker "+id+" adding event "+event.name+" to "+inputVms.identifier+" worker:\n"+txEvent+"\n"+Arrays.toString(pendingInput.previousTidPerVms));
             this.vmsWorkerContainerMap.get(inputVms.identifier).queueTransactionEvent(txEvent);
         }
 
@@ -328,6 +365,9 @@ public final class TransactionWorker extends StoppableRunnable {
         this.precedenceMapOutputQueue.add(precedenceMap);
         this.batchContext.seal(this.tid - this.startingTidBatch, this.tid - 1, previousBatchPerVms, numberOfTIDsPerVms);
         this.coordinatorQueue.add(this.batchContext);
+        // idle time counts too, so a low load is observed as a low rate
+        this.batchWindow.batchSealed(this.batchContext.numTIDsOverall, this.batchContext.sealTime - this.lastSealTime);
+        this.lastSealTime = this.batchContext.sealTime;
 
         // optimization: iterate over all vms in the last batch, filter those which last tid != this.tid
         // after filtering, send a map containing the vms (identifier) and their corresponding last tids to the next transaction worker in the ring
@@ -0,0 +1,48 @@
+package dk.ku.di.dms.vms.coordinator.batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class BatchWindowTest {
+
+    @Test
+    public void testFixed() {
+        BatchWindow batchWindow = BatchWindow.fixed(1000);
+        batchWindow.batchSealed(10, 1000);
+        batchWindow.batchCompleted(50);
+        Assert.assertEquals(1000, batchWindow.get());
+    }
+
+    @Test
+    public void testAdaptive() {
+        BatchWindow batchWindow = BatchWindow.adaptive(1000, 10, 2000, 200, 10_000);
+        // nothing changes before a batch completes
+        batchWindow.batchSealed(10, 1000);
+        Assert.assertEquals(1000, batchWindow.get());
+
+        // low load and fast completion: the window converges to the latency target minus the completion latency
+        for(int i = 0; i < 20; i++){
+            batchWindow.batchSealed(10, 1000);
+            batchWindow.batchCompleted(50);
+        }
+        Assert.assertEquals(150, batchWindow.get(), 5);
+
+        // completion slows down as batches grow: the window shrinks down to its minimum
+        for(int i = 0; i < 50; i++){
+            batchWindow.batchCompleted(500);
+        }
+        Assert.assertEquals(10, batchWindow.get());
+    }
+
+    @Test
+    public void testAdaptiveBoundedByFillTime() {
+        // at 100 transactions per ms, a batch of 1000 fills in 10 ms
+        BatchWindow batchWindow = BatchWindow.adaptive(1000, 1, 2000, 1000, 1000);
+        for(int i = 0; i < 20; i++){
+            batchWindow.batchSealed(1000, 10);
+            batchWindow.batchCompleted(20);
+        }
+        Assert.assertEquals(10, batchWindow.get(), 2);
+    }
+
+}
@@ -15,7 +15,6 @@ import dk.ku.di.dms.vms.modb.common.serdes.VmsSerdesProxyBuilder;
 import junit.framework.Assert;
 import org.junit.Test;
 
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -44,8 +43,7 @@ public final class CoordinatorTest {
 
         @Override
         public void queueTransactionEvent(TransactionEvent.PayloadRaw payloadRaw) {
-            String str = new String(payloadRaw.precedenceMap(), StandardCharsets.UTF_8);
-            var map = this.serdesProxy.deserializeDependenceMap(str);
+            var map = TransactionEvent.precedenceMapToMap(payloadRaw.precedenceMap());
             this.queue.add(map);
         }
     }
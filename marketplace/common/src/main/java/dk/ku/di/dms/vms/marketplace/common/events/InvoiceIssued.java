@@ -40,4 +40,16 @@ public final class InvoiceIssued {
     public List<OrderItem> getItems() {
         return this.items;
     }
+
+    /**
+     * @return the seller of the items, or null if the items belong to more than one seller
+     */
+    public Integer getSellerId() {
+        if(this.items.isEmpty()) return null;
+        int sellerId = this.items.get(0).seller_id;
+        for(OrderItem item : this.items){
+            if(item.seller_id != sellerId) return null;
+        }
+        return sellerId;
+    }
 }
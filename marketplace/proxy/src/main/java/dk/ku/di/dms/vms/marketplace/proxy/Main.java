@@ -122,6 +122,8 @@ public final class Main {
         int batchWindow = Integer.parseInt( properties.getProperty("batch_window_ms") );
         int batchMaxTransactions = Integer.parseInt( properties.getProperty("num_max_transactions_batch") );
         int numTransactionWorkers = Integer.parseInt( properties.getProperty("num_transaction_workers") );
+        // 0 keeps the batch window fixed
+        int commitLatencySlo = Integer.parseInt( properties.getProperty("commit_latency_slo_ms", "0") );
 
         // vms worker config
         int numWorkersPerVms = Integer.parseInt( properties.getProperty("num_vms_workers") );
@@ -131,12 +133,20 @@ public final class Main {
         // logging
         boolean logging = Boolean.parseBoolean( properties.getProperty("logging") );
 
+        CoordinatorOptions coordinatorOptions = new CoordinatorOptions();
+        if(commitLatencySlo > 0){
+            coordinatorOptions.withAdaptiveBatchWindow(
+                    Integer.parseInt( properties.getProperty("min_batch_window_ms") ),
+                    Integer.parseInt( properties.getProperty("max_batch_window_ms") ),
+                    commitLatencySlo);
+        }
+
         Coordinator coordinator = Coordinator.build(
                 serverMap,
                 starterVMSs,
                 transactionMap,
                 serverIdentifier,
-                new CoordinatorOptions()
+                coordinatorOptions
                         .withNetworkBufferSize(definiteBufferSize)
                         .withOsBufferSize(osBufferSize)
                         .withNetworkThreadPoolSize(groupPoolSize)
@@ -11,20 +11,20 @@ import dk.ku.di.dms.vms.marketplace.common.events.ShipmentUpdated;
 import dk.ku.di.dms.vms.marketplace.seller.dtos.OrderSellerView;
 import dk.ku.di.dms.vms.marketplace.seller.dtos.SellerDashboard;
 import dk.ku.di.dms.vms.marketplace.seller.entities.OrderEntry;
+import dk.ku.di.dms.vms.marketplace.seller.entities.SellerView;
 import dk.ku.di.dms.vms.marketplace.seller.repositories.IOrderEntryRepository;
 import dk.ku.di.dms.vms.marketplace.seller.repositories.ISellerRepository;
+import dk.ku.di.dms.vms.marketplace.seller.repositories.ISellerViewRepository;
 import dk.ku.di.dms.vms.modb.api.annotations.*;
-import dk.ku.di.dms.vms.modb.api.query.builder.QueryBuilderFactory;
-import dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum;
-import dk.ku.di.dms.vms.modb.api.query.statement.SelectStatement;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static dk.ku.di.dms.vms.marketplace.common.Constants.INVOICE_ISSUED;
 import static dk.ku.di.dms.vms.marketplace.common.Constants.SHIPMENT_UPDATED;
 import static dk.ku.di.dms.vms.modb.api.enums.TransactionTypeEnum.RW;
-import static dk.ku.di.dms.vms.modb.api.enums.TransactionTypeEnum.W;
 import static java.lang.System.Logger.Level.*;
 
 @Microservice("seller")
@@ -38,22 +38,21 @@ public final class SellerService {
 
     private final IOrderEntryRepository orderEntryRepository;
 
-    @VmsPreparedStatement("sellerDashboard")
-    public static final SelectStatement SELLER_VIEW_BASE = QueryBuilderFactory.select()
-            .project("seller_id").sum("total_amount").sum("freight_value")
-            .sum("total_incentive").sum("total_invoice").sum("total_items")
-            .count("c_o_id").count("seller_id")
-            .from("order_entries").where("seller_id", ExpressionTypeEnum.EQUALS, ":sellerId")
-            .groupBy( "seller_id" ).build();
+    private final ISellerViewRepository sellerViewRepository;
 
-    public SellerService(ISellerRepository sellerRepository, IOrderEntryRepository orderEntryRepository){
+    public SellerService(ISellerRepository sellerRepository, IOrderEntryRepository orderEntryRepository, ISellerViewRepository sellerViewRepository){
         this.sellerRepository = sellerRepository;
         this.orderEntryRepository = orderEntryRepository;
+        this.sellerViewRepository = sellerViewRepository;
     }
 
+    /**
+     * Partitioned by seller, since the invoice reads and writes the view of its seller.
+     * Invoices of more than one seller have no partition, so they run single-threaded
+     */
     @Inbound(values = INVOICE_ISSUED)
-    @Transactional(type=W)
-    @Parallel
+    @Transactional(type=RW)
+    @PartitionBy(clazz = InvoiceIssued.class, method = "getSellerId")
     public void processInvoiceIssued(InvoiceIssued invoiceIssued){
         LOGGER.log(DEBUG, "APP: Seller received an invoice issued event with TID: "+ invoiceIssued.instanceId);
         List<OrderItem> orderItems = invoiceIssued.getItems();
@@ -83,6 +82,34 @@ public final class SellerService {
             entries.add(entry);
         }
         this.orderEntryRepository.insertAll(entries);
+        this.updateSellerViews(entries);
+    }
+
+    /**
+     * Applies the entries of an order to the views of the respective sellers.
+     * The views are versioned like any other table, so a dashboard read sees the aggregate at its TID.
+     */
+    private void updateSellerViews(List<OrderEntry> entries){
+        Map<Integer, SellerView> sellerViews = new HashMap<>();
+        for(OrderEntry entry : entries){
+            SellerView sellerView = sellerViews.get(entry.seller_id);
+            if(sellerView == null){
+                sellerView = this.sellerViewRepository.lookupByKey(entry.seller_id);
+                if(sellerView == null) sellerView = new SellerView(entry.seller_id);
+                sellerViews.put(entry.seller_id, sellerView);
+            }
+            // as the dashboard query did, which counted the entries (i.e., not distinct orders)
+            sellerView.count_orders++;
+            sellerView.total_amount += entry.total_amount;
+            sellerView.freight_value += entry.freight_value;
+            sellerView.total_incentive += entry.total_incentive;
+            sellerView.total_invoice += entry.total_invoice;
+            sellerView.total_items += entry.total_items;
+            sellerView.count_items++;
+        }
+        for(SellerView sellerView : sellerViews.values()){
+            this.sellerViewRepository.upsert(sellerView);
+        }
     }
 
     @Inbound(values = SHIPMENT_UPDATED)
@@ -132,12 +159,31 @@ public final class SellerService {
      */
     public SellerDashboard queryDashboard(int sellerId){
         LOGGER.log(DEBUG, "APP: Seller received a seller dashboard request for ID: "+ sellerId);
-        List<OrderEntry> orderEntries = this.orderEntryRepository.getOrderEntriesBySellerId(sellerId);
-        if(orderEntries.isEmpty()) return EMPTY_DASHBOARD;
+        return buildDashboard(sellerId, this.orderEntryRepository, this.sellerViewRepository);
+    }
+
+    /**
+     * Must be called within a transaction context, so the view and the entries are read from the same snapshot
+     */
+    public static SellerDashboard buildDashboard(int sellerId, IOrderEntryRepository orderEntryRepository, ISellerViewRepository sellerViewRepository){
+        SellerView sellerView = sellerViewRepository.lookupByKey(sellerId);
+        if(sellerView == null) return EMPTY_DASHBOARD;
+        List<OrderEntry> orderEntries = orderEntryRepository.getOrderEntriesBySellerId(sellerId);
         LOGGER.log(DEBUG, "APP: Seller "+sellerId+" has "+orderEntries.size()+" entries in seller dashboard");
-        OrderSellerView view = this.orderEntryRepository.fetchOne(SELLER_VIEW_BASE.setParam(sellerId), OrderSellerView.class);
-        // LOGGER.log(DEBUG, view);
-        return new SellerDashboard(view, orderEntries);
+        return new SellerDashboard(toOrderSellerView(sellerView), orderEntries);
+    }
+
+    private static OrderSellerView toOrderSellerView(SellerView sellerView){
+        OrderSellerView view = new OrderSellerView();
+        view.seller_id = sellerView.seller_id;
+        view.total_amount = sellerView.total_amount;
+        view.freight_value = sellerView.freight_value;
+        view.total_incentive = sellerView.total_incentive;
+        view.total_invoice = sellerView.total_invoice;
+        view.total_items = sellerView.total_items;
+        view.count_orders = sellerView.count_orders;
+        view.count_items = sellerView.count_items;
+        return view;
     }
 
 }
@@ -0,0 +1,61 @@
+package dk.ku.di.dms.vms.marketplace.seller.entities;
+
+import dk.ku.di.dms.vms.modb.api.annotations.VmsTable;
+import dk.ku.di.dms.vms.modb.api.interfaces.IEntity;
+
+import javax.persistence.Column;
+import javax.persistence.Id;
+
+/**
+ * Materialized aggregate of the order entries of a seller.
+ * Maintained by the transactions that write order entries,
+ * so the seller dashboard does not need to scan the order entries.
+ */
+@VmsTable(name = "seller_views")
+public final class SellerView implements IEntity<Integer> {
+
+    @Id
+    public int seller_id;
+
+    @Column
+    public double total_amount;
+
+    @Column
+    public double freight_value;
+
+    @Column
+    public double total_incentive;
+
+    @Column
+    public double total_invoice;
+
+    @Column
+    public double total_items;
+
+    @Column
+    public int count_orders;
+
+    @Column
+    public int count_items;
+
+    public SellerView() { }
+
+    public SellerView(int seller_id) {
+        this.seller_id = seller_id;
+    }
+
+    @Override
+    public String toString() {
+        return "{"
+                + "\"seller_id\":\"" + seller_id + "\""
+                + ",\"total_amount\":\"" + total_amount + "\""
+                + ",\"freight_value\":\"" + freight_value + "\""
+                + ",\"total_incentive\":\"" + total_incentive + "\""
+                + ",\"total_invoice\":\"" + total_invoice + "\""
+                + ",\"total_items\":\"" + total_items + "\""
+                + ",\"count_orders\":\"" + count_orders + "\""
+                + ",\"count_items\":\"" + count_items + "\""
+                + "}";
+    }
+
+}
@@ -0,0 +1,8 @@
+package dk.ku.di.dms.vms.marketplace.seller.repositories;
+
+import dk.ku.di.dms.vms.marketplace.seller.entities.SellerView;
+import dk.ku.di.dms.vms.modb.api.interfaces.IRepository;
+
+public interface ISellerViewRepository extends IRepository<Integer, SellerView> {
+
+}
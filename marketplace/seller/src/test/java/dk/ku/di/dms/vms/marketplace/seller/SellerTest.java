@@ -4,6 +4,7 @@ import dk.ku.di.dms.vms.marketplace.common.Constants;
 import dk.ku.di.dms.vms.marketplace.common.entities.OrderItem;
 import dk.ku.di.dms.vms.marketplace.common.events.InvoiceIssued;
 import dk.ku.di.dms.vms.marketplace.common.inputs.CustomerCheckout;
+import dk.ku.di.dms.vms.marketplace.seller.dtos.OrderSellerView;
 import dk.ku.di.dms.vms.marketplace.seller.dtos.SellerDashboard;
 import dk.ku.di.dms.vms.marketplace.seller.entities.OrderEntry;
 import dk.ku.di.dms.vms.marketplace.seller.entities.Seller;
@@ -16,6 +17,7 @@ import dk.ku.di.dms.vms.sdk.embed.facade.AbstractProxyRepository;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -83,6 +85,64 @@ public final class SellerTest {
         Assert.assertEquals(dash.view.count_orders, 1);
     }
 
+    /**
+     * Invoices of a single seller run partitioned, the others single-threaded.
+     * Either way, the view must match the aggregate recomputed from the entries
+     */
+    @Test
+    public void testIncrementalViewMatchesRecomputedView() throws Exception {
+        VmsApplication vms = getVmsApplication();
+        vms.start();
+        CustomerCheckout customerCheckout = new CustomerCheckout(
+                1, "test", "test", "test", "test","test", "test", "test",
+                "CREDIT_CARD","test","test","test", "test", "test", 1,"1");
+
+        for(int i = 1; i <= LAST_TID; i++) {
+            List<OrderItem> items = new ArrayList<>();
+            items.add(new OrderItem(i,1,1, "name", i % 3 + 1, 1.0f, new Date(),
+                    0.5f * i, 1, 2.0f * i, 2.0f * i, 0.25f));
+            items.add(new OrderItem(i,2,2, "name", i % 3 + 1, 3.0f, new Date(),
+                    1.0f, 2, 6.0f, 6.0f, 0.0f));
+            if(i % 2 == 0){
+                items.add(new OrderItem(i,3,3, "name", (i + 1) % 3 + 1, 4.0f, new Date(),
+                        1.5f, 1, 4.0f, 4.0f * i, 1.0f));
+            }
+            InvoiceIssued invoiceIssued = new InvoiceIssued( customerCheckout, i,  "test", new Date(), 100,
+                    items, String.valueOf(i));
+            InboundEvent inboundEvent = new InboundEvent(i, i-1, 1,
+                    "invoice_issued", InvoiceIssued.class, invoiceIssued);
+            vms.internalChannels().transactionInputQueue().add(inboundEvent);
+        }
+
+        sleep(2000);
+        Assert.assertEquals(LAST_TID, vms.lastTidFinished());
+        var sellerService = vms.<SellerService>getService();
+        Assert.assertTrue(sellerService.isPresent());
+        var txCtx = vms.getTransactionManager().beginTransaction(LAST_TID, 0, LAST_TID, true);
+        for(int sellerId = 1; sellerId <= 3; sellerId++) {
+            SellerDashboard dash = sellerService.get().queryDashboard(sellerId);
+            OrderSellerView recomputed = new OrderSellerView();
+            for(OrderEntry entry : dash.entries){
+                recomputed.total_amount += entry.total_amount;
+                recomputed.freight_value += entry.freight_value;
+                recomputed.total_incentive += entry.total_incentive;
+                recomputed.total_invoice += entry.total_invoice;
+                recomputed.total_items += entry.total_items;
+                recomputed.count_orders++;
+                recomputed.count_items++;
+            }
+            Assert.assertFalse(dash.entries.isEmpty());
+            Assert.assertEquals(sellerId, dash.view.seller_id);
+            Assert.assertEquals(recomputed.total_amount, dash.view.total_amount, 1e-3);
+            Assert.assertEquals(recomputed.freight_value, dash.view.freight_value, 1e-3);
+            Assert.assertEquals(recomputed.total_incentive, dash.view.total_incentive, 1e-3);
+            Assert.assertEquals(recomputed.total_invoice, dash.view.total_invoice, 1e-3);
+            Assert.assertEquals(recomputed.total_items, dash.view.total_items, 1e-3);
+            Assert.assertEquals(recomputed.count_orders, dash.view.count_orders);
+            Assert.assertEquals(recomputed.count_items, dash.view.count_items);
+        }
+    }
+
     @Test
     public void testParallelInvoiceIssued() throws Exception {
         VmsApplication vms = getVmsApplication();
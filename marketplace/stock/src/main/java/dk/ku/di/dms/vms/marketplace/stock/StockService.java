@@ -6,6 +6,8 @@ import dk.ku.di.dms.vms.marketplace.common.events.ProductUpdated;
 import dk.ku.di.dms.vms.marketplace.common.events.ReserveStock;
 import dk.ku.di.dms.vms.marketplace.common.events.StockConfirmed;
 import dk.ku.di.dms.vms.modb.api.annotations.*;
+import dk.ku.di.dms.vms.modb.api.query.builder.QueryBuilderFactory;
+import dk.ku.di.dms.vms.modb.api.query.statement.UpdateStatement;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -16,6 +18,7 @@ import java.util.stream.Collectors;
 
 import static dk.ku.di.dms.vms.marketplace.common.Constants.*;
 import static dk.ku.di.dms.vms.modb.api.enums.TransactionTypeEnum.RW;
+import static dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum.EQUALS;
 import static java.lang.System.Logger.Level.*;
 
 @Microservice("stock")
@@ -35,16 +38,19 @@ public final class StockService {
     public void updateProduct(ProductUpdated productUpdated) {
         LOGGER.log(DEBUG, "APP: Stock received an update product event with version: "+productUpdated.version);
 
-        // can use issue statement for faster update
-        StockItem stockItem = this.stockRepository.lookupByKey(new StockItem.StockId(productUpdated.seller_id, productUpdated.product_id));
-        if (stockItem == null) {
+        if (!this.stockRepository.exists(new StockItem.StockId(productUpdated.seller_id, productUpdated.product_id))) {
             throw new RuntimeException("Stock item not found: "+productUpdated.seller_id+"-"+productUpdated.product_id);
         }
 
-        stockItem.version = productUpdated.version;
-        stockItem.updated_at = new Date();
+        // the stock item is updated in place, without parsing it into an entity
+        UpdateStatement updateStatement = QueryBuilderFactory.update().update("stock_items")
+                .set("version", productUpdated.version)
+                .set("updated_at", new Date())
+                .where("seller_id", EQUALS, productUpdated.seller_id)
+                .and("product_id", EQUALS, productUpdated.product_id)
+                .build();
 
-        this.stockRepository.update(stockItem);
+        this.stockRepository.issue(updateStatement);
     }
 
     /**
@@ -48,12 +48,14 @@ public class CheckpointingTest extends CartProductWorkflowTest {
         Schema schema = PRODUCT_VMS.getSchema("products");
         try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)){
             var memorySegment = fc.map(FileChannel.MapMode.READ_ONLY, 0,
-                    10L * schema.getRecordSize(), Arena.ofShared());
+                    fc.size(), Arena.ofShared());
             var bufCtx = new RecordBufferContext(memorySegment);
-            var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), 10);
+            // max records (10) is rounded up to a power of two
+            int capacity = UniqueHashBufferIndex.capacityFor(10);
+            var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), capacity);
             var bb = MemoryManager.getTemporaryDirectBuffer( (int)fc.size() );
             int res = fc.read(bb);
-            Assert.assertEquals(4260, res);
+            Assert.assertEquals(UniqueHashBufferIndex.bufferSize(schema, capacity), res);
             Set<Integer> setOfIds = new HashSet<>();
             // read records from the byte buffer
             for(int i = 1; i <= MAX_ITEMS; i++){
@@ -6,7 +6,8 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- *
+ * The method returns the partition of the input. If it returns null,
+ * the input spans more than one partition, so the task runs single-threaded.
  * <a href="https://stackoverflow.com/questions/44291122/how-do-i-pass-a-method-to-an-annotation-using-java-8">...</a>
  */
 @Retention(RetentionPolicy.RUNTIME)
@@ -26,10 +26,23 @@ public class UpdateStatementBuilder extends AbstractStatementBuilder  {
             this.statement = selectStatement;
         }
 
-        public WhereClauseBridge<UpdateStatement> set(String param, Object value) {
+        public SetClauseBridge set(String param, Object value) {
             SetClauseElement setClauseElement = new SetClauseElement( param, value );
             this.statement.setClause.add(setClauseElement);
-            return new WhereClauseBridge<>(statement); // return where or join
+            return new SetClauseBridge(statement); // return another set or where
+        }
+
+    }
+
+    public static class SetClauseBridge extends WhereClauseBridge<UpdateStatement> {
+
+        protected SetClauseBridge(UpdateStatement statement) {
+            super(statement);
+        }
+
+        public SetClauseBridge set(String param, Object value) {
+            this.statement.setClause.add(new SetClauseElement( param, value ));
+            return this;
         }
 
     }
@@ -2,13 +2,14 @@ package dk.ku.di.dms.vms.modb.api.query.statement;
 
 import dk.ku.di.dms.vms.modb.api.query.clause.SetClauseElement;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public final class UpdateStatement extends AbstractStatement {
 
     public String table;
 
-    public List<SetClauseElement> setClause;
+    public final List<SetClauseElement> setClause = new ArrayList<>();
 
     @Override
     public UpdateStatement asUpdateStatement() {
@@ -5,6 +5,9 @@ import dk.ku.di.dms.vms.modb.common.utils.ByteUtils;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  *  The actual payload of what is sent to the VMSs
@@ -47,7 +50,9 @@ public final class TransactionEvent {
         int payloadSize = buffer.getInt();
         String payload = ByteUtils.extractStringFromByteBuffer( buffer, payloadSize );
         int precedenceSize = buffer.getInt();
-        String precedenceMap = ByteUtils.extractStringFromByteBuffer( buffer, precedenceSize );
+        // kept in binary form. a vms only decodes its own entry
+        byte[] precedenceMap = new byte[precedenceSize];
+        buffer.get(precedenceMap);
         return new Payload(tid, batch, event, payload, precedenceMap);
     }
 
@@ -70,7 +75,7 @@ public final class TransactionEvent {
     }
 
     public record Payload(
-            long tid, long batch, String event, String payload, String precedenceMap
+            long tid, long batch, String event, String payload, byte[] precedenceMap
     ){
         @Override
         public String toString() {
@@ -79,7 +84,7 @@ public final class TransactionEvent {
                     + ",\"tid\":\"" + tid + "\""
                     + ",\"event\":\"" + event + "\""
                     + ",\"payload\":\"" + payload + "\""
-                    + ",\"precedenceMap\":\"" + precedenceMap + "\""
+                    + ",\"precedenceMap\":\"" + precedenceMapToMap(precedenceMap) + "\""
                     + "}";
         }
     }
@@ -87,12 +92,107 @@ public final class TransactionEvent {
     /**
      * <a href="https://www.quora.com/How-many-bytes-can-a-string-hold">Considering UTF-8</a>
      */
-    public static PayloadRaw of(long tid, long batch, String event, String payload, String precedenceMap){
+    public static PayloadRaw of(long tid, long batch, String event, String payload, byte[] precedenceMap){
         byte[] eventBytes = event.getBytes(StandardCharsets.UTF_8);
         byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
-        byte[] precedenceMapBytes = precedenceMap.getBytes(StandardCharsets.UTF_8);
-        return new PayloadRaw(tid, batch, eventBytes, payloadBytes, precedenceMapBytes,
-                FIXED_LENGTH + eventBytes.length + payloadBytes.length + precedenceMapBytes.length);
+        return new PayloadRaw(tid, batch, eventBytes, payloadBytes, precedenceMap,
+                FIXED_LENGTH + eventBytes.length + payloadBytes.length + precedenceMap.length);
     }
 
-}
\ No newline at end of file
+    /*
+     * Precedence map binary layout. All integers are unsigned varints.
+     * The batch is not included since it is already part of the event header.
+     * number of entries | (identifier size | identifier | last tid)*
+     */
+
+    public static byte[] precedenceMapOf(byte[][] identifiers, long[] lastTids){
+        int size = ByteUtils.varLongSize(identifiers.length);
+        for(int i = 0; i < identifiers.length; i++){
+            size += ByteUtils.varLongSize(identifiers[i].length) + identifiers[i].length + ByteUtils.varLongSize(lastTids[i]);
+        }
+        byte[] precedenceMap = new byte[size];
+        ByteBuffer buffer = ByteBuffer.wrap(precedenceMap);
+        ByteUtils.putVarLong(buffer, identifiers.length);
+        for(int i = 0; i < identifiers.length; i++){
+            ByteUtils.putVarLong(buffer, identifiers[i].length);
+            buffer.put(identifiers[i]);
+            ByteUtils.putVarLong(buffer, lastTids[i]);
+        }
+        return precedenceMap;
+    }
+
+    public static byte[] precedenceMapOf(Map<String, Long> map){
+        byte[][] identifiers = new byte[map.size()][];
+        long[] lastTids = new long[map.size()];
+        int i = 0;
+        for(var entry : map.entrySet()){
+            identifiers[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            lastTids[i] = entry.getValue();
+            i++;
+        }
+        return precedenceMapOf(identifiers, lastTids);
+    }
+
+    /**
+     * @return the last tid of the given vms or -1 if the vms is not present in the map
+     */
+    public static long lastTidOf(byte[] precedenceMap, byte[] identifier){
+        ByteBuffer buffer = ByteBuffer.wrap(precedenceMap);
+        long numEntries = ByteUtils.getVarLong(buffer);
+        for(long i = 0; i < numEntries; i++){
+            int idSize = (int) ByteUtils.getVarLong(buffer);
+            int idStart = buffer.position();
+            buffer.position(idStart + idSize);
+            long lastTid = ByteUtils.getVarLong(buffer);
+            if(Arrays.equals(precedenceMap, idStart, idStart + idSize, identifier, 0, identifier.length)){
+                return lastTid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the entries of the map, except the one of the given vms,
+     * without decoding identifiers into strings
+     */
+    public static byte[] precedenceMapWithout(byte[] precedenceMap, byte[] identifier){
+        ByteBuffer buffer = ByteBuffer.wrap(precedenceMap);
+        long numEntries = ByteUtils.getVarLong(buffer);
+        int headerSize = buffer.position();
+        for(long i = 0; i < numEntries; i++){
+            int entryStart = buffer.position();
+            int idSize = (int) ByteUtils.getVarLong(buffer);
+            int idStart = buffer.position();
+            buffer.position(idStart + idSize);
+            ByteUtils.getVarLong(buffer);
+            if(!Arrays.equals(precedenceMap, idStart, idStart + idSize, identifier, 0, identifier.length)){
+                continue;
+            }
+            int entryEnd = buffer.position();
+            int newHeaderSize = ByteUtils.varLongSize(numEntries - 1);
+            byte[] updated = new byte[precedenceMap.length - (entryEnd - entryStart) - headerSize + newHeaderSize];
+            ByteBuffer updatedBuffer = ByteBuffer.wrap(updated);
+            ByteUtils.putVarLong(updatedBuffer, numEntries - 1);
+            updatedBuffer.put(precedenceMap, headerSize, entryStart - headerSize);
+            updatedBuffer.put(precedenceMap, entryEnd, precedenceMap.length - entryEnd);
+            return updated;
+        }
+        return precedenceMap;
+    }
+
+    /**
+     * Decodes the whole map. Not meant for the hot path, only for logging and tests
+     */
+    public static Map<String, Long> precedenceMapToMap(byte[] precedenceMap){
+        ByteBuffer buffer = ByteBuffer.wrap(precedenceMap);
+        int numEntries = (int) ByteUtils.getVarLong(buffer);
+        Map<String, Long> map = new HashMap<>(numEntries);
+        for(int i = 0; i < numEntries; i++){
+            int idSize = (int) ByteUtils.getVarLong(buffer);
+            String identifier = ByteUtils.extractStringFromByteBuffer(buffer, idSize);
+            map.put(identifier, ByteUtils.getVarLong(buffer));
+        }
+        return map;
+    }
+
+}
@@ -1,16 +1,36 @@
 package dk.ku.di.dms.vms.modb.common.transaction;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 /**
  * Interface to which client classes (i.e., event handler) can request a checkpoint of the state
  */
 public interface ITransactionManager {
 
-    default void checkpoint(long maxTid) { }
+    default void checkpoint(long batch, long maxTid) { }
+
+    /**
+     * The returned future completes when the state up to the max TID is durable
+     */
+    default CompletableFuture<Void> checkpointAsync(long batch, long maxTid) {
+        this.checkpoint(batch, maxTid);
+        return CompletableFuture.completedFuture(null);
+    }
 
     default void commit() { }
 
     default ITransactionContext beginTransaction(long tid, int identifier, long lastTid, boolean readOnly) { return null; }
 
+    /**
+     * Runs the task with the context of the transaction bound to it, so the operations
+     * issued by the task, including the commit, find the context without a lookup.
+     * The binding ends with the task, so it is never seen by other tasks running on the same thread.
+     */
+    default void runInTransaction(long tid, int identifier, long lastTid, boolean readOnly, Consumer<ITransactionContext> task) {
+        task.accept(this.beginTransaction(tid, identifier, lastTid, readOnly));
+    }
+
     default void reset() { }
 
 }
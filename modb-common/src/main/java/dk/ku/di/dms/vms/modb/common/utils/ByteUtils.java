@@ -18,4 +18,34 @@ public final class ByteUtils {
         return extracted;
     }
 
+    /**
+     * Unsigned LEB128 encoding. Small values (e.g., TIDs at the
+     * start of a run or identifier sizes) take a single byte
+     */
+    public static void putVarLong(ByteBuffer buffer, long value){
+        while((value & ~0x7FL) != 0){
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long getVarLong(ByteBuffer buffer){
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public static int varLongSize(long value){
+        // a zero still takes one byte
+        int bits = 64 - Long.numberOfLeadingZeros(value | 1);
+        return (bits + 6) / 7;
+    }
+
 }
@@ -0,0 +1,52 @@
+package dk.ku.di.dms.vms;
+
+import dk.ku.di.dms.vms.modb.common.schema.network.transaction.TransactionEvent;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PrecedenceMapTests {
+
+    private static Map<String, Long> buildMap(){
+        Map<String, Long> map = new HashMap<>();
+        map.put("product", 0L);
+        map.put("cart", 127L);
+        map.put("stock", 1_000_000_000_000L);
+        return map;
+    }
+
+    @Test
+    public void testLastTidOf(){
+        byte[] precedenceMap = TransactionEvent.precedenceMapOf(buildMap());
+        assert TransactionEvent.lastTidOf(precedenceMap, "product".getBytes(StandardCharsets.UTF_8)) == 0L;
+        assert TransactionEvent.lastTidOf(precedenceMap, "cart".getBytes(StandardCharsets.UTF_8)) == 127L;
+        assert TransactionEvent.lastTidOf(precedenceMap, "stock".getBytes(StandardCharsets.UTF_8)) == 1_000_000_000_000L;
+        assert TransactionEvent.lastTidOf(precedenceMap, "order".getBytes(StandardCharsets.UTF_8)) == -1L;
+    }
+
+    @Test
+    public void testPrecedenceMapWithout(){
+        Map<String, Long> map = buildMap();
+        byte[] precedenceMap = TransactionEvent.precedenceMapOf(map);
+        byte[] updated = TransactionEvent.precedenceMapWithout(precedenceMap, "cart".getBytes(StandardCharsets.UTF_8));
+        map.remove("cart");
+        assert TransactionEvent.precedenceMapToMap(updated).equals(map);
+    }
+
+    @Test
+    public void testReadWrite(){
+        Map<String, Long> map = buildMap();
+        TransactionEvent.PayloadRaw payloadRaw = TransactionEvent.of(10, 2, "in", "{}", TransactionEvent.precedenceMapOf(map));
+        ByteBuffer buffer = ByteBuffer.allocate(payloadRaw.totalSize());
+        TransactionEvent.writeWithinBatch(buffer, payloadRaw);
+        assert !buffer.hasRemaining();
+        buffer.flip();
+        TransactionEvent.Payload payload = TransactionEvent.read(buffer);
+        assert payload.tid() == 10 && payload.batch() == 2;
+        assert TransactionEvent.precedenceMapToMap(payload.precedenceMap()).equals(map);
+    }
+
+}
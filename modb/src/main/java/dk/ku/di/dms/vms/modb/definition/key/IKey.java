@@ -1,5 +1,7 @@
 package dk.ku.di.dms.vms.modb.definition.key;
 
+import dk.ku.di.dms.vms.modb.definition.Schema;
+
 /**
  * An interface for keys of rows and indexes
  */
@@ -7,4 +9,14 @@ public interface IKey {
 
     int hashCode();
 
+    /**
+     * Compares the values of this key with the columns of a record stored off-heap,
+     * regardless of the class of key the record was written with.
+     * Keys that only carry a hash are compared by the hash of the columns.
+     * @param address The address of the entry, header included
+     */
+    default boolean matches(Schema schema, int[] columns, long address){
+        return KeyUtils.buildRecordKey(schema, columns, address).hashCode() == this.hashCode();
+    }
+
 }
@@ -1,5 +1,8 @@
 package dk.ku.di.dms.vms.modb.definition.key;
 
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+
 public class IntKey implements IKey {
 
     public int value;
@@ -32,4 +35,15 @@ public class IntKey implements IKey {
         return this.hashCode() == object.hashCode();
     }
 
+    /**
+     * The value may be the hash of the values of the key (e.g., as cached by iterators)
+     */
+    @Override
+    public boolean matches(Schema schema, int[] columns, long address){
+        if(columns.length == 1 && schema.columnDataType(columns[0]) == DataType.INT){
+            return KeyUtils.columnEquals(schema, columns[0], address, this.value);
+        }
+        return IKey.super.matches(schema, columns, address);
+    }
+
 }
@@ -1,18 +1,27 @@
 package dk.ku.di.dms.vms.modb.definition.key;
 
+import dk.ku.di.dms.vms.modb.common.memory.MemoryUtils;
 import dk.ku.di.dms.vms.modb.common.type.DataType;
 import dk.ku.di.dms.vms.modb.common.type.DataTypeUtils;
 import dk.ku.di.dms.vms.modb.definition.Schema;
-import dk.ku.di.dms.vms.modb.definition.key.composite.NCompositeKey;
-import dk.ku.di.dms.vms.modb.definition.key.composite.PairCompositeKey;
-import dk.ku.di.dms.vms.modb.definition.key.composite.QuadrupleCompositeKey;
-import dk.ku.di.dms.vms.modb.definition.key.composite.TripleCompositeKey;
+import dk.ku.di.dms.vms.modb.definition.key.composite.*;
 import dk.ku.di.dms.vms.modb.index.IIndexKey;
+import jdk.internal.misc.Unsafe;
 
 import java.util.Arrays;
+import java.util.Date;
 
+import static dk.ku.di.dms.vms.modb.common.type.Constants.DEFAULT_MAX_SIZE_STRING;
+
+/**
+ * Keys made of int (or long) values are specialized, so they are built without boxing or varargs.
+ * Every method picks the same key class for the same values,
+ * either from the type of the values or from the data type of the columns.
+ */
 public final class KeyUtils {
 
+    private static final Unsafe UNSAFE = MemoryUtils.UNSAFE;
+
     private KeyUtils(){}
 
     public static IKey buildRecordKey(int[] columns, Object[] object){
@@ -21,10 +30,24 @@ public final class KeyUtils {
                 return SimpleKey.of( object[columns[0]] );
             }
             case 2 -> {
-                return PairCompositeKey.of(object[columns[0]], object[columns[1]]);
+                Object value0 = object[columns[0]];
+                Object value1 = object[columns[1]];
+                if(value0 instanceof Integer int0 && value1 instanceof Integer int1){
+                    return IntPairCompositeKey.of(int0, int1);
+                }
+                if(value0 instanceof Long long0 && value1 instanceof Long long1){
+                    return LongPairCompositeKey.of(long0, long1);
+                }
+                return PairCompositeKey.of(value0, value1);
             }
             case 3 -> {
-                return TripleCompositeKey.of(object[columns[0]], object[columns[1]], object[columns[2]]);
+                Object value0 = object[columns[0]];
+                Object value1 = object[columns[1]];
+                Object value2 = object[columns[2]];
+                if(value0 instanceof Integer int0 && value1 instanceof Integer int1 && value2 instanceof Integer int2){
+                    return IntTripleCompositeKey.of(int0, int1, int2);
+                }
+                return TripleCompositeKey.of(value0, value1, value2);
             }
             case 4 -> {
                 return QuadrupleCompositeKey.of(object[columns[0]], object[columns[1]], object[columns[2]], object[columns[3]]);
@@ -43,37 +66,137 @@ public final class KeyUtils {
     }
 
     /**
-     * Build a key based on the columns
+     * Build a key based on the columns. Int and long columns are read without boxing
      * @param schema schema
      * @param columns the columns
      * @param srcAddress the src address
-     * @return record key
+     * @return record key, equal to the key built from the record read
      */
     public static IKey buildRecordKey(Schema schema, int[] columns, long srcAddress){
-        IKey key;
-        // 2 - build the pk
         if(columns.length == 1){
             DataType columnType = schema.columnDataType( columns[0] );
-            srcAddress += schema.columnOffset()[columns[0]];
-            key = SimpleKey.of( DataTypeUtils.getValue(columnType, srcAddress) );
-        } else {
-            Object[] values = new Object[columns.length];
-            long currAddress = srcAddress;
-            for(int i = 0; i < columns.length; i++){
-                DataType columnType = schema.columnDataType( columns[i] );
-                currAddress += schema.columnOffset()[columns[i]];
-                values[i] = DataTypeUtils.getValue(columnType, currAddress);
-                // make it default to get the correct offset next iteration
-                currAddress = srcAddress;
+            if(columnType == DataType.INT){
+                return SimpleKey.of( UNSAFE.getInt(null, srcAddress + schema.columnOffset(columns[0])) );
             }
-            key = NCompositeKey.of( values );
+            return SimpleKey.of( DataTypeUtils.getValue(columnType, srcAddress + schema.columnOffset(columns[0])) );
+        }
+        if(columns.length == 2 && allOfType(schema, columns, DataType.INT)){
+            return IntPairCompositeKey.of(
+                    UNSAFE.getInt(null, srcAddress + schema.columnOffset(columns[0])),
+                    UNSAFE.getInt(null, srcAddress + schema.columnOffset(columns[1])));
+        }
+        if(columns.length == 2 && allOfType(schema, columns, DataType.LONG)){
+            return LongPairCompositeKey.of(
+                    UNSAFE.getLong(null, srcAddress + schema.columnOffset(columns[0])),
+                    UNSAFE.getLong(null, srcAddress + schema.columnOffset(columns[1])));
+        }
+        if(columns.length == 3 && allOfType(schema, columns, DataType.INT)){
+            return IntTripleCompositeKey.of(
+                    UNSAFE.getInt(null, srcAddress + schema.columnOffset(columns[0])),
+                    UNSAFE.getInt(null, srcAddress + schema.columnOffset(columns[1])),
+                    UNSAFE.getInt(null, srcAddress + schema.columnOffset(columns[2])));
+        }
+        // other types and sizes are boxed, as the keys built from the record read
+        Object[] values = new Object[columns.length];
+        for(int i = 0; i < columns.length; i++){
+            values[i] = DataTypeUtils.getValue(schema.columnDataType( columns[i] ), srcAddress + schema.columnOffset(columns[i]));
+        }
+        return buildIndexKey(values);
+    }
+
+    private static boolean allOfType(Schema schema, int[] columns, DataType dataType){
+        for(int column : columns){
+            if(schema.columnDataType(column) != dataType) return false;
         }
-        return key;
+        return true;
     }
 
+    /**
+     * The values are in the order of the columns of the index
+     */
     public static IKey buildIndexKey(Object[] values){
         if(values.length == 1) return SimpleKey.of(values[0]);
-        return NCompositeKey.of(values);
+        return buildRecordKey(identityColumns(values.length), values);
+    }
+
+    private static final int[][] IDENTITY_COLUMNS = { {}, { 0 }, { 0, 1 }, { 0, 1, 2 }, { 0, 1, 2, 3 } };
+
+    private static int[] identityColumns(int length){
+        if(length < IDENTITY_COLUMNS.length) return IDENTITY_COLUMNS[length];
+        int[] columns = new int[length];
+        for(int i = 0; i < length; i++) columns[i] = i;
+        return columns;
+    }
+
+    /**
+     * Compares an int value of a key with a column of the record at the address (header included)
+     */
+    public static boolean columnEquals(Schema schema, int column, long address, int value){
+        if(schema.columnDataType(column) == DataType.INT){
+            return UNSAFE.getInt(null, address + schema.columnOffset(column)) == value;
+        }
+        return columnEquals(schema, column, address, (Object) value);
+    }
+
+    public static boolean columnEquals(Schema schema, int column, long address, long value){
+        if(schema.columnDataType(column) == DataType.LONG){
+            return UNSAFE.getLong(null, address + schema.columnOffset(column)) == value;
+        }
+        return columnEquals(schema, column, address, (Object) value);
+    }
+
+    /**
+     * Strings are compared char by char, so the stored value is not materialized.
+     * Values of a type that cannot be written to the column are compared by hash, as keys were before.
+     */
+    public static boolean columnEquals(Schema schema, int column, long address, Object value){
+        // null values are not written to the buffer
+        if(value == null) return false;
+        DataType columnType = schema.columnDataType(column);
+        long columnAddress = address + schema.columnOffset(column);
+        switch (columnType){
+            case INT, LONG -> {
+                if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte){
+                    long stored = columnType == DataType.INT ? UNSAFE.getInt(null, columnAddress) : UNSAFE.getLong(null, columnAddress);
+                    return stored == ((Number) value).longValue();
+                }
+            }
+            case FLOAT, DOUBLE -> {
+                if(value instanceof Float || value instanceof Double){
+                    double stored = columnType == DataType.FLOAT ? UNSAFE.getFloat(null, columnAddress) : UNSAFE.getDouble(null, columnAddress);
+                    return stored == ((Number) value).doubleValue();
+                }
+            }
+            case BOOL -> {
+                if(value instanceof Boolean bool) return UNSAFE.getBoolean(null, columnAddress) == bool;
+            }
+            case CHAR -> {
+                if(value instanceof Character character) return UNSAFE.getChar(null, columnAddress) == character;
+            }
+            case DATE -> {
+                if(value instanceof Date date) return UNSAFE.getLong(null, columnAddress) == date.getTime();
+            }
+            case STRING, ENUM -> {
+                if(value instanceof CharSequence || value instanceof Enum<?>){
+                    return stringEquals(columnAddress, value.toString());
+                }
+            }
+        }
+        return DataTypeUtils.getValue(columnType, columnAddress).hashCode() == value.hashCode();
+    }
+
+    /**
+     * Same truncation of {@link DataTypeUtils#callWriteFunction} and trailing zeros of {@link DataTypeUtils#getValue}
+     */
+    private static boolean stringEquals(long address, String value){
+        int length = Math.min(value.length(), DEFAULT_MAX_SIZE_STRING);
+        for(int i = 0; i < length; i++){
+            if(UNSAFE.getChar(null, address + ((long) i * Character.BYTES)) != value.charAt(i)) return false;
+        }
+        for(int i = length; i < DEFAULT_MAX_SIZE_STRING; i++){
+            if(UNSAFE.getChar(null, address + ((long) i * Character.BYTES)) != '\0') return false;
+        }
+        return true;
     }
 
     public static IIndexKey buildIndexKey(int[] values){
@@ -1,22 +1,31 @@
 package dk.ku.di.dms.vms.modb.definition.key;
 
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.composite.NCompositeKey;
 import dk.ku.di.dms.vms.modb.index.IIndexKey;
 
 /**
  * A value that serves both for identifying a unique row (e.g., as PK) or a unique index entry.
  * In this case, the hash code is the hash of the object itself rather than the composition of values as in {@link NCompositeKey}
+ * The object is retained, so the key can be compared with the column of a stored record.
+ * A key built from an int is either an int value or a hash.
  */
 public final class SimpleKey implements IKey, IIndexKey {
 
     private final int value;
 
+    // null if built from an int
+    private final Object object;
+
     private SimpleKey(Object value) {
         this.value = value.hashCode();
+        this.object = value;
     }
 
     private SimpleKey(int value) {
         this.value = value;
+        this.object = null;
     }
 
     public static SimpleKey of(Object value) {
@@ -37,6 +46,14 @@ public final class SimpleKey implements IKey, IIndexKey {
         return object instanceof SimpleKey o && this.value == o.value;
     }
 
+    @Override
+    public boolean matches(Schema schema, int[] columns, long address){
+        if(columns.length != 1) return false;
+        if(this.object != null) return KeyUtils.columnEquals(schema, columns[0], address, this.object);
+        if(schema.columnDataType(columns[0]) == DataType.INT) return KeyUtils.columnEquals(schema, columns[0], address, this.value);
+        return KeyUtils.buildRecordKey(schema, columns, address).hashCode() == this.value;
+    }
+
     @Override
     public String toString() {
         return "{" +
@@ -0,0 +1,53 @@
+package dk.ku.di.dms.vms.modb.definition.key.composite;
+
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+
+/**
+ * A triple of int values without boxing.
+ * The hash is the same of {@link TripleCompositeKey} for the boxed values.
+ */
+public final class IntTripleCompositeKey extends BaseComposite implements IKey {
+
+    private final int value0;
+    private final int value1;
+    private final int value2;
+
+    public static IntTripleCompositeKey of(int value0, int value1, int value2){
+        return new IntTripleCompositeKey(value0, value1, value2);
+    }
+
+    private IntTripleCompositeKey(int value0, int value1, int value2) {
+        super(31 * (31 * (31 + value0) + value1) + value2);
+        this.value0 = value0;
+        this.value1 = value1;
+        this.value2 = value2;
+    }
+
+    @Override
+    public boolean equals(Object key){
+        return key instanceof IntTripleCompositeKey compositeKey &&
+                this.value0 == compositeKey.value0 &&
+                this.value1 == compositeKey.value1 &&
+                this.value2 == compositeKey.value2;
+    }
+
+    @Override
+    public boolean matches(Schema schema, int[] columns, long address){
+        return columns.length == 3 &&
+                KeyUtils.columnEquals(schema, columns[0], address, this.value0) &&
+                KeyUtils.columnEquals(schema, columns[1], address, this.value1) &&
+                KeyUtils.columnEquals(schema, columns[2], address, this.value2);
+    }
+
+    @Override
+    public String toString() {
+        return "{"
+                + "\"value0\":" + this.value0
+                + ",\"value1\":" + this.value1
+                + ",\"value2\":" + this.value2
+                + "}";
+    }
+
+}
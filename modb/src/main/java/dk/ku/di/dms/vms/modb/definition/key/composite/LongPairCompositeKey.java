@@ -0,0 +1,48 @@
+package dk.ku.di.dms.vms.modb.definition.key.composite;
+
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+
+/**
+ * A pair of long values without boxing.
+ * The hash is the same of {@link PairCompositeKey} for the boxed values.
+ */
+public final class LongPairCompositeKey extends BaseComposite implements IKey {
+
+    private final long value0;
+    private final long value1;
+
+    public static LongPairCompositeKey of(long value0, long value1){
+        return new LongPairCompositeKey(value0, value1);
+    }
+
+    private LongPairCompositeKey(long value0, long value1) {
+        super(31 * (31 + Long.hashCode(value0)) + Long.hashCode(value1));
+        this.value0 = value0;
+        this.value1 = value1;
+    }
+
+    @Override
+    public boolean equals(Object key){
+        return key instanceof LongPairCompositeKey compositeKey &&
+                this.value0 == compositeKey.value0 &&
+                this.value1 == compositeKey.value1;
+    }
+
+    @Override
+    public boolean matches(Schema schema, int[] columns, long address){
+        return columns.length == 2 &&
+                KeyUtils.columnEquals(schema, columns[0], address, this.value0) &&
+                KeyUtils.columnEquals(schema, columns[1], address, this.value1);
+    }
+
+    @Override
+    public String toString() {
+        return "{"
+                + "\"value0\":" + this.value0
+                + ",\"value1\":" + this.value1
+                + "}";
+    }
+
+}
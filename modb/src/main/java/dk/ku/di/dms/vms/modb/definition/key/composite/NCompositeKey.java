@@ -1,6 +1,8 @@
 package dk.ku.di.dms.vms.modb.definition.key.composite;
 
+import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
 import dk.ku.di.dms.vms.modb.index.IIndexKey;
 
 import java.util.Arrays;
@@ -31,6 +33,15 @@ public final class NCompositeKey extends BaseComposite implements IKey, IIndexKe
             Arrays.equals(this.values, compositeKey.values);
     }
 
+    @Override
+    public boolean matches(Schema schema, int[] columns, long address){
+        if(columns.length != this.values.length) return false;
+        for(int i = 0; i < columns.length; i++){
+            if(!KeyUtils.columnEquals(schema, columns[i], address, this.values[i])) return false;
+        }
+        return true;
+    }
+
     @Override
     public String toString() {
         return "{"
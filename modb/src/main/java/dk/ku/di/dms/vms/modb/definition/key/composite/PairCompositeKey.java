@@ -1,6 +1,8 @@
 package dk.ku.di.dms.vms.modb.definition.key.composite;
 
+import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
 
 import java.util.Objects;
 
@@ -26,6 +28,13 @@ public final class PairCompositeKey extends BaseComposite implements IKey {
                 this.value1.equals(pairCompositeKey.value1);
     }
 
+    @Override
+    public boolean matches(Schema schema, int[] columns, long address){
+        return columns.length == 2 &&
+                KeyUtils.columnEquals(schema, columns[0], address, this.value0) &&
+                KeyUtils.columnEquals(schema, columns[1], address, this.value1);
+    }
+
     @Override
     public String toString() {
         return "{"
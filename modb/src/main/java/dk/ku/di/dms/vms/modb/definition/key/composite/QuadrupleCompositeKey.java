@@ -1,6 +1,8 @@
 package dk.ku.di.dms.vms.modb.definition.key.composite;
 
+import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
 
 import java.util.Objects;
 
@@ -32,6 +34,15 @@ public final class QuadrupleCompositeKey extends BaseComposite implements IKey {
                 this.value3.equals(compositeKey.value3);
     }
 
+    @Override
+    public boolean matches(Schema schema, int[] columns, long address){
+        return columns.length == 4 &&
+                KeyUtils.columnEquals(schema, columns[0], address, this.value0) &&
+                KeyUtils.columnEquals(schema, columns[1], address, this.value1) &&
+                KeyUtils.columnEquals(schema, columns[2], address, this.value2) &&
+                KeyUtils.columnEquals(schema, columns[3], address, this.value3);
+    }
+
     @Override
     public String toString() {
         return "{"
@@ -1,6 +1,8 @@
 package dk.ku.di.dms.vms.modb.definition.key.composite;
 
+import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
 
 import java.util.Objects;
 
@@ -29,6 +31,14 @@ public final class TripleCompositeKey extends BaseComposite implements IKey {
                 this.value2.equals(pairCompositeKey.value2);
     }
 
+    @Override
+    public boolean matches(Schema schema, int[] columns, long address){
+        return columns.length == 3 &&
+                KeyUtils.columnEquals(schema, columns[0], address, this.value0) &&
+                KeyUtils.columnEquals(schema, columns[1], address, this.value1) &&
+                KeyUtils.columnEquals(schema, columns[2], address, this.value2);
+    }
+
     @Override
     public String toString() {
         return "{"
@@ -3,6 +3,7 @@ package dk.ku.di.dms.vms.modb.index.interfaces;
 import dk.ku.di.dms.vms.modb.common.memory.MemoryUtils;
 import dk.ku.di.dms.vms.modb.common.type.DataType;
 import dk.ku.di.dms.vms.modb.common.type.DataTypeUtils;
+import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
 import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
 import dk.ku.di.dms.vms.modb.query.execution.filter.FilterType;
@@ -41,14 +42,16 @@ public interface ReadOnlyBufferIndex<K> extends ReadOnlyIndex<K> {
         return this.readFromIndex(iterator.address());
     }
 
+    /**
+     * @param address the beginning of the record, after the header of the entry
+     */
     default Object[] readFromIndex(long address) {
         int size = this.schema().columnOffset().length;
         Object[] record = new Object[size];
-        long currAddress = address;
+        // the offsets of the schema include the header
+        long entryAddress = address - Schema.RECORD_HEADER;
         for(int i = 0; i < size; i++) {
-            DataType dt = this.schema().columnDataType(i);
-            record[i] = DataTypeUtils.getValue(dt, currAddress);
-            currAddress += dt.value;
+            record[i] = DataTypeUtils.getValue(this.schema().columnDataType(i), entryAddress + this.schema().columnOffset(i));
         }
         return record;
     }
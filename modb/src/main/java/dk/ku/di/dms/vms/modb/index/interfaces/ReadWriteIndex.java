@@ -17,6 +17,18 @@ public abstract class ReadWriteIndex<K> extends AbstractIndex<K> {
 
     public abstract Object[] lookupByKey(K key);
 
+    /**
+     * Multi-get. Indexes may resolve the keys in the order that best suits their layout
+     * @return the records in the order of the keys, null for the keys not found
+     */
+    public Object[][] lookupByKeys(K[] keys) {
+        Object[][] records = new Object[keys.length][];
+        for(int i = 0; i < keys.length; i++){
+            records[i] = this.lookupByKey(keys[i]);
+        }
+        return records;
+    }
+
     public void upsert(K key, Object[] record) {
         if(this.exists(key)) {
             this.update(key, record);
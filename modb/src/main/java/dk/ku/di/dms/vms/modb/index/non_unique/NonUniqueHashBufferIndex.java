@@ -1,154 +1,421 @@
 package dk.ku.di.dms.vms.modb.index.non_unique;
 
+import dk.ku.di.dms.vms.modb.common.memory.MemoryUtils;
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.common.type.DataTypeUtils;
+import dk.ku.di.dms.vms.modb.definition.Header;
 import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
-import dk.ku.di.dms.vms.modb.index.IndexTypeEnum;
-import dk.ku.di.dms.vms.modb.index.interfaces.ReadWriteBufferIndex;
-import dk.ku.di.dms.vms.modb.index.interfaces.ReadWriteIndex;
-import dk.ku.di.dms.vms.modb.storage.iterator.IRecordIterator;
-import dk.ku.di.dms.vms.modb.storage.iterator.non_unique.BucketIterator;
-import dk.ku.di.dms.vms.modb.storage.iterator.non_unique.NonUniqueRecordIterator;
-import dk.ku.di.dms.vms.modb.storage.record.OrderedRecordBuffer;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+import jdk.internal.misc.Unsafe;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.lang.System.Logger.Level.INFO;
 
 /**
- * Space conscious non-unique hash index
- * It manages a sequential buffer for each hash entry
+ * Space conscious non-unique hash index.
+ * Each association between a key and a primary key is an entry stored off-heap,
+ * so the index does not create objects per entry, regardless of its size.
+ * Each entry is laid out as:
+ * header | hash of the key | hash of the primary key | next and previous entries of the key | next entry of the pair | key columns | primary key columns
+ * Entries are referred to by their position, so they are not invalidated when the index grows.
+ * Entries whose keys fall into the same bucket are chained in a doubly-linked list, so removals do not traverse the chain.
+ * A second chain, by hash of the pair, allows checking whether a pair exists without traversing the entries of the key.
+ * Only the heads of the chains are kept on heap, in one array per chain.
+ * Removed entries are kept in a free list to be reused by subsequent inserts.
+ * Writers hold the write lock, whereas iterators copy the primary keys while holding the read lock.
  */
-public final class NonUniqueHashBufferIndex extends ReadWriteIndex<IKey> implements ReadWriteBufferIndex<IKey> {
+public final class NonUniqueHashBufferIndex extends NonUniqueIndex {
+
+    private static final System.Logger LOGGER = System.getLogger(NonUniqueHashBufferIndex.class.getName());
+
+    private static final Unsafe UNSAFE = MemoryUtils.UNSAFE;
+
+    private static final int NONE = -1;
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // the header is padded, so the fields and columns are aligned
+    private static final int KEY_HASH = Integer.BYTES;
+    private static final int PK_HASH = KEY_HASH + Integer.BYTES;
+    private static final int NEXT = PK_HASH + Integer.BYTES;
+    private static final int PREVIOUS = NEXT + Integer.BYTES;
+    private static final int PAIR_NEXT = PREVIOUS + Integer.BYTES;
+    private static final int COLUMNS = PAIR_NEXT + Integer.BYTES;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final int[] pkColumns;
+
+    // positions of the primary key values read from an entry
+    private final int[] pkValuesIndex;
+
+    private final long entrySize;
+
+    // the entry being inserted or deleted is written here before looking for an equal entry
+    private final MemorySegment scratch;
+
+    private Arena arena;
+
+    private long address;
+
+    private int capacity;
+
+    private int[] keyBuckets;
 
-    // better to have a manager. to manage the append-only buffer
-    // correctly (safety)... the manager will expand it if necessary
-    // will also deal with deleted records
-    // and provide
+    private int[] pairBuckets;
 
-    private final OrderedRecordBuffer[] buffers;
+    // entries past this position have never been used
+    private int highWaterMark;
 
-    private volatile int size;
+    private int freeList;
 
-    private final Map<IKey, List<Object[]>> cacheObjectStore;
+    private int size;
 
-    public NonUniqueHashBufferIndex(OrderedRecordBuffer[] buffers,
-                                    Schema schema,
-                                    int... columnsIndex){
+    // key buckets holding entries. colliding keys are counted once, so it estimates the number of distinct keys
+    private int usedKeyBuckets;
+
+    public NonUniqueHashBufferIndex(Schema schema, int[] columnsIndex, int capacity) {
         super(schema, columnsIndex);
-        this.buffers = buffers;
-        this.size = 0;
-        this.cacheObjectStore = new ConcurrentHashMap<>();
+        if(capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: "+capacity);
+        this.pkColumns = schema.getPrimaryKeyColumns();
+        this.pkValuesIndex = new int[this.pkColumns.length];
+        Arrays.setAll(this.pkValuesIndex, i -> i);
+        long columnsSize = 0;
+        for(int column : columnsIndex) columnsSize += columnSize(schema.columnDataType(column));
+        for(int column : this.pkColumns) columnsSize += columnSize(schema.columnDataType(column));
+        // keep entries aligned
+        this.entrySize = ((COLUMNS + columnsSize + Long.BYTES - 1) / Long.BYTES) * Long.BYTES;
+        this.scratch = Arena.ofAuto().allocate(this.entrySize, Long.BYTES);
+        int pow2Capacity = Integer.highestOneBit(Math.min(Math.max(capacity, 2), MAXIMUM_CAPACITY));
+        this.allocate(pow2Capacity);
+        this.clear();
+    }
+
+    // booleans do not account for space in the schema, but are written as a byte
+    private static int columnSize(DataType dataType){
+        return Math.max(dataType.value, 1);
     }
 
-    private int getBucketIndex(IKey key){
-        return ((key.hashCode() & 0x7fffffff) % this.buffers.length) - 1;
+    private void allocate(int newCapacity){
+        this.arena = Arena.ofShared();
+        this.address = this.arena.allocate(newCapacity * this.entrySize, Long.BYTES).address();
+        this.capacity = newCapacity;
+        this.keyBuckets = new int[newCapacity];
+        this.pairBuckets = new int[newCapacity];
     }
 
-    public OrderedRecordBuffer getBucket(IKey key){
-        return this.buffers[this.getBucketIndex(key)];
+    private void clear(){
+        Arrays.fill(this.keyBuckets, NONE);
+        Arrays.fill(this.pairBuckets, NONE);
+        this.highWaterMark = 0;
+        this.freeList = NONE;
+        this.size = 0;
+        this.usedKeyBuckets = 0;
+    }
+
+    @Override
+    public void reset() {
+        this.lock.writeLock().lock();
+        try {
+            this.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
     /**
-     *
-     * @param key The key formed by the column values of the record
-     * @param srcAddress The source address of the record
+     * Spread higher bits downward, since the mask only considers the lower bits
      */
-    @Override
-    public void insert(IKey key, long srcAddress) {
-        // must get the position of next, if exists
-        int bucket = this.getBucketIndex(key);
-        buffers[bucket].insert( key, srcAddress );
-        int currSize = this.size;
-        this.size = currSize + 1;
+    private static int spread(int hash){
+        return hash ^ (hash >>> 16);
+    }
+
+    private int keyBucket(int keyHash){
+        return spread(keyHash) & (this.capacity - 1);
+    }
+
+    private int pairBucket(int keyHash, int pkHash){
+        return spread((31 * keyHash) + pkHash) & (this.capacity - 1);
+    }
+
+    private long entryAddress(int entry){
+        return this.address + (entry * this.entrySize);
+    }
+
+    private static int getInt(long entryAddress, int field){
+        return UNSAFE.getInt(null, entryAddress + field);
+    }
+
+    private static void putInt(long entryAddress, int field, int value){
+        UNSAFE.putInt(null, entryAddress + field, value);
     }
 
     /**
-     * The update can be possibly optimized for updating only the fields required
-     * instead of the whole record
-     *
-     * @param key The key formed by the column values of the record
-     * @param srcAddress The new source address of the record
+     * Columns are written over zeroed memory, so equal values always produce equal bytes
      */
-    @Override
-    public void update(IKey key, long srcAddress) {
-        // get bucket
-        int bucket = this.getBucketIndex(key);
-        buffers[bucket].update(key, srcAddress);
+    private void writeEntry(long entryAddress, int keyHash, int pkHash, Object[] record){
+        UNSAFE.setMemory(null, entryAddress, this.entrySize, (byte) 0);
+        putInt(entryAddress, KEY_HASH, keyHash);
+        putInt(entryAddress, PK_HASH, pkHash);
+        long currAddress = entryAddress + COLUMNS;
+        for(int column : this.columns){
+            currAddress = this.writeColumn(currAddress, column, record);
+        }
+        for(int column : this.pkColumns){
+            currAddress = this.writeColumn(currAddress, column, record);
+        }
     }
 
-    @Override
-    public void insert(IKey key, Object[] record) {
-        throw new RuntimeException("Not implemented");
+    private long writeColumn(long currAddress, int column, Object[] record){
+        DataType dt = this.schema.columnDataType(column);
+        if(record[column] != null){
+            DataTypeUtils.callWriteFunction(currAddress, dt, record[column]);
+        }
+        return currAddress + columnSize(dt);
     }
 
-    @Override
-    public void update(IKey key, Object[] record) {
-        throw new RuntimeException("Not implemented");
+    private boolean sameColumns(long entryAddress, long otherAddress){
+        // the entry size is a multiple of a long
+        for(long offset = COLUMNS; offset < this.entrySize; offset += Long.BYTES){
+            if(UNSAFE.getLong(null, entryAddress + offset) != UNSAFE.getLong(null, otherAddress + offset)) return false;
+        }
+        return true;
+    }
+
+    private IKey primaryKeyOf(long entryAddress){
+        long currAddress = entryAddress + COLUMNS;
+        for(int column : this.columns){
+            currAddress += columnSize(this.schema.columnDataType(column));
+        }
+        Object[] values = new Object[this.pkColumns.length];
+        for(int i = 0; i < this.pkColumns.length; i++){
+            DataType dt = this.schema.columnDataType(this.pkColumns[i]);
+            values[i] = DataTypeUtils.getValue(dt, currAddress);
+            currAddress += columnSize(dt);
+        }
+        return KeyUtils.buildRecordKey(this.pkValuesIndex, values);
     }
 
     /**
-     * Must also mark the records as inactive
+     * @return the entry whose columns are equal to the scratch entry, or {@link #NONE}
      */
-    @Override
-    public void delete(IKey key) {
-        int bucket = this.getBucketIndex(key);
-        this.buffers[bucket].delete( key );
-        int currSize = this.size;
-        this.size = currSize - 1;
+    private int find(long scratchAddress, int keyHash, int pkHash){
+        int entry = this.pairBuckets[this.pairBucket(keyHash, pkHash)];
+        while(entry != NONE){
+            long entryAddress = this.entryAddress(entry);
+            if(getInt(entryAddress, KEY_HASH) == keyHash && getInt(entryAddress, PK_HASH) == pkHash
+                    && this.sameColumns(entryAddress, scratchAddress)){
+                return entry;
+            }
+            entry = getInt(entryAddress, PAIR_NEXT);
+        }
+        return NONE;
     }
 
     @Override
-    public Object[] lookupByKey(IKey key) {
-        throw new RuntimeException("Not implemented");
+    public boolean insert(IKey key, IKey primaryKey, Object[] record) {
+        int keyHash = key.hashCode();
+        int pkHash = primaryKey.hashCode();
+        this.lock.writeLock().lock();
+        try {
+            long scratchAddress = this.scratch.address();
+            this.writeEntry(scratchAddress, keyHash, pkHash, record);
+            if(this.find(scratchAddress, keyHash, pkHash) != NONE) return false;
+            if(this.size + 1 > (long) (this.capacity * LOAD_FACTOR)){
+                this.grow();
+            }
+            int entry = this.nextFreeEntry();
+            long entryAddress = this.entryAddress(entry);
+            UNSAFE.copyMemory(null, scratchAddress, null, entryAddress, this.entrySize);
+            this.link(entry, entryAddress, keyHash, pkHash);
+            this.size++;
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
-    @Override
-    public boolean exists(IKey key){
-        int bucket = this.getBucketIndex(key);
-        return this.buffers[bucket].exists(key);
+    private int nextFreeEntry(){
+        if(this.freeList != NONE){
+            int entry = this.freeList;
+            this.freeList = getInt(this.entryAddress(entry), NEXT);
+            return entry;
+        }
+        if(this.highWaterMark == this.capacity){
+            throw new IllegalStateException("Non-unique index of schema "+this.schema+" has reached its maximum capacity: "+this.capacity);
+        }
+        return this.highWaterMark++;
     }
 
-    @Override
-    public boolean exists(long address) {
-        throw new RuntimeException("Not implemented");
+    private void link(int entry, long entryAddress, int keyHash, int pkHash){
+        UNSAFE.putByte(null, entryAddress, Header.ACTIVE_BYTE);
+        // new entries become the head of both chains
+        int keyBucket = this.keyBucket(keyHash);
+        int head = this.keyBuckets[keyBucket];
+        putInt(entryAddress, NEXT, head);
+        putInt(entryAddress, PREVIOUS, NONE);
+        if(head != NONE) {
+            putInt(this.entryAddress(head), PREVIOUS, entry);
+        } else {
+            this.usedKeyBuckets++;
+        }
+        this.keyBuckets[keyBucket] = entry;
+        int pairBucket = this.pairBucket(keyHash, pkHash);
+        putInt(entryAddress, PAIR_NEXT, this.pairBuckets[pairBucket]);
+        this.pairBuckets[pairBucket] = entry;
     }
 
     @Override
-    public long address(IKey key) {
-        int bucket = this.getBucketIndex(key);
-        return this.buffers[bucket].address();
+    public boolean delete(IKey key, IKey primaryKey, Object[] record) {
+        int keyHash = key.hashCode();
+        int pkHash = primaryKey.hashCode();
+        this.lock.writeLock().lock();
+        try {
+            long scratchAddress = this.scratch.address();
+            this.writeEntry(scratchAddress, keyHash, pkHash, record);
+            int entry = this.find(scratchAddress, keyHash, pkHash);
+            if(entry == NONE) return false;
+            this.unlink(entry);
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
+    /**
+     * Removes all entries of the key
+     */
     @Override
-    public Object[] record(IKey key) {
-        throw new RuntimeException("Not implemented");
+    public void delete(IKey key) {
+        int keyHash = key.hashCode();
+        this.lock.writeLock().lock();
+        try {
+            int entry = this.keyBuckets[this.keyBucket(keyHash)];
+            while(entry != NONE){
+                long entryAddress = this.entryAddress(entry);
+                int next = getInt(entryAddress, NEXT);
+                if(getInt(entryAddress, KEY_HASH) == keyHash){
+                    this.unlink(entry);
+                }
+                entry = next;
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
-    public IRecordIterator<IKey> iterator(IKey key) {
-        int bucket = this.getBucketIndex(key);
-        return new NonUniqueRecordIterator(new BucketIterator(this.buffers[bucket]));
+    private void unlink(int entry){
+        long entryAddress = this.entryAddress(entry);
+        int keyHash = getInt(entryAddress, KEY_HASH);
+        int pkHash = getInt(entryAddress, PK_HASH);
+        int next = getInt(entryAddress, NEXT);
+        int previous = getInt(entryAddress, PREVIOUS);
+        if(previous == NONE){
+            this.keyBuckets[this.keyBucket(keyHash)] = next;
+        } else {
+            putInt(this.entryAddress(previous), NEXT, next);
+        }
+        if(next != NONE) {
+            putInt(this.entryAddress(next), PREVIOUS, previous);
+        } else if(previous == NONE) {
+            this.usedKeyBuckets--;
+        }
+        // the pair chain is singly-linked, but it is only as long as the number of colliding pairs
+        int pairBucket = this.pairBucket(keyHash, pkHash);
+        int pairNext = getInt(entryAddress, PAIR_NEXT);
+        int curr = this.pairBuckets[pairBucket];
+        if(curr == entry){
+            this.pairBuckets[pairBucket] = pairNext;
+        } else {
+            while(getInt(this.entryAddress(curr), PAIR_NEXT) != entry){
+                curr = getInt(this.entryAddress(curr), PAIR_NEXT);
+            }
+            putInt(this.entryAddress(curr), PAIR_NEXT, pairNext);
+        }
+        UNSAFE.putByte(null, entryAddress, Header.INACTIVE_BYTE);
+        putInt(entryAddress, NEXT, this.freeList);
+        this.freeList = entry;
+        this.size--;
     }
 
+    /**
+     * Doubles the capacity of the index. Entries are copied in place, so only the chains are rebuilt.
+     * Readers do not hold addresses out of the read lock, so the old memory can be released right away.
+     */
+    private void grow(){
+        if(this.capacity >= MAXIMUM_CAPACITY) return;
+        int newCapacity = this.capacity << 1;
+        LOGGER.log(INFO, "Growing non-unique index of schema "+this.schema+" from "+this.capacity+" to "+newCapacity+" entries");
+        Arena oldArena = this.arena;
+        long oldAddress = this.address;
+        int usedEntries = this.highWaterMark;
+        this.allocate(newCapacity);
+        UNSAFE.copyMemory(null, oldAddress, null, this.address, usedEntries * this.entrySize);
+        oldArena.close();
+        this.clear();
+        for(int entry = 0; entry < usedEntries; entry++){
+            long entryAddress = this.entryAddress(entry);
+            if(UNSAFE.getByte(null, entryAddress) == Header.ACTIVE_BYTE){
+                this.link(entry, entryAddress, getInt(entryAddress, KEY_HASH), getInt(entryAddress, PK_HASH));
+                this.size++;
+            } else {
+                putInt(entryAddress, NEXT, this.freeList);
+                this.freeList = entry;
+            }
+        }
+        this.highWaterMark = usedEntries;
+    }
+
+    /**
+     * The primary keys are copied, so the iteration does not block writers
+     */
     @Override
-    public IRecordIterator<IKey> iterator() {
-        return new NonUniqueRecordIterator(new BucketIterator(this.buffers));
-    }
-
-//    @Override
-//    public List<Object[]> records(IKey key) {
-//        List<Object[]> records = this.cacheObjectStore.get(key);
-//        if(records == null){
-//            IRecordIterator<Long> iterator = this.iterator(key);
-//
-//            objectLookup = this.readFromIndex(this.address(key));
-//            this.cacheObjectStore.put( key, objectLookup );
-//        }
-//        return objectLookup;
-//    }
+    public Iterator<IKey> iterator(IKey key) {
+        int keyHash = key.hashCode();
+        this.lock.readLock().lock();
+        try {
+            int entry = this.keyBuckets[this.keyBucket(keyHash)];
+            if(entry == NONE) return Collections.emptyIterator();
+            List<IKey> primaryKeys = new ArrayList<>();
+            while(entry != NONE){
+                long entryAddress = this.entryAddress(entry);
+                if(getInt(entryAddress, KEY_HASH) == keyHash){
+                    primaryKeys.add(this.primaryKeyOf(entryAddress));
+                }
+                entry = getInt(entryAddress, NEXT);
+            }
+            return primaryKeys.iterator();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
 
     @Override
-    public IndexTypeEnum getType() {
-        return IndexTypeEnum.NON_UNIQUE;
+    public boolean exists(IKey key) {
+        int keyHash = key.hashCode();
+        this.lock.readLock().lock();
+        try {
+            int entry = this.keyBuckets[this.keyBucket(keyHash)];
+            while(entry != NONE){
+                long entryAddress = this.entryAddress(entry);
+                if(getInt(entryAddress, KEY_HASH) == keyHash) return true;
+                entry = getInt(entryAddress, NEXT);
+            }
+            return false;
+        } finally {
+            this.lock.readLock().unlock();
+        }
     }
 
     @Override
@@ -156,4 +423,18 @@ public final class NonUniqueHashBufferIndex extends ReadWriteIndex<IKey> impleme
         return this.size;
     }
 
+    @Override
+    public int entries() {
+        return this.size;
+    }
+
+    @Override
+    public int keys() {
+        return this.usedKeyBuckets;
+    }
+
+    public int capacity(){
+        return this.capacity;
+    }
+
 }
@@ -2,31 +2,43 @@ package dk.ku.di.dms.vms.modb.index.non_unique;
 
 import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
-import dk.ku.di.dms.vms.modb.index.IndexTypeEnum;
-import dk.ku.di.dms.vms.modb.index.interfaces.ReadWriteIndex;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public final class NonUniqueHashMapIndex extends ReadWriteIndex<IKey> {
+public final class NonUniqueHashMapIndex extends NonUniqueIndex {
 
-    // queue to allow concurrent inserts
-    private final Map<IKey, Queue<Object[]>> store;
+    // key sets allow concurrent inserts and iterations
+    private final Map<IKey, Set<IKey>> store;
+
+    private final AtomicInteger entries;
 
     public NonUniqueHashMapIndex(Schema schema, int[] columnsIndex) {
         super(schema, columnsIndex);
-        this.store = new ConcurrentHashMap<>();
+        // prevent a rehash to return null on get call
+        this.store = new ConcurrentHashMap<>(1024*100);
+        this.entries = new AtomicInteger();
     }
 
     @Override
-    public IndexTypeEnum getType() {
-        return IndexTypeEnum.NON_UNIQUE;
+    public int size() {
+        return this.store.size();
     }
 
     @Override
-    public int size() {
+    public int entries() {
+        return this.entries.get();
+    }
+
+    /**
+     * Keys whose associations have all been deleted are still counted
+     */
+    @Override
+    public int keys() {
         return this.store.size();
     }
 
@@ -36,24 +48,42 @@ public final class NonUniqueHashMapIndex extends ReadWriteIndex<IKey> {
     }
 
     @Override
-    public void insert(IKey key, Object[] record) {
-        this.store.computeIfAbsent(key, (x)-> new ConcurrentLinkedQueue<>() );
-        this.store.get(key).add(record);
+    public boolean insert(IKey key, IKey primaryKey, Object[] record) {
+        if(this.store.computeIfAbsent(key, (ignored) -> ConcurrentHashMap.newKeySet()).add(primaryKey)){
+            this.entries.incrementAndGet();
+            return true;
+        }
+        return false;
     }
 
     @Override
-    public void update(IKey key, Object[] record) {
-        this.store.get(key).add(record);
+    public boolean delete(IKey key, IKey primaryKey, Object[] record) {
+        // empty sets are not removed, since a concurrent insert may be adding to them
+        Set<IKey> set = this.store.get(key);
+        if(set != null && set.remove(primaryKey)){
+            this.entries.decrementAndGet();
+            return true;
+        }
+        return false;
     }
 
     @Override
     public void delete(IKey key) {
-        this.store.remove(key);
+        Set<IKey> set = this.store.remove(key);
+        if(set != null) this.entries.addAndGet(-set.size());
+    }
+
+    @Override
+    public Iterator<IKey> iterator(IKey key) {
+        Set<IKey> set = this.store.get(key);
+        if(set == null) return Collections.emptyIterator();
+        return set.iterator();
     }
 
     @Override
-    public Object[] lookupByKey(IKey key) {
-        return this.store.get(key).toArray();
+    public void reset() {
+        this.store.clear();
+        this.entries.set(0);
     }
 
 }
@@ -0,0 +1,69 @@
+package dk.ku.di.dms.vms.modb.index.non_unique;
+
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+import dk.ku.di.dms.vms.modb.index.IndexTypeEnum;
+import dk.ku.di.dms.vms.modb.index.interfaces.ReadWriteIndex;
+
+import java.util.Iterator;
+
+/**
+ * A non-unique index maps a key, formed by the indexed columns of a record,
+ * to the primary keys of the records holding that key.
+ * The records themselves are only stored in the primary index.
+ */
+public abstract class NonUniqueIndex extends ReadWriteIndex<IKey> {
+
+    public NonUniqueIndex(Schema schema, int[] columnsIndex) {
+        super(schema, columnsIndex);
+    }
+
+    /**
+     * @return whether the primary key was not associated with the key before
+     */
+    public abstract boolean insert(IKey key, IKey primaryKey, Object[] record);
+
+    /**
+     * @return whether the primary key was associated with the key
+     */
+    public abstract boolean delete(IKey key, IKey primaryKey, Object[] record);
+
+    /**
+     * @return the primary keys associated with the key. Implementations may also return
+     * primary keys of colliding keys, so callers must check the key against the record
+     */
+    @Override
+    public abstract Iterator<IKey> iterator(IKey key);
+
+    /**
+     * @return the number of associations between keys and primary keys
+     */
+    public abstract int entries();
+
+    /**
+     * @return the number of distinct keys. Implementations may estimate it
+     */
+    public abstract int keys();
+
+    @Override
+    public void insert(IKey key, Object[] record) {
+        this.insert(key, KeyUtils.buildRecordKey(this.schema.getPrimaryKeyColumns(), record), record);
+    }
+
+    @Override
+    public void update(IKey key, Object[] record) {
+        this.insert(key, record);
+    }
+
+    @Override
+    public Object[] lookupByKey(IKey key) {
+        throw new RuntimeException("Not supported.");
+    }
+
+    @Override
+    public IndexTypeEnum getType() {
+        return IndexTypeEnum.NON_UNIQUE;
+    }
+
+}
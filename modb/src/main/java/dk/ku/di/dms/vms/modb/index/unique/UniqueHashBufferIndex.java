@@ -1,53 +1,116 @@
 package dk.ku.di.dms.vms.modb.index.unique;
 
-import dk.ku.di.dms.vms.modb.common.type.DataType;
 import dk.ku.di.dms.vms.modb.common.type.DataTypeUtils;
 import dk.ku.di.dms.vms.modb.definition.Header;
 import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
-import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
 import dk.ku.di.dms.vms.modb.index.IndexTypeEnum;
 import dk.ku.di.dms.vms.modb.index.interfaces.ReadWriteBufferIndex;
 import dk.ku.di.dms.vms.modb.index.interfaces.ReadWriteIndex;
 import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
+import dk.ku.di.dms.vms.modb.storage.bloom.BlockedBloomFilter;
 import dk.ku.di.dms.vms.modb.storage.iterator.IRecordIterator;
 import dk.ku.di.dms.vms.modb.storage.iterator.unique.KeyRecordIterator;
 import dk.ku.di.dms.vms.modb.storage.iterator.unique.RecordIterator;
+import dk.ku.di.dms.vms.modb.storage.record.IRecordBufferFactory;
 import dk.ku.di.dms.vms.modb.storage.record.RecordBufferContext;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
 
 import static java.lang.System.Logger.Level.*;
 
 /**
- * This index does not support growing number of keys.
- * Could deal with collisions by having a linked list.
+ * An open-addressing (linear probing) hash index over a buffer.
+ * The number of entries is always a power of two, so the position is obtained through masking.
+ * Each entry is laid out as: header | hash of the key | record.
+ * The record carries the key columns, so the key is compared with the column bytes stored
+ * on every probe whose hash matches, whatever the class of key used to write the record.
+ * Distinct keys never overwrite each other, even if their hashes collide.
+ * Readers probe without the lock, so deletes leave a tombstone in place rather than moving entries around.
+ * Tombstones are reused by inserts and purged when the records are rehashed.
+ * If a {@link IRecordBufferFactory} is provided, the index doubles its capacity
+ * whenever the load factor is exceeded. Otherwise, it is bounded by the initial capacity.
+ * A bloom filter over the hash of the keys written lets lookups of absent keys
+ * (e.g., inserts of fresh keys and foreign key checks) return before probing the buffer.
+ * Deleted keys remain in the filter until it is rebuilt by a reset or a resize.
  * This index is oblivious to isolation level and relational constraints.
  */
 public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements ReadWriteBufferIndex<IKey> {
 
     private static final System.Logger LOGGER = System.getLogger(UniqueHashBufferIndex.class.getName());
 
-    private final RecordBufferContext recordBufferContext;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // a deleted entry. probes continue past it
+    private static final byte TOMBSTONE_BYTE = 2;
+
+    /**
+     * Buffer and capacity must be read together by concurrent readers,
+     * otherwise a reader may apply the mask of a smaller buffer to a larger one (or vice-versa).
+     * The key filter is sized after the capacity, so it is replaced together with the buffer.
+     */
+    private record HashBuffer(RecordBufferContext context, int capacity, int mask, BlockedBloomFilter keyFilter){
+        private HashBuffer(RecordBufferContext context, int capacity){
+            this(context, capacity, capacity - 1, BlockedBloomFilter.build((int) (capacity * LOAD_FACTOR)));
+        }
+    }
+
+    private volatile HashBuffer buffer;
+
+    private final IRecordBufferFactory recordBufferFactory;
+
+    // buffers replaced by a rehash. readers may still hold addresses into them,
+    // so they are handed over to the owner of the index, see drainRetiredBuffers
+    private final List<RecordBufferContext> retiredBuffers = new ArrayList<>();
 
     private long size;
 
-    private final long recordSize;
+    private long tombstones;
 
-    // total number of records (of a given schema)
-    // the conjunction of all buffers can possibly hold
-    private final int capacity;
+    private final long recordSize;
 
-    // for operations that require exclusive access to the whiole buffer like reset and checkpoint
+    // for operations that require exclusive access to the whole buffer like reset and checkpoint
     public final ReentrantLock lock = new ReentrantLock();
 
     public UniqueHashBufferIndex(RecordBufferContext recordBufferContext, Schema schema, int[] columnsIndex, int capacity){
+        this(recordBufferContext, schema, columnsIndex, capacity, null);
+    }
+
+    /**
+     * @param capacity Rounded down to a power of two, so it always fits the buffer provided
+     * @param recordBufferFactory If null, the index does not grow
+     */
+    public UniqueHashBufferIndex(RecordBufferContext recordBufferContext, Schema schema, int[] columnsIndex, int capacity, IRecordBufferFactory recordBufferFactory){
         super(schema, columnsIndex);
-        this.recordBufferContext = recordBufferContext;
+        if(capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: "+capacity);
         this.recordSize = schema.getRecordSize();
+        this.buffer = new HashBuffer(recordBufferContext, Integer.highestOneBit(capacity));
+        this.recordBufferFactory = recordBufferFactory;
         this.size = 0;
-        this.capacity = capacity;
         this.reset();
+        // a buffer mapped from an existing file already carries records, checkpointed or not
+        this.populateKeyFilter(this.buffer);
+    }
+
+    /**
+     * {@return the smallest power of two capable of holding the number of records given}
+     */
+    public static int capacityFor(int numberOfRecords){
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(numberOfRecords, 2) - 1);
+        return n >= MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /**
+     * {@return the size in bytes of a buffer holding the capacity given}
+     */
+    public static long bufferSize(Schema schema, int capacity){
+        return ((long) capacity * schema.getRecordSize()) + RecordBufferContext.FOOTER_SIZE;
     }
 
     @Override
@@ -66,21 +129,22 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
     @Override
     public void reset() {
         this.lock();
-        if(this.size == 0){
+        this.releaseRetiredBuffers();
+        this.buffer.keyFilter.clear();
+        if(this.size == 0 && this.tombstones == 0){
             this.unlock();
             LOGGER.log(INFO, "Size of buffer is zero. No need to reset.");
             return;
         }
         long initialSize = this.size;
         LOGGER.log(INFO, "Reset started with initial size: "+initialSize);
-        long lastPos = this.recordBufferContext.address +
-                (this.capacity * this.recordSize) - 1;
-        long pos = this.recordBufferContext.address;
-        while(pos < lastPos){
-            if(UNSAFE.getByte(null, pos) == Header.ACTIVE_BYTE){
+        HashBuffer buf = this.buffer;
+        long pos = buf.context.address;
+        for(int i = 0; i < buf.capacity; i++){
+            byte header = UNSAFE.getByte(null, pos);
+            if(header != Header.INACTIVE_BYTE){
                 UNSAFE.putByte(null, pos, Header.INACTIVE_BYTE);
-                this.size--;
-                if(this.size == 0) break;
+                if(header == Header.ACTIVE_BYTE) this.size--;
             }
             pos = pos + this.recordSize;
         }
@@ -90,32 +154,256 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
             LOGGER.log(INFO, "Reset cleaned all the entries. Size left out: "+this.size);
         }
         this.size = 0;
+        this.tombstones = 0;
+        // the file no longer reflects the last checkpoint
+        buf.context.invalidateCheckpoint();
         this.unlock();
     }
 
     /**
-     * <a href="https://algs4.cs.princeton.edu/34hash/">Why (key & 0x7fffffff)?</a>
-     * "The code masks off the sign bit (to turn the 32-bit integer into a 31-bit non-negative integer)
-     * and then computing the remainder when dividing by M, as in modular hashing."
+     * Restores the size of the index from a buffer mapped from an existing file.
+     * @return whether the buffer holds a completed checkpoint compatible with this index
+     */
+    public boolean recover(){
+        if(!this.hasCheckpoint()){
+            LOGGER.log(WARNING, "No valid checkpoint found in buffer for schema "+this.schema);
+            return false;
+        }
+        long numRecords = 0;
+        long numTombstones = 0;
+        HashBuffer buf = this.buffer;
+        long pos = buf.context.address;
+        for(int i = 0; i < buf.capacity; i++){
+            byte header = UNSAFE.getByte(null, pos);
+            if(header == Header.ACTIVE_BYTE) numRecords++;
+            else if(header == TOMBSTONE_BYTE) numTombstones++;
+            pos = pos + this.recordSize;
+        }
+        if(numRecords != buf.context.checkpointNumRecords()){
+            LOGGER.log(WARNING, "Number of active records ("+numRecords+") differs from the checkpoint footer ("+
+                    buf.context.checkpointNumRecords()+"). Proceeding with the active records found.");
+        }
+        this.size = numRecords;
+        this.tombstones = numTombstones;
+        LOGGER.log(INFO, "Recovered "+this.size+" records. Last checkpoint: batch "+this.checkpointBatch()+" TID "+this.checkpointTid());
+        return true;
+    }
+
+    private void populateKeyFilter(HashBuffer buf){
+        long pos = buf.context.address;
+        for(int i = 0; i < buf.capacity; i++){
+            if(UNSAFE.getByte(null, pos) == Header.ACTIVE_BYTE){
+                buf.keyFilter.add(UNSAFE.getInt(null, pos + Header.SIZE));
+            }
+            pos = pos + this.recordSize;
+        }
+    }
+
+    /**
+     * Applies the consumer to the address of each active record
+     */
+    public void forEachRecord(LongConsumer consumer){
+        HashBuffer buf = this.buffer;
+        long pos = buf.context.address;
+        for(int i = 0; i < buf.capacity; i++){
+            if(UNSAFE.getByte(null, pos) == Header.ACTIVE_BYTE){
+                consumer.accept(pos);
+            }
+            pos = pos + this.recordSize;
+        }
+    }
+
+    public boolean hasCheckpoint(){
+        HashBuffer buf = this.buffer;
+        return buf.context.hasCheckpoint(buf.capacity, (int) this.recordSize);
+    }
+
+    /**
+     * Must be called before applying the writes of a checkpoint
+     */
+    public void beginCheckpoint(){
+        this.buffer.context.invalidateCheckpoint();
+    }
+
+    /**
+     * Must be called after the records have been flushed
+     */
+    public void completeCheckpoint(long batch, long tid){
+        HashBuffer buf = this.buffer;
+        buf.context.writeCheckpoint(batch, tid, this.size, buf.capacity, (int) this.recordSize);
+    }
+
+    public long checkpointBatch(){
+        return this.buffer.context.checkpointBatch();
+    }
+
+    public long checkpointTid(){
+        return this.buffer.context.checkpointTid();
+    }
+
+    public int capacity(){
+        return this.buffer.capacity;
+    }
+
+    /**
+     * Spread higher bits downward, since the mask only considers the lower bits.
+     * Keys made of sequential integers are not affected.
+     */
+    private static int spread(int hash){
+        return hash ^ (hash >>> 16);
+    }
+
+    private long addressOf(HashBuffer buf, int slot){
+        return buf.context.address + (this.recordSize * slot);
+    }
+
+    private boolean matches(long pos, int hash, IKey key){
+        if(UNSAFE.getInt(null, pos + Header.SIZE) != hash) return false;
+        return key.matches(this.schema, this.columns, pos);
+    }
+
+    private long findRecordAddress(IKey key){
+        HashBuffer buf = this.buffer;
+        int hash = key.hashCode();
+        if(!buf.keyFilter.mightContain(hash)) return -1;
+        return this.probe(buf, spread(hash) & buf.mask, key);
+    }
+
+    private long probe(HashBuffer buf, int slot, IKey key){
+        int hash = key.hashCode();
+        for(int i = 0; i < buf.capacity; i++){
+            long pos = this.addressOf(buf, slot);
+            // the header is published after the rest of the entry
+            byte header = UNSAFE.getByteAcquire(null, pos);
+            // deletions leave tombstones, so an inactive entry ends the probe sequence
+            if(header == Header.INACTIVE_BYTE) return -1;
+            if(header == Header.ACTIVE_BYTE && this.matches(pos, hash, key)) return pos;
+            slot = (slot + 1) & buf.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Must be called only when the key does not exist in the index.
+     * The entry returned is either never used or a tombstone
      */
-    private long getPosition(int key){
-        long logicalPosition = (key & 0x7fffffff) % this.capacity;
-        if(logicalPosition > 0){
-            return this.recordBufferContext.address + ( this.recordSize * logicalPosition );
+    private long getFreePositionToInsert(IKey key){
+        if(this.size + this.tombstones + 1 > (long) (this.buffer.capacity * LOAD_FACTOR)){
+            this.rehash();
         }
-        return this.recordBufferContext.address;
+        HashBuffer buf = this.buffer;
+        int slot = spread(key.hashCode()) & buf.mask;
+        for(int i = 0; i < buf.capacity; i++){
+            long pos = this.addressOf(buf, slot);
+            byte header = UNSAFE.getByte(null, pos);
+            if(header != Header.ACTIVE_BYTE){
+                if(header == TOMBSTONE_BYTE) this.tombstones--;
+                return pos;
+            }
+            slot = (slot + 1) & buf.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Records are rehashed into a new buffer, leaving the tombstones behind.
+     * The capacity is doubled, unless the live records take less than half of the load factor,
+     * so a table filled by tombstones is not rehashed over and over.
+     * Writers already hold the lock, so no write is missed.
+     */
+    private void rehash(){
+        HashBuffer oldBuf = this.buffer;
+        if(this.recordBufferFactory == null) return;
+        boolean grow = this.size + 1 > (long) (oldBuf.capacity * LOAD_FACTOR / 2) && oldBuf.capacity < MAXIMUM_CAPACITY;
+        if(!grow && this.tombstones == 0) return;
+        int newCapacity = grow ? oldBuf.capacity << 1 : oldBuf.capacity;
+        LOGGER.log(INFO, "Rehashing index of schema "+this.schema+" from "+oldBuf.capacity+" to "+newCapacity+" entries");
+        RecordBufferContext newContext = this.recordBufferFactory.allocate(bufferSize(this.schema, newCapacity));
+        HashBuffer newBuf = new HashBuffer(newContext, newCapacity);
+        long pos = oldBuf.context.address;
+        for(int i = 0; i < oldBuf.capacity; i++){
+            if(UNSAFE.getByte(null, pos) == Header.ACTIVE_BYTE){
+                int slot = spread(UNSAFE.getInt(null, pos + Header.SIZE)) & newBuf.mask;
+                long newPos = this.addressOf(newBuf, slot);
+                while(UNSAFE.getByte(null, newPos) == Header.ACTIVE_BYTE){
+                    slot = (slot + 1) & newBuf.mask;
+                    newPos = this.addressOf(newBuf, slot);
+                }
+                UNSAFE.copyMemory(null, pos, null, newPos, this.recordSize);
+                newBuf.keyFilter.add(UNSAFE.getInt(null, pos + Header.SIZE));
+            }
+            pos = pos + this.recordSize;
+        }
+        this.recordBufferFactory.onResize(oldBuf.context, newContext);
+        this.buffer = newBuf;
+        this.tombstones = 0;
+        this.retiredBuffers.add(oldBuf.context);
+    }
+
+    /**
+     * Hands over the buffers replaced by rehashes since the last call.
+     * Concurrent readers may still hold addresses into them,
+     * so the caller must only release them once no such reader is in flight.
+     */
+    public List<RecordBufferContext> drainRetiredBuffers(){
+        this.lock();
+        try {
+            if(this.retiredBuffers.isEmpty()) return List.of();
+            List<RecordBufferContext> retired = new ArrayList<>(this.retiredBuffers);
+            this.retiredBuffers.clear();
+            return retired;
+        } finally {
+            this.unlock();
+        }
+    }
+
+    /**
+     * Only called on a reset, when no reader is in flight
+     */
+    private void releaseRetiredBuffers(){
+        for(RecordBufferContext retired : this.retiredBuffers){
+            retired.close();
+        }
+        this.retiredBuffers.clear();
     }
 
     @Override
     public void insert(IKey key, long srcAddress) {
         long pos = this.findRecordAddress(key);
-        if(UNSAFE.getByte(null, pos) == Header.ACTIVE_BYTE){
+        if(pos != -1){
             LOGGER.log(WARNING, "Overwriting previously written record for key: "+key);
+        } else {
+            pos = this.getFreePositionToInsert(key);
+            if(pos == -1){
+                LOGGER.log(ERROR, "Cannot find an empty entry for record. Perhaps should increase number of entries?\nKey: " + key+ " Hash: " + key.hashCode());
+                return;
+            }
+            this.updateSize(1);
         }
-        UNSAFE.putByte(null, pos, Header.ACTIVE_BYTE);
-        UNSAFE.putInt(null, pos, key.hashCode());
+        // the key must be in the filter before the record becomes visible
+        this.buffer.keyFilter.add(key.hashCode());
+        UNSAFE.putInt(null, pos + Header.SIZE, key.hashCode());
         UNSAFE.copyMemory(null, srcAddress, null, pos + Schema.RECORD_HEADER, this.schema.getRecordSizeWithoutHeader());
-        this.updateSize(1);
+        UNSAFE.putByteRelease(null, pos, Header.ACTIVE_BYTE);
+    }
+
+    /**
+     * Copies an entry laid out as in this index, header included (e.g., a version kept off-heap).
+     * The key is inserted if absent
+     */
+    public void upsertEntry(IKey key, long srcAddress){
+        long pos = this.findRecordAddress(key);
+        if(pos == -1){
+            pos = this.getFreePositionToInsert(key);
+            if(pos == -1){
+                LOGGER.log(ERROR, "Cannot find an empty entry for record. Perhaps should increase number of entries?\nKey: " + key+ " Hash: " + key.hashCode());
+                return;
+            }
+            this.buffer.keyFilter.add(key.hashCode());
+            this.updateSize(1);
+        }
+        UNSAFE.copyMemory(null, srcAddress + Header.SIZE, null, pos + Header.SIZE, this.recordSize - Header.SIZE);
+        UNSAFE.putByteRelease(null, pos, Header.ACTIVE_BYTE);
     }
 
     private void updateSize(int val){
@@ -129,6 +417,10 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
     @Override
     public void update(IKey key, long srcAddress) {
         long pos = this.findRecordAddress(key);
+        if(pos == -1) {
+            LOGGER.log(ERROR, "Cannot find an existing record. Perhaps something wrong in the insertion logic?\nKey: " + key+ " Hash: " + key.hashCode());
+            return;
+        }
         UNSAFE.copyMemory(null, srcAddress, null, pos, this.recordSize);
     }
 
@@ -144,13 +436,10 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
 
     private void doWrite(long pos, Object[] record) {
         int maxColumns = this.schema.columnOffset().length;
-        long currAddress = pos + Schema.RECORD_HEADER;
         for (int index = 0; index < maxColumns; index++) {
-            DataType dt = this.schema.columnDataType(index);
             if (record[index] != null) {
-                DataTypeUtils.callWriteFunction(currAddress, dt, record[index]);
+                DataTypeUtils.callWriteFunction(pos + this.schema.columnOffset(index), this.schema.columnDataType(index), record[index]);
             }
-            currAddress += dt.value;
         }
     }
 
@@ -167,14 +456,23 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
     @Override
     public void insert(IKey key, Object[] record){
         try {
-            long pos = this.getFreePositionToInsert(key);
+            long pos = this.findRecordAddress(key);
+            if(pos != -1){
+                LOGGER.log(WARNING, "Overwriting previously written record for key: "+key);
+                this.doWrite(pos, record);
+                return;
+            }
+            pos = this.getFreePositionToInsert(key);
             if(pos == -1){
                 LOGGER.log(ERROR, "Cannot find an empty entry for record. Perhaps should increase number of entries?\nKey: " + key+ " Hash: " + key.hashCode());
                 return;
             }
-            UNSAFE.putByte(null, pos, Header.ACTIVE_BYTE);
+            this.buffer.keyFilter.add(key.hashCode());
+            // a reused entry may still carry the columns of a deleted record, e.g., the tail of a longer string
+            UNSAFE.setMemory(pos + Header.SIZE, this.recordSize - Header.SIZE, (byte) 0);
             UNSAFE.putInt(null, pos + Header.SIZE, key.hashCode());
             this.doWrite(pos, record);
+            UNSAFE.putByteRelease(null, pos, Header.ACTIVE_BYTE);
             this.updateSize(1);
         } catch (Exception e){
             throw new RuntimeException("Error inserting record: "+e.getMessage());
@@ -185,7 +483,9 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
     public void delete(IKey key) {
         long pos = this.findRecordAddress(key);
         if(pos != -1) {
-            UNSAFE.putByte(null, pos, Header.INACTIVE_BYTE);
+            // the probe sequences passing through the entry remain intact for concurrent readers
+            UNSAFE.putByteRelease(null, pos, TOMBSTONE_BYTE);
+            this.tombstones++;
             this.updateSize(-1);
         }
     }
@@ -195,42 +495,6 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
         return this.findRecordAddress(key);
     }
 
-    private static int DEFAULT_ATTEMPTS = 10;
-
-    private long getFreePositionToInsert(IKey key){
-        int attemptsToFind = DEFAULT_ATTEMPTS;
-        int aux = 1;
-        long pos = this.getPosition(key.hashCode());
-        boolean busy = UNSAFE.getByte(null, pos) == Header.ACTIVE_BYTE;
-        while (busy && attemptsToFind > 0) {
-            pos = this.getPosition(key.hashCode() + Math.multiplyExact(aux,2));
-            attemptsToFind--;
-            aux++;
-            busy = UNSAFE.getByte(null, pos) == Header.ACTIVE_BYTE;
-        }
-        if(!busy) return pos;
-        return -1;
-    }
-
-    private long findRecordAddress(IKey key){
-        int attemptsToFind = DEFAULT_ATTEMPTS;
-        int aux = 1;
-        long pos = this.getPosition(key.hashCode());
-        while(attemptsToFind > 0){
-            if(UNSAFE.getByte(null, pos) == Header.ACTIVE_BYTE) {
-                Object[] existingRecord = this.readFromIndex(pos + Schema.RECORD_HEADER);
-                IKey existingKey = KeyUtils.buildRecordKey(this.schema().getPrimaryKeyColumns(), existingRecord);
-                if (existingKey.equals(key)) {
-                    return pos;
-                }
-            }
-            attemptsToFind--;
-            pos = this.getPosition(key.hashCode() + Math.multiplyExact(aux,2));
-            aux++;
-        }
-        return -1;
-    }
-
     /**
      * Check whether the record is active (if exists)
      */
@@ -247,9 +511,36 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
         return null;
     }
 
+    /**
+     * The keys are probed in ascending order of their home slot, so the buffer is traversed forward once.
+     * Keys discarded by the bloom filter are not probed at all.
+     */
+    @Override
+    public Object[][] lookupByKeys(IKey[] keys){
+        Object[][] records = new Object[keys.length][];
+        HashBuffer buf = this.buffer;
+        // home slot in the higher bits, position of the key in the lower bits
+        long[] probes = new long[keys.length];
+        int numProbes = 0;
+        for(int i = 0; i < keys.length; i++){
+            int hash = keys[i].hashCode();
+            if(!buf.keyFilter.mightContain(hash)) continue;
+            probes[numProbes++] = ((long) (spread(hash) & buf.mask) << 32) | i;
+        }
+        Arrays.sort(probes, 0, numProbes);
+        for(int p = 0; p < numProbes; p++){
+            int i = (int) probes[p];
+            long pos = this.probe(buf, (int) (probes[p] >>> 32), keys[i]);
+            if(pos != -1){
+                records[i] = this.readFromIndex(pos + Schema.RECORD_HEADER);
+            }
+        }
+        return records;
+    }
+
     @Override
     public boolean exists(long address){
-        return UNSAFE.getByte(null, address) == Header.ACTIVE_BYTE;
+        return address != -1 && UNSAFE.getByte(null, address) == Header.ACTIVE_BYTE;
     }
 
     @Override
@@ -259,7 +550,8 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
 
     @Override
     public IRecordIterator<IKey> iterator() {
-        return new RecordIterator(this.recordBufferContext.address, this.schema.getRecordSize(), this.capacity);
+        HashBuffer buf = this.buffer;
+        return new RecordIterator(buf.context.address, this.schema.getRecordSize(), buf.capacity);
     }
 
     @Override
@@ -279,7 +571,7 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
 
     @Override
     public Object[] record(IKey key) {
-        return this.readFromIndex(this.findRecordAddress(key) + Schema.RECORD_HEADER);
+        return this.lookupByKey(key);
     }
 
     @Override
@@ -289,7 +581,7 @@ public final class UniqueHashBufferIndex extends ReadWriteIndex<IKey> implements
 
     @Override
     public void flush() {
-        this.recordBufferContext.force();
+        this.buffer.context.force();
     }
 
 }
@@ -42,7 +42,7 @@ public final class Analyzer {
     public QueryTree analyze(final IStatement statement) throws AnalyzerException {
 
         switch (statement.getType()){
-            case SELECT -> { return this.analyzeSelectStatement( statement.asSelectStatement() ); }
+            case SELECT -> { return this.analyzeSelectStatement( statement.asSelectStatement(), false ); }
             // case INSERT -> { return null; }
             case UPDATE -> { return this.analyzeUpdateStatement( statement.asUpdateStatement()); }
             case DELETE -> { return this.analyzeDeleteStatement( statement.asDeleteStatement()); }
@@ -51,7 +51,16 @@ public final class Analyzer {
 
     }
 
-    private QueryTree analyzeSelectStatement(final SelectStatement statement) throws AnalyzerException {
+    /**
+     * Analyzes a statement whose parameters are only bound on execution, so the where clause may hold null values
+     * @param statement The statement to process
+     * @return The resulting query tree
+     */
+    public QueryTree analyzePrepared(final SelectStatement statement) throws AnalyzerException {
+        return this.analyzeSelectStatement(statement, true);
+    }
+
+    private QueryTree analyzeSelectStatement(final SelectStatement statement, boolean unboundParameters) throws AnalyzerException {
 
         QueryTree queryTree = new QueryTree();
 
@@ -177,7 +186,7 @@ public final class Analyzer {
         // where
         for (WhereClauseElement currWhere : statement.whereClause) {
 
-            if (currWhere.value() == null) {
+            if (currWhere.value() == null && !unboundParameters) {
                 throw new AnalyzerException("Parameter of where clause cannot be null value");
             }
 
@@ -259,6 +268,32 @@ public final class Analyzer {
         return newList;
     }
 
+    /**
+     * Where clause of a statement that may join tables, in the order of the clause,
+     * so the parameters of a prepared statement can be bound positionally.
+     * Join conditions given in the where clause are not included
+     * @param queryTree the tree of the statement, holding the tables it refers to
+     * @return the parsed predicates
+     */
+    public List<WherePredicate> analyzeWhere(QueryTree queryTree, List<WhereClauseElement> whereClause) throws AnalyzerException {
+        List<WherePredicate> newList = new ArrayList<>(whereClause.size());
+        for(WhereClauseElement element : whereClause){
+            if(element.value() instanceof String value && value.contains(".")
+                    && queryTree.tables.containsKey(value.split("\\.")[0])){
+                continue;
+            }
+            ColumnReference columnReference;
+            if(element.column().contains(".")){
+                String[] split = element.column().split("\\.");
+                columnReference = this.findColumnReference(split[1], split[0], queryTree.tables);
+            } else {
+                columnReference = this.findColumnReference(element.column(), queryTree.tables);
+            }
+            newList.add( new WherePredicate(columnReference, element.expression(), element.value()) );
+        }
+        return newList;
+    }
+
     /**
      * For now, return a query tree. Later, revisit this choice
      * @param deleteStatement delete with where
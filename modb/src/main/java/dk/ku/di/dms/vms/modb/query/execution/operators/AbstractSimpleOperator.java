@@ -1,6 +1,6 @@
 package dk.ku.di.dms.vms.modb.query.execution.operators;
 
-import dk.ku.di.dms.vms.modb.query.execution.operators.join.UniqueHashJoinWithProjection;
+import dk.ku.di.dms.vms.modb.query.execution.operators.join.AbstractHashJoin;
 import dk.ku.di.dms.vms.modb.query.execution.operators.min.IndexGroupByMinWithProjection;
 import dk.ku.di.dms.vms.modb.query.execution.operators.scan.AbstractScan;
 import dk.ku.di.dms.vms.modb.query.execution.operators.scan.FullScanWithProjection;
@@ -58,6 +58,6 @@ public abstract class AbstractSimpleOperator {
         throw new IllegalStateException("No abstract scan operator");
     }
 
-    public UniqueHashJoinWithProjection asHashJoin() { throw new IllegalStateException("No hash join operator"); }
+    public AbstractHashJoin asHashJoin() { throw new IllegalStateException("No hash join operator"); }
 
 }
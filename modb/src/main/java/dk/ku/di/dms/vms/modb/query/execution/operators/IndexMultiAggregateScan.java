@@ -1,24 +1,43 @@
 package dk.ku.di.dms.vms.modb.query.execution.operators;
 
+import dk.ku.di.dms.vms.modb.common.type.DataType;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
 import dk.ku.di.dms.vms.modb.query.analyzer.predicate.GroupByPredicate;
-import dk.ku.di.dms.vms.modb.query.execution.operators.sum.SumUtils;
+import dk.ku.di.dms.vms.modb.storage.record.RecordReference;
 import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.index.IMultiVersionIndex;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.NonUniqueSecondaryIndex;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Can be reused for the same query
+ * Aggregations are accumulated in primitive arrays, one slot per aggregation.
+ * Records are read through a {@link RecordReference}, so the columns of records
+ * in the buffer are summed from their offsets, without materializing the record.
  */
 public final class IndexMultiAggregateScan extends AbstractSimpleOperator {
 
+    // accumulator kinds
+    private static final byte COUNT = 0;
+    private static final byte INT_SUM = 1;
+    private static final byte LONG_SUM = 2;
+    private static final byte FLOAT_SUM = 3;
+    private static final byte DOUBLE_SUM = 4;
+
     private final List<GroupByPredicate> aggregations;
     private final IMultiVersionIndex index;
     private final List<Integer> projectionColumns;
 
+    // resolved once, so the scan does not go through the predicates for every record
+    private final int[] aggregationColumns;
+    private final byte[] accumulatorKinds;
+    private final DataType[] resultTypes;
+
     public IndexMultiAggregateScan(List<GroupByPredicate> aggregations,
                                    IMultiVersionIndex index,
                                    // only the ones that are not aggregation
@@ -28,28 +47,54 @@ public final class IndexMultiAggregateScan extends AbstractSimpleOperator {
         this.aggregations = aggregations;
         this.index = index;
         this.projectionColumns = projectionColumns;
+        this.aggregationColumns = new int[aggregations.size()];
+        this.accumulatorKinds = new byte[aggregations.size()];
+        this.resultTypes = new DataType[aggregations.size()];
+        int idx = 0;
+        for(GroupByPredicate agg : aggregations){
+            this.aggregationColumns[idx] = agg.columnPosition();
+            switch (agg.groupByOperation()) {
+                case SUM -> {
+                    DataType dataType = agg.columnReference().dataType;
+                    switch (dataType){
+                        case INT -> this.accumulatorKinds[idx] = INT_SUM;
+                        case LONG -> this.accumulatorKinds[idx] = LONG_SUM;
+                        case FLOAT -> this.accumulatorKinds[idx] = FLOAT_SUM;
+                        case DOUBLE -> this.accumulatorKinds[idx] = DOUBLE_SUM;
+                        default -> throw new RuntimeException("Unsupported data type: " + dataType);
+                    }
+                    this.resultTypes[idx] = dataType;
+                }
+                case COUNT -> {
+                    this.accumulatorKinds[idx] = COUNT;
+                    this.resultTypes[idx] = DataType.INT;
+                }
+                default ->
+                    throw new IllegalArgumentException("Unknown aggregation operation: " + agg.groupByOperation());
+            }
+            idx++;
+        }
     }
 
     public List<Object[]> runAsEmbedded(TransactionContext txCtx, IKey key){
         Object[] baseRecord = new Object[this.projectionColumns.size() + this.aggregations.size()];
-        IAggregation<?>[] operations = extractOperations();
+        long[] longAcc = new long[this.aggregationColumns.length];
+        double[] doubleAcc = new double[this.aggregationColumns.length];
 
-        Iterator<Object[]> iterator = this.index.iterator(txCtx, key);
-        Object[] nextRecord;
-        while(iterator.hasNext()){
-            nextRecord = iterator.next();
-            this.compute( nextRecord, operations );
-            int idx = 0;
-            for (int pos : this.projectionColumns) {
-                baseRecord[idx] = nextRecord[pos];
-                idx++;
-            }
+        Iterator<RecordReference> cursor = this.cursor(txCtx, key);
+        RecordReference reference = null;
+        while(cursor.hasNext()){
+            reference = cursor.next();
+            this.accumulate(reference, longAcc, doubleAcc);
+        }
+        // the projected columns are the same for all records of the key
+        if(reference != null){
+            this.project(reference, baseRecord);
         }
 
-        // project
-        int idx = 0;
-        for(int i = this.projectionColumns.size(); i < baseRecord.length; i++){
-            baseRecord[i] = operations[idx].get();
+        int idx = this.projectionColumns.size();
+        for(int i = 0; i < this.aggregationColumns.length; i++){
+            baseRecord[idx] = this.result(i, longAcc, doubleAcc);
             idx++;
         }
 
@@ -58,29 +103,70 @@ public final class IndexMultiAggregateScan extends AbstractSimpleOperator {
         return list;
     }
 
-    private IAggregation<?>[] extractOperations() {
-        IAggregation<?>[] operations = new IAggregation[this.aggregations.size()];
-        int idx = 0;
-        for(GroupByPredicate agg : this.aggregations){
-            switch (agg.groupByOperation()) {
-                case SUM ->
-                        operations[idx] = SumUtils.buildSumOperation(agg.columnReference().dataType);
-                case COUNT -> operations[idx] = new SumUtils.CountOp();
-                default ->
-                    throw new IllegalArgumentException("Unknown aggregation operation: " + agg.groupByOperation());
+    /**
+     * Indexes that do not reach records by their primary key only provide their records as arrays
+     */
+    private Iterator<RecordReference> cursor(TransactionContext txCtx, IKey key){
+        if(this.index instanceof NonUniqueSecondaryIndex secondaryIndex){
+            return RecordReferenceCursor.bucket(txCtx, secondaryIndex, key, null, RecordCursor.NO_LIMIT);
+        }
+        if(this.index instanceof PrimaryIndex primaryIndex){
+            return RecordReferenceCursor.lookup(txCtx, primaryIndex, key, null, RecordCursor.NO_LIMIT);
+        }
+        Iterator<Object[]> iterator = this.index.iterator(txCtx, key);
+        RecordReference reference = new RecordReference(this.aggregations.getFirst().columnReference().table.schema());
+        return new Iterator<>() {
+            private Object[] next;
+            @Override
+            public boolean hasNext() {
+                while(this.next == null && iterator.hasNext()){
+                    this.next = iterator.next();
+                }
+                return this.next != null;
+            }
+            @Override
+            public RecordReference next() {
+                if(!this.hasNext()) throw new NoSuchElementException();
+                Object[] record = this.next;
+                this.next = null;
+                return reference.of(record);
+            }
+        };
+    }
+
+    private void accumulate(RecordReference reference, long[] longAcc, double[] doubleAcc){
+        for(int i = 0; i < this.aggregationColumns.length; i++){
+            int column = this.aggregationColumns[i];
+            switch (this.accumulatorKinds[i]){
+                case COUNT -> longAcc[i]++;
+                case INT_SUM -> longAcc[i] += reference.getInt(column);
+                case LONG_SUM -> longAcc[i] += reference.getLong(column);
+                case FLOAT_SUM -> doubleAcc[i] += reference.getFloat(column);
+                default -> doubleAcc[i] += reference.getDouble(column);
             }
-            idx++;
         }
-        return operations;
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
-    private void compute(Object[] record, IAggregation[] operations){
-        for(int i = 0; i < this.aggregations.size(); i++){
-            operations[i].accept(record[this.aggregations.get(i).columnPosition()]);
+    private void project(RecordReference reference, Object[] baseRecord){
+        int idx = 0;
+        for (int pos : this.projectionColumns) {
+            baseRecord[idx] = reference.get(pos);
+            idx++;
         }
     }
 
+    /**
+     * The result keeps the type of the column, as the previous boxed aggregations did
+     */
+    private Object result(int i, long[] longAcc, double[] doubleAcc){
+        return switch (this.resultTypes[i]){
+            case INT -> (int) longAcc[i];
+            case LONG -> longAcc[i];
+            case FLOAT -> (float) doubleAcc[i];
+            default -> doubleAcc[i];
+        };
+    }
+
     @Override
     public boolean isIndexMultiAggregationScan(){
         return true;
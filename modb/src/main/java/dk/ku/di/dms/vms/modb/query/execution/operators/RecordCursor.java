@@ -0,0 +1,92 @@
+package dk.ku.di.dms.vms.modb.query.execution.operators;
+
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.IMultiVersionIndex;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A pull-based cursor over the records visible to a transaction.
+ * Records are only read from the index when the caller asks for the next one,
+ * so the caller may convert each record as it arrives or stop early.
+ * Filter, limit, and projection are applied record by record.
+ * Must not outlive the transaction that opened it.
+ */
+public final class RecordCursor implements Iterator<Object[]> {
+
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    private final Iterator<Object[]> iterator;
+
+    private final IMultiVersionIndex index;
+
+    // null if no filter applies
+    private final FilterContext filterContext;
+
+    // null if the whole record is returned
+    private final int[] projectionColumns;
+
+    private final int limit;
+
+    private int count;
+
+    private Object[] nextRecord;
+
+    public RecordCursor(Iterator<Object[]> iterator, IMultiVersionIndex index, FilterContext filterContext, int[] projectionColumns, int limit) {
+        this.iterator = iterator;
+        this.index = index;
+        this.filterContext = filterContext;
+        this.projectionColumns = projectionColumns;
+        this.limit = limit;
+    }
+
+    /**
+     * For operators whose result is already computed, e.g., aggregations
+     */
+    public static RecordCursor of(List<Object[]> result, int limit){
+        return new RecordCursor(result.iterator(), null, null, null, limit);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(this.nextRecord != null) return true;
+        if(this.count == this.limit) return false;
+        while(this.iterator.hasNext()){
+            Object[] record = this.iterator.next();
+            if(record == null) continue;
+            if(this.filterContext != null && !this.index.checkCondition(this.filterContext, record)) continue;
+            this.nextRecord = record;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Object[] next() {
+        if(!this.hasNext()) throw new NoSuchElementException();
+        Object[] record = this.nextRecord;
+        this.nextRecord = null;
+        this.count++;
+        if(this.projectionColumns == null) return record;
+        Object[] projection = new Object[this.projectionColumns.length];
+        for(int i = 0; i < this.projectionColumns.length; i++){
+            projection[i] = record[this.projectionColumns[i]];
+        }
+        return projection;
+    }
+
+    /**
+     * Drains the remaining records
+     */
+    public List<Object[]> toList(){
+        List<Object[]> res = new ArrayList<>();
+        while(this.hasNext()){
+            res.add(this.next());
+        }
+        return res;
+    }
+
+}
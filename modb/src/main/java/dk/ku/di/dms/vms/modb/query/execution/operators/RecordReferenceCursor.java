@@ -0,0 +1,90 @@
+package dk.ku.di.dms.vms.modb.query.execution.operators;
+
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
+import dk.ku.di.dms.vms.modb.storage.record.RecordReference;
+import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.NonUniqueSecondaryIndex;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A pull-based cursor over references to the records visible to a transaction.
+ * The same reference is repositioned on every record, so no record is copied.
+ * A reference must not be kept after the cursor moves. {@link RecordReference#toArray()} copies the record.
+ * Must not outlive the transaction that opened it.
+ */
+public final class RecordReferenceCursor implements Iterator<RecordReference> {
+
+    private final TransactionContext txCtx;
+
+    private final PrimaryIndex primaryIndex;
+
+    private final Iterator<IKey> primaryKeys;
+
+    // associations of a secondary index may be stale, so the record must still hold the key. null otherwise
+    private final int[] indexColumns;
+
+    private final IKey indexKey;
+
+    // null if no filter applies
+    private final FilterContext filterContext;
+
+    private final int limit;
+
+    private final RecordReference reference;
+
+    private int count;
+
+    private boolean positioned;
+
+    private RecordReferenceCursor(TransactionContext txCtx, PrimaryIndex primaryIndex, Iterator<IKey> primaryKeys,
+                                  int[] indexColumns, IKey indexKey, FilterContext filterContext, int limit) {
+        this.txCtx = txCtx;
+        this.primaryIndex = primaryIndex;
+        this.primaryKeys = primaryKeys;
+        this.indexColumns = indexColumns;
+        this.indexKey = indexKey;
+        this.filterContext = filterContext;
+        this.limit = limit;
+        this.reference = new RecordReference(primaryIndex.underlyingIndex().schema());
+    }
+
+    public static RecordReferenceCursor fullScan(TransactionContext txCtx, PrimaryIndex primaryIndex, FilterContext filterContext, int limit){
+        return new RecordReferenceCursor(txCtx, primaryIndex, primaryIndex.keys(), null, null, filterContext, limit);
+    }
+
+    public static RecordReferenceCursor lookup(TransactionContext txCtx, PrimaryIndex primaryIndex, IKey key, FilterContext filterContext, int limit){
+        return new RecordReferenceCursor(txCtx, primaryIndex, List.of(key).iterator(), null, null, filterContext, limit);
+    }
+
+    public static RecordReferenceCursor bucket(TransactionContext txCtx, NonUniqueSecondaryIndex index, IKey key, FilterContext filterContext, int limit){
+        return new RecordReferenceCursor(txCtx, index.primaryIndex(), index.primaryKeys(key), index.indexColumns(), key, filterContext, limit);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(this.positioned) return true;
+        if(this.count == this.limit) return false;
+        while(this.primaryKeys.hasNext()){
+            if(!this.primaryIndex.reference(this.txCtx, this.primaryKeys.next(), this.reference)) continue;
+            if(this.indexKey != null && !this.reference.key(this.indexColumns).equals(this.indexKey)) continue;
+            if(!this.reference.checkCondition(this.filterContext)) continue;
+            this.positioned = true;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public RecordReference next() {
+        if(!this.hasNext()) throw new NoSuchElementException();
+        this.positioned = false;
+        this.count++;
+        return this.reference;
+    }
+
+}
@@ -0,0 +1,116 @@
+package dk.ku.di.dms.vms.modb.query.execution.operators.join;
+
+import dk.ku.di.dms.vms.modb.definition.Table;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
+import dk.ku.di.dms.vms.modb.query.execution.operators.AbstractSimpleOperator;
+import dk.ku.di.dms.vms.modb.query.execution.operators.scan.AbstractScan;
+import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.IMultiVersionIndex;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Equi-join of two tables where the inner (right) table is already hashed by the join column.
+ * The records of the outer (left) table are read through a scan,
+ * and for each one the index of the inner table is probed with the join column value.
+ * So there is no build phase, the index of the inner table serves as the hash table.
+ */
+public abstract class AbstractHashJoin extends AbstractSimpleOperator {
+
+    // access path of the outer table
+    protected final AbstractScan leftScan;
+
+    protected final Table leftTable;
+
+    // hashed by the join column
+    protected final IMultiVersionIndex rightIndex;
+
+    protected final Table rightTable;
+
+    // the columns of the outer record forming the key of the inner index
+    protected final int[] leftJoinColumns;
+
+    // index of the columns
+    protected final int[] leftProjectionColumns;
+
+    protected final int[] rightProjectionColumns;
+
+    // left = 0, right = 1
+    private final boolean[] projectionOrder;
+
+    public AbstractHashJoin(AbstractScan leftScan, Table leftTable,
+                            IMultiVersionIndex rightIndex, Table rightTable,
+                            int[] leftJoinColumns,
+                            int[] leftProjectionColumns,
+                            int[] rightProjectionColumns,
+                            boolean[] projectionOrder,
+                            int entrySize) {
+        super(entrySize);
+        this.leftScan = leftScan;
+        this.leftTable = leftTable;
+        this.rightIndex = rightIndex;
+        this.rightTable = rightTable;
+        this.leftJoinColumns = leftJoinColumns;
+        this.leftProjectionColumns = leftProjectionColumns;
+        this.rightProjectionColumns = rightProjectionColumns;
+        this.projectionOrder = projectionOrder;
+    }
+
+    /**
+     * @param leftRecords the records of the outer table, already filtered
+     * @param rightFilter null if no filter applies to the inner table
+     */
+    public List<Object[]> runAsEmbedded(TransactionContext txCtx, Iterator<Object[]> leftRecords, FilterContext rightFilter){
+        List<Object[]> res = new ArrayList<>();
+        while(leftRecords.hasNext()){
+            Object[] leftRecord = leftRecords.next();
+            IKey probeKey = KeyUtils.buildRecordKey(this.leftJoinColumns, leftRecord);
+            this.probe(txCtx, probeKey, leftRecord, rightFilter, res);
+        }
+        return res;
+    }
+
+    protected abstract void probe(TransactionContext txCtx, IKey probeKey, Object[] leftRecord, FilterContext rightFilter, List<Object[]> res);
+
+    /**
+     * Copy the column values from both relations in the order of projection
+     */
+    protected final void append(Object[] leftRecord, Object[] rightRecord, List<Object[]> res){
+        Object[] row = new Object[this.projectionOrder.length];
+        int leftProjIdx = 0;
+        int rightProjIdx = 0;
+        for(int projOrdIdx = 0; projOrdIdx < this.projectionOrder.length; projOrdIdx++) {
+            if(!this.projectionOrder[projOrdIdx]){
+                row[projOrdIdx] = leftRecord[this.leftProjectionColumns[leftProjIdx]];
+                leftProjIdx++;
+            } else {
+                row[projOrdIdx] = rightRecord[this.rightProjectionColumns[rightProjIdx]];
+                rightProjIdx++;
+            }
+        }
+        res.add(row);
+    }
+
+    @Override
+    public boolean isHashJoin() { return true; }
+
+    @Override
+    public AbstractHashJoin asHashJoin() { return this; }
+
+    public AbstractScan leftScan(){
+        return this.leftScan;
+    }
+
+    public Table leftTable(){
+        return this.leftTable;
+    }
+
+    public Table rightTable(){
+        return this.rightTable;
+    }
+
+}
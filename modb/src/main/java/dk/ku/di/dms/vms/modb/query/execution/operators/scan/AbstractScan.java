@@ -34,4 +34,8 @@ public abstract class AbstractScan extends AbstractSimpleOperator {
         return this.index;
     }
 
+    public int[] projectionColumns(){
+        return this.projectionColumns;
+    }
+
 }
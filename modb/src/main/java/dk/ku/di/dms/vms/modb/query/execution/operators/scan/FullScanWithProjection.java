@@ -1,11 +1,10 @@
 package dk.ku.di.dms.vms.modb.query.execution.operators.scan;
 
 import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
+import dk.ku.di.dms.vms.modb.query.execution.operators.RecordCursor;
 import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.index.IMultiVersionIndex;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 public class FullScanWithProjection extends AbstractScan {
@@ -28,23 +27,19 @@ public class FullScanWithProjection extends AbstractScan {
 //    }
 
     public List<Object[]> runAsEmbedded(TransactionContext txCtx){
-        List<Object[]> res = new ArrayList<>();
-        Iterator<Object[]> iterator = this.index.iterator(txCtx);
-        while(iterator.hasNext()){
-            res.add(iterator.next());
-        }
-        return res;
+        return this.cursor(txCtx, null, null, RecordCursor.NO_LIMIT).toList();
     }
 
     public List<Object[]> runAsEmbedded(TransactionContext txCtx, FilterContext filterContext){
-        List<Object[]> res = new ArrayList<>();
-        Iterator<Object[]> iterator = this.index.iterator(txCtx);
-        while(iterator.hasNext()){
-            Object[] obj = iterator.next();
-            if(this.index.checkCondition(filterContext, obj))
-                res.add(obj);
-        }
-        return res;
+        return this.cursor(txCtx, filterContext, null, RecordCursor.NO_LIMIT).toList();
+    }
+
+    /**
+     * @param filterContext null if no filter applies
+     * @param projectionColumns null to return the whole record
+     */
+    public RecordCursor cursor(TransactionContext txCtx, FilterContext filterContext, int[] projectionColumns, int limit){
+        return new RecordCursor(this.index.iterator(txCtx), this.index, filterContext, projectionColumns, limit);
     }
 
     @Override
@@ -1,10 +1,11 @@
 package dk.ku.di.dms.vms.modb.query.execution.operators.scan;
 
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
+import dk.ku.di.dms.vms.modb.query.execution.operators.RecordCursor;
 import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.index.IMultiVersionIndex;
 
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -20,11 +21,27 @@ import java.util.List;
  */
 public final class IndexScanWithProjection extends AbstractScan {
 
+    // whether the where clause has predicates not answered by the index key
+    private final boolean filterRequired;
+
     public IndexScanWithProjection(
                      IMultiVersionIndex index,
                      int[] projectionColumns,
                      int entrySize) {
+        this(index, projectionColumns, entrySize, false);
+    }
+
+    public IndexScanWithProjection(
+                     IMultiVersionIndex index,
+                     int[] projectionColumns,
+                     int entrySize,
+                     boolean filterRequired) {
         super(entrySize, index, projectionColumns);
+        this.filterRequired = filterRequired;
+    }
+
+    public boolean filterRequired(){
+        return this.filterRequired;
     }
 
     @Override
@@ -38,26 +55,25 @@ public final class IndexScanWithProjection extends AbstractScan {
     }
 
     public List<Object[]> runAsEmbedded(TransactionContext txCtx){
-        List<Object[]> res = new ArrayList<>();
-        Iterator<Object[]> iterator = this.index.iterator(txCtx);
-        while(iterator.hasNext()){
-            res.add( iterator.next() );
-        }
-        return res;
+        return new RecordCursor(this.index.iterator(txCtx), this.index, null, null, RecordCursor.NO_LIMIT).toList();
     }
 
     public List<Object[]> runAsEmbedded(TransactionContext txCtx, IKey... keys) {
-        List<Object[]> res = new ArrayList<>();
+        return this.cursor(txCtx, keys, null, null, RecordCursor.NO_LIMIT).toList();
+    }
+
+    /**
+     * @param filterContext null if no filter applies. The key columns may be filtered again
+     * @param projectionColumns null to return the whole record
+     */
+    public RecordCursor cursor(TransactionContext txCtx, IKey[] keys, FilterContext filterContext, int[] projectionColumns, int limit) {
         Iterator<Object[]> iterator;
         if (keys.length > 1) {
             iterator = this.index.iterator(txCtx, keys);
         } else {
             iterator = this.index.iterator(txCtx, keys[0]);
         }
-        while(iterator.hasNext()){
-            res.add( iterator.next() );
-        }
-        return res;
+        return new RecordCursor(iterator, this.index, filterContext, projectionColumns, limit);
     }
 
 }
\ No newline at end of file
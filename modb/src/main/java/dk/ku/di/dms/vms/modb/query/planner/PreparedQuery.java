@@ -0,0 +1,218 @@
+package dk.ku.di.dms.vms.modb.query.planner;
+
+import dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum;
+import dk.ku.di.dms.vms.modb.definition.Table;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+import dk.ku.di.dms.vms.modb.query.analyzer.QueryTree;
+import dk.ku.di.dms.vms.modb.query.analyzer.predicate.WherePredicate;
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContextBuilder;
+import dk.ku.di.dms.vms.modb.query.execution.operators.AbstractSimpleOperator;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.IMultiVersionIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A select statement analyzed once, on startup, and executed many times.
+ * It is planned on its first execution, when the tables hold data, and planned again
+ * whenever the statistics of the tables drift from the ones the plan was chosen with. See {@link QueryPlan}.
+ * The parameters of a call are bound positionally to the where clause.
+ * Where clause elements beyond the parameters given keep the values found on preparation.
+ * For joins, the where clause is split by table, as for statements planned ad hoc.
+ * Plans are immutable, so they can be shared by concurrent transactions.
+ */
+public final class PreparedQuery {
+
+    public final int id;
+
+    public final Table table;
+
+    private final QueryTree queryTree;
+
+    private final List<WherePredicate> wherePredicates;
+
+    // the values of the where clause on preparation
+    private final Object[] values;
+
+    private volatile Plan plan;
+
+    /**
+     * The operator chosen, along with how the parameters are bound to it
+     */
+    public final class Plan {
+
+        public final AbstractSimpleOperator operator;
+
+        private final QueryPlan queryPlan;
+
+        // for each column of the index, the position of the where clause element holding its value, or -1 if absent
+        private final int[] keyPositions;
+
+        // built with the values on preparation. only used by full scans and index scans with predicates beyond the key
+        private final FilterContext filterContext;
+
+        // for each bi-predicate of the filter, the position of the where clause element holding its value
+        private final int[] filterPositions;
+
+        // for joins, the position of the where clause element of each predicate of the split. null otherwise
+        private final int[] leftPositions;
+
+        private final int[] rightPositions;
+
+        private Plan(QueryPlan queryPlan){
+            this.queryPlan = queryPlan;
+            this.operator = queryPlan.operator;
+            IMultiVersionIndex index = null;
+            if(this.operator.isIndexScan()){
+                index = this.operator.asIndexScan().index();
+            } else if(this.operator.isIndexMultiAggregationScan()){
+                index = this.operator.asIndexMultiAggregationScan().index();
+            }
+            List<WherePredicate> wherePredicates = PreparedQuery.this.wherePredicates;
+            this.keyPositions = index == null ? null : keyPositions(index.indexColumns(), wherePredicates);
+            if(this.operator.isFullScan() || (this.operator.isIndexScan() && this.operator.asIndexScan().filterRequired())){
+                this.filterContext = FilterContextBuilder.build(wherePredicates);
+                this.filterPositions = filterPositions(wherePredicates);
+            } else {
+                this.filterContext = null;
+                this.filterPositions = null;
+            }
+            if(this.operator.isHashJoin()){
+                this.leftPositions = positionsOf(queryPlan.leftPredicates(), wherePredicates);
+                this.rightPositions = positionsOf(queryPlan.rightPredicates(), wherePredicates);
+            } else {
+                this.leftPositions = null;
+                this.rightPositions = null;
+            }
+        }
+
+        /**
+         * The predicates of the outer table of the join, bound to the parameters
+         */
+        public List<WherePredicate> bindLeft(Object[] params){
+            return this.bindPredicates(this.queryPlan.leftPredicates(), this.leftPositions, params);
+        }
+
+        public List<WherePredicate> bindRight(Object[] params){
+            return this.bindPredicates(this.queryPlan.rightPredicates(), this.rightPositions, params);
+        }
+
+        private List<WherePredicate> bindPredicates(List<WherePredicate> predicates, int[] positions, Object[] params){
+            if(params.length == 0) return predicates;
+            List<WherePredicate> bound = new ArrayList<>(predicates.size());
+            for(int i = 0; i < positions.length; i++){
+                WherePredicate predicate = predicates.get(i);
+                bound.add(new WherePredicate(predicate.columnReference, predicate.expression,
+                        PreparedQuery.this.valueAt(positions[i], params)));
+            }
+            return bound;
+        }
+
+        /**
+         * Builds the key of the index from the parameters
+         */
+        public IKey bindKey(Object[] params){
+            Object[] keyValues = new Object[this.keyPositions.length];
+            for(int i = 0; i < this.keyPositions.length; i++){
+                keyValues[i] = PreparedQuery.this.valueAt(this.keyPositions[i], params);
+            }
+            return KeyUtils.buildIndexKey(keyValues);
+        }
+
+        /**
+         * The filter context built on planning is shared, except for the parameters
+         */
+        public FilterContext bindFilter(Object[] params){
+            if(params.length == 0) return this.filterContext;
+            FilterContext bound = new FilterContext();
+            bound.filterTypes = this.filterContext.filterTypes;
+            bound.filterColumns = this.filterContext.filterColumns;
+            bound.biPredicates = this.filterContext.biPredicates;
+            bound.predicates = this.filterContext.predicates;
+            bound.biPredicateParams = new ArrayList<>(this.filterPositions.length);
+            for(int position : this.filterPositions){
+                bound.biPredicateParams.add(PreparedQuery.this.valueAt(position, params));
+            }
+            return bound;
+        }
+
+    }
+
+    public PreparedQuery(int id, Table table, QueryTree queryTree, List<WherePredicate> wherePredicates) {
+        this.id = id;
+        this.table = table;
+        this.queryTree = queryTree;
+        this.wherePredicates = wherePredicates;
+        this.values = new Object[wherePredicates.size()];
+        for(int i = 0; i < this.values.length; i++){
+            this.values[i] = wherePredicates.get(i).value;
+        }
+    }
+
+    /**
+     * {@return the current plan, built on first call and rebuilt once stale}
+     */
+    public Plan plan(SimplePlanner planner){
+        Plan plan = this.plan;
+        if(plan != null && !plan.queryPlan.isStale()) return plan;
+        synchronized (this){
+            plan = this.plan;
+            if(plan == null || plan.queryPlan.isStale()){
+                plan = new Plan(QueryPlan.of(planner.plan(this.queryTree), this.queryTree, this.wherePredicates));
+                this.plan = plan;
+            }
+            return plan;
+        }
+    }
+
+    private static int[] keyPositions(int[] indexColumns, List<WherePredicate> wherePredicates){
+        int[] positions = new int[indexColumns.length];
+        for(int i = 0; i < indexColumns.length; i++){
+            positions[i] = -1;
+            for(int j = 0; j < wherePredicates.size(); j++){
+                if(wherePredicates.get(j).columnReference.columnPosition == indexColumns[i]
+                        && wherePredicates.get(j).expression == ExpressionTypeEnum.EQUALS){
+                    positions[i] = j;
+                    break;
+                }
+            }
+        }
+        return positions;
+    }
+
+    private static int[] positionsOf(List<WherePredicate> predicates, List<WherePredicate> wherePredicates){
+        int[] positions = new int[predicates.size()];
+        for(int i = 0; i < positions.length; i++){
+            // the split holds the same instances
+            for(int j = 0; j < wherePredicates.size(); j++){
+                if(wherePredicates.get(j) == predicates.get(i)){
+                    positions[i] = j;
+                    break;
+                }
+            }
+        }
+        return positions;
+    }
+
+    private static int[] filterPositions(List<WherePredicate> wherePredicates){
+        int[] positions = new int[wherePredicates.size()];
+        int numBiPredicates = 0;
+        for(int i = 0; i < wherePredicates.size(); i++){
+            switch (wherePredicates.get(i).expression){
+                case IS_NULL, IS_NOT_NULL -> { }
+                default -> positions[numBiPredicates++] = i;
+            }
+        }
+        int[] res = new int[numBiPredicates];
+        System.arraycopy(positions, 0, res, 0, numBiPredicates);
+        return res;
+    }
+
+    private Object valueAt(int position, Object[] params){
+        if(position == -1) return null;
+        return position < params.length ? params[position] : this.values[position];
+    }
+
+}
@@ -0,0 +1,92 @@
+package dk.ku.di.dms.vms.modb.query.planner;
+
+import dk.ku.di.dms.vms.modb.definition.Table;
+import dk.ku.di.dms.vms.modb.query.analyzer.QueryTree;
+import dk.ku.di.dms.vms.modb.query.analyzer.predicate.WherePredicate;
+import dk.ku.di.dms.vms.modb.query.execution.operators.AbstractSimpleOperator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An operator along with the cardinality of the tables seen by the planner when it was chosen.
+ * Plans are built on their first execution, so the statistics reflect the data loaded by then,
+ * and must be rebuilt once the cardinality of any of the tables drifts by {@link #REPLAN_FACTOR}.
+ * Immutable, so it can be shared by concurrent transactions.
+ */
+public final class QueryPlan {
+
+    private static final long REPLAN_FACTOR = 4;
+
+    public final AbstractSimpleOperator operator;
+
+    private final Table[] tables;
+
+    private final long[] cardinalities;
+
+    // for joins, the where clause split by table, since it does not change for the same SQL. null otherwise
+    private final List<WherePredicate> leftPredicates;
+
+    private final List<WherePredicate> rightPredicates;
+
+    public static QueryPlan of(AbstractSimpleOperator operator, QueryTree queryTree){
+        return new QueryPlan(operator, queryTree.tables.values(), queryTree.wherePredicates);
+    }
+
+    /**
+     * For prepared statements, whose where clause is kept in the order of the parameters
+     */
+    public static QueryPlan of(AbstractSimpleOperator operator, QueryTree queryTree, List<WherePredicate> wherePredicates){
+        return new QueryPlan(operator, queryTree.tables.values(), wherePredicates);
+    }
+
+    public static QueryPlan of(AbstractSimpleOperator operator, Table table){
+        return new QueryPlan(operator, List.of(table), List.of());
+    }
+
+    private QueryPlan(AbstractSimpleOperator operator, Collection<Table> tables, List<WherePredicate> wherePredicates) {
+        this.operator = operator;
+        this.tables = tables.toArray(Table[]::new);
+        this.cardinalities = new long[this.tables.length];
+        for(int i = 0; i < this.tables.length; i++){
+            this.cardinalities[i] = this.tables[i].primaryKeyIndex().cardinality();
+        }
+        if(operator.isHashJoin()){
+            Table leftTable = operator.asHashJoin().leftTable();
+            this.leftPredicates = new ArrayList<>();
+            this.rightPredicates = new ArrayList<>();
+            for(WherePredicate wherePredicate : wherePredicates){
+                if(wherePredicate.columnReference.table.equals(leftTable)){
+                    this.leftPredicates.add(wherePredicate);
+                } else {
+                    this.rightPredicates.add(wherePredicate);
+                }
+            }
+        } else {
+            this.leftPredicates = null;
+            this.rightPredicates = null;
+        }
+    }
+
+    /**
+     * {@return whether the cardinality of a table has grown or shrunk by the replan factor since the plan was built}
+     */
+    public boolean isStale(){
+        for(int i = 0; i < this.tables.length; i++){
+            long planned = Math.max(1, this.cardinalities[i]);
+            long current = Math.max(1, this.tables[i].primaryKeyIndex().cardinality());
+            if(current >= planned * REPLAN_FACTOR || planned >= current * REPLAN_FACTOR) return true;
+        }
+        return false;
+    }
+
+    public List<WherePredicate> leftPredicates(){
+        return this.leftPredicates;
+    }
+
+    public List<WherePredicate> rightPredicates(){
+        return this.rightPredicates;
+    }
+
+}
@@ -4,10 +4,8 @@ import dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum;
 import dk.ku.di.dms.vms.modb.definition.ColumnReference;
 import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.Table;
-import dk.ku.di.dms.vms.modb.definition.key.IKey;
 import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
 import dk.ku.di.dms.vms.modb.index.IIndexKey;
-import dk.ku.di.dms.vms.modb.index.interfaces.ReadWriteIndex;
 import dk.ku.di.dms.vms.modb.query.analyzer.QueryTree;
 import dk.ku.di.dms.vms.modb.query.analyzer.predicate.GroupByPredicate;
 import dk.ku.di.dms.vms.modb.query.analyzer.predicate.JoinPredicate;
@@ -16,6 +14,8 @@ import dk.ku.di.dms.vms.modb.query.execution.operators.AbstractSimpleOperator;
 import dk.ku.di.dms.vms.modb.query.execution.operators.IndexMultiAggregateScan;
 import dk.ku.di.dms.vms.modb.query.execution.operators.count.IndexCount;
 import dk.ku.di.dms.vms.modb.query.execution.operators.count.IndexCountGroupBy;
+import dk.ku.di.dms.vms.modb.query.execution.operators.join.UniqueHashJoinNonUniqueHashWithProjection;
+import dk.ku.di.dms.vms.modb.query.execution.operators.join.UniqueHashJoinWithProjection;
 import dk.ku.di.dms.vms.modb.query.execution.operators.min.IndexGroupByMinWithProjection;
 import dk.ku.di.dms.vms.modb.query.execution.operators.scan.AbstractScan;
 import dk.ku.di.dms.vms.modb.query.execution.operators.scan.FullScanWithProjection;
@@ -23,10 +23,10 @@ import dk.ku.di.dms.vms.modb.query.execution.operators.scan.IndexScanWithProject
 import dk.ku.di.dms.vms.modb.query.execution.operators.sum.IndexSum;
 import dk.ku.di.dms.vms.modb.query.execution.operators.sum.Sum;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.index.IMultiVersionIndex;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.NonUniqueSecondaryIndex;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.IntStream;
 
 /**
  * Planner that only takes into consideration simple read and write queries.
@@ -39,36 +39,45 @@ public final class SimplePlanner {
 
     /**
      * @param columnsToFilter additional columns to be filtered, but not on index
+     * @param cost estimated number of records read through the access path
      */
     private record IndexSelectionVerdict(boolean indexIsUsedGivenWhereClause,
                                          IMultiVersionIndex index,
-                                         int[] columnsToFilter) implements Comparable<IndexSelectionVerdict> {
+                                         int[] columnsToFilter,
+                                         long cost) implements Comparable<IndexSelectionVerdict> {
 
         @Override
         public int compareTo(IndexSelectionVerdict o) {
-            // do both indexes can be effectively applied?
-//            if (this.indexIsUsedGivenWhereClause && o.indexIsUsedGivenWhereClause) {
-//
-//                // are both unique?
-//                if (this.index.getType() == IndexTypeEnum.UNIQUE && o.index.getType() == IndexTypeEnum.UNIQUE) {
-//                    // which one has more columns to filter? leading to more rows cut
-//                    // that may not be correct given the selectivity of some values, simple heuristic here
-//                    if (this.columnsToFilter.length > o.columnsToFilter.length) return 0;
-//                    if (this.columnsToFilter.length < o.columnsToFilter.length) return 1;
-//
-//                    // which one has larger table?
-//                    if (this.index.size() < o.index.size()) return 0;
-//
-//                } else if (this.index.getType() == IndexTypeEnum.UNIQUE) return 0;
-//
-//            } else if (this.indexIsUsedGivenWhereClause) {
-//                return 0; // must be deep left then
-//            }
-            return 1;
+            if(this.cost != o.cost) return Long.compare(this.cost, o.cost);
+            // on ties, an index lookup is preferred over a full scan
+            if(this.indexIsUsedGivenWhereClause != o.indexIsUsedGivenWhereClause)
+                return this.indexIsUsedGivenWhereClause ? -1 : 1;
+            // unique lookups read at most one record, whatever the statistics say
+            boolean thisUnique = !(this.index instanceof NonUniqueSecondaryIndex);
+            boolean otherUnique = !(o.index instanceof NonUniqueSecondaryIndex);
+            if(thisUnique != otherUnique) return thisUnique ? -1 : 1;
+            // which one has more columns? leading to more rows cut
+            return Integer.compare(o.index.indexColumns().length, this.index.indexColumns().length);
         }
 
     }
 
+    /**
+     * The records reached through a lookup in the index.
+     * Plans may be built before any data is loaded, so indexes without statistics cost a single record
+     */
+    private static long lookupCost(IMultiVersionIndex index){
+        if(!(index instanceof NonUniqueSecondaryIndex)) return 1;
+        long keys = index.distinctKeys();
+        if(keys == 0) return 1;
+        // average bucket size
+        return Math.max(1, (index.cardinality() + keys - 1) / keys);
+    }
+
+    private static long fullScanCost(Table table){
+        return Math.max(1, table.primaryKeyIndex().cardinality());
+    }
+
     public AbstractSimpleOperator plan(QueryTree queryTree) {
         if(queryTree.isSimpleScan()){
             return this.planSimpleSelect(queryTree);
@@ -95,45 +104,92 @@ public final class SimplePlanner {
         return new IndexMultiAggregateScan(queryTree.groupByProjections, indexSelected, queryTree.projections.stream().map(i->i.columnPosition).toList(), 0);
     }
 
+    /**
+     * @param probeIndex index of the inner table hashed by the join column
+     */
+    private record JoinVerdict(ColumnReference leftColumn, IndexSelectionVerdict leftVerdict,
+                               ColumnReference rightColumn, IMultiVersionIndex probeIndex,
+                               long cost) { }
+
     private AbstractSimpleOperator planSimpleJoin(QueryTree queryTree) {
 
-        // define left deep
         JoinPredicate joinPredicate = queryTree.joinPredicates.getFirst();
+        if(joinPredicate.expression != ExpressionTypeEnum.EQUALS) {
+            throw new IllegalStateException("Only equi-joins are supported: " + joinPredicate.expression);
+        }
 
-        // the index with most columns applying to the probe is the deepest
-        IndexSelectionVerdict indexForTable1 = this.getOptimalIndex(joinPredicate.getLeftTable(), queryTree.wherePredicates);
-
-        IndexSelectionVerdict indexForTable2 = this.getOptimalIndex(joinPredicate.getRightTable(), queryTree.wherePredicates);
-
-        // TODO finish
-
-//        if(indexForTable1.compareTo( indexForTable2 ) == 0){
-//            // should be left
-//            if(indexForTable1.index.getType() == IndexTypeEnum.UNIQUE && indexForTable2.index.getType() == IndexTypeEnum.UNIQUE)
-//                return new UniqueHashJoinWithProjection( indexForTable1.index, indexForTable2.index,
-//                    null, null,
-//                    null, null,
-//                    null, 0 );
-//            if(indexForTable1.index.getType() == IndexTypeEnum.UNIQUE)
-//                return new UniqueHashJoinNonUniqueHashWithProjection( indexForTable1.index, indexForTable2.index,
-//                        null, null,
-//                        null, null,
-//                        null, 0 );
-//            throw new IllegalStateException("No support for join on non unique hash indexes!");
-//        } else {
-//            if(indexForTable2.index.getType() == IndexTypeEnum.UNIQUE && indexForTable1.index.getType() == IndexTypeEnum.UNIQUE)
-//                return new UniqueHashJoinWithProjection( indexForTable2.index, indexForTable1.index,
-//                    null, null,
-//                    null, null,
-//                    null, 0 );
-//            if(indexForTable2.index.getType() == IndexTypeEnum.UNIQUE)
-//                return new UniqueHashJoinNonUniqueHashWithProjection( indexForTable2.index, indexForTable1.index,
-//                        null, null,
-//                        null, null,
-//                        null, 0 );
-//            throw new IllegalStateException("No support for join on non unique hash indexes!");
-//        }
-        return null;
+        // define left deep. either table can be the outer, as long as the other is hashed by the join column
+        JoinVerdict leftOuter = this.getJoinVerdict(joinPredicate.columnLeftReference, joinPredicate.columnRightReference, queryTree.wherePredicates);
+        JoinVerdict rightOuter = this.getJoinVerdict(joinPredicate.columnRightReference, joinPredicate.columnLeftReference, queryTree.wherePredicates);
+
+        JoinVerdict joinVerdict;
+        if(leftOuter == null && rightOuter == null) {
+            throw new IllegalStateException("No support for join without an index on the join column of either table");
+        } else if(leftOuter == null) {
+            joinVerdict = rightOuter;
+        } else if(rightOuter == null) {
+            joinVerdict = leftOuter;
+        } else {
+            joinVerdict = rightOuter.cost() < leftOuter.cost() ? rightOuter : leftOuter;
+        }
+
+        Table leftTable = joinVerdict.leftColumn().table;
+        Table rightTable = joinVerdict.rightColumn().table;
+
+        // build projection
+        boolean[] projectionOrder = new boolean[queryTree.projections.size()];
+        int[] leftProjectionColumns = new int[queryTree.projections.size()];
+        int[] rightProjectionColumns = new int[queryTree.projections.size()];
+        int nLeft = 0;
+        int nRight = 0;
+        int entrySize = 0;
+        for (int i = 0; i < queryTree.projections.size(); i++) {
+            ColumnReference column = queryTree.projections.get(i);
+            if(column.table.equals(leftTable)) {
+                leftProjectionColumns[nLeft++] = column.getColumnPosition();
+            } else {
+                projectionOrder[i] = true;
+                rightProjectionColumns[nRight++] = column.getColumnPosition();
+            }
+            entrySize += column.dataType.value;
+        }
+        leftProjectionColumns = Arrays.copyOf(leftProjectionColumns, nLeft);
+        rightProjectionColumns = Arrays.copyOf(rightProjectionColumns, nRight);
+
+        AbstractScan leftScan = this.buildScan(leftTable, joinVerdict.leftVerdict(), leftProjectionColumns, 0);
+        int[] leftJoinColumns = { joinVerdict.leftColumn().getColumnPosition() };
+
+        if(joinVerdict.probeIndex() instanceof NonUniqueSecondaryIndex) {
+            return new UniqueHashJoinNonUniqueHashWithProjection(leftScan, leftTable,
+                    joinVerdict.probeIndex(), rightTable, leftJoinColumns,
+                    leftProjectionColumns, rightProjectionColumns, projectionOrder, entrySize);
+        }
+        return new UniqueHashJoinWithProjection(leftScan, leftTable,
+                joinVerdict.probeIndex(), rightTable, leftJoinColumns,
+                leftProjectionColumns, rightProjectionColumns, projectionOrder, entrySize);
+    }
+
+    /**
+     * @return the verdict of joining with the left column as outer, or null if the right table is not hashed by the join column
+     */
+    private JoinVerdict getJoinVerdict(ColumnReference leftColumn, ColumnReference rightColumn, List<WherePredicate> wherePredicates){
+        Table rightTable = rightColumn.table;
+        int[] joinColumn = { rightColumn.getColumnPosition() };
+        IMultiVersionIndex probeIndex = null;
+        if(Arrays.equals(rightTable.primaryKeyIndex().indexColumns(), joinColumn)) {
+            probeIndex = rightTable.primaryKeyIndex();
+        } else {
+            for (NonUniqueSecondaryIndex secondaryIndex : rightTable.secondaryIndexMap.values()) {
+                if(Arrays.equals(secondaryIndex.indexColumns(), joinColumn)
+                        && (probeIndex == null || lookupCost(secondaryIndex) < lookupCost(probeIndex))) {
+                    probeIndex = secondaryIndex;
+                }
+            }
+        }
+        if(probeIndex == null) return null;
+        IndexSelectionVerdict leftVerdict = this.getOptimalIndex(leftColumn.table, wherePredicates);
+        // each outer record probes the inner index once
+        return new JoinVerdict(leftColumn, leftVerdict, rightColumn, probeIndex, leftVerdict.cost() * lookupCost(probeIndex));
     }
 
     private AbstractSimpleOperator planMultipleJoins(QueryTree queryTree) {
@@ -237,9 +293,23 @@ public final class SimplePlanner {
         
         int entrySize = calculateQueryResultEntrySize(tb.schema(), queryTree.projections.size(), projectionColumns);
 
+        return this.buildScan(tb, indexSelectionVerdict, projectionColumns, entrySize);
+    }
+
+    /**
+     * Updates and deletes only need the access path to the records matching the where clause.
+     * Records are not projected, so they can be written back
+     */
+    public AbstractScan planScan(Table table, List<WherePredicate> wherePredicates) {
+        IndexSelectionVerdict indexSelectionVerdict = this.getOptimalIndex(table, wherePredicates);
+        return this.buildScan(table, indexSelectionVerdict, null, table.schema().getRecordSize());
+    }
+
+    private AbstractScan buildScan(Table tb, IndexSelectionVerdict indexSelectionVerdict, int[] projectionColumns, int entrySize) {
         if(indexSelectionVerdict.indexIsUsedGivenWhereClause()) {
             // return the index scan with projection
-            return new IndexScanWithProjection(indexSelectionVerdict.index(), projectionColumns, entrySize);
+            return new IndexScanWithProjection(indexSelectionVerdict.index(), projectionColumns, entrySize,
+                    indexSelectionVerdict.columnsToFilter().length > 0);
         } else {
             // then must get the PK index, ScanWithProjection
             return new FullScanWithProjection(tb.primaryKeyIndex(), projectionColumns, entrySize);
@@ -254,76 +324,58 @@ public final class SimplePlanner {
         return entrySize;
     }
 
+    /**
+     * Picks the cheapest access path among full scan, unique lookup, and non-unique bucket scan.
+     * An index is only a candidate if all its columns are filtered by equality.
+     */
     private IndexSelectionVerdict getOptimalIndex(final Table table, List<WherePredicate> wherePredicates) {
-        final IntStream intStream = wherePredicates.stream()
-                .filter( wherePredicate ->
-                        wherePredicate.expression == ExpressionTypeEnum.EQUALS
-                                && wherePredicate.columnReference.table.equals(table)
-                )
-                .mapToInt( WherePredicate::getColumnPosition );
+        final List<WherePredicate> tablePredicates = wherePredicates.stream()
+                .filter( wherePredicate -> wherePredicate.columnReference.table.equals(table) )
+                .toList();
 
-        final int[] columnsForIndexSelection = intStream.toArray();
+        final int[] columnsForIndexSelection = tablePredicates.stream()
+                .filter( wherePredicate -> wherePredicate.expression == ExpressionTypeEnum.EQUALS )
+                .mapToInt( WherePredicate::getColumnPosition )
+                .toArray();
 
-        final IIndexKey indexKey = KeyUtils.buildIndexKey(columnsForIndexSelection);
+        IndexSelectionVerdict best = new IndexSelectionVerdict(false, table.primaryKeyIndex(),
+                tablePredicates.stream().mapToInt( WherePredicate::getColumnPosition ).toArray(),
+                fullScanCost(table));
 
-        // fast path (1): all columns are part of the primary index
-        if (table.underlyingPrimaryKeyIndex().key().equals(indexKey) ) {
-            return new IndexSelectionVerdict(true, table.primaryKeyIndex(), columnsForIndexSelection);
-        }
+        IndexSelectionVerdict candidate = this.getIndexVerdict(table.primaryKeyIndex(), columnsForIndexSelection, tablePredicates);
+        if(candidate != null && candidate.compareTo(best) < 0) best = candidate;
 
-        // fast path (2): all columns are part of a secondary index
-        if(table.secondaryIndexMap.containsKey(indexKey)){
-            return new IndexSelectionVerdict(
-                    true,
-                    table.secondaryIndexMap.get(indexKey),
-                    columnsForIndexSelection);
+        for(NonUniqueSecondaryIndex secondaryIndex : table.secondaryIndexMap.values()){
+            candidate = this.getIndexVerdict(secondaryIndex, columnsForIndexSelection, tablePredicates);
+            if(candidate != null && candidate.compareTo(best) < 0) best = candidate;
         }
 
-        if(table.partialIndexMap.containsKey(indexKey)){
+        // all columns are part of a partial index, and of no other index
+        final IIndexKey indexKey = KeyUtils.buildIndexKey(columnsForIndexSelection);
+        if(table.partialIndexMap.containsKey(indexKey) &&
+                !(best.indexIsUsedGivenWhereClause() && best.index().indexColumns().length == columnsForIndexSelection.length)){
             return new IndexSelectionVerdict(
                     true,
                     table.partialIndexMap.get(indexKey),
-                    columnsForIndexSelection);
-        }
-
-        final ReadWriteIndex<IKey> indexSelected = this.getOptimalIndex(table, columnsForIndexSelection);
-
-        // is the index completely covered by the columns in the filter?
-        if (indexSelected == null){
-            // then just select the Primary index
-            return new IndexSelectionVerdict(false, table.primaryKeyIndex(), columnsForIndexSelection);
+                    new int[0],
+                    lookupCost(table.partialIndexMap.get(indexKey)));
         }
-
-        // columns not in the index, but require filtering
-        final IntStream filteredStream = Arrays.stream(columnsForIndexSelection).filter( w -> !indexSelected.containsColumn( w ) );
-        final int[] filterColumns = filteredStream.toArray();
-
-        // any column of the index is in the filter? if so, index is not used.
-        // boolean indexColumnInFilter = Arrays.stream(columnsForIndexSelection).anyMatch(indexSelected::containsColumn);
-
-        return new IndexSelectionVerdict(true,
-                table.secondaryIndexMap.containsKey(indexSelected.key()) ?
-                        table.secondaryIndexMap.get(indexSelected.key()) :
-                        table.partialIndexMap.get(indexSelected.key())
-                , filterColumns);
+        return best;
     }
 
-    private ReadWriteIndex<IKey> getOptimalIndex(Table table, int[] filterColumns){
-        // no index apply so far, perhaps a subset then?
-        List<int[]> combinations = Combinatorics.getAllPossibleColumnCombinations(filterColumns);
-        // heuristic: return the one that embraces more columns
-        ReadWriteIndex<IKey> bestSoFar = null;
-        int maxLength = 0;
-        for(int[] arr : combinations) {
-            IKey indexKey = KeyUtils.buildIndexKey(arr);
-            if(table.secondaryIndexMap.get(indexKey) != null){
-                if(arr.length > maxLength){
-                    bestSoFar = table.secondaryIndexMap.get(indexKey).getUnderlyingIndex();
-                    maxLength = arr.length;
-                }
-            }
+    /**
+     * @return the verdict of using the index, or null if some column of the index is not filtered by equality
+     */
+    private IndexSelectionVerdict getIndexVerdict(IMultiVersionIndex index, int[] equalityColumns, List<WherePredicate> tablePredicates){
+        for(int column : index.indexColumns()){
+            if(Arrays.stream(equalityColumns).noneMatch(c -> c == column)) return null;
         }
-        return bestSoFar;
+        // columns not in the index, but require filtering
+        int[] filterColumns = tablePredicates.stream()
+                .filter( w -> w.expression != ExpressionTypeEnum.EQUALS || !index.containsColumn(w.getColumnPosition()) )
+                .mapToInt( WherePredicate::getColumnPosition )
+                .toArray();
+        return new IndexSelectionVerdict(true, index, filterColumns, lookupCost(index));
     }
 
-}
\ No newline at end of file
+}
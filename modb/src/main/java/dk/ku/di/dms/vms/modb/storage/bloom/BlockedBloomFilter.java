@@ -0,0 +1,116 @@
+package dk.ku.di.dms.vms.modb.storage.bloom;
+
+import dk.ku.di.dms.vms.modb.common.memory.MemoryUtils;
+import jdk.internal.misc.Unsafe;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * A split block bloom filter stored off-heap.
+ * Link: <a href="https://github.com/apache/parquet-format/blob/master/BloomFilter.md">Parquet bloom filter</a>
+ * Each value is mapped to a single block of 64 bytes (a cache line),
+ * and sets one bit in each of the eight words of the block.
+ * So every operation touches one cache line, regardless of the number of bits set.
+ * The number of blocks is a power of two, so the block is obtained through masking.
+ * Adds are atomic, so concurrent writers and readers do not need external synchronization.
+ * The memory is released when the filter becomes unreachable.
+ */
+public final class BlockedBloomFilter implements IBloomFilter {
+
+    private static final Unsafe UNSAFE = MemoryUtils.UNSAFE;
+
+    private static final int BLOCK_SIZE = 64;
+
+    private static final int WORDS_PER_BLOCK = BLOCK_SIZE / Long.BYTES;
+
+    // ~0.05% false positives with 16 bits per element
+    private static final int BITS_PER_ELEMENT = 16;
+
+    private static final int MAX_NUMBER_OF_BLOCKS = 1 << 26;
+
+    private static final int[] SALT = {
+            0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+            0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31 };
+
+    private final MemorySegment segment;
+
+    private final long address;
+
+    private final int mask;
+
+    private BlockedBloomFilter(int numberOfBlocks){
+        this.segment = Arena.ofAuto().allocate((long) numberOfBlocks * BLOCK_SIZE, BLOCK_SIZE);
+        this.address = this.segment.address();
+        this.mask = numberOfBlocks - 1;
+    }
+
+    /**
+     * @param expectedElements The number of elements the filter is sized for.
+     *                         More elements can be added at the cost of a higher false positive rate
+     */
+    public static BlockedBloomFilter build(int expectedElements){
+        long bits = Math.max((long) expectedElements, 1) * BITS_PER_ELEMENT;
+        long numberOfBlocks = Math.max(bits / (BLOCK_SIZE * Byte.SIZE), 1);
+        int pow2 = (int) Math.min(Long.highestOneBit(numberOfBlocks - 1) << 1, MAX_NUMBER_OF_BLOCKS);
+        return new BlockedBloomFilter(Math.max(pow2, 1));
+    }
+
+    /**
+     * Hash codes of keys are often sequential integers, so they must be mixed before
+     * the block and the bits are derived from them. Finalizer of MurmurHash3.
+     */
+    private static long mix(int value){
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private long blockAddress(long hash){
+        return this.address + ((long) ((int) (hash >>> 32) & this.mask) * BLOCK_SIZE);
+    }
+
+    private static long bit(int hash, int word){
+        return 1L << ((hash * SALT[word]) >>> 26);
+    }
+
+    @Override
+    public void add(int value) {
+        long hash = mix(value);
+        long block = this.blockAddress(hash);
+        for(int word = 0; word < WORDS_PER_BLOCK; word++){
+            long bit = bit((int) hash, word);
+            long wordAddress = block + ((long) word * Long.BYTES);
+            // avoid invalidating the cache line of readers when the bit is already set
+            if((UNSAFE.getLong(null, wordAddress) & bit) == 0) {
+                UNSAFE.getAndBitwiseOrLong(null, wordAddress, bit);
+            }
+        }
+    }
+
+    @Override
+    public boolean mightContain(int value) {
+        long hash = mix(value);
+        long block = this.blockAddress(hash);
+        for(int word = 0; word < WORDS_PER_BLOCK; word++){
+            if((UNSAFE.getLongVolatile(null, block + ((long) word * Long.BYTES)) & bit((int) hash, word)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        this.segment.fill((byte) 0);
+    }
+
+    public long sizeInBytes(){
+        return this.segment.byteSize();
+    }
+
+}
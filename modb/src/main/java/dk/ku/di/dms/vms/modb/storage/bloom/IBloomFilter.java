@@ -26,4 +26,9 @@ public interface IBloomFilter {
 
     boolean mightContain(int value);
 
+    /**
+     * Elements cannot be removed, so the filter must be cleared and rebuilt instead
+     */
+    void clear();
+
 }
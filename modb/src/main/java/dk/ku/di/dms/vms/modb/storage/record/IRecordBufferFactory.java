@@ -0,0 +1,22 @@
+package dk.ku.di.dms.vms.modb.storage.record;
+
+/**
+ * Provides the buffers of an index that is able to grow.
+ * The buffer returned must be zeroed, so all the entries are considered inactive.
+ */
+@FunctionalInterface
+public interface IRecordBufferFactory {
+
+    RecordBufferContext allocate(long sizeInBytes);
+
+    /**
+     * Called after all the records have been moved to the new buffer.
+     * The old buffer is released by the index.
+     */
+    default void onResize(RecordBufferContext oldBuffer, RecordBufferContext newBuffer) { }
+
+    static IRecordBufferFactory inMemory(){
+        return RecordBufferContext::allocate;
+    }
+
+}
@@ -0,0 +1,155 @@
+package dk.ku.di.dms.vms.modb.storage.record;
+
+import dk.ku.di.dms.vms.modb.common.memory.MemoryUtils;
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.common.type.DataTypeUtils;
+import dk.ku.di.dms.vms.modb.definition.Header;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import jdk.internal.misc.Unsafe;
+
+import java.lang.foreign.Arena;
+import java.util.Arrays;
+
+/**
+ * A pool of off-heap entries of fixed size, laid out as the entries of a
+ * {@link dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex} of the same schema:
+ * header | hash of the key | record.
+ * So an entry can be copied as it is into the index and read by a {@link RecordReference}.
+ * Entries are carved from slabs that are only released on {@link #reset()}.
+ * Released entries are reused by the next acquisitions.
+ * Entries of versions discarded by the garbage collection must only be released
+ * once no transaction in flight may still read them.
+ */
+public final class OffHeapRecordPool {
+
+    private static final Unsafe UNSAFE = MemoryUtils.UNSAFE;
+
+    private static final int ENTRIES_PER_SLAB = 1024;
+
+    private final Schema schema;
+
+    private final long entrySize;
+
+    private Arena arena;
+
+    // stack of entries available
+    private long[] freeEntries;
+
+    private int numFreeEntries;
+
+    // entries carved from the slabs so far
+    private long numEntries;
+
+    // incremented on reset, so entries of previous slabs are never released into the current ones
+    private int generation;
+
+    public OffHeapRecordPool(Schema schema) {
+        this.schema = schema;
+        this.entrySize = schema.getRecordSize();
+        this.arena = Arena.ofShared();
+        this.freeEntries = new long[ENTRIES_PER_SLAB];
+    }
+
+    public Schema schema(){
+        return this.schema;
+    }
+
+    /**
+     * Enum values are read back from off-heap as strings, not as the enum of the entity,
+     * so the versions of a schema with enum columns must be kept on heap
+     */
+    public static boolean supports(Schema schema){
+        for(DataType dataType : schema.columnDataTypes()){
+            if(dataType == DataType.ENUM) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Null values cannot be represented off-heap, so such records must be kept on heap
+     */
+    public static boolean fits(Object[] record){
+        for(Object value : record){
+            if(value == null) return false;
+        }
+        return true;
+    }
+
+    private synchronized long acquire(){
+        if(this.numFreeEntries == 0){
+            long slab = this.arena.allocate(this.entrySize * ENTRIES_PER_SLAB).address();
+            this.numEntries += ENTRIES_PER_SLAB;
+            for(int i = ENTRIES_PER_SLAB - 1; i >= 0; i--){
+                this.freeEntries[this.numFreeEntries++] = slab + (i * this.entrySize);
+            }
+        }
+        return this.freeEntries[--this.numFreeEntries];
+    }
+
+    public synchronized void release(long address){
+        if(this.numFreeEntries == this.freeEntries.length){
+            this.freeEntries = Arrays.copyOf(this.freeEntries, this.freeEntries.length << 1);
+        }
+        this.freeEntries[this.numFreeEntries++] = address;
+    }
+
+    /**
+     * Releases all entries at once. No entry must be read afterwards
+     */
+    public synchronized void reset(){
+        this.arena.close();
+        this.arena = Arena.ofShared();
+        this.freeEntries = new long[ENTRIES_PER_SLAB];
+        this.numFreeEntries = 0;
+        this.numEntries = 0;
+        this.generation++;
+    }
+
+    /**
+     * {@return an action that releases the entries given, unless the pool has been reset in the meantime}
+     */
+    public synchronized Runnable releaser(long[] addresses){
+        int generation = this.generation;
+        return () -> {
+            synchronized (this){
+                if(this.generation != generation) return;
+                for(long address : addresses){
+                    this.release(address);
+                }
+            }
+        };
+    }
+
+    /**
+     * {@return the number of entries acquired and not released}
+     */
+    public synchronized long numEntriesInUse(){
+        return this.numEntries - this.numFreeEntries;
+    }
+
+    /**
+     * The record must fit. See {@link #fits(Object[])}
+     * @return the address of the entry
+     */
+    public long write(int hash, Object[] record){
+        long address = this.acquire();
+        // strings are not terminated, so leftovers of a previous record must not remain
+        UNSAFE.setMemory(address, this.entrySize, (byte) 0);
+        UNSAFE.putByte(null, address, Header.ACTIVE_BYTE);
+        UNSAFE.putInt(null, address + Header.SIZE, hash);
+        for(int i = 0; i < record.length; i++){
+            DataTypeUtils.callWriteFunction(address + this.schema.columnOffset(i), this.schema.columnDataType(i), record[i]);
+        }
+        return address;
+    }
+
+    public Object[] read(long address){
+        int numColumns = this.schema.columnOffset().length;
+        Object[] record = new Object[numColumns];
+        for(int i = 0; i < numColumns; i++){
+            record[i] = DataTypeUtils.getValue(this.schema.columnDataType(i), address + this.schema.columnOffset(i));
+        }
+        return record;
+    }
+
+}
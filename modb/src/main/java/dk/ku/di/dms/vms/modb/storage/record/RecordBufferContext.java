@@ -1,26 +1,125 @@
 package dk.ku.di.dms.vms.modb.storage.record;
 
+import dk.ku.di.dms.vms.modb.definition.Header;
+
+import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 
+import static java.lang.foreign.ValueLayout.*;
+
 /**
  * This class encapsulates a managed {@link MemorySegment}
  */
 public final class RecordBufferContext {
 
-    // the following metadata should be stored in a metadata buffer for recovery
+    /*
+     * The checkpoint footer is stored after the records, at the end of the segment:
+     * status | batch | tid | number of records | capacity | record size
+     * The status is only set to active after a checkpoint is completely flushed
+     */
+    public static final int FOOTER_SIZE = Header.SIZE + (3 * Long.BYTES) + (2 * Integer.BYTES);
+
+    private static final long BATCH_OFFSET = Header.SIZE;
+    private static final long TID_OFFSET = BATCH_OFFSET + Long.BYTES;
+    private static final long NUM_RECORDS_OFFSET = TID_OFFSET + Long.BYTES;
+    private static final long CAPACITY_OFFSET = NUM_RECORDS_OFFSET + Long.BYTES;
+    private static final long RECORD_SIZE_OFFSET = CAPACITY_OFFSET + Integer.BYTES;
 
     // just to avoid many method calls, since this value does not change
     public final long address;
 
     private final MemorySegment memorySegment;
 
+    private final MemorySegment footerSegment;
+
+    // only present when the segment must be released by the owner (e.g., failed recovery, resize)
+    private final Arena arena;
+
     public RecordBufferContext(MemorySegment memorySegment) {
+        this(memorySegment, null);
+    }
+
+    public RecordBufferContext(MemorySegment memorySegment, Arena arena) {
         this.memorySegment = memorySegment;
         this.address = this.memorySegment.address();
+        this.footerSegment = this.memorySegment.asSlice(this.memorySegment.byteSize() - FOOTER_SIZE, FOOTER_SIZE);
+        this.arena = arena;
+    }
+
+    /**
+     * Allocates a buffer (off-heap) that is released on {@link #close()}
+     */
+    public static RecordBufferContext allocate(long sizeInBytes){
+        Arena arena = Arena.ofShared();
+        return new RecordBufferContext(arena.allocate(sizeInBytes), arena);
+    }
+
+    public long byteSize(){
+        return this.memorySegment.byteSize();
+    }
+
+    public boolean isMapped(){
+        return this.memorySegment.isMapped();
     }
 
     public void force(){
-        this.memorySegment.force();
+        if(this.memorySegment.isMapped()) {
+            this.memorySegment.force();
+        }
+    }
+
+    /**
+     * Must be called before the records are modified by a checkpoint,
+     * so a crash in the middle of the checkpoint does not lead to recovering a torn state
+     */
+    public void invalidateCheckpoint(){
+        this.footerSegment.set(JAVA_BYTE, 0, Header.INACTIVE_BYTE);
+        this.forceFooter();
+    }
+
+    public void writeCheckpoint(long batch, long tid, long numRecords, int capacity, int recordSize){
+        this.invalidateCheckpoint();
+        this.footerSegment.set(JAVA_LONG_UNALIGNED, BATCH_OFFSET, batch);
+        this.footerSegment.set(JAVA_LONG_UNALIGNED, TID_OFFSET, tid);
+        this.footerSegment.set(JAVA_LONG_UNALIGNED, NUM_RECORDS_OFFSET, numRecords);
+        this.footerSegment.set(JAVA_INT_UNALIGNED, CAPACITY_OFFSET, capacity);
+        this.footerSegment.set(JAVA_INT_UNALIGNED, RECORD_SIZE_OFFSET, recordSize);
+        this.footerSegment.set(JAVA_BYTE, 0, Header.ACTIVE_BYTE);
+        this.forceFooter();
+    }
+
+    /**
+     * A checkpoint is only valid if it has completed and the
+     * layout of the records has not changed across restarts
+     */
+    public boolean hasCheckpoint(int capacity, int recordSize){
+        return this.footerSegment.get(JAVA_BYTE, 0) == Header.ACTIVE_BYTE
+                && this.footerSegment.get(JAVA_INT_UNALIGNED, CAPACITY_OFFSET) == capacity
+                && this.footerSegment.get(JAVA_INT_UNALIGNED, RECORD_SIZE_OFFSET) == recordSize;
+    }
+
+    public long checkpointBatch(){
+        return this.footerSegment.get(JAVA_LONG_UNALIGNED, BATCH_OFFSET);
+    }
+
+    public long checkpointTid(){
+        return this.footerSegment.get(JAVA_LONG_UNALIGNED, TID_OFFSET);
+    }
+
+    public long checkpointNumRecords(){
+        return this.footerSegment.get(JAVA_LONG_UNALIGNED, NUM_RECORDS_OFFSET);
+    }
+
+    private void forceFooter(){
+        if(this.footerSegment.isMapped()) {
+            this.footerSegment.force();
+        }
+    }
+
+    public void close(){
+        if(this.arena != null){
+            this.arena.close();
+        }
     }
 
 }
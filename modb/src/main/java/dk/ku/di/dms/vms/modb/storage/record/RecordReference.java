@@ -0,0 +1,157 @@
+package dk.ku.di.dms.vms.modb.storage.record;
+
+import dk.ku.di.dms.vms.modb.common.memory.MemoryUtils;
+import dk.ku.di.dms.vms.modb.common.type.DataTypeUtils;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterType;
+import jdk.internal.misc.Unsafe;
+
+import java.util.Date;
+
+/**
+ * A view over a record, either in the buffer of the underlying index, for records without versions
+ * in memory (e.g., recovered from a checkpoint), or in a version written by a transaction.
+ * Columns are read on access through the offsets of the schema,
+ * so the record is not copied into a new array. The typed accessors do not allocate.
+ * A reference can be repositioned on another record, so a scan may use a single reference for all records.
+ * A reference to a checkpointed record is only valid until the next checkpoint of the table.
+ */
+public final class RecordReference {
+
+    private static final Unsafe UNSAFE = MemoryUtils.UNSAFE;
+
+    private final Schema schema;
+
+    // address of the entry in the buffer. -1 if the record is on heap
+    private long address;
+
+    private Object[] record;
+
+    public RecordReference(Schema schema) {
+        this.schema = schema;
+        this.address = -1;
+    }
+
+    /**
+     * @param address the beginning of the entry, including its header
+     */
+    public RecordReference at(long address){
+        this.address = address;
+        this.record = null;
+        return this;
+    }
+
+    public RecordReference of(Object[] record){
+        this.address = -1;
+        this.record = record;
+        return this;
+    }
+
+    public boolean isOffHeap(){
+        return this.record == null;
+    }
+
+    public Schema schema(){
+        return this.schema;
+    }
+
+    private long columnAddress(int column){
+        return this.address + this.schema.columnOffset(column);
+    }
+
+    public boolean getBoolean(int column){
+        if(this.record != null) return (boolean) this.record[column];
+        return UNSAFE.getBoolean(null, this.columnAddress(column));
+    }
+
+    public int getInt(int column){
+        if(this.record != null) return (int) this.record[column];
+        return UNSAFE.getInt(null, this.columnAddress(column));
+    }
+
+    public char getChar(int column){
+        if(this.record != null) return (char) this.record[column];
+        return UNSAFE.getChar(null, this.columnAddress(column));
+    }
+
+    /**
+     * Dates are read as their epoch milliseconds
+     */
+    public long getLong(int column){
+        if(this.record != null){
+            if(this.record[column] instanceof Date date) return date.getTime();
+            return (long) this.record[column];
+        }
+        return UNSAFE.getLong(null, this.columnAddress(column));
+    }
+
+    public float getFloat(int column){
+        if(this.record != null) return (float) this.record[column];
+        return UNSAFE.getFloat(null, this.columnAddress(column));
+    }
+
+    public double getDouble(int column){
+        if(this.record != null) return (double) this.record[column];
+        return UNSAFE.getDouble(null, this.columnAddress(column));
+    }
+
+    public String getString(int column){
+        if(this.record != null) return (String) this.record[column];
+        return (String) DataTypeUtils.getValue(this.schema.columnDataType(column), this.columnAddress(column));
+    }
+
+    /**
+     * Boxes primitive columns. Prefer the typed accessors
+     */
+    public Object get(int column){
+        if(this.record != null) return this.record[column];
+        return DataTypeUtils.getValue(this.schema.columnDataType(column), this.columnAddress(column));
+    }
+
+    public IKey key(int[] columns){
+        if(this.record != null) return KeyUtils.buildRecordKey(columns, this.record);
+        return KeyUtils.buildRecordKey(this.schema, columns, this.address);
+    }
+
+    /**
+     * Same semantics of the filter applied to records, but only the columns filtered are read
+     */
+    @SuppressWarnings("unchecked")
+    public boolean checkCondition(FilterContext filterContext){
+        if(filterContext == null) return true;
+        boolean conditionHolds = true;
+        int filterIdx = 0;
+        int biPredIdx = 0;
+        int predIdx = 0;
+        while( conditionHolds && filterIdx < filterContext.filterTypes.size() ){
+            Object val = this.get(filterContext.filterColumns.get(filterIdx));
+            if(filterContext.filterTypes.get(filterIdx) == FilterType.BP) {
+                conditionHolds = filterContext.biPredicates.get(biPredIdx)
+                        .apply(val, filterContext.biPredicateParams.get(biPredIdx));
+                biPredIdx++;
+            } else {
+                conditionHolds = filterContext.predicates.get(predIdx).test( val );
+                predIdx++;
+            }
+            filterIdx++;
+        }
+        return conditionHolds;
+    }
+
+    /**
+     * Copies the record, so it can be kept after the reference is repositioned
+     */
+    public Object[] toArray(){
+        if(this.record != null) return this.record.clone();
+        int numColumns = this.schema.columnDataTypes().length;
+        Object[] copy = new Object[numColumns];
+        for(int i = 0; i < numColumns; i++){
+            copy[i] = this.get(i);
+        }
+        return copy;
+    }
+
+}
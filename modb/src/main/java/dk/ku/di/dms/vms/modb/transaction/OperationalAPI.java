@@ -2,11 +2,12 @@ package dk.ku.di.dms.vms.modb.transaction;
 
 import dk.ku.di.dms.vms.modb.api.query.statement.IStatement;
 import dk.ku.di.dms.vms.modb.api.query.statement.SelectStatement;
-import dk.ku.di.dms.vms.modb.common.memory.MemoryRefNode;
 import dk.ku.di.dms.vms.modb.definition.Table;
 import dk.ku.di.dms.vms.modb.query.analyzer.exception.AnalyzerException;
+import dk.ku.di.dms.vms.modb.query.execution.operators.RecordReferenceCursor;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -22,6 +23,11 @@ public sealed interface OperationalAPI permits TransactionManager {
 
     Object[] lookupByKey(PrimaryIndex primaryKeyIndex, Object[] valuesOfKey);
 
+    /**
+     * @return the records in the order of the keys, null for the keys not found
+     */
+    Object[][] lookupByKeys(PrimaryIndex primaryKeyIndex, Object[][] valuesOfKeys);
+
     void delete(Table table, Object[] values);
 
     void upsert(Table table, Object[] values);
@@ -34,10 +40,36 @@ public sealed interface OperationalAPI permits TransactionManager {
 
     void issue(Table table, IStatement arg) throws AnalyzerException;
 
-    MemoryRefNode fetchMemoryReference(Table table, SelectStatement selectStatement);
+    /**
+     * Zero-copy alternative to {@link #cursor(Table, SelectStatement, int)} for scans
+     */
+    RecordReferenceCursor fetchMemoryReference(Table table, SelectStatement selectStatement);
 
     List<Object[]> fetch(Table table, SelectStatement selectStatement);
 
+    /**
+     * Analyzes and plans the statement once. Further calls with the same statement instance return the same identifier.
+     * @return the identifier of the prepared query
+     */
+    int prepare(Table table, SelectStatement selectStatement);
+
+    /**
+     * @param params bound positionally to the where clause of the prepared statement
+     */
+    List<Object[]> fetch(int preparedQueryId, Object[] params);
+
+    /**
+     * Records are read as the cursor advances. The cursor must be consumed within the transaction.
+     * @param limit the maximum number of records returned
+     * @return the whole records, as in {@link #fetch(int, Object[])}
+     */
+    Iterator<Object[]> cursor(int preparedQueryId, Object[] params, int limit);
+
+    /**
+     * @return the records projected in the order of the select clause
+     */
+    Iterator<Object[]> cursor(Table table, SelectStatement selectStatement, int limit);
+
     void updateAll(Table table, List<Object[]> parsedEntities);
 
     void deleteAll(Table table, List<Object[]> parsedEntities);
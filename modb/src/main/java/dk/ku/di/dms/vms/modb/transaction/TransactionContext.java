@@ -24,6 +24,9 @@ public final class TransactionContext implements ITransactionContext {
 
     public final Set<IMultiVersionIndex> indexes;
 
+    // the epoch entered when started by the transaction manager
+    long epoch;
+
     public TransactionContext(long tid, long lastTid, boolean readOnly) {
         this.tid = tid;
         this.lastTid = lastTid;
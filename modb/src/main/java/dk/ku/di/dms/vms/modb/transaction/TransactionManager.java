@@ -1,14 +1,18 @@
 package dk.ku.di.dms.vms.modb.transaction;
 
+import dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum;
+import dk.ku.di.dms.vms.modb.api.query.statement.AbstractStatement;
 import dk.ku.di.dms.vms.modb.api.query.statement.IStatement;
 import dk.ku.di.dms.vms.modb.api.query.statement.SelectStatement;
+import dk.ku.di.dms.vms.modb.api.query.statement.UpdateStatement;
 import dk.ku.di.dms.vms.modb.common.data_structure.Tuple;
-import dk.ku.di.dms.vms.modb.common.memory.MemoryRefNode;
 import dk.ku.di.dms.vms.modb.common.transaction.ITransactionContext;
 import dk.ku.di.dms.vms.modb.common.transaction.ITransactionManager;
+import dk.ku.di.dms.vms.modb.common.type.DataType;
 import dk.ku.di.dms.vms.modb.definition.Table;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
 import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
 import dk.ku.di.dms.vms.modb.query.analyzer.Analyzer;
 import dk.ku.di.dms.vms.modb.query.analyzer.QueryTree;
 import dk.ku.di.dms.vms.modb.query.analyzer.exception.AnalyzerException;
@@ -16,17 +20,29 @@ import dk.ku.di.dms.vms.modb.query.analyzer.predicate.WherePredicate;
 import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
 import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContextBuilder;
 import dk.ku.di.dms.vms.modb.query.execution.operators.AbstractSimpleOperator;
-import dk.ku.di.dms.vms.modb.query.execution.operators.min.IndexGroupByMinWithProjection;
+import dk.ku.di.dms.vms.modb.query.execution.operators.RecordCursor;
+import dk.ku.di.dms.vms.modb.query.execution.operators.RecordReferenceCursor;
+import dk.ku.di.dms.vms.modb.query.execution.operators.join.AbstractHashJoin;
 import dk.ku.di.dms.vms.modb.query.execution.operators.scan.FullScanWithProjection;
 import dk.ku.di.dms.vms.modb.query.execution.operators.scan.IndexScanWithProjection;
+import dk.ku.di.dms.vms.modb.query.planner.PreparedQuery;
+import dk.ku.di.dms.vms.modb.query.planner.QueryPlan;
 import dk.ku.di.dms.vms.modb.query.planner.SimplePlanner;
+import dk.ku.di.dms.vms.modb.storage.record.RecordBufferContext;
+import dk.ku.di.dms.vms.modb.transaction.internal.TransactionEpochs;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.index.IMultiVersionIndex;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.index.NonUniqueSecondaryIndex;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
+import static java.lang.System.Logger.Level.ERROR;
 import static java.lang.System.Logger.Level.INFO;
 
 /**
@@ -44,6 +60,12 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
 
     private static final System.Logger LOGGER = System.getLogger(TransactionManager.class.getName());
 
+    private static final Object[] NO_PARAMS = new Object[0];
+
+    // bound by the tasks of the scheduler for their whole execution
+    private static final ScopedValue<TransactionContext> CURRENT_TX_CTX = ScopedValue.newInstance();
+
+    // contexts of transactions started outside a task, e.g., when loading data
     private final Map<Long, TransactionContext> txCtxMap;
 
     private final Analyzer analyzer;
@@ -53,20 +75,46 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
     /**
      * Operators output results
      * They are read-only operations, do not modify data
+     * Plans are replaced once the statistics of their tables drift. See {@link QueryPlan}
+     */
+    private final Map<String, QueryPlan> queryPlanCacheMap;
+
+    /**
+     * Indexed by the prepared query identifier
+     * Queries are prepared on startup, so copying on write does not affect transactions
      */
-    private final Map<String, AbstractSimpleOperator> queryPlanCacheMap;
+    private final List<PreparedQuery> preparedQueries;
+
+    // statements do not override equals, so statements are identified by their instance
+    private final Map<SelectStatement, PreparedQuery> preparedStatementMap;
 
     private final Map<String, Table> catalog;
 
     private final boolean checkpointing;
 
+    // tables are checkpointed in parallel
+    private final ExecutorService checkpointExecutor;
+
+    // the checkpoint of a table must only start after its previous checkpoint completes
+    private final Map<String, CompletableFuture<Void>> lastCheckpointPerTable;
+
+    // buffers replaced by a checkpoint are only released once no transaction may still read them
+    private final TransactionEpochs epochs;
+
     public TransactionManager(Map<String, Table> catalog, boolean checkpointing){
         this.planner = new SimplePlanner();
         this.analyzer = new Analyzer(catalog);
         this.catalog = catalog;
         this.queryPlanCacheMap = new ConcurrentHashMap<>();
+        this.preparedQueries = new CopyOnWriteArrayList<>();
+        this.preparedStatementMap = new ConcurrentHashMap<>();
         this.checkpointing = checkpointing;
         this.txCtxMap = new ConcurrentHashMap<>();
+        int numCheckpointThreads = Math.max(1, Math.min(catalog.size(), Runtime.getRuntime().availableProcessors() / 2));
+        this.checkpointExecutor = Executors.newFixedThreadPool(numCheckpointThreads,
+                Thread.ofPlatform().name("checkpoint-thread").daemon().factory());
+        this.lastCheckpointPerTable = new HashMap<>();
+        this.epochs = new TransactionEpochs();
     }
 
     private boolean fkConstraintViolation(TransactionContext txCtx, Table table, Object[] values){
@@ -80,89 +128,359 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
     }
 
     @Override
-    public List<Object[]> fetch(final Table table, final SelectStatement selectStatement){
+    public synchronized int prepare(Table table, SelectStatement selectStatement){
+        PreparedQuery preparedQuery = this.preparedStatementMap.get(selectStatement);
+        if(preparedQuery != null) return preparedQuery.id;
+        // only analyzed here. the plan is chosen on the first execution, when the tables hold data
+        QueryTree queryTree = this.analyzer.analyzePrepared(selectStatement);
+        // a join refers to the columns of both tables
+        List<WherePredicate> wherePredicates = queryTree.tables.size() > 1 ?
+                this.analyzer.analyzeWhere(queryTree, selectStatement.whereClause) :
+                this.analyzer.analyzeWhere(table, selectStatement.whereClause);
+        preparedQuery = new PreparedQuery(this.preparedQueries.size(), table, queryTree, wherePredicates);
+        this.preparedQueries.add(preparedQuery);
+        this.preparedStatementMap.put(selectStatement, preparedQuery);
+        return preparedQuery.id;
+    }
+
+    @Override
+    public List<Object[]> fetch(int preparedQueryId, Object[] params){
+        return this.fetch(this.preparedQueries.get(preparedQueryId), params);
+    }
+
+    private List<Object[]> fetch(PreparedQuery preparedQuery, Object[] params){
+        PreparedQuery.Plan plan = preparedQuery.plan(this.planner);
+        AbstractSimpleOperator scanOperator = plan.operator;
+        if(scanOperator.isHashJoin()){
+            return this.join(scanOperator.asHashJoin(), plan.bindLeft(params), plan.bindRight(params));
+        }
+        TransactionContext txCtx = this.currentTransaction();
+        if(scanOperator.isIndexScan()){
+            IndexScanWithProjection indexScan = scanOperator.asIndexScan();
+            FilterContext filterContext = indexScan.filterRequired() ? plan.bindFilter(params) : null;
+            return indexScan.cursor(txCtx, new IKey[]{ plan.bindKey(params) }, filterContext, null, RecordCursor.NO_LIMIT).toList();
+        } else if(scanOperator.isIndexAggregationScan()){
+            return scanOperator.asIndexAggregationScan().runAsEmbedded(txCtx);
+        } else if(scanOperator.isIndexMultiAggregationScan()){
+            return scanOperator.asIndexMultiAggregationScan().runAsEmbedded(txCtx, plan.bindKey(params));
+        } else {
+            return scanOperator.asFullScan().runAsEmbedded(txCtx, plan.bindFilter(params));
+        }
+    }
+
+    /**
+     * Plans are cached by SQL, so they are only rebuilt once the statistics of their tables drift
+     */
+    private QueryPlan plan(SelectStatement selectStatement){
         String sqlAsKey = selectStatement.SQL.toString();
-        AbstractSimpleOperator scanOperator = this.queryPlanCacheMap.computeIfAbsent(sqlAsKey,
-                (ignored) -> {
-                    QueryTree queryTree = this.analyzer.analyze(selectStatement);
-                    return this.planner.plan(queryTree);
-                });
+        QueryPlan queryPlan = this.queryPlanCacheMap.get(sqlAsKey);
+        if(queryPlan == null || queryPlan.isStale()){
+            QueryTree queryTree = this.analyzer.analyze(selectStatement);
+            queryPlan = QueryPlan.of(this.planner.plan(queryTree), queryTree);
+            this.queryPlanCacheMap.put(sqlAsKey, queryPlan);
+        }
+        return queryPlan;
+    }
+
+    /**
+     * The records are not projected, so they can be parsed into entities
+     */
+    @Override
+    public Iterator<Object[]> cursor(int preparedQueryId, Object[] params, int limit){
+        PreparedQuery.Plan plan = this.preparedQueries.get(preparedQueryId).plan(this.planner);
+        AbstractSimpleOperator scanOperator = plan.operator;
+        if(scanOperator.isHashJoin()){
+            return RecordCursor.of(this.join(scanOperator.asHashJoin(), plan.bindLeft(params), plan.bindRight(params)), limit);
+        }
+        IKey key = scanOperator.isIndexScan() || scanOperator.isIndexMultiAggregationScan() ? plan.bindKey(params) : null;
+        FilterContext filterContext = filterRequired(scanOperator) ? plan.bindFilter(params) : null;
+        return this.cursor(scanOperator, key, filterContext, false, limit);
+    }
+
+    /**
+     * The records are projected in the order of the select clause
+     */
+    @Override
+    public Iterator<Object[]> cursor(Table table, SelectStatement selectStatement, int limit){
+        PreparedQuery preparedQuery = this.preparedStatementMap.get(selectStatement);
+        if(preparedQuery != null){
+            PreparedQuery.Plan plan = preparedQuery.plan(this.planner);
+            AbstractSimpleOperator scanOperator = plan.operator;
+            if(scanOperator.isHashJoin()){
+                return RecordCursor.of(this.join(scanOperator.asHashJoin(), plan.bindLeft(NO_PARAMS), plan.bindRight(NO_PARAMS)), limit);
+            }
+            IKey key = scanOperator.isIndexScan() || scanOperator.isIndexMultiAggregationScan() ? plan.bindKey(NO_PARAMS) : null;
+            FilterContext filterContext = filterRequired(scanOperator) ? plan.bindFilter(NO_PARAMS) : null;
+            return this.cursor(scanOperator, key, filterContext, true, limit);
+        }
+        QueryPlan queryPlan = this.plan(selectStatement);
+        AbstractSimpleOperator scanOperator = queryPlan.operator;
+        if(scanOperator.isHashJoin()){
+            return RecordCursor.of(this.join(queryPlan), limit);
+        }
         List<WherePredicate> wherePredicates = this.analyzer.analyzeWhere(table, selectStatement.whereClause);
+        IKey key = null;
+        FilterContext filterContext = null;
         if(scanOperator.isIndexScan()){
-            IKey key = this.getIndexKeysFromWhereClause(wherePredicates, scanOperator.asIndexScan().index());
-            return scanOperator.asIndexScan().runAsEmbedded(this.txCtxMap.get(Thread.currentThread().threadId()), key);
+            key = this.getIndexKeysFromWhereClause(wherePredicates, scanOperator.asIndexScan().index());
+            if(scanOperator.asIndexScan().filterRequired()) filterContext = FilterContextBuilder.build(wherePredicates);
+        } else if(scanOperator.isIndexMultiAggregationScan()){
+            key = this.getIndexKeysFromWhereClause(wherePredicates, scanOperator.asIndexMultiAggregationScan().index());
+        } else if(scanOperator.isFullScan()){
+            filterContext = FilterContextBuilder.build(wherePredicates);
+        }
+        return this.cursor(scanOperator, key, filterContext, true, limit);
+    }
+
+    /**
+     * Scans are streamed. Aggregations only produce their result after consuming the input, so they are wrapped
+     */
+    private RecordCursor cursor(AbstractSimpleOperator scanOperator, IKey key, FilterContext filterContext, boolean project, int limit){
+        TransactionContext txCtx = this.currentTransaction();
+        if(scanOperator.isIndexScan()){
+            IndexScanWithProjection indexScan = scanOperator.asIndexScan();
+            return indexScan.cursor(txCtx, new IKey[]{ key }, filterContext, project ? indexScan.projectionColumns() : null, limit);
+        } else if(scanOperator.isIndexAggregationScan()){
+            return RecordCursor.of(scanOperator.asIndexAggregationScan().runAsEmbedded(txCtx), limit);
+        } else if(scanOperator.isIndexMultiAggregationScan()){
+            return RecordCursor.of(scanOperator.asIndexMultiAggregationScan().runAsEmbedded(txCtx, key), limit);
+        } else {
+            FullScanWithProjection fullScan = scanOperator.asFullScan();
+            return fullScan.cursor(txCtx, filterContext, project ? fullScan.projectionColumns() : null, limit);
+        }
+    }
+
+    private static boolean filterRequired(AbstractSimpleOperator scanOperator){
+        return scanOperator.isFullScan() || (scanOperator.isIndexScan() && scanOperator.asIndexScan().filterRequired());
+    }
+
+    /**
+     * The where clause may refer to both tables, so it is split by table along with the plan.
+     * The outer table is read through its scan, and the inner table is probed for each outer record
+     */
+    private List<Object[]> join(QueryPlan queryPlan){
+        return this.join(queryPlan.operator.asHashJoin(), queryPlan.leftPredicates(), queryPlan.rightPredicates());
+    }
+
+    private List<Object[]> join(AbstractHashJoin join, List<WherePredicate> leftPredicates, List<WherePredicate> rightPredicates){
+        TransactionContext txCtx = this.currentTransaction();
+        RecordCursor leftRecords;
+        if(join.leftScan().isIndexScan()){
+            IndexScanWithProjection indexScan = join.leftScan().asIndexScan();
+            IKey key = this.getIndexKeysFromWhereClause(leftPredicates, indexScan.index());
+            FilterContext filterContext = indexScan.filterRequired() ? FilterContextBuilder.build(leftPredicates) : null;
+            leftRecords = indexScan.cursor(txCtx, new IKey[]{ key }, filterContext, null, RecordCursor.NO_LIMIT);
+        } else {
+            FilterContext filterContext = leftPredicates.isEmpty() ? null : FilterContextBuilder.build(leftPredicates);
+            leftRecords = join.leftScan().asFullScan().cursor(txCtx, filterContext, null, RecordCursor.NO_LIMIT);
+        }
+        FilterContext rightFilter = rightPredicates.isEmpty() ? null : FilterContextBuilder.build(rightPredicates);
+        return join.runAsEmbedded(txCtx, leftRecords, rightFilter);
+    }
+
+    @Override
+    public List<Object[]> fetch(final Table table, final SelectStatement selectStatement){
+        // statements prepared on startup do not require any parsing
+        PreparedQuery preparedQuery = this.preparedStatementMap.get(selectStatement);
+        if(preparedQuery != null){
+            return this.fetch(preparedQuery, NO_PARAMS);
+        }
+        QueryPlan queryPlan = this.plan(selectStatement);
+        AbstractSimpleOperator scanOperator = queryPlan.operator;
+        if(scanOperator.isHashJoin()){
+            return this.join(queryPlan);
+        }
+        List<WherePredicate> wherePredicates = this.analyzer.analyzeWhere(table, selectStatement.whereClause);
+        if(scanOperator.isIndexScan()){
+            IndexScanWithProjection indexScan = scanOperator.asIndexScan();
+            IKey key = this.getIndexKeysFromWhereClause(wherePredicates, indexScan.index());
+            FilterContext filterContext = indexScan.filterRequired() ? FilterContextBuilder.build(wherePredicates) : null;
+            return indexScan.cursor(this.currentTransaction(), new IKey[]{ key }, filterContext, null, RecordCursor.NO_LIMIT).toList();
         } else if(scanOperator.isIndexAggregationScan()){
-            return scanOperator.asIndexAggregationScan().runAsEmbedded(this.txCtxMap.get(Thread.currentThread().threadId()));
+            return scanOperator.asIndexAggregationScan().runAsEmbedded(this.currentTransaction());
         } else if(scanOperator.isIndexMultiAggregationScan()){
             IKey key = this.getIndexKeysFromWhereClause(wherePredicates, scanOperator.asIndexMultiAggregationScan().index());
-            return scanOperator.asIndexMultiAggregationScan().runAsEmbedded(this.txCtxMap.get(Thread.currentThread().threadId()), key);
+            return scanOperator.asIndexMultiAggregationScan().runAsEmbedded(this.currentTransaction(), key);
         } else {
             // future optimization is filter not including the columns of partial or non-unique index
             FilterContext filterContext = FilterContextBuilder.build(wherePredicates);
-            return scanOperator.asFullScan().runAsEmbedded(this.txCtxMap.get(Thread.currentThread().threadId()), filterContext);
+            return scanOperator.asFullScan().runAsEmbedded(this.currentTransaction(), filterContext);
         }
     }
 
     /**
-     * Best guess return type. Differently from the parameter type received.
-     * @param selectStatement a select statement
-     * @return the query result in a memory space
+     * The records are not copied, so the caller reads only the columns required, through the schema of the table.
+     * Joins and aggregations produce new records anyway, so only scans are supported
      */
     @Override
-    public MemoryRefNode fetchMemoryReference(Table table, SelectStatement selectStatement) {
-        String sqlAsKey = selectStatement.SQL.toString();
-        AbstractSimpleOperator scanOperator = this.queryPlanCacheMap.getOrDefault( sqlAsKey, null );
-        List<WherePredicate> wherePredicates;
-        if(scanOperator == null){
-            QueryTree queryTree = this.analyzer.analyze(selectStatement);
-            wherePredicates = queryTree.wherePredicates;
-            scanOperator = this.planner.plan(queryTree);
-            this.queryPlanCacheMap.put(sqlAsKey, scanOperator);
-        } else {
-            // get only the where clause params
-            wherePredicates = this.analyzer.analyzeWhere(table, selectStatement.whereClause);
+    public RecordReferenceCursor fetchMemoryReference(Table table, SelectStatement selectStatement) {
+        AbstractSimpleOperator scanOperator = this.plan(selectStatement).operator;
+        if(!scanOperator.isIndexScan() && !scanOperator.isFullScan()){
+            throw new IllegalStateException("Record references are only provided for scans. Query: "+selectStatement.SQL);
         }
-        MemoryRefNode memRes;
-        // complete for all types or migrate the choice to transaction facade
-        // make an enum, it is easier
+        TransactionContext txCtx = this.currentTransaction();
+        List<WherePredicate> wherePredicates = this.analyzer.analyzeWhere(table, selectStatement.whereClause);
         if(scanOperator.isIndexScan()){
-            // build keys and filters
-            memRes = this.run(wherePredicates, scanOperator.asIndexScan());
-        } else if(scanOperator.isIndexAggregationScan()){
-            memRes = this.run(wherePredicates, scanOperator.asIndexAggregationScan());
-        } else {
-            // build only filters
-            memRes = this.run(table, wherePredicates, scanOperator.asFullScan());
+            IndexScanWithProjection indexScan = scanOperator.asIndexScan();
+            IKey key = this.getIndexKeysFromWhereClause(wherePredicates, indexScan.index());
+            FilterContext filterContext = indexScan.filterRequired() ? FilterContextBuilder.build(wherePredicates) : null;
+            if(indexScan.index() instanceof PrimaryIndex primaryIndex){
+                return RecordReferenceCursor.lookup(txCtx, primaryIndex, key, filterContext, RecordCursor.NO_LIMIT);
+            }
+            if(indexScan.index() instanceof NonUniqueSecondaryIndex secondaryIndex){
+                return RecordReferenceCursor.bucket(txCtx, secondaryIndex, key, filterContext, RecordCursor.NO_LIMIT);
+            }
+            // partial indexes do not reach records by their primary key, so the whole where clause is filtered instead
         }
-        return memRes;
+        FilterContext filterContext = wherePredicates.isEmpty() ? null : FilterContextBuilder.build(wherePredicates);
+        return RecordReferenceCursor.fullScan(txCtx, table.primaryKeyIndex(), filterContext, RecordCursor.NO_LIMIT);
     }
 
     /**
-     * finish at some point. can we extract the column values and make a special api for the facade? only if it is a single key
+     * Executes update, insert, and delete statements on the records directly, without parsing them into entities.
+     * The records matching the where clause are collected before any write,
+     * so the scan does not run into the versions written by the statement itself.
      */
+    @Override
     public void issue(Table table, IStatement statement) throws AnalyzerException {
+        TransactionContext txCtx = this.currentTransaction();
         switch (statement.getType()){
             case UPDATE -> {
-                List<WherePredicate> wherePredicates = this.analyzer.analyzeWhere(
-                        table, statement.asUpdateStatement().whereClause);
-                // this.planner.getOptimalIndex(table, wherePredicates);
-                // TODO plan update and delete in planner. only need to send where predicates and not a query tree like a select
-                // UpdateOperator.run(statement.asUpdateStatement(), table.primaryKeyIndex() );
+                UpdateStatement updateStatement = statement.asUpdateStatement();
+                int[] setColumns = new int[updateStatement.setClause.size()];
+                Object[] setValues = new Object[setColumns.length];
+                for(int i = 0; i < setColumns.length; i++){
+                    setColumns[i] = this.getColumnToUpdate(table, updateStatement.setClause.get(i).column());
+                    setValues[i] = coerce(table, setColumns[i], updateStatement.setClause.get(i).value());
+                }
+                for(Object[] record : this.scan(txCtx, table, updateStatement)){
+                    Object[] newRecord = Arrays.copyOf(record, record.length);
+                    for(int i = 0; i < setColumns.length; i++){
+                        newRecord[setColumns[i]] = setValues[i];
+                    }
+                    this.update(txCtx, table, newRecord);
+                }
             }
             case INSERT -> {
-                // TODO get columns, put object array in order and submit to entity api
+                Object[] values = statement.asInsertStatement().values;
+                if(values.length != table.schema().columnNames().length){
+                    throw new AnalyzerException("Table "+table.getName()+" has "+table.schema().columnNames().length+" columns, but "+values.length+" values were given");
+                }
+                Object[] record = new Object[values.length];
+                for(int i = 0; i < values.length; i++){
+                    record[i] = coerce(table, i, values[i]);
+                }
+                this.doInsert(txCtx, table, record);
+            }
+            case DELETE -> {
+                int[] pkColumns = table.schema().getPrimaryKeyColumns();
+                for(Object[] record : this.scan(txCtx, table, statement.asDeleteStatement())){
+                    this.deleteByKey(txCtx, table, KeyUtils.buildRecordKey(pkColumns, record));
+                }
             }
-            case DELETE -> { }
             default -> throw new IllegalStateException("Statement type cannot be identified.");
         }
     }
 
+    /**
+     * Changing the primary key would require moving the record, so it is not supported by an update
+     */
+    private int getColumnToUpdate(Table table, String column){
+        Integer columnPosition = table.schema().columnPosition(column);
+        if(columnPosition == null){
+            throw new AnalyzerException("Column "+column+" does not exist in the table "+table.getName());
+        }
+        for(int pkColumn : table.schema().getPrimaryKeyColumns()){
+            if(pkColumn == columnPosition){
+                throw new AnalyzerException("Primary key column "+column+" cannot be updated");
+            }
+        }
+        return columnPosition;
+    }
+
+    /**
+     * Values of a statement are not bound to the entity, so they are checked against the column here.
+     * Numbers are widened to the type of the column (e.g., an int set to a float column), since
+     * the record would otherwise hold a value of a type the indexes and the buffers do not expect.
+     * A value the column type cannot represent exactly (e.g., an int above 2^24 set to a float column) is rejected
+     */
+    private static Object coerce(Table table, int column, Object value){
+        if(value == null) return null;
+        DataType columnType = table.schema().columnDataType(column);
+        boolean integral = value instanceof Integer || value instanceof Short || value instanceof Byte;
+        switch (columnType){
+            case INT -> {
+                if(value instanceof Integer) return value;
+                if(integral) return ((Number) value).intValue();
+            }
+            case LONG -> {
+                if(value instanceof Long) return value;
+                if(integral) return ((Number) value).longValue();
+            }
+            case FLOAT -> {
+                if(value instanceof Float) return value;
+                if(integral){
+                    float floatValue = ((Number) value).floatValue();
+                    if((int) floatValue == ((Number) value).intValue()) return floatValue;
+                }
+            }
+            case DOUBLE -> {
+                if(value instanceof Double) return value;
+                if(integral || value instanceof Float) return ((Number) value).doubleValue();
+                if(value instanceof Long longValue && (long) longValue.doubleValue() == longValue) return longValue.doubleValue();
+            }
+            case BOOL -> {
+                if(value instanceof Boolean) return value;
+            }
+            case CHAR -> {
+                if(value instanceof Character) return value;
+            }
+            case STRING -> {
+                if(value instanceof CharSequence) return value.toString();
+            }
+            case DATE -> {
+                if(value instanceof Date) return value;
+            }
+            case ENUM -> {
+                if(value instanceof Enum<?> || value instanceof CharSequence) return value;
+            }
+            default -> {
+                return value;
+            }
+        }
+        throw new AnalyzerException("Value "+value+" of type "+value.getClass().getSimpleName()+" cannot be assigned to the column "
+                +table.schema().columnNames()[column]+" of type "+columnType+" in the table "+table.getName());
+    }
+
+    /**
+     * The where clause of updates and deletes is planned once, and again when the statistics drift. Its values are bound on every call
+     */
+    private List<Object[]> scan(TransactionContext txCtx, Table table, AbstractStatement statement){
+        List<WherePredicate> wherePredicates = this.analyzer.analyzeWhere(table, statement.whereClause);
+        // the SQL of updates and deletes only carries the where clause, so it is qualified by the table
+        String sqlAsKey = table.getName() + ':' + statement.SQL;
+        QueryPlan queryPlan = this.queryPlanCacheMap.get(sqlAsKey);
+        if(queryPlan == null || queryPlan.isStale()){
+            queryPlan = QueryPlan.of(this.planner.planScan(table, wherePredicates), table);
+            this.queryPlanCacheMap.put(sqlAsKey, queryPlan);
+        }
+        AbstractSimpleOperator scanOperator = queryPlan.operator;
+        if(scanOperator.isIndexScan()){
+            IndexScanWithProjection indexScan = scanOperator.asIndexScan();
+            IKey key = this.getIndexKeysFromWhereClause(wherePredicates, indexScan.index());
+            FilterContext filterContext = indexScan.filterRequired() ? FilterContextBuilder.build(wherePredicates) : null;
+            return indexScan.cursor(txCtx, new IKey[]{ key }, filterContext, null, RecordCursor.NO_LIMIT).toList();
+        }
+        FilterContext filterContext = wherePredicates.isEmpty() ? null : FilterContextBuilder.build(wherePredicates);
+        return scanOperator.asFullScan().cursor(txCtx, filterContext, null, RecordCursor.NO_LIMIT).toList();
+    }
+
     /****** ENTITY *******/
 
     @Override
     public List<Object[]> getAll(Table table){
         List<Object[]> res = new ArrayList<>();
-        Iterator<Object[]> iterator = table.primaryKeyIndex().iterator(this.txCtxMap.get(Thread.currentThread().threadId()));
+        Iterator<Object[]> iterator = table.primaryKeyIndex().iterator(this.currentTransaction());
         while(iterator.hasNext()){
             res.add(iterator.next());
         }
@@ -172,7 +490,7 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
     @Override
     public void insertAll(Table table, List<Object[]> objects){
         // get tid, do all the checks, etc
-        TransactionContext txCtx = this.txCtxMap.get(Thread.currentThread().threadId());
+        TransactionContext txCtx = this.currentTransaction();
         for(Object[] entry : objects) {
             this.doInsert(txCtx, table, entry);
         }
@@ -180,7 +498,7 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
 
     @Override
     public void deleteAll(Table table, List<Object[]> objects) {
-        TransactionContext txCtx = this.txCtxMap.get(Thread.currentThread().threadId());
+        TransactionContext txCtx = this.currentTransaction();
         for(Object[] entry : objects) {
             IKey pk = KeyUtils.buildRecordKey(table.schema().getPrimaryKeyColumns(), entry);
             this.deleteByKey(txCtx, table, pk);
@@ -189,7 +507,7 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
 
     @Override
     public void updateAll(Table table, List<Object[]> objects) {
-        TransactionContext txCtx = this.txCtxMap.get(Thread.currentThread().threadId());
+        TransactionContext txCtx = this.currentTransaction();
         for(Object[] entry : objects) {
             this.update(txCtx, table, entry);
         }
@@ -200,7 +518,7 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
      */
     @Override
     public void delete(Table table, Object[] values) {
-        TransactionContext txCtx = this.txCtxMap.get(Thread.currentThread().threadId());
+        TransactionContext txCtx = this.currentTransaction();
         IKey pk = KeyUtils.buildRecordKey(table.schema().getPrimaryKeyColumns(), values);
         this.deleteByKey(txCtx, table, pk);
     }
@@ -208,7 +526,7 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
     @Override
     public void deleteByKey(Table table, Object[] keyValues) {
         IKey pk = KeyUtils.buildRecordKey(table.schema().getPrimaryKeyColumns(), keyValues);
-        this.deleteByKey(this.txCtxMap.get(Thread.currentThread().threadId()), table, pk);
+        this.deleteByKey(this.currentTransaction(), table, pk);
     }
 
     /**
@@ -237,13 +555,23 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
     @Override
     public boolean exists(PrimaryIndex index, Object[] valuesOfKey){
         IKey pk = KeyUtils.buildRecordKey(index.underlyingIndex().schema().getPrimaryKeyColumns(), valuesOfKey);
-        return index.exists(this.txCtxMap.get(Thread.currentThread().threadId()), pk);
+        return index.exists(this.currentTransaction(), pk);
     }
 
     @Override
     public Object[] lookupByKey(PrimaryIndex index, Object[] valuesOfKey){
         IKey pk = KeyUtils.buildRecordKey(index.underlyingIndex().schema().getPrimaryKeyColumns(), valuesOfKey);
-        return index.lookupByKey(this.txCtxMap.get(Thread.currentThread().threadId()), pk);
+        return index.lookupByKey(this.currentTransaction(), pk);
+    }
+
+    @Override
+    public Object[][] lookupByKeys(PrimaryIndex index, Object[][] valuesOfKeys){
+        int[] pkColumns = index.underlyingIndex().schema().getPrimaryKeyColumns();
+        IKey[] pks = new IKey[valuesOfKeys.length];
+        for(int i = 0; i < valuesOfKeys.length; i++){
+            pks[i] = KeyUtils.buildRecordKey(pkColumns, valuesOfKeys[i]);
+        }
+        return index.lookupByKeys(this.currentTransaction(), pks);
     }
 
     /**
@@ -252,7 +580,7 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
      */
     @Override
     public void insert(Table table, Object[] values){
-        this.doInsert(this.txCtxMap.get(Thread.currentThread().threadId()), table, values);
+        this.doInsert(this.currentTransaction(), table, values);
     }
 
     private Object[] doInsert(TransactionContext txCtx, Table table, Object[] values) {
@@ -286,25 +614,39 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
 
     @Override
     public Object[] insertAndGet(Table table, Object[] values){
-        return this.doInsert(this.txCtxMap.get(Thread.currentThread().threadId()), table, values);
+        return this.doInsert(this.currentTransaction(), table, values);
     }
 
     @Override
     public void upsert(Table table, Object[] values){
         PrimaryIndex index = table.primaryKeyIndex();
         IKey pk = KeyUtils.buildRecordKey(index.underlyingIndex().schema().getPrimaryKeyColumns(), values);
-        TransactionContext txCtx = this.txCtxMap.get(Thread.currentThread().threadId());
+        TransactionContext txCtx = this.currentTransaction();
+        // the previous record tells whether secondary indexes must be updated or inserted
+        Object[] previousRecord = table.secondaryIndexMap.isEmpty() ? null : index.lookupByKey(txCtx, pk);
         if(index.upsert(txCtx, pk, values)) {
             txCtx.indexes.add(index);
+            this.updateSecondaryIndexes(txCtx, table, pk, previousRecord, values);
             return;
         }
         this.undoTransactionWrites(txCtx);
         throw new RuntimeException("Constraint violation.");
     }
 
+    private void updateSecondaryIndexes(TransactionContext txCtx, Table table, IKey pk, Object[] previousRecord, Object[] values){
+        for (NonUniqueSecondaryIndex secIndex : table.secondaryIndexMap.values()) {
+            txCtx.indexes.add(secIndex);
+            if(previousRecord == null){
+                secIndex.insert(txCtx, pk, values);
+            } else {
+                secIndex.update(txCtx, pk, previousRecord, values);
+            }
+        }
+    }
+
     @Override
     public void update(Table table, Object[] values) {
-        this.update(this.txCtxMap.get(Thread.currentThread().threadId()), table, values);
+        this.update(this.currentTransaction(), table, values);
     }
 
     /**
@@ -314,6 +656,7 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
     private void update(TransactionContext txCtx, Table table, Object[] values){
         PrimaryIndex index = table.primaryKeyIndex();
         IKey pk = KeyUtils.buildRecordKey(index.underlyingIndex().schema().getPrimaryKeyColumns(), values);
+        Object[] previousRecord = table.secondaryIndexMap.isEmpty() ? null : index.lookupByKey(txCtx, pk);
         if(!index.update(txCtx, pk, values)){
             this.undoTransactionWrites(txCtx);
             throw new RuntimeException("Primary key constraint violation. Table: "+table.getName()+" Key: "+pk);
@@ -323,6 +666,9 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
             throw new RuntimeException("Foreign key constraint violation. Table: "+table.getName()+" Key: "+pk);
         }
         txCtx.indexes.add(index);
+        if(previousRecord != null) {
+            this.updateSecondaryIndexes(txCtx, table, pk, previousRecord, values);
+        }
     }
 
     /**
@@ -337,88 +683,99 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
 
     /****** SCAN OPERATORS *******/
 
-    /*
-     * Simple implementation to make package query work
-     * disaggregate the index choice, limit, aka query details, from the operator
+    /**
+     * The key values follow the order of the index columns. Other predicates are left to the filter
      */
-    public MemoryRefNode run(List<WherePredicate> wherePredicates,
-                             IndexGroupByMinWithProjection operator){
-        return null; // operator.run();
-    }
-
     private IKey getIndexKeysFromWhereClause(List<WherePredicate> wherePredicates, IMultiVersionIndex index){
-        int i = 0;
-        Object[] keyList = new Object[index.indexColumns().length];
-        List<WherePredicate> wherePredicatesNoIndex = new ArrayList<>(wherePredicates.size());
-        // build filters for only those columns not in selected index
-        for (WherePredicate wherePredicate : wherePredicates) {
-            // not found, then build filter
-            if (index.containsColumn(wherePredicate.columnReference.columnPosition)) {
-                keyList[i] = wherePredicate.value;
-                i++;
+        int[] indexColumns = index.indexColumns();
+        Object[] keyList = new Object[indexColumns.length];
+        for(int i = 0; i < indexColumns.length; i++){
+            for (WherePredicate wherePredicate : wherePredicates) {
+                if (wherePredicate.columnReference.columnPosition == indexColumns[i]
+                        && wherePredicate.expression == ExpressionTypeEnum.EQUALS) {
+                    keyList[i] = wherePredicate.value;
+                    break;
+                }
             }
         }
         return KeyUtils.buildIndexKey(keyList);
     }
 
-    public MemoryRefNode run(List<WherePredicate> wherePredicates,
-                             IndexScanWithProjection operator){
-        /* COMMENTED FOR NOW
-        int i = 0;
-        Object[] keyList = new Object[operator.index.columns().length];
-        List<WherePredicate> wherePredicatesNoIndex = new ArrayList<>(wherePredicates.size());
-        // build filters for only those columns not in selected index
-        for (WherePredicate wherePredicate : wherePredicates) {
-            // not found, then build filter
-            if(operator.index.containsColumn( wherePredicate.columnReference.columnPosition )){
-                keyList[i] = wherePredicate.value;
-                i++;
-            } else {
-                wherePredicatesNoIndex.add(wherePredicate);
-            }
-        }
-
-         build input
-        IKey inputKey = KeyUtils.buildKey( keyList );
-
-        FilterContext filterContext;
-        if(!wherePredicatesNoIndex.isEmpty()) {
-            filterContext = FilterContextBuilder.build(wherePredicatesNoIndex);
-//            return operator.run( table.underlyingPrimaryKeyIndex(), filterContext, inputKey );
-            return operator.run( filterContext, inputKey );
-        }
-        return operator.run(inputKey);
-         */
-        return null;
-    }
-
-    public MemoryRefNode run(Table table,
-                             List<WherePredicate> wherePredicates,
-                             FullScanWithProjection operator){
-        FilterContext filterContext = FilterContextBuilder.build(wherePredicates);
-        return null; //operator.run( table.underlyingPrimaryKeyIndex(), filterContext );
-    }
-
     /**
      * Must log the updates in a separate file. no need for WAL, no need to store before and after
      * Only log those data versions until the corresponding batch.
      * TIDs are not necessarily a sequence.
      */
     @Override
-    public void checkpoint(long maxTid){
-        LOGGER.log(INFO, "Checkpoint for max TID "+maxTid+" started at "+System.currentTimeMillis());
-        if(this.checkpointing) {
-            for (Table table : this.catalog.values()) {
-                LOGGER.log(INFO, "Checkpointing table "+table.getName());
-                table.primaryKeyIndex().checkpoint(maxTid);
-            }
-        } else {
+    public void checkpoint(long batch, long maxTid){
+        this.checkpointAsync(batch, maxTid).join();
+    }
+
+    /**
+     * Tables are checkpointed in parallel, each after its checkpoint of the previous batch completes
+     */
+    @Override
+    public synchronized CompletableFuture<Void> checkpointAsync(long batch, long maxTid){
+        long initTs = System.currentTimeMillis();
+        LOGGER.log(INFO, "Checkpoint for batch "+batch+" and max TID "+maxTid+" started at "+initTs);
+        if(!this.checkpointing) {
             LOGGER.log(INFO, "Checkpoint disabled. Starting only garbage collection for max TID "+maxTid);
-            for (Table table : this.catalog.values()) {
-                table.primaryKeyIndex().garbageCollection(maxTid);
+        }
+        CompletableFuture<?>[] tableCheckpoints = new CompletableFuture<?>[this.catalog.size()];
+        int i = 0;
+        for (Table table : this.catalog.values()) {
+            CompletableFuture<Void> tableCheckpoint = this.lastCheckpointPerTable
+                    .getOrDefault(table.getName(), CompletableFuture.completedFuture(null))
+                    // a failed checkpoint must not prevent the next ones
+                    .exceptionally(ignored -> null)
+                    .thenRunAsync(() -> this.checkpoint(table, batch, maxTid), this.checkpointExecutor);
+            this.lastCheckpointPerTable.put(table.getName(), tableCheckpoint);
+            tableCheckpoints[i] = tableCheckpoint;
+            i++;
+        }
+        return CompletableFuture.allOf(tableCheckpoints).whenComplete((ignored, e) -> {
+            if(e != null){
+                LOGGER.log(ERROR, "Checkpoint for max TID "+maxTid+" failed: "+e.getMessage());
+                return;
             }
+            LOGGER.log(INFO, "Checkpoint for max TID "+maxTid+" finished in "+(System.currentTimeMillis() - initTs)+" ms");
+        });
+    }
+
+    private void checkpoint(Table table, long batch, long maxTid){
+        if(this.checkpointing) {
+            LOGGER.log(INFO, "Checkpointing table "+table.getName());
+            table.primaryKeyIndex().checkpoint(batch, maxTid);
+            this.retireBuffers(table);
+        } else {
+            table.primaryKeyIndex().garbageCollection(maxTid);
+        }
+        this.checkpointSecondaryIndexes(table, maxTid);
+    }
+
+    /**
+     * Transactions in flight may hold addresses into the buffers replaced while the checkpoint grew the index
+     * and into the off-heap versions discarded by the checkpoint
+     */
+    private void retireBuffers(Table table){
+        PrimaryIndex primaryIndex = table.primaryKeyIndex();
+        Runnable releaseVersions = primaryIndex.drainDiscardedVersions();
+        List<RecordBufferContext> retiredBuffers = primaryIndex.underlyingIndex() instanceof UniqueHashBufferIndex bufferIndex ?
+                bufferIndex.drainRetiredBuffers() : List.of();
+        if(retiredBuffers.isEmpty() && releaseVersions == null){
+            this.epochs.reclaim();
+            return;
+        }
+        this.epochs.retire(() -> {
+            retiredBuffers.forEach(RecordBufferContext::close);
+            if(releaseVersions != null) releaseVersions.run();
+        });
+    }
+
+    private void checkpointSecondaryIndexes(Table table, long maxTid){
+        for(NonUniqueSecondaryIndex secIdx : table.secondaryIndexMap.values()){
+            secIdx.checkpoint(maxTid);
         }
-        LOGGER.log(INFO, "Checkpoint for max TID "+maxTid+" finished at "+System.currentTimeMillis());
     }
 
     /**
@@ -428,19 +785,43 @@ public final class TransactionManager implements OperationalAPI, ITransactionMan
      */
     @Override
     public void commit(){
-        TransactionContext txCtx = this.txCtxMap.get(Thread.currentThread().threadId());
+        TransactionContext txCtx = this.currentTransaction();
         for(var index : txCtx.indexes){
             index.installWrites(txCtx);
         }
     }
 
+    private TransactionContext currentTransaction(){
+        TransactionContext txCtx = CURRENT_TX_CTX.orElse(null);
+        if(txCtx != null) return txCtx;
+        return this.txCtxMap.get(Thread.currentThread().threadId());
+    }
+
+    @Override
+    public void runInTransaction(long tid, int identifier, long lastTid, boolean readOnly, Consumer<ITransactionContext> task) {
+        TransactionContext txCtx = new TransactionContext(tid, lastTid, readOnly);
+        long epoch = this.epochs.enter();
+        try {
+            ScopedValue.where(CURRENT_TX_CTX, txCtx).run(() -> task.accept(txCtx));
+        } finally {
+            this.epochs.leave(epoch);
+        }
+    }
+
+    /**
+     * A transaction started here has no explicit end,
+     * so it is considered in flight until the thread starts the next one
+     */
     @Override
     public ITransactionContext beginTransaction(long tid, int identifier, long lastTid, boolean readOnly) {
         return this.txCtxMap.compute(Thread.currentThread().threadId(),
                 (k,v) -> {
                     if (v != null && tid == 0 && v.tid == 0)
                         return v;
-                    return new TransactionContext(tid, lastTid, readOnly);
+                    if (v != null) this.epochs.leave(v.epoch);
+                    TransactionContext txCtx = new TransactionContext(tid, lastTid, readOnly);
+                    txCtx.epoch = this.epochs.enter();
+                    return txCtx;
                 });
     }
 
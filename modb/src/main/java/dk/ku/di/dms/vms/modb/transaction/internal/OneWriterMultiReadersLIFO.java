@@ -12,7 +12,7 @@ package dk.ku.di.dms.vms.modb.transaction.internal;
  * @param <K> {@link dk.ku.di.dms.vms.modb.common.transaction.TransactionId}
  * @param <V> {@link dk.ku.di.dms.vms.modb.transaction.multiversion.TransactionWrite}
  */
-public sealed class OneWriterMultiReadersLIFO<K extends Comparable<K>,V> permits OperationSetOfKey {
+public final class OneWriterMultiReadersLIFO<K extends Comparable<K>,V> {
 
     private volatile Entry<K,V> head;
 
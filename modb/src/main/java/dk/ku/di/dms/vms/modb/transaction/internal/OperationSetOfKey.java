@@ -3,13 +3,38 @@ package dk.ku.di.dms.vms.modb.transaction.internal;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.TransactionWrite;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.WriteType;
 
+import java.util.function.Consumer;
+
 /**
  * The set of operations applied to a given index key
  * Maybe the references to DeleteOp and InsertOp are not necessary.
  * Since we have the last write type and the cached entity,
  * they naturally reference the insert (or last updated)...
+ * The writes are kept in parallel arrays of TIDs and writes, in ascending order of TID,
+ * so the version visible to a TID is found by binary search.
+ * Same assumptions of {@link OneWriterMultiReadersLIFO}:
+ * (i) There is only one writer at every single time.
+ * (ii) Readers never read the writes of an on-flight task, unless it is the writer itself.
+ * Besides the writer, the garbage collection may concurrently discard versions no longer visible.
+ * Positions are logical, i.e., they do not change when the arrays are replaced on growth.
+ * Discarded positions are only reclaimed on growth, so concurrent readers never observe a slot being cleared.
  */
-public final class OperationSetOfKey extends OneWriterMultiReadersLIFO<Long, TransactionWrite> {
+public final class OperationSetOfKey {
+
+    private static final int INITIAL_CAPACITY = 2;
+
+    /**
+     * @param offset The logical position of the first element of the arrays
+     */
+    private record Versions(int offset, long[] tids, TransactionWrite[] writes){}
+
+    private volatile Versions versions;
+
+    // logical position of the oldest version not discarded
+    private volatile int start;
+
+    // logical position after the newest version
+    private volatile int end;
 
     /**
      * Nothing impedes the user from deleting and inserting again the same record.
@@ -21,6 +46,140 @@ public final class OperationSetOfKey extends OneWriterMultiReadersLIFO<Long, Tra
 
     public OperationSetOfKey(WriteType initialWriteType){
         this.lastWriteType = initialWriteType;
+        this.versions = new Versions(0, new long[INITIAL_CAPACITY], new TransactionWrite[INITIAL_CAPACITY]);
+    }
+
+    /**
+     * The TID must be higher than the TIDs already in the set
+     */
+    public void put(long tid, TransactionWrite write){
+        int end = this.end;
+        Versions versions = this.versions;
+        int pos = end - versions.offset;
+        if(pos == versions.tids.length){
+            versions = this.grow(versions, end);
+            pos = end - versions.offset;
+        }
+        versions.writes[pos] = write;
+        versions.tids[pos] = tid;
+        // only now readers can see the write
+        this.end = end + 1;
+    }
+
+    /**
+     * The arrays are not modified in place, since readers may be on them.
+     * The versions discarded are left out of the new arrays.
+     */
+    private Versions grow(Versions versions, int end){
+        int start = Math.max(this.start, versions.offset);
+        int size = end - start;
+        int capacity = size < versions.tids.length / 2 ? versions.tids.length : versions.tids.length << 1;
+        long[] tids = new long[capacity];
+        TransactionWrite[] writes = new TransactionWrite[capacity];
+        System.arraycopy(versions.tids, start - versions.offset, tids, 0, size);
+        System.arraycopy(versions.writes, start - versions.offset, writes, 0, size);
+        Versions newVersions = new Versions(start, tids, writes);
+        this.versions = newVersions;
+        return newVersions;
+    }
+
+    /**
+     * Removes the newest write. Must only be called by the writer.
+     */
+    public void poll(){
+        assert this.end > this.start;
+        this.end = this.end - 1;
+    }
+
+    /**
+     * {@return the newest write, or null if there is none}
+     */
+    public TransactionWrite peak(){
+        int end = this.end;
+        Versions versions = this.versions;
+        if(end <= Math.max(this.start, versions.offset)) return null;
+        return versions.writes[end - 1 - versions.offset];
+    }
+
+    /**
+     * Gets the write of the specified TID; if no such write
+     * exists, returns the write of the greatest TID less than the specified
+     * TID; if no such write exists, returns {@code null}.
+     */
+    public TransactionWrite floorEntry(long tid) {
+        // the end must be read first, so the arrays read hold the position
+        int end = this.end;
+        Versions versions = this.versions;
+        int pos = this.floorPosition(versions, Math.max(this.start, versions.offset), end, tid);
+        if(pos == -1) return null;
+        return versions.writes[pos - versions.offset];
+    }
+
+    /**
+     * {@return the logical position of the greatest TID equal or below the TID given, or -1 if none}
+     */
+    private int floorPosition(Versions versions, int start, int end, long tid){
+        long[] tids = versions.tids;
+        int low = start - versions.offset;
+        int high = end - 1 - versions.offset;
+        int pos = -1;
+        while(low <= high){
+            int mid = (low + high) >>> 1;
+            if(tids[mid] <= tid){
+                pos = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return pos == -1 ? -1 : pos + versions.offset;
+    }
+
+    /**
+     * Discards the versions older than the version visible to the TID.
+     * Method is used to remove TIDs that cannot be seen anymore
+     * @return the version visible to the TID, or null if there is none
+     */
+    public TransactionWrite removeUpTo(long tid){
+        return this.removeUpTo(tid, null);
+    }
+
+    /**
+     * @param discarded Applied to each version discarded, e.g., to release its memory. May be null
+     */
+    public TransactionWrite removeUpTo(long tid, Consumer<TransactionWrite> discarded){
+        int end = this.end;
+        Versions versions = this.versions;
+        int start = Math.max(this.start, versions.offset);
+        int pos = this.floorPosition(versions, start, end, tid);
+        if(pos == -1) return null;
+        TransactionWrite write = versions.writes[pos - versions.offset];
+        this.start = pos;
+        if(discarded != null){
+            for(int i = start; i < pos; i++){
+                discarded.accept(versions.writes[i - versions.offset]);
+            }
+        }
+        return write;
+    }
+
+    public int size(){
+        return this.end - this.start;
+    }
+
+    @Override
+    public String toString(){
+        int end = this.end;
+        Versions versions = this.versions;
+        String lineSeparator = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        for(int pos = end - 1; pos >= Math.max(this.start, versions.offset); pos--){
+            sb.append(versions.tids[pos - versions.offset])
+                    .append(" : ")
+                    .append(versions.writes[pos - versions.offset])
+                    .append(lineSeparator);
+        }
+        return sb.toString();
     }
 
 }
@@ -0,0 +1,65 @@
+package dk.ku.di.dms.vms.modb.transaction.internal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Epoch-based reclamation of memory that transactions read without locks,
+ * e.g., the buffer of an index replaced by a resize.
+ * A transaction enters the current epoch before it reads anything and leaves it when it finishes.
+ * Memory retired is tagged with the current epoch, which is then advanced,
+ * so the transactions that enter afterward cannot reach it.
+ * It is released once no transaction that entered that epoch (or an older one) is in flight.
+ */
+public final class TransactionEpochs {
+
+    private record Retired(long epoch, Runnable release){}
+
+    private final AtomicLong epoch = new AtomicLong();
+
+    // number of transactions in flight per epoch entered
+    private final ConcurrentSkipListMap<Long, Integer> inFlight = new ConcurrentSkipListMap<>();
+
+    // in ascending order of epoch
+    private final Deque<Retired> retired = new ArrayDeque<>();
+
+    /**
+     * @return the epoch entered, to be given back on {@link #leave(long)}
+     */
+    public long enter(){
+        long epoch = this.epoch.get();
+        this.inFlight.merge(epoch, 1, Integer::sum);
+        return epoch;
+    }
+
+    public void leave(long epoch){
+        this.inFlight.computeIfPresent(epoch, (ignored, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * The memory must already be unreachable to the transactions that enter from now on
+     */
+    public synchronized void retire(Runnable release){
+        this.retired.addLast(new Retired(this.epoch.getAndIncrement(), release));
+        this.reclaim();
+    }
+
+    /**
+     * Releases the memory retired before the oldest epoch in flight
+     */
+    public synchronized void reclaim(){
+        Map.Entry<Long, Integer> oldest = this.inFlight.firstEntry();
+        long oldestInFlight = oldest == null ? Long.MAX_VALUE : oldest.getKey();
+        while(!this.retired.isEmpty() && this.retired.peekFirst().epoch < oldestInFlight){
+            this.retired.pollFirst().release.run();
+        }
+    }
+
+    public synchronized int numRetired(){
+        return this.retired.size();
+    }
+
+}
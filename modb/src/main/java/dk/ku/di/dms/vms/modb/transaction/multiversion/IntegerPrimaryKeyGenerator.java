@@ -7,7 +7,14 @@ public class IntegerPrimaryKeyGenerator implements IPrimaryKeyGenerator<Integer>
     private final AtomicInteger sequencer;
 
     public IntegerPrimaryKeyGenerator() {
-        this.sequencer = new AtomicInteger(0);
+        this(0);
+    }
+
+    /**
+     * Used on recovery, so generated keys do not collide with the keys found in the recovered state
+     */
+    public IntegerPrimaryKeyGenerator(int initialValue) {
+        this.sequencer = new AtomicInteger(initialValue);
     }
 
     @Override
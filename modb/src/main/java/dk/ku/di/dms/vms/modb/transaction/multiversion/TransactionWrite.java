@@ -1,23 +1,50 @@
 package dk.ku.di.dms.vms.modb.transaction.multiversion;
 
+import dk.ku.di.dms.vms.modb.storage.record.OffHeapRecordPool;
+
 public final class TransactionWrite {
 
     private static final Object[] DUMB = new Object[0];
 
     public final WriteType type; // if delete operation, record is not necessary
-    public final Object[] record; // the whole record
+    private final Object[] record; // the whole record. null if kept off-heap
+
+    // the pool holding the record off-heap. null if the record is on heap
+    private final OffHeapRecordPool pool;
+    // address of the entry in the pool. -1 if the record is on heap
+    public final long address;
 
     public static TransactionWrite upsert(WriteType type, Object[] record) {
-        return new TransactionWrite(type, record);
+        return new TransactionWrite(type, record, null, -1);
+    }
+
+    public static TransactionWrite upsert(WriteType type, OffHeapRecordPool pool, long address) {
+        return new TransactionWrite(type, null, pool, address);
     }
 
     public static TransactionWrite delete(WriteType type) {
-        return new TransactionWrite(type, DUMB);
+        return new TransactionWrite(type, DUMB, null, -1);
     }
 
-    private TransactionWrite(WriteType type, Object[] record) {
+    private TransactionWrite(WriteType type, Object[] record, OffHeapRecordPool pool, long address) {
         this.type = type;
         this.record = record;
+        this.pool = pool;
+        this.address = address;
+    }
+
+    public boolean isOffHeap(){
+        return this.pool != null;
+    }
+
+    /**
+     * A record kept off-heap is read into a new array on every call.
+     * Readers that do not need the whole record should read the entry through a
+     * {@link dk.ku.di.dms.vms.modb.storage.record.RecordReference} instead
+     */
+    public Object[] record(){
+        if(this.pool != null) return this.pool.read(this.address);
+        return this.record;
     }
 
 }
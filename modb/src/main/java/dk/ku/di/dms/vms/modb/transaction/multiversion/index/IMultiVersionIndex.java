@@ -69,4 +69,16 @@ public interface IMultiVersionIndex {
 
     void reset();
 
+    /**
+     * Estimated number of records reachable through the index. Used by the planner to cost access paths
+     */
+    long cardinality();
+
+    /**
+     * Estimated number of distinct keys. Unique indexes have as many keys as records
+     */
+    default long distinctKeys(){
+        return this.cardinality();
+    }
+
 }
@@ -1,25 +1,49 @@
 package dk.ku.di.dms.vms.modb.transaction.multiversion.index;
 
-import dk.ku.di.dms.vms.modb.common.data_structure.Tuple;
+import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
 import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
 import dk.ku.di.dms.vms.modb.index.interfaces.ReadWriteIndex;
+import dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueIndex;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
 import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.WriteType;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.function.BiFunction;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
 
 /**
- * Wrapper of a non unique index for multi versioning concurrency control
+ * Wrapper of a non unique index for multi versioning concurrency control.
+ * The underlying index is a superset of the associations visible to any transaction:
+ * associations are added as soon as a transaction writes, but only removed
+ * on checkpoint, after no transaction can read the previous versions anymore.
+ * Thus, the iterators check every record visible against the key.
  */
 public final class NonUniqueSecondaryIndex implements IMultiVersionIndex {
 
-    private static final Deque<Map<IKey, Tuple<Object[], WriteType>>> WRITE_SET_BUFFER = new ConcurrentLinkedDeque<>();
+    private static final System.Logger LOGGER = System.getLogger(NonUniqueSecondaryIndex.class.getName());
+
+    /**
+     * @param previousRecord Only set by updates
+     * @param added Whether the association was added by this write, so it must be removed on abort
+     */
+    private record SecondaryWrite(IKey primaryKey, Object[] record, Object[] previousRecord, WriteType type, boolean added){}
+
+    /**
+     * An association no longer visible to transactions after the TID
+     */
+    private record PendingRemoval(long tid, IKey key, IKey primaryKey, Object[] record){}
+
+    private static final Deque<List<SecondaryWrite>> WRITE_SET_BUFFER = new ConcurrentLinkedDeque<>();
 
-    private final Map<Long, Map<IKey, Tuple<Object[], WriteType>>> writeSet;
+    private final Map<Long, List<SecondaryWrite>> writeSet;
+
+    private final Queue<PendingRemoval> pendingRemovals;
 
     // pointer to primary index
     // necessary because of concurrency control
@@ -27,24 +51,28 @@ public final class NonUniqueSecondaryIndex implements IMultiVersionIndex {
     private final PrimaryIndex primaryIndex;
 
     // a non-unique hash index
-    private final ReadWriteIndex<IKey> underlyingIndex;
-
-    // key: formed by secondary indexed columns
-    // value: the corresponding pks
-    private final Map<IKey, Set<IKey>> keyMap;
+    private final NonUniqueIndex underlyingIndex;
 
-    public NonUniqueSecondaryIndex(PrimaryIndex primaryIndex, ReadWriteIndex<IKey> underlyingIndex) {
+    public NonUniqueSecondaryIndex(PrimaryIndex primaryIndex, NonUniqueIndex underlyingIndex) {
         this.writeSet = new ConcurrentHashMap<>(1024*100);
+        this.pendingRemovals = new ConcurrentLinkedQueue<>();
         this.primaryIndex = primaryIndex;
         this.underlyingIndex = underlyingIndex;
-        // prevent a rehash to return null on get call
-        this.keyMap = new ConcurrentHashMap<>(1024*100);
     }
 
     public ReadWriteIndex<IKey> getUnderlyingIndex(){
         return this.underlyingIndex;
     }
 
+    private IKey keyOf(Object[] record){
+        return KeyUtils.buildRecordKey(this.underlyingIndex.columns(), record);
+    }
+
+    private void appendWrite(TransactionContext txCtx, SecondaryWrite write){
+        this.writeSet.computeIfAbsent(txCtx.tid, (ignored) ->
+                Objects.requireNonNullElseGet(WRITE_SET_BUFFER.poll(), ArrayList::new)).add(write);
+    }
+
     /**
      * Called by the primary key index
      * In this method, the secondary key is formed
@@ -54,46 +82,54 @@ public final class NonUniqueSecondaryIndex implements IMultiVersionIndex {
      */
     @Override
     public boolean insert(TransactionContext txCtx, IKey primaryKey, Object[] record){
-        IKey secKey = KeyUtils.buildRecordKey( this.underlyingIndex.columns(), record );
-        Set<IKey> set = this.keyMap.computeIfAbsent(secKey, (ignored) -> ConcurrentHashMap.newKeySet());
-        var txWriteSet = this.writeSet.computeIfAbsent(txCtx.tid, (ignored) ->
-                Objects.requireNonNullElseGet(WRITE_SET_BUFFER.poll(), HashMap::new));
-        txWriteSet.put(primaryKey, new Tuple<>(record, WriteType.INSERT));
-        set.add(primaryKey);
+        boolean added = this.underlyingIndex.insert(this.keyOf(record), primaryKey, record);
+        this.appendWrite(txCtx, new SecondaryWrite(primaryKey, record, null, WriteType.INSERT, added));
         return true;
     }
 
+    /**
+     * The previous record is not known, so a previous association remains
+     * in the index until the record is deleted. Prefer {@link #update(TransactionContext, IKey, Object[], Object[])}
+     */
     @Override
-    public void undoTransactionWrites(TransactionContext txCtx){
-        Map<IKey, Tuple<Object[], WriteType>> txWriteSet = this.writeSet.remove(txCtx.tid);
-        // var writes = WRITE_SET.get().entrySet().stream().filter(p->p.getValue().t2()==WriteType.INSERT).toList();
-        for(Map.Entry<IKey, Tuple<Object[], WriteType>> entry : txWriteSet.entrySet()){
-            if(entry.getValue().t2() != WriteType.INSERT) continue;
-            IKey secKey = KeyUtils.buildRecordKey( this.underlyingIndex.columns(), entry.getValue().t1() );
-            Set<IKey> set = this.keyMap.get(secKey);
-            set.remove(entry.getKey());
+    public boolean update(TransactionContext txCtx, IKey primaryKey, Object[] record) {
+        return this.update(txCtx, primaryKey, null, record);
+    }
+
+    /**
+     * @param previousRecord The record visible to the transaction before the update
+     */
+    public boolean update(TransactionContext txCtx, IKey primaryKey, Object[] previousRecord, Object[] record) {
+        if(previousRecord != null && this.keyOf(previousRecord).equals(this.keyOf(record))) {
+            // the association is not affected
+            return true;
         }
-        this.clearAndReturnWriteSetToBuffer(txWriteSet);
+        boolean added = this.underlyingIndex.insert(this.keyOf(record), primaryKey, record);
+        this.appendWrite(txCtx, new SecondaryWrite(primaryKey, record, previousRecord, WriteType.UPDATE, added));
+        return true;
     }
 
     @Override
-    public boolean update(TransactionContext txCtx, IKey key, Object[] record) {
-        // KEY_WRITES.get().put(key, new Tuple<>(record, WriteType.UPDATE));
-        // key already there
-        throw new RuntimeException("Not supported");
+    public void undoTransactionWrites(TransactionContext txCtx){
+        List<SecondaryWrite> txWriteSet = this.writeSet.remove(txCtx.tid);
+        if(txWriteSet == null) return;
+        for(SecondaryWrite write : txWriteSet){
+            if(!write.added()) continue;
+            this.underlyingIndex.delete(this.keyOf(write.record()), write.primaryKey(), write.record());
+        }
+        this.clearAndReturnWriteSetToBuffer(txWriteSet);
     }
 
     @Override
-    public boolean remove(TransactionContext txCtx, IKey key) {
-        // how to know the sec idx if we don't have the record?
-        throw new RuntimeException("Not supported");
+    public boolean remove(TransactionContext txCtx, IKey primaryKey) {
+        // the record must be read before the primary index removes it
+        Object[] record = this.primaryIndex.lookupByKey(txCtx, primaryKey);
+        if(record == null) return false;
+        return this.remove(txCtx, primaryKey, record);
     }
 
-    public boolean remove(TransactionContext txCtx, IKey key, Object[] record){
-        // IKey secKey = KeyUtils.buildRecordKey( this.underlyingIndex.columns(), record );
-        var txWriteSet = this.writeSet.computeIfAbsent(txCtx.tid, k ->
-                Objects.requireNonNullElseGet(WRITE_SET_BUFFER.poll(), HashMap::new));
-        txWriteSet.put(key, new Tuple<>(record, WriteType.DELETE));
+    public boolean remove(TransactionContext txCtx, IKey primaryKey, Object[] record){
+        this.appendWrite(txCtx, new SecondaryWrite(primaryKey, record, null, WriteType.DELETE, false));
         return true;
     }
 
@@ -105,102 +141,125 @@ public final class NonUniqueSecondaryIndex implements IMultiVersionIndex {
     @Override
     public void reset(){
         this.writeSet.clear();
-        this.keyMap.clear();
+        this.pendingRemovals.clear();
+        this.underlyingIndex.reset();
     }
 
+    /**
+     * Associations replaced or deleted remain visible to transactions reading previous versions
+     */
     @Override
     public void installWrites(TransactionContext txCtx) {
-        // just remove the delete since the insert is already in the keyMap
-        Map<IKey, Tuple<Object[], WriteType>> writeSet = this.writeSet.remove(txCtx.tid);
-        if(writeSet == null) {
-            System.out.println("Transaction ID "+txCtx.tid+" could not be found in write set. Perhaps concurrent threads are set to the same TID?");
+        List<SecondaryWrite> txWriteSet = this.writeSet.remove(txCtx.tid);
+        if(txWriteSet == null) {
+            LOGGER.log(WARNING, "Transaction ID "+txCtx.tid+" could not be found in write set. Perhaps concurrent threads are set to the same TID?");
             return;
         }
-        for(var entry : writeSet.entrySet()){
-            if(entry.getValue().t2() != WriteType.DELETE) continue;
-            IKey secKey = KeyUtils.buildRecordKey( this.underlyingIndex.columns(), entry.getValue().t1() );
-            Set<IKey> set = this.keyMap.get(secKey);
-            set.remove(entry.getKey());
+        for(SecondaryWrite write : txWriteSet){
+            switch (write.type()){
+                case UPDATE -> {
+                    if(write.previousRecord() != null){
+                        this.pendingRemovals.add(new PendingRemoval(txCtx.tid, this.keyOf(write.previousRecord()), write.primaryKey(), write.previousRecord()));
+                    }
+                }
+                case DELETE -> this.pendingRemovals.add(new PendingRemoval(txCtx.tid, this.keyOf(write.record()), write.primaryKey(), write.record()));
+            }
+        }
+        this.clearAndReturnWriteSetToBuffer(txWriteSet);
+    }
+
+    /**
+     * Removes the associations replaced or deleted up to the TID given.
+     * A transaction may concurrently associate the primary key to the same key again,
+     * so the association is restored if the last version of the record still holds the key.
+     */
+    public void checkpoint(long maxTid){
+        int numRemovals = 0;
+        Iterator<PendingRemoval> it = this.pendingRemovals.iterator();
+        while(it.hasNext()){
+            PendingRemoval removal = it.next();
+            if(removal.tid() > maxTid) continue;
+            it.remove();
+            if(!this.underlyingIndex.delete(removal.key(), removal.primaryKey(), removal.record())) continue;
+            Object[] lastRecord = this.primaryIndex.getRecord(Long.MAX_VALUE, removal.primaryKey());
+            if(lastRecord != null && this.keyOf(lastRecord).equals(removal.key())){
+                this.underlyingIndex.insert(removal.key(), removal.primaryKey(), lastRecord);
+            } else {
+                numRemovals++;
+            }
         }
-        this.clearAndReturnWriteSetToBuffer(writeSet);
+        if(numRemovals > 0) {
+            LOGGER.log(INFO, "Removed " + numRemovals + " entries from secondary index " + this.underlyingIndex.key());
+        }
+    }
+
+    /**
+     * Builds the associations from the records of the primary index, e.g., after recovering it from a checkpoint
+     */
+    public void rebuild(){
+        if(!(this.primaryIndex.underlyingIndex() instanceof UniqueHashBufferIndex bufferIndex)) return;
+        int[] pkColumns = bufferIndex.schema().getPrimaryKeyColumns();
+        bufferIndex.forEachRecord(address -> {
+            Object[] record = bufferIndex.readFromIndex(address + Schema.RECORD_HEADER);
+            this.underlyingIndex.insert(this.keyOf(record), KeyUtils.buildRecordKey(pkColumns, record), record);
+        });
+        LOGGER.log(INFO, "Secondary index "+this.underlyingIndex.key()+" rebuilt with "+this.underlyingIndex.size()+" entries");
     }
 
-    private void clearAndReturnWriteSetToBuffer(Map<IKey, Tuple<Object[], WriteType>> writeSet) {
+    private void clearAndReturnWriteSetToBuffer(List<SecondaryWrite> writeSet) {
         writeSet.clear();
         WRITE_SET_BUFFER.addLast(writeSet);
     }
 
-    private static final Iterator<Object[]> EMPTY_ITERATOR = Collections.emptyIterator();
-
     @Override
     public Iterator<Object[]> iterator(TransactionContext txCtx, IKey[] keys) {
-        return new MultiKeySecondaryIndexIterator(txCtx.readOnly ? txCtx.lastTid : txCtx.tid, keys);
+        return new SecondaryIndexIterator(txCtx.readOnly ? txCtx.lastTid : txCtx.tid, keys);
     }
 
     @Override
     public Iterator<Object[]> iterator(TransactionContext txCtx, IKey key) {
-        if(!this.keyMap.containsKey(key)) return EMPTY_ITERATOR;
-        return new SecondaryIndexIterator(txCtx.readOnly ? txCtx.lastTid : txCtx.tid, this.keyMap.get(key).iterator(), this.primaryIndex::getRecord);
+        return this.iterator(txCtx, new IKey[]{ key });
     }
 
-    private static final class SecondaryIndexIterator implements Iterator<Object[]> {
-
-        private final Iterator<IKey> iterator;
-        private Object[] currRecord;
-        private final long tid;
-        private final BiFunction<Long,IKey,Object[]> getRecordFunc;
-
-        public SecondaryIndexIterator(long tid,
-                                      Iterator<IKey> iterator,
-                                      BiFunction<Long,IKey,Object[]> getRecordFunc){
-            this.tid = tid;
-            this.iterator = iterator;
-            this.getRecordFunc = getRecordFunc;
-        }
-
-        @Override
-        public boolean hasNext() {
-            while(this.iterator.hasNext()){
-                this.currRecord = this.getRecordFunc.apply(this.tid, this.iterator.next());
-                if(this.currRecord != null) return true;
-            }
-            return false;
-        }
-
-        @Override
-        public Object[] next() {
-            return this.currRecord;
-        }
+    /**
+     * The primary keys associated to the key. Associations replaced or deleted are included,
+     * so the caller must check the key against the version of the record visible
+     */
+    public Iterator<IKey> primaryKeys(IKey key){
+        return this.underlyingIndex.iterator(key);
+    }
 
+    public PrimaryIndex primaryIndex(){
+        return this.primaryIndex;
     }
 
-    private final class MultiKeySecondaryIndexIterator implements Iterator<Object[]> {
+    private final class SecondaryIndexIterator implements Iterator<Object[]> {
 
-        private Iterator<IKey> currentIterator;
-        private Object[] currRecord;
         private final IKey[] keys;
-        private int idx;
         private final long tid;
+        private int idx;
+        private Iterator<IKey> currentIterator;
+        private Object[] currRecord;
 
-        public MultiKeySecondaryIndexIterator(long tid, IKey[] keys){
+        public SecondaryIndexIterator(long tid, IKey[] keys){
             this.tid = tid;
-            this.idx = 0;
             this.keys = keys;
-            this.currentIterator = keyMap.getOrDefault(keys[this.idx], Set.of()).iterator();
+            this.idx = 0;
+            this.currentIterator = underlyingIndex.iterator(keys[this.idx]);
         }
 
         @Override
         public boolean hasNext() {
-            while(this.currentIterator.hasNext()){
-                this.currRecord = primaryIndex.getRecord(this.tid, this.currentIterator.next());
-                if(this.currRecord != null) return true;
-            }
-            if(this.idx < this.keys.length - 1){
+            while(true) {
+                while (this.currentIterator.hasNext()) {
+                    this.currRecord = primaryIndex.getRecord(this.tid, this.currentIterator.next());
+                    // the association may not be visible to this transaction
+                    if (this.currRecord != null && keyOf(this.currRecord).equals(this.keys[this.idx])) return true;
+                }
+                if (this.idx == this.keys.length - 1) return false;
                 this.idx++;
-                this.currentIterator = keyMap.getOrDefault(this.keys[this.idx], Set.of()).iterator();
-                return this.hasNext();
+                this.currentIterator = underlyingIndex.iterator(this.keys[this.idx]);
             }
-            return false;
         }
 
         @Override
@@ -209,6 +268,19 @@ public final class NonUniqueSecondaryIndex implements IMultiVersionIndex {
         }
     }
 
+    /**
+     * Includes the associations replaced or deleted that are not yet removed on checkpoint
+     */
+    @Override
+    public long cardinality() {
+        return this.underlyingIndex.entries();
+    }
+
+    @Override
+    public long distinctKeys() {
+        return this.underlyingIndex.keys();
+    }
+
     @Override
     public int[] indexColumns() {
         return this.underlyingIndex.columns();
@@ -8,8 +8,9 @@ import dk.ku.di.dms.vms.modb.definition.key.IKey;
 import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
 import dk.ku.di.dms.vms.modb.index.interfaces.ReadWriteIndex;
 import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
+import dk.ku.di.dms.vms.modb.storage.record.OffHeapRecordPool;
+import dk.ku.di.dms.vms.modb.storage.record.RecordReference;
 import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
-import dk.ku.di.dms.vms.modb.transaction.internal.Entry;
 import dk.ku.di.dms.vms.modb.transaction.internal.OperationSetOfKey;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.IPrimaryKeyGenerator;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.TransactionWrite;
@@ -18,6 +19,7 @@ import dk.ku.di.dms.vms.modb.transaction.multiversion.WriteType;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.LongAdder;
 
 import static dk.ku.di.dms.vms.modb.common.constraint.ConstraintConstants.*;
 import static java.lang.System.Logger.Level.*;
@@ -58,15 +60,34 @@ public final class PrimaryIndex implements IMultiVersionIndex {
     // write set of transactions
     private final Map<Long, Set<IKey>> writeSetMap;
 
+    // estimated number of records, for the planner. writes are counted when issued and reverted on abort
+    private final LongAdder cardinality;
+
+    // versions are serialized off-heap in the layout of the underlying index. null if versions are kept on heap
+    private final OffHeapRecordPool versionPool;
+
+    // entries of the versions discarded by checkpoints, not yet released to the pool
+    private long[] discardedVersions;
+
+    private int numDiscardedVersions;
+
     public static PrimaryIndex build(ReadWriteIndex<IKey> primaryKeyIndex) {
-        return new PrimaryIndex(primaryKeyIndex, null);
+        return new PrimaryIndex(primaryKeyIndex, null, false);
     }
 
     public static PrimaryIndex build(ReadWriteIndex<IKey> primaryKeyIndex, IPrimaryKeyGenerator<?> primaryKeyGenerator){
-        return new PrimaryIndex(primaryKeyIndex, primaryKeyGenerator);
+        return new PrimaryIndex(primaryKeyIndex, primaryKeyGenerator, false);
+    }
+
+    /**
+     * @param offHeapVersions Whether the versions written by transactions are kept off-heap until checkpointed.
+     *                        Only applies to a {@link UniqueHashBufferIndex}, whose entries share the layout of the versions
+     */
+    public static PrimaryIndex build(ReadWriteIndex<IKey> primaryKeyIndex, IPrimaryKeyGenerator<?> primaryKeyGenerator, boolean offHeapVersions){
+        return new PrimaryIndex(primaryKeyIndex, primaryKeyGenerator, offHeapVersions);
     }
 
-    private PrimaryIndex(ReadWriteIndex<IKey> primaryKeyIndex, IPrimaryKeyGenerator<?> primaryKeyGenerator) {
+    private PrimaryIndex(ReadWriteIndex<IKey> primaryKeyIndex, IPrimaryKeyGenerator<?> primaryKeyGenerator, boolean offHeapVersions) {
         this.primaryKeyIndex = primaryKeyIndex;
         this.updatesPerKeyMap = new ConcurrentHashMap<>(1024*1000);
         this.primaryKeyGenerator = Optional.ofNullable(primaryKeyGenerator);
@@ -76,6 +97,15 @@ public final class PrimaryIndex implements IMultiVersionIndex {
         } else {
             this.keysToFlush = new Set0<>();
         }
+        this.cardinality = new LongAdder();
+        // records recovered from a checkpoint
+        this.cardinality.add(primaryKeyIndex.size());
+        if(offHeapVersions && primaryKeyIndex instanceof UniqueHashBufferIndex && OffHeapRecordPool.supports(primaryKeyIndex.schema())){
+            this.versionPool = new OffHeapRecordPool(primaryKeyIndex.schema());
+            this.discardedVersions = new long[1024];
+        } else {
+            this.versionPool = null;
+        }
     }
 
     @Override
@@ -101,9 +131,9 @@ public final class PrimaryIndex implements IMultiVersionIndex {
             if( !txCtx.readOnly ){
                 return opSet.lastWriteType != WriteType.DELETE;
             }
-            Entry<Long, TransactionWrite> floorEntry = opSet.floorEntry(txCtx.lastTid);
+            TransactionWrite floorEntry = opSet.floorEntry(txCtx.lastTid);
             if(floorEntry == null) return this.primaryKeyIndex.exists(key);
-            return floorEntry.val().type != WriteType.DELETE;
+            return floorEntry.type != WriteType.DELETE;
         }
         return this.primaryKeyIndex.exists(key);
     }
@@ -218,13 +248,92 @@ public final class PrimaryIndex implements IMultiVersionIndex {
             return this.primaryKeyIndex.lookupByKey(key);
         }
         if(txCtx.readOnly) {
-            Entry<Long, TransactionWrite> entry = operationSet.floorEntry(txCtx.lastTid);
-            return entry != null ? (entry.val().type != WriteType.DELETE ? entry.val().record : null) : null;
+            TransactionWrite entry = operationSet.floorEntry(txCtx.lastTid);
+            // all versions are newer than the snapshot, so the underlying index holds the record visible
+            if(entry == null) return this.primaryKeyIndex.lookupByKey(key);
+            return entry.type != WriteType.DELETE ? entry.record() : null;
         }
         if(operationSet.lastWriteType == WriteType.DELETE) return null;
-        Entry<Long, TransactionWrite> entry = operationSet.floorEntry(txCtx.tid);
-        if(entry != null) return entry.val().record;
-        return null;
+        TransactionWrite entry = operationSet.floorEntry(txCtx.tid);
+        if(entry != null) return entry.record();
+        return this.primaryKeyIndex.lookupByKey(key);
+    }
+
+    /**
+     * Same visibility of {@link #lookupByKey}. The reference is positioned on the version written by a transaction
+     * or on the entry in the buffer of the underlying index, so no column is copied.
+     * @return whether a record is visible to the transaction
+     */
+    public boolean reference(TransactionContext txCtx, IKey key, RecordReference reference){
+        OperationSetOfKey operationSet = this.updatesPerKeyMap.get( key );
+        if (operationSet != null) {
+            TransactionWrite entry;
+            if(txCtx.readOnly){
+                entry = operationSet.floorEntry(txCtx.lastTid);
+            } else {
+                if(operationSet.lastWriteType == WriteType.DELETE) return false;
+                entry = operationSet.floorEntry(txCtx.tid);
+            }
+            if(entry != null){
+                if(entry.type == WriteType.DELETE) return false;
+                if(entry.isOffHeap()){
+                    reference.at(entry.address);
+                } else {
+                    reference.of(entry.record());
+                }
+                return true;
+            }
+        }
+        if(this.primaryKeyIndex instanceof UniqueHashBufferIndex bufferIndex){
+            long address = bufferIndex.address(key);
+            if(address == -1) return false;
+            reference.at(address);
+            return true;
+        }
+        Object[] record = this.primaryKeyIndex.lookupByKey(key);
+        if(record == null) return false;
+        reference.of(record);
+        return true;
+    }
+
+    /**
+     * The keys written through this index, in no particular order. Same keys traversed by the full scan
+     */
+    public Iterator<IKey> keys(){
+        return this.updatesPerKeyMap.keySet().iterator();
+    }
+
+    /**
+     * Same visibility of {@link #lookupByKey}.
+     * Keys without a version visible are resolved by the underlying index in a single multi-get.
+     * @return the records in the order of the keys, null for the keys not visible
+     */
+    public Object[][] lookupByKeys(TransactionContext txCtx, IKey[] keys){
+        Object[][] records = new Object[keys.length][];
+        IKey[] unversionedKeys = new IKey[keys.length];
+        int[] unversionedPositions = new int[keys.length];
+        int numUnversioned = 0;
+        for(int i = 0; i < keys.length; i++){
+            OperationSetOfKey operationSet = this.updatesPerKeyMap.get(keys[i]);
+            TransactionWrite entry = null;
+            if(operationSet != null){
+                if(!txCtx.readOnly && operationSet.lastWriteType == WriteType.DELETE) continue;
+                entry = operationSet.floorEntry(txCtx.readOnly ? txCtx.lastTid : txCtx.tid);
+            }
+            if(entry == null){
+                unversionedKeys[numUnversioned] = keys[i];
+                unversionedPositions[numUnversioned++] = i;
+            } else if(entry.type != WriteType.DELETE){
+                records[i] = entry.record();
+            }
+        }
+        if(numUnversioned == 0) return records;
+        Object[][] unversionedRecords = this.primaryKeyIndex.lookupByKeys(numUnversioned == keys.length ?
+                unversionedKeys : Arrays.copyOf(unversionedKeys, numUnversioned));
+        for(int i = 0; i < numUnversioned; i++){
+            records[unversionedPositions[i]] = unversionedRecords[i];
+        }
+        return records;
     }
 
     /**
@@ -262,7 +371,7 @@ public final class PrimaryIndex implements IMultiVersionIndex {
     }
 
     private void doInsert(TransactionContext txCtx, IKey key, Object[] values, OperationSetOfKey operationSet) {
-        TransactionWrite entry = TransactionWrite.upsert(WriteType.INSERT, values);
+        TransactionWrite entry = this.version(WriteType.INSERT, key, values);
         if(operationSet == null){
             operationSet = new OperationSetOfKey(WriteType.INSERT);
             this.updatesPerKeyMap.put(key, operationSet);
@@ -271,6 +380,14 @@ public final class PrimaryIndex implements IMultiVersionIndex {
         }
         operationSet.put(txCtx.tid, entry);
         this.appendWrite(txCtx, key);
+        this.cardinality.increment();
+    }
+
+    private TransactionWrite version(WriteType type, IKey key, Object[] values){
+        if(this.versionPool != null && OffHeapRecordPool.fits(values)){
+            return TransactionWrite.upsert(type, this.versionPool, this.versionPool.write(key.hashCode(), values));
+        }
+        return TransactionWrite.upsert(type, values);
     }
 
     public boolean upsert(TransactionContext txCtx, IKey key, Object[] values) {
@@ -309,7 +426,7 @@ public final class PrimaryIndex implements IMultiVersionIndex {
     }
 
     private void doUpdate(TransactionContext txCtx, IKey key, Object[] values, OperationSetOfKey operationSet) {
-        TransactionWrite entry = TransactionWrite.upsert(WriteType.UPDATE, values);
+        TransactionWrite entry = this.version(WriteType.UPDATE, key, values);
         if(operationSet == null){
             operationSet = new OperationSetOfKey(WriteType.UPDATE);
             this.updatesPerKeyMap.put(key, operationSet);
@@ -346,11 +463,12 @@ public final class PrimaryIndex implements IMultiVersionIndex {
     public Optional<Object[]> removeOpt(TransactionContext txCtx, IKey key) {
         OperationSetOfKey operationSet = this.updatesPerKeyMap.get( key );
         if (operationSet != null && operationSet.lastWriteType != WriteType.DELETE){
-            Object[] lastRecord = operationSet.peak().val().record;
+            Object[] lastRecord = operationSet.peak().record();
             TransactionWrite entry = TransactionWrite.delete(WriteType.DELETE);
             operationSet.put(txCtx.tid, entry);
             operationSet.lastWriteType = WriteType.DELETE;
             this.appendWrite(txCtx, key);
+            this.cardinality.decrement();
             return Optional.of( lastRecord );
             // does this key even exist? if not, don't even need to save it on transaction metadata
         }
@@ -362,6 +480,7 @@ public final class PrimaryIndex implements IMultiVersionIndex {
             TransactionWrite entry = TransactionWrite.delete(WriteType.DELETE);
             operationSet.put(txCtx.tid, entry);
             this.appendWrite(txCtx, key);
+            this.cardinality.decrement();
             return Optional.of( obj );
         }
         return Optional.empty();
@@ -386,7 +505,16 @@ public final class PrimaryIndex implements IMultiVersionIndex {
         for(IKey key : writeSet) {
             // do we have a record written in the corresponding index? always yes. if no, it is a bug
             OperationSetOfKey operationSetOfKey = this.updatesPerKeyMap.get(key);
+            TransactionWrite entry = operationSetOfKey.peak();
+            switch (entry.type){
+                case INSERT -> this.cardinality.decrement();
+                case DELETE -> this.cardinality.increment();
+            }
             operationSetOfKey.poll();
+            // no other transaction has seen the version
+            if(entry.isOffHeap()){
+                this.versionPool.release(entry.address);
+            }
         }
         writeSet.clear();
         WRITE_SET_BUFFER.addLast(writeSet);
@@ -399,7 +527,18 @@ public final class PrimaryIndex implements IMultiVersionIndex {
             this.primaryKeyIndex.reset();
         }
         this.updatesPerKeyMap.clear();
+        if(this.versionPool != null){
+            this.numDiscardedVersions = 0;
+            this.versionPool.reset();
+        }
         this.keysToFlush.clear();
+        this.cardinality.reset();
+        this.cardinality.add(this.primaryKeyIndex.size());
+    }
+
+    @Override
+    public long cardinality(){
+        return Math.max(this.cardinality.sum(), 0);
     }
 
     public void garbageCollection(long maxTid){
@@ -408,7 +547,7 @@ public final class PrimaryIndex implements IMultiVersionIndex {
             if(operationSetOfKey == null){
                 throw new RuntimeException("Error on retrieving operation set for key "+key);
             }
-            Entry<Long,TransactionWrite> entry = operationSetOfKey.removeUpToEntry(maxTid);
+            TransactionWrite entry = operationSetOfKey.removeUpTo(maxTid, this.versionPool == null ? null : this::discard);
             if(entry != null){
                 // only remove from keys to flush if max tid meets the entry
                 this.keysToFlush.remove(key);
@@ -418,40 +557,118 @@ public final class PrimaryIndex implements IMultiVersionIndex {
 
     private static final boolean GARBAGE_COLLECTION = false;
 
-    public void checkpoint(long maxTid){
-        if(this.keysToFlush.isEmpty() || this.updatesPerKeyMap.isEmpty()) return;
+    /**
+     * All tasks up to the max TID of a checkpoint have completed, and the next ones read from their last TID onwards,
+     * so versions older than the one visible to the max TID are no longer reachable by new snapshots.
+     * Transactions in flight may still hold their addresses, so they are only released by {@link #drainDiscardedVersions()}
+     */
+    private void discard(TransactionWrite write){
+        if(!write.isOffHeap()) return;
+        if(this.numDiscardedVersions == this.discardedVersions.length){
+            this.discardedVersions = Arrays.copyOf(this.discardedVersions, this.numDiscardedVersions << 1);
+        }
+        this.discardedVersions[this.numDiscardedVersions++] = write.address;
+    }
+
+    /**
+     * Must be called by the thread that checkpoints the index.
+     * No transaction may read the versions anymore when the action is run
+     * @return the action that returns to the pool the entries of the versions discarded since the last call, or null if none
+     */
+    public Runnable drainDiscardedVersions(){
+        if(this.versionPool == null || this.numDiscardedVersions == 0) return null;
+        long[] addresses = Arrays.copyOf(this.discardedVersions, this.numDiscardedVersions);
+        this.numDiscardedVersions = 0;
+        return this.versionPool.releaser(addresses);
+    }
+
+    /**
+     * {@return the number of versions kept off-heap}
+     */
+    public long numOffHeapVersions(){
+        return this.versionPool == null ? 0 : this.versionPool.numEntriesInUse();
+    }
+
+    /**
+     * Number of keys applied to the underlying index per acquisition of its lock
+     */
+    private static final int CHECKPOINT_CHUNK_SIZE = 4096;
+
+    /**
+     * Applies the versions visible to the max TID to the underlying index.
+     * The keys are applied in chunks, releasing the lock of the underlying index in between,
+     * so concurrent operations on the index (e.g., a reset) do not wait for the whole checkpoint.
+     * Keys written after the checkpoint starts are left to the next checkpoint.
+     */
+    public void checkpoint(long batch, long maxTid){
+        if(!(this.primaryKeyIndex instanceof UniqueHashBufferIndex bufferIndex)) return;
+        if(this.keysToFlush.isEmpty() || this.updatesPerKeyMap.isEmpty()) {
+            // nothing changed, but the file must still reflect the batch committed
+            bufferIndex.lock();
+            bufferIndex.completeCheckpoint(batch, maxTid);
+            bufferIndex.unlock();
+            return;
+        }
+        IKey[] keys = this.keysToFlush.toArray(IKey[]::new);
+        bufferIndex.lock();
+        bufferIndex.beginCheckpoint();
+        bufferIndex.unlock();
+        int numRecords = 0;
+        for(int offset = 0; offset < keys.length; offset += CHECKPOINT_CHUNK_SIZE){
+            bufferIndex.lock();
+            try {
+                numRecords += this.checkpointChunk(bufferIndex, keys, offset, Math.min(offset + CHECKPOINT_CHUNK_SIZE, keys.length), maxTid);
+            } finally {
+                bufferIndex.unlock();
+            }
+        }
+        bufferIndex.lock();
+        if(numRecords > 0) {
+            LOGGER.log(INFO, "Updated "+numRecords+" records in disk");
+            this.primaryKeyIndex.flush();
+        } else {
+            LOGGER.log(WARNING, "No records have been flushed");
+        }
+        // only after the records are durable the checkpoint is considered complete
+        bufferIndex.completeCheckpoint(batch, maxTid);
+        bufferIndex.unlock();
+    }
+
+    private int checkpointChunk(UniqueHashBufferIndex bufferIndex, IKey[] keys, int from, int to, long maxTid){
         int numRecords = 0;
-        Iterator<IKey> it = this.keysToFlush.iterator();
-        this.primaryKeyIndex.lock();
-        while(it.hasNext()){
-            IKey key = it.next();
+        for(int i = from; i < to; i++){
+            IKey key = keys[i];
             OperationSetOfKey operationSetOfKey = this.updatesPerKeyMap.get(key);
             if(operationSetOfKey == null){
-                this.primaryKeyIndex.unlock();
                 throw new RuntimeException("Error on retrieving operation set for key "+key);
             }
-            Entry<Long, TransactionWrite> entry = operationSetOfKey.floorEntry(maxTid);
+            TransactionWrite entry = operationSetOfKey.floorEntry(maxTid);
             if (entry == null) continue;
             // is the head?
             if(operationSetOfKey.peak() == entry) {
                 this.keysToFlush.remove(key);
+            }
+            if(this.versionPool != null) {
+                // otherwise the pool would grow with every version ever written
+                operationSetOfKey.removeUpTo(maxTid, this::discard);
             } else if(GARBAGE_COLLECTION) {
-                operationSetOfKey.removeChildren(entry);
+                operationSetOfKey.removeUpTo(maxTid);
             }
-            switch (operationSetOfKey.lastWriteType) {
-                case UPDATE -> this.primaryKeyIndex.upsert(key, entry.val().record);
-                case INSERT -> this.primaryKeyIndex.insert(key, entry.val().record);
-                case DELETE -> this.primaryKeyIndex.delete(key);
+            // the version visible to the max TID, not necessarily the last write
+            switch (entry.type) {
+                case UPDATE -> {
+                    if(entry.isOffHeap()) bufferIndex.upsertEntry(key, entry.address);
+                    else bufferIndex.upsert(key, entry.record());
+                }
+                case INSERT -> {
+                    if(entry.isOffHeap()) bufferIndex.upsertEntry(key, entry.address);
+                    else bufferIndex.insert(key, entry.record());
+                }
+                case DELETE -> bufferIndex.delete(key);
             }
             numRecords++;
         }
-        this.primaryKeyIndex.unlock();
-        if(numRecords > 0) {
-            LOGGER.log(INFO, "Updated "+numRecords+" records in disk");
-            this.primaryKeyIndex.flush();
-        } else {
-            LOGGER.log(WARNING, "No records have been flushed");
-        }
+        return numRecords;
     }
 
     public void installWrites(TransactionContext txCtx){
@@ -514,27 +731,31 @@ public final class PrimaryIndex implements IMultiVersionIndex {
         Map<IKey, Object[]> freshSet = new HashMap<>();
         // iterate over keys
         for(IKey key : keys){
-            OperationSetOfKey operation = this.updatesPerKeyMap.get(key);
-            Entry<Long, TransactionWrite> obj = operation.floorEntry(txCtx.tid);
-            if (obj != null && obj.val().type != WriteType.DELETE) {
-                freshSet.put(key, obj.val().record);
+            // keys never written since loading are only found in the underlying index
+            Object[] record = this.getRecord(txCtx.tid, key);
+            if (record != null) {
+                freshSet.put(key, record);
             }
         }
         return freshSet;
     }
 
+    /**
+     * @return the version of the record visible to the TID, or null if deleted
+     */
     public Object[] getRecord(long tid, IKey key){
         OperationSetOfKey operation = this.updatesPerKeyMap.get(key);
         if(operation != null){
-            Entry<Long, TransactionWrite> entry = operation.floorEntry(tid);
-            if(entry != null && entry.val().type != WriteType.DELETE) {
-                return entry.val().record;
+            TransactionWrite entry = operation.floorEntry(tid);
+            if(entry != null) {
+                // the underlying index may not have applied the delete yet
+                return entry.type != WriteType.DELETE ? entry.record() : null;
             }
         }
         return this.primaryKeyIndex.lookupByKey(key);
     }
 
-    public Entry<Long, TransactionWrite> getFloorEntry(TransactionContext txCtx, IKey key){
+    public TransactionWrite getFloorEntry(TransactionContext txCtx, IKey key){
         OperationSetOfKey operation = this.updatesPerKeyMap.get(key);
         return operation.floorEntry(txCtx.tid);
     }
@@ -562,7 +783,7 @@ public final class PrimaryIndex implements IMultiVersionIndex {
         public boolean hasNext() {
             while(this.iterator.hasNext()){
                 Map.Entry<IKey, OperationSetOfKey> next = this.iterator.next();
-                Entry<Long, TransactionWrite> entry = next.getValue().getHigherEntryUpToKey(this.txCtx.tid);
+                TransactionWrite entry = next.getValue().floorEntry(this.txCtx.tid);
                 if(entry == null) {
                     this.currRecord = primaryKeyIndex.lookupByKey(next.getKey());
                     if(this.currRecord == null){
@@ -574,7 +795,7 @@ public final class PrimaryIndex implements IMultiVersionIndex {
                     }
                     return true;
                 }
-                if(entry.val().type == WriteType.DELETE) {
+                if(entry.type == WriteType.DELETE) {
                     if(this.iterator.hasNext()) {
                         continue;
                     } else {
@@ -583,10 +804,10 @@ public final class PrimaryIndex implements IMultiVersionIndex {
                 }
                 /* is it returning a deleted entry???
                 if(updatesPerKeyMap.get(next.getKey()).lastWriteType == WriteType.DELETE){
-                    LOGGER.log(ERROR,"ATTENTION: "+this.txCtx.tid+" < "+updatesPerKeyMap.get(next.getKey()).peak().key);
+                    LOGGER.log(ERROR,"ATTENTION: "+this.txCtx.tid+" < "+updatesPerKeyMap.get(next.getKey()).peak());
                 }
                 */
-                this.currRecord = entry.val().record;
+                this.currRecord = entry.record();
                 return true;
             }
             return false;
@@ -1,10 +1,11 @@
 package dk.ku.di.dms.vms.modb.transaction.multiversion.index;
 
 import dk.ku.di.dms.vms.modb.api.annotations.VmsTable;
+import dk.ku.di.dms.vms.modb.definition.Schema;
 import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
 import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
-import dk.ku.di.dms.vms.modb.transaction.internal.Entry;
-import dk.ku.di.dms.vms.modb.transaction.multiversion.TransactionWrite;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.WriteType;
 
 import java.util.HashMap;
@@ -13,6 +14,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import static java.lang.System.Logger.Level.INFO;
+
 /**
  * The same key from PK is used to find records in this index
  * but only a portion of the data from the primary index is
@@ -22,6 +25,8 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public final class UniqueSecondaryIndex implements IMultiVersionIndex {
 
+    private static final System.Logger LOGGER = System.getLogger(UniqueSecondaryIndex.class.getName());
+
     // not all writes reach here
     private final ThreadLocal<Map<IKey, WriteType>> KEY_WRITES = ThreadLocal.withInitial(HashMap::new);
 
@@ -118,10 +123,8 @@ public final class UniqueSecondaryIndex implements IMultiVersionIndex {
                     return null;
                 key = entryCurr.getKey();
             }
-            Entry<Long, TransactionWrite> entry = this.primaryIndex.getFloorEntry(this.txCtx, key);
-            if (entry != null)
-                return entry.val().record;
-            return null;
+            // keys rebuilt after recovery may only be found in the underlying index
+            return this.primaryIndex.lookupByKey(this.txCtx, key);
         }
 
     }
@@ -136,6 +139,21 @@ public final class UniqueSecondaryIndex implements IMultiVersionIndex {
         this.keyMap.clear();
     }
 
+    /**
+     * Adds the keys of the records of the primary index meeting the criterion, e.g., after recovering it from a checkpoint
+     */
+    public void rebuild(int column, Object value){
+        if(!(this.primaryIndex.underlyingIndex() instanceof UniqueHashBufferIndex bufferIndex)) return;
+        int[] pkColumns = bufferIndex.schema().getPrimaryKeyColumns();
+        bufferIndex.forEachRecord(address -> {
+            Object[] record = bufferIndex.readFromIndex(address + Schema.RECORD_HEADER);
+            if(this.primaryIndex.meetPartialIndex(record, column, value)){
+                this.keyMap.add(KeyUtils.buildRecordKey(pkColumns, record));
+            }
+        });
+        LOGGER.log(INFO, "Partial index on column "+column+" rebuilt with "+this.keyMap.size()+" entries");
+    }
+
     private class KeyMultiVersionIterator implements Iterator<Object[]> {
 
         private final TransactionContext txCtx;
@@ -163,12 +181,17 @@ public final class UniqueSecondaryIndex implements IMultiVersionIndex {
 
         @Override
         public Object[] next() {
-            Entry<Long, TransactionWrite> obj = primaryIndex.getFloorEntry(txCtx, keys[idx]);
-            return obj.val().record;
+            // hasNext has already moved past the key
+            return primaryIndex.lookupByKey(txCtx, keys[idx - 1]);
         }
 
     }
 
+    @Override
+    public long cardinality() {
+        return this.keyMap.size();
+    }
+
     @Override
     public int[] indexColumns() {
         return this.primaryIndex.indexColumns();
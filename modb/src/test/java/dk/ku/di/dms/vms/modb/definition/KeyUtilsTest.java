@@ -0,0 +1,62 @@
+package dk.ku.di.dms.vms.modb.definition;
+
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+import dk.ku.di.dms.vms.modb.definition.key.composite.IntPairCompositeKey;
+import dk.ku.di.dms.vms.modb.definition.key.composite.IntTripleCompositeKey;
+import dk.ku.di.dms.vms.modb.definition.key.composite.LongPairCompositeKey;
+import dk.ku.di.dms.vms.modb.definition.key.composite.PairCompositeKey;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
+import dk.ku.di.dms.vms.modb.storage.record.IRecordBufferFactory;
+import dk.ku.di.dms.vms.modb.storage.record.RecordBufferContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Objects;
+
+public final class KeyUtilsTest {
+
+    @Test
+    public void testPrimitiveKeys() {
+        IKey intPair = KeyUtils.buildRecordKey(new int[]{ 0, 2 }, new Object[]{ 1, "a", 2 });
+        Assert.assertTrue(intPair instanceof IntPairCompositeKey);
+        // same hash of the boxed composite, so hashes already stored remain valid
+        Assert.assertEquals(Objects.hash(1, 2), intPair.hashCode());
+        Assert.assertEquals(intPair, KeyUtils.buildIndexKey(new Object[]{ 1, 2 }));
+        Assert.assertNotEquals(intPair, KeyUtils.buildIndexKey(new Object[]{ 2, 1 }));
+
+        IKey intTriple = KeyUtils.buildRecordKey(new int[]{ 0, 1, 2 }, new Object[]{ 1, 2, 3 });
+        Assert.assertTrue(intTriple instanceof IntTripleCompositeKey);
+        Assert.assertEquals(Objects.hash(1, 2, 3), intTriple.hashCode());
+
+        IKey longPair = KeyUtils.buildRecordKey(new int[]{ 0, 1 }, new Object[]{ 1L << 40, 2L });
+        Assert.assertTrue(longPair instanceof LongPairCompositeKey);
+        Assert.assertEquals(Objects.hash(1L << 40, 2L), longPair.hashCode());
+
+        IKey mixed = KeyUtils.buildRecordKey(new int[]{ 0, 1 }, new Object[]{ 1, "a" });
+        Assert.assertTrue(mixed instanceof PairCompositeKey);
+    }
+
+    @Test
+    public void testKeysReadFromBuffer() {
+        Schema schema = new Schema(new String[]{"seller_id", "name", "product_id"},
+                new DataType[]{ DataType.INT, DataType.STRING, DataType.INT },
+                new int[]{ 0, 2 }, null, false );
+        int capacity = UniqueHashBufferIndex.capacityFor(100);
+        var bufCtx = RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity));
+        var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), capacity, IRecordBufferFactory.inMemory());
+        for(int i = 0; i < 100; i++){
+            Object[] record = { i % 10, "p"+i, i };
+            index.insert(KeyUtils.buildRecordKey(schema.getPrimaryKeyColumns(), record), record);
+        }
+        Assert.assertEquals(100, index.size());
+        // the key read from the buffer must be equal to the key built from the values
+        Object[] record = index.lookupByKey(KeyUtils.buildIndexKey(new Object[]{ 3, 13 }));
+        Assert.assertNotNull(record);
+        Assert.assertEquals("p13", record[1]);
+        Assert.assertNull(index.lookupByKey(KeyUtils.buildIndexKey(new Object[]{ 4, 13 })));
+        index.reset();
+    }
+
+}
@@ -0,0 +1,143 @@
+package dk.ku.di.dms.vms.modb.index;
+
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.SimpleKey;
+import dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueHashBufferIndex;
+import dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.NonUniqueSecondaryIndex;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+public final class NonUniqueIndexTest {
+
+    // id, seller_id, name
+    private static final Schema SCHEMA = new Schema(new String[]{"id", "seller_id", "name"},
+            new DataType[]{ DataType.INT, DataType.INT, DataType.STRING },
+            new int[]{ 0 }, null, false);
+
+    private static final int[] SELLER_COLUMN = { 1 };
+
+    private static Object[] record(int id, int sellerId){
+        return new Object[]{ id, sellerId, "entry"+id };
+    }
+
+    private static Set<IKey> primaryKeys(Iterator<IKey> iterator){
+        Set<IKey> keys = new HashSet<>();
+        iterator.forEachRemaining(keys::add);
+        return keys;
+    }
+
+    @Test
+    public void testBufferIndex() {
+        // small capacity, so the index must grow
+        var index = new NonUniqueHashBufferIndex(SCHEMA, SELLER_COLUMN, 4);
+        for(int i = 0; i < 1000; i++){
+            Assert.assertTrue(index.insert(SimpleKey.of(i % 10), SimpleKey.of(i), record(i, i % 10)));
+        }
+        // the association already exists
+        Assert.assertFalse(index.insert(SimpleKey.of(3), SimpleKey.of(3), record(3, 3)));
+        Assert.assertEquals(1000, index.size());
+        Assert.assertTrue(index.capacity() >= 1024);
+
+        Set<IKey> keys = primaryKeys(index.iterator(SimpleKey.of(3)));
+        Assert.assertEquals(100, keys.size());
+        Assert.assertTrue(keys.contains(SimpleKey.of(993)));
+
+        for(int i = 3; i < 1000; i = i + 20){
+            Assert.assertTrue(index.delete(SimpleKey.of(3), SimpleKey.of(i), record(i, 3)));
+        }
+        Assert.assertFalse(index.delete(SimpleKey.of(3), SimpleKey.of(3), record(3, 3)));
+        keys = primaryKeys(index.iterator(SimpleKey.of(3)));
+        Assert.assertEquals(50, keys.size());
+        Assert.assertFalse(keys.contains(SimpleKey.of(3)));
+        Assert.assertTrue(keys.contains(SimpleKey.of(13)));
+
+        // removed entries are reused
+        int capacity = index.capacity();
+        Assert.assertTrue(index.insert(SimpleKey.of(3), SimpleKey.of(3), record(3, 3)));
+        Assert.assertEquals(capacity, index.capacity());
+
+        index.delete(SimpleKey.of(3));
+        Assert.assertFalse(index.exists(SimpleKey.of(3)));
+        Assert.assertTrue(index.exists(SimpleKey.of(4)));
+
+        index.reset();
+        Assert.assertEquals(0, index.size());
+        Assert.assertFalse(index.iterator(SimpleKey.of(4)).hasNext());
+    }
+
+    @Test
+    public void testSecondaryIndexVisibility() {
+        testSecondaryIndexVisibility(new NonUniqueHashMapIndex(SCHEMA, SELLER_COLUMN));
+        testSecondaryIndexVisibility(new NonUniqueHashBufferIndex(SCHEMA, SELLER_COLUMN, 16));
+    }
+
+    private static void testSecondaryIndexVisibility(dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueIndex underlyingIndex){
+        PrimaryIndex primaryIndex = PrimaryIndex.build(new UniqueHashMapIndex(SCHEMA, SCHEMA.getPrimaryKeyColumns()));
+        NonUniqueSecondaryIndex secondaryIndex = new NonUniqueSecondaryIndex(primaryIndex, underlyingIndex);
+
+        // tid 1 inserts a record of seller 1
+        TransactionContext tx1 = new TransactionContext(1, 0, false);
+        IKey pk = SimpleKey.of(10);
+        Object[] original = record(10, 1);
+        Assert.assertTrue(primaryIndex.insert(tx1, pk, original));
+        secondaryIndex.insert(tx1, pk, original);
+        primaryIndex.installWrites(tx1);
+        secondaryIndex.installWrites(tx1);
+
+        // tid 2 moves the record to seller 2
+        TransactionContext tx2 = new TransactionContext(2, 1, false);
+        Object[] updated = record(10, 2);
+        Assert.assertTrue(primaryIndex.update(tx2, pk, updated));
+        secondaryIndex.update(tx2, pk, original, updated);
+        primaryIndex.installWrites(tx2);
+        secondaryIndex.installWrites(tx2);
+
+        // a reader of the snapshot before tid 2 still finds the record in seller 1
+        TransactionContext oldReader = new TransactionContext(3, 1, true);
+        Assert.assertTrue(secondaryIndex.iterator(oldReader, SimpleKey.of(1)).hasNext());
+        Assert.assertFalse(secondaryIndex.iterator(oldReader, SimpleKey.of(2)).hasNext());
+
+        TransactionContext newReader = new TransactionContext(4, 2, true);
+        Assert.assertFalse(secondaryIndex.iterator(newReader, SimpleKey.of(1)).hasNext());
+        Iterator<Object[]> it = secondaryIndex.iterator(newReader, SimpleKey.of(2));
+        Assert.assertTrue(it.hasNext());
+        Assert.assertEquals(2, it.next()[1]);
+
+        // tid 5 inserts a record that is aborted
+        TransactionContext tx5 = new TransactionContext(5, 2, false);
+        Object[] aborted = record(20, 2);
+        Assert.assertTrue(primaryIndex.insert(tx5, SimpleKey.of(20), aborted));
+        secondaryIndex.insert(tx5, SimpleKey.of(20), aborted);
+        primaryIndex.undoTransactionWrites(tx5);
+        secondaryIndex.undoTransactionWrites(tx5);
+        Assert.assertFalse(underlyingIndex.iterator(SimpleKey.of(2)).hasNext() && primaryKeys(underlyingIndex.iterator(SimpleKey.of(2))).contains(SimpleKey.of(20)));
+
+        // the replaced association is only removed on checkpoint
+        Assert.assertTrue(primaryKeys(underlyingIndex.iterator(SimpleKey.of(1))).contains(pk));
+        secondaryIndex.checkpoint(2);
+        Assert.assertFalse(primaryKeys(underlyingIndex.iterator(SimpleKey.of(1))).contains(pk));
+        Assert.assertTrue(primaryKeys(underlyingIndex.iterator(SimpleKey.of(2))).contains(pk));
+
+        // tid 6 deletes the record
+        TransactionContext tx6 = new TransactionContext(6, 2, false);
+        Assert.assertTrue(primaryIndex.remove(tx6, pk));
+        secondaryIndex.remove(tx6, pk, updated);
+        primaryIndex.installWrites(tx6);
+        secondaryIndex.installWrites(tx6);
+        Assert.assertTrue(secondaryIndex.iterator(new TransactionContext(7, 2, true), SimpleKey.of(2)).hasNext());
+        Assert.assertFalse(secondaryIndex.iterator(new TransactionContext(7, 6, true), SimpleKey.of(2)).hasNext());
+        secondaryIndex.checkpoint(6);
+        Assert.assertFalse(underlyingIndex.iterator(SimpleKey.of(2)).hasNext());
+    }
+
+}
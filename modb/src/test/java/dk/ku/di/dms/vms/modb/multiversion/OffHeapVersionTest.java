@@ -0,0 +1,127 @@
+package dk.ku.di.dms.vms.modb.multiversion;
+
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.SimpleKey;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
+import dk.ku.di.dms.vms.modb.storage.record.RecordBufferContext;
+import dk.ku.di.dms.vms.modb.storage.record.RecordReference;
+import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.WriteType;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class OffHeapVersionTest {
+
+    private static final Schema ITEM_SCHEMA = new Schema(new String[]{"i_id", "i_available", "i_name", "i_price"},
+            new DataType[]{ DataType.INT, DataType.BOOL, DataType.STRING, DataType.DOUBLE },
+            new int[]{ 0 }, null, false);
+
+    private UniqueHashBufferIndex bufferIndex;
+
+    private PrimaryIndex primaryIndex;
+
+    @Before
+    public void setUp() {
+        int capacity = UniqueHashBufferIndex.capacityFor(16);
+        this.bufferIndex = new UniqueHashBufferIndex(
+                RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(ITEM_SCHEMA, capacity)),
+                ITEM_SCHEMA, ITEM_SCHEMA.getPrimaryKeyColumns(), capacity);
+        this.primaryIndex = PrimaryIndex.build(this.bufferIndex, null, true);
+    }
+
+    private void write(long tid, IKey key, Object[] record){
+        TransactionContext txCtx = new TransactionContext(tid, tid - 1, false);
+        Assert.assertTrue(this.primaryIndex.upsert(txCtx, key, record));
+        this.primaryIndex.installWrites(txCtx);
+    }
+
+    @Test
+    public void testVersionsAndCheckpoint() {
+        IKey key1 = SimpleKey.of(1);
+        IKey key2 = SimpleKey.of(2);
+        this.write(1, key1, new Object[]{ 1, true, "first item", 10.0 });
+        // null values cannot be serialized, so the version is kept on heap
+        this.write(1, key2, new Object[]{ 2, false, null, 20.0 });
+        this.write(2, key1, new Object[]{ 1, false, "item", 15.0 });
+
+        TransactionContext reader = new TransactionContext(3, 2, true);
+        Assert.assertArrayEquals(new Object[]{ 1, false, "item", 15.0 }, this.primaryIndex.lookupByKey(reader, key1));
+        Assert.assertArrayEquals(new Object[]{ 2, false, null, 20.0 }, this.primaryIndex.lookupByKey(reader, key2));
+        Assert.assertArrayEquals(new Object[]{ 1, true, "first item", 10.0 },
+                this.primaryIndex.lookupByKey(new TransactionContext(2, 1, true), key1));
+
+        RecordReference reference = new RecordReference(ITEM_SCHEMA);
+        Assert.assertTrue(this.primaryIndex.reference(reader, key1, reference));
+        Assert.assertTrue(reference.isOffHeap());
+        Assert.assertEquals("item", reference.getString(2));
+        Assert.assertEquals(15.0, reference.getDouble(3), 0.0);
+        Assert.assertTrue(this.primaryIndex.reference(reader, key2, reference));
+        Assert.assertFalse(reference.isOffHeap());
+
+        // the version visible to the max TID is copied into the buffer
+        this.primaryIndex.checkpoint(1, 1);
+        Assert.assertArrayEquals(new Object[]{ 1, true, "first item", 10.0 }, this.bufferIndex.lookupByKey(key1));
+        this.primaryIndex.checkpoint(2, 2);
+        Assert.assertArrayEquals(new Object[]{ 1, false, "item", 15.0 }, this.bufferIndex.lookupByKey(key1));
+        Assert.assertEquals(2, this.bufferIndex.size());
+    }
+
+    @Test
+    public void testCheckpointReleasesDiscardedVersions() {
+        int numKeys = 10;
+        long tid = 0;
+        for(int batch = 1; batch <= 200; batch++){
+            for(int i = 0; i < numKeys; i++){
+                tid++;
+                this.write(tid, SimpleKey.of(i), new Object[]{ i, true, "item "+tid, 1.0 * tid });
+            }
+            // versions discarded are only released once no transaction may read them
+            TransactionContext reader = new TransactionContext(tid + 1, tid, true);
+            this.primaryIndex.checkpoint(batch, tid);
+            Runnable releaseVersions = this.primaryIndex.drainDiscardedVersions();
+            Assert.assertEquals("item "+tid, this.primaryIndex.lookupByKey(reader, SimpleKey.of(numKeys - 1))[2]);
+            if(releaseVersions != null) releaseVersions.run();
+            Assert.assertEquals(numKeys, this.primaryIndex.numOffHeapVersions());
+        }
+        Assert.assertArrayEquals(new Object[]{ 0, true, "item "+(tid - numKeys + 1), 1.0 * (tid - numKeys + 1) },
+                this.primaryIndex.lookupByKey(new TransactionContext(tid + 1, tid, true), SimpleKey.of(0)));
+    }
+
+    @Test
+    public void testEnumColumnsKeptOnHeap() {
+        Schema schema = new Schema(new String[]{"o_id", "o_status"}, new DataType[]{ DataType.INT, DataType.ENUM },
+                new int[]{ 0 }, null, false);
+        int capacity = UniqueHashBufferIndex.capacityFor(16);
+        PrimaryIndex index = PrimaryIndex.build(new UniqueHashBufferIndex(
+                RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity)),
+                schema, schema.getPrimaryKeyColumns(), capacity), null, true);
+        TransactionContext txCtx = new TransactionContext(1, 0, false);
+        Assert.assertTrue(index.upsert(txCtx, SimpleKey.of(1), new Object[]{ 1, WriteType.INSERT }));
+        index.installWrites(txCtx);
+        // read back as the enum written, not as its name
+        Assert.assertSame(WriteType.INSERT, index.lookupByKey(new TransactionContext(2, 1, true), SimpleKey.of(1))[1]);
+        Assert.assertEquals(0, index.numOffHeapVersions());
+    }
+
+    @Test
+    public void testUndoReleasesVersion() {
+        IKey key = SimpleKey.of(1);
+        this.write(1, key, new Object[]{ 1, true, "first item", 10.0 });
+
+        TransactionContext aborted = new TransactionContext(2, 1, false);
+        this.primaryIndex.upsert(aborted, key, new Object[]{ 1, true, "a much longer name for the item", 11.0 });
+        this.primaryIndex.undoTransactionWrites(aborted);
+
+        // the entry released is reused, and nothing is left from the previous record
+        this.write(3, key, new Object[]{ 1, true, "short", 12.0 });
+        Assert.assertArrayEquals(new Object[]{ 1, true, "short", 12.0 },
+                this.primaryIndex.lookupByKey(new TransactionContext(4, 3, true), key));
+        Assert.assertArrayEquals(new Object[]{ 1, true, "first item", 10.0 },
+                this.primaryIndex.lookupByKey(new TransactionContext(4, 2, true), key));
+    }
+
+}
@@ -0,0 +1,98 @@
+package dk.ku.di.dms.vms.modb.multiversion;
+
+import dk.ku.di.dms.vms.modb.transaction.internal.OperationSetOfKey;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.TransactionWrite;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.WriteType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class OperationSetOfKeyTest {
+
+    private static TransactionWrite write(int value){
+        return TransactionWrite.upsert(WriteType.UPDATE, new Object[]{ value });
+    }
+
+    @Test
+    public void testFloorEntry() {
+        OperationSetOfKey operationSet = new OperationSetOfKey(WriteType.INSERT);
+        Assert.assertNull(operationSet.floorEntry(10));
+        Assert.assertNull(operationSet.peak());
+
+        operationSet.put(1, TransactionWrite.upsert(WriteType.INSERT, new Object[]{ 1 }));
+        operationSet.put(2, write(2));
+        operationSet.put(4, write(4));
+
+        Assert.assertEquals(2, operationSet.floorEntry(3).record()[0]);
+        Assert.assertEquals(2, operationSet.floorEntry(2).record()[0]);
+        Assert.assertEquals(1, operationSet.floorEntry(1).record()[0]);
+        Assert.assertEquals(4, operationSet.floorEntry(Long.MAX_VALUE).record()[0]);
+        Assert.assertNull(operationSet.floorEntry(0));
+        Assert.assertEquals(4, operationSet.peak().record()[0]);
+
+        // an aborted write
+        operationSet.put(5, write(5));
+        operationSet.poll();
+        Assert.assertEquals(4, operationSet.floorEntry(5).record()[0]);
+        Assert.assertEquals(4, operationSet.peak().record()[0]);
+
+        // garbage collection keeps the version visible to the TID
+        Assert.assertEquals(2, operationSet.removeUpTo(3).record()[0]);
+        Assert.assertEquals(2, operationSet.size());
+        Assert.assertNull(operationSet.floorEntry(1));
+        Assert.assertEquals(2, operationSet.floorEntry(2).record()[0]);
+
+        // the discarded versions are left out on growth
+        for(int tid = 6; tid < 100; tid++){
+            operationSet.put(tid, write(tid));
+        }
+        Assert.assertEquals(96, operationSet.size());
+        Assert.assertNull(operationSet.floorEntry(1));
+        Assert.assertEquals(4, operationSet.floorEntry(5).record()[0]);
+        Assert.assertEquals(50, operationSet.floorEntry(50).record()[0]);
+
+        Assert.assertEquals(99, operationSet.removeUpTo(1000).record()[0]);
+        Assert.assertEquals(1, operationSet.size());
+        Assert.assertNull(operationSet.floorEntry(98));
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        OperationSetOfKey operationSet = new OperationSetOfKey(WriteType.INSERT);
+        operationSet.put(1, write(1));
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService threadPool = Executors.newFixedThreadPool(3);
+        // readers must always see the version of their TID, regardless of the writer and garbage collection
+        Future<Boolean> reader = threadPool.submit(() -> {
+            while (writing.get()) {
+                TransactionWrite write = operationSet.floorEntry(500);
+                if (write == null) return false;
+                int value = (int) write.record()[0];
+                if (value > 500 || value < 1) return false;
+            }
+            return true;
+        });
+        Future<?> collector = threadPool.submit(() -> {
+            while (writing.get()) {
+                operationSet.removeUpTo(1);
+            }
+        });
+        Future<?> writer = threadPool.submit(() -> {
+            for (int tid = 2; tid <= 100_000; tid++) {
+                operationSet.put(tid, write(tid));
+            }
+            writing.set(false);
+        });
+        writer.get();
+        collector.get();
+        Assert.assertTrue(reader.get());
+        Assert.assertEquals(500, operationSet.floorEntry(500).record()[0]);
+        Assert.assertEquals(100_000, operationSet.peak().record()[0]);
+        threadPool.shutdown();
+    }
+
+}
@@ -3,9 +3,18 @@ package dk.ku.di.dms.vms.modb.persistence;
 import dk.ku.di.dms.vms.modb.common.memory.MemoryUtils;
 import dk.ku.di.dms.vms.modb.common.type.DataType;
 import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
 import dk.ku.di.dms.vms.modb.definition.key.IntKey;
+import dk.ku.di.dms.vms.modb.definition.key.KeyUtils;
+import dk.ku.di.dms.vms.modb.definition.key.SimpleKey;
+import dk.ku.di.dms.vms.modb.definition.key.composite.NCompositeKey;
+import dk.ku.di.dms.vms.modb.definition.key.composite.PairCompositeKey;
 import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
+import dk.ku.di.dms.vms.modb.storage.record.IRecordBufferFactory;
 import dk.ku.di.dms.vms.modb.storage.record.RecordBufferContext;
+import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
+import dk.ku.di.dms.vms.modb.transaction.internal.TransactionEpochs;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -20,6 +29,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public final class PersistenceTest {
@@ -51,7 +61,7 @@ public final class PersistenceTest {
                 StandardOpenOption.WRITE
         );
         MemorySegment memorySegment = fc.map(FileChannel.MapMode.READ_WRITE, 0,
-                7L * schema.getRecordSize(), Arena.ofShared());
+                (7L * schema.getRecordSize()) + RecordBufferContext.FOOTER_SIZE, Arena.ofShared());
         var bufCtx = new RecordBufferContext( memorySegment);
         var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(),7);
 
@@ -65,6 +75,258 @@ public final class PersistenceTest {
 
     }
 
+    @Test
+    public void testGrowingIndex() {
+        Schema schema = new Schema(new String[]{"id", "test"}, new DataType[]{ DataType.INT, DataType.STRING },
+                new int[]{ 0 }, null, false );
+        int capacity = UniqueHashBufferIndex.capacityFor(4);
+        var bufCtx = RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity));
+        var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), capacity, IRecordBufferFactory.inMemory());
+        // keys whose positions collide in the initial capacity
+        for(int i = 0; i < 100; i++){
+            index.insert(SimpleKey.of(i * capacity), new Object[] { i * capacity, "test"+i } );
+        }
+        Assert.assertEquals(100, index.size());
+        Assert.assertTrue(index.capacity() >= 128);
+        for(int i = 0; i < 100; i++){
+            Object[] record = index.lookupByKey(SimpleKey.of(i * capacity));
+            Assert.assertNotNull(record);
+            Assert.assertEquals("test"+i, record[1]);
+        }
+        // deleting must not make the remaining keys unreachable
+        for(int i = 0; i < 100; i = i + 2){
+            index.delete(SimpleKey.of(i * capacity));
+        }
+        Assert.assertEquals(50, index.size());
+        for(int i = 0; i < 100; i++){
+            Assert.assertEquals(i % 2 != 0, index.exists(SimpleKey.of(i * capacity)));
+        }
+        index.reset();
+    }
+
+    @Test
+    public void testHashCollision() {
+        Schema schema = new Schema(new String[]{"name", "test"}, new DataType[]{ DataType.STRING, DataType.STRING },
+                new int[]{ 0 }, null, false );
+        int capacity = UniqueHashBufferIndex.capacityFor(8);
+        var bufCtx = RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity));
+        var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), capacity);
+        Assert.assertEquals("Aa".hashCode(), "BB".hashCode());
+        index.insert(SimpleKey.of("Aa"), new Object[] { "Aa", "first" } );
+        index.insert(SimpleKey.of("BB"), new Object[] { "BB", "second" } );
+        Assert.assertEquals(2, index.size());
+        Assert.assertEquals("first", index.lookupByKey(SimpleKey.of("Aa"))[1]);
+        Assert.assertEquals("second", index.lookupByKey(SimpleKey.of("BB"))[1]);
+        index.delete(SimpleKey.of("Aa"));
+        Assert.assertNull(index.lookupByKey(SimpleKey.of("Aa")));
+        Assert.assertEquals("second", index.lookupByKey(SimpleKey.of("BB"))[1]);
+        // a shorter key reusing the entry of the deleted record
+        index.insert(SimpleKey.of("A"), new Object[] { "A", "third" } );
+        Assert.assertEquals("third", index.lookupByKey(SimpleKey.of("A"))[1]);
+        Assert.assertEquals(2, index.size());
+        index.reset();
+    }
+
+    @Test
+    public void testKeyClassIndependence() {
+        Schema schema = new Schema(new String[]{"id", "seller_id", "test"}, new DataType[]{ DataType.INT, DataType.INT, DataType.STRING },
+                new int[]{ 0 }, null, false );
+        int capacity = UniqueHashBufferIndex.capacityFor(8);
+        var bufCtx = RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity));
+        var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), capacity);
+        index.insert(SimpleKey.of(Integer.valueOf(1)), new Object[] { 1, 1, "test" } );
+        index.insert(IntKey.of(2), new Object[] { 2, 1, "test" } );
+        Assert.assertNotNull(index.lookupByKey(IntKey.of(1)));
+        Assert.assertNotNull(index.lookupByKey(SimpleKey.of(1)));
+        Assert.assertNotNull(index.lookupByKey(SimpleKey.of(Integer.valueOf(2))));
+        Assert.assertNull(index.lookupByKey(IntKey.of(3)));
+
+        // the same pair of values, either boxed or not
+        var compositeIndex = new UniqueHashBufferIndex(RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity)),
+                schema, new int[]{ 0, 1 }, capacity);
+        compositeIndex.insert(KeyUtils.buildRecordKey(new int[]{ 0, 1 }, new Object[] { 1, 5, "test" }), new Object[] { 1, 5, "test" } );
+        Assert.assertNotNull(compositeIndex.lookupByKey(PairCompositeKey.of(1, 5)));
+        Assert.assertNotNull(compositeIndex.lookupByKey(NCompositeKey.of(new Object[]{ 1, 5 })));
+        Assert.assertNull(compositeIndex.lookupByKey(PairCompositeKey.of(5, 1)));
+        index.reset();
+        compositeIndex.reset();
+    }
+
+    @Test
+    public void testDeleteDoesNotMoveEntries() {
+        Schema schema = new Schema(new String[]{"id", "test"}, new DataType[]{ DataType.INT, DataType.STRING },
+                new int[]{ 0 }, null, false );
+        int capacity = UniqueHashBufferIndex.capacityFor(8);
+        var bufCtx = RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity));
+        var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), capacity);
+        // keys with the same home entry
+        for(int i = 0; i < 4; i++){
+            index.insert(SimpleKey.of(i * capacity), new Object[] { i * capacity, "test"+i } );
+        }
+        long[] addresses = new long[4];
+        for(int i = 0; i < 4; i++){
+            addresses[i] = index.address(SimpleKey.of(i * capacity));
+        }
+        index.delete(SimpleKey.of(0));
+        index.delete(SimpleKey.of(2 * capacity));
+        // concurrent readers holding the addresses of the remaining records still find them there
+        Assert.assertEquals(addresses[1], index.address(SimpleKey.of(capacity)));
+        Assert.assertEquals(addresses[3], index.address(SimpleKey.of(3 * capacity)));
+        Assert.assertEquals("test3", index.lookupByKey(SimpleKey.of(3 * capacity))[1]);
+        Assert.assertEquals(2, index.size());
+        // the tombstone is reused
+        index.insert(SimpleKey.of(4 * capacity), new Object[] { 4 * capacity, "test4" } );
+        Assert.assertEquals(addresses[0], index.address(SimpleKey.of(4 * capacity)));
+        index.reset();
+    }
+
+    @Test
+    public void testRetiredBuffersOutliveReaders() {
+        Schema schema = new Schema(new String[]{"id", "test"}, new DataType[]{ DataType.INT, DataType.STRING },
+                new int[]{ 0 }, null, false );
+        int capacity = UniqueHashBufferIndex.capacityFor(4);
+        var bufCtx = RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity));
+        var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), capacity, IRecordBufferFactory.inMemory());
+        TransactionEpochs epochs = new TransactionEpochs();
+        index.insert(SimpleKey.of(1), new Object[] { 1, "test" } );
+
+        long reader = epochs.enter();
+        long address = index.address(SimpleKey.of(1));
+        for(int i = 2; i < 100; i++){
+            index.insert(SimpleKey.of(i), new Object[] { i, "test" } );
+        }
+        List<RecordBufferContext> retiredBuffers = index.drainRetiredBuffers();
+        Assert.assertFalse(retiredBuffers.isEmpty());
+        epochs.retire(() -> retiredBuffers.forEach(RecordBufferContext::close));
+
+        // the reader still holds an address into the first buffer
+        Assert.assertEquals(1, epochs.numRetired());
+        Assert.assertEquals(1, UNSAFE.getInt(null, address + schema.columnOffset(0)));
+
+        // a transaction started after the retirement does not hold the release back
+        long newReader = epochs.enter();
+        epochs.leave(reader);
+        epochs.reclaim();
+        Assert.assertEquals(0, epochs.numRetired());
+        epochs.leave(newReader);
+        index.reset();
+    }
+
+    @Test
+    public void testCheckpointRecovery() throws IOException {
+        Schema schema = new Schema(new String[]{"id", "test"}, new DataType[]{ DataType.INT, DataType.STRING },
+                new int[]{ 0 }, null, false );
+        var fileName = "mapped_file_recovery_test.data";
+        Path path = Paths.get(fileName);
+        long sizeInBytes = (10L * schema.getRecordSize()) + RecordBufferContext.FOOTER_SIZE;
+        try(var fc = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.SPARSE,
+                StandardOpenOption.WRITE)) {
+            var bufCtx = new RecordBufferContext(fc.map(FileChannel.MapMode.READ_WRITE, 0, sizeInBytes, Arena.ofShared()));
+            var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), 10);
+            // no checkpoint yet
+            Assert.assertFalse(index.hasCheckpoint());
+            index.beginCheckpoint();
+            for (int i = 1; i <= 4; i++) {
+                index.insert(SimpleKey.of(i), new Object[]{i, "test"});
+            }
+            index.flush();
+            index.completeCheckpoint(2, 40);
+        }
+
+        // reopen without truncating
+        try(var fc = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var bufCtx = new RecordBufferContext(fc.map(FileChannel.MapMode.READ_WRITE, 0, sizeInBytes, Arena.ofShared()));
+            var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), 10);
+            Assert.assertTrue(index.recover());
+            Assert.assertEquals(4, index.size());
+            Assert.assertEquals(2, index.checkpointBatch());
+            Assert.assertEquals(40, index.checkpointTid());
+            Assert.assertNotNull(index.lookupByKey(SimpleKey.of(3)));
+
+            // a checkpoint interrupted halfway must not be recovered
+            index.beginCheckpoint();
+            Assert.assertFalse(index.recover());
+        }
+    }
+
+    @Test
+    public void testPrimaryIndexCheckpoint() {
+        Schema schema = new Schema(new String[]{"id", "test"}, new DataType[]{ DataType.INT, DataType.STRING },
+                new int[]{ 0 }, null, false );
+        int capacity = UniqueHashBufferIndex.capacityFor(10000);
+        var bufCtx = RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity));
+        var bufferIndex = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), capacity, IRecordBufferFactory.inMemory());
+        PrimaryIndex primaryIndex = PrimaryIndex.build(bufferIndex);
+
+        // more keys than a single checkpoint chunk
+        TransactionContext tx1 = new TransactionContext(1, 0, false);
+        for(int i = 0; i < 10000; i++){
+            Assert.assertTrue(primaryIndex.insert(tx1, SimpleKey.of(i), new Object[]{ i, "v1" }));
+        }
+        primaryIndex.installWrites(tx1);
+
+        TransactionContext tx2 = new TransactionContext(2, 1, false);
+        Assert.assertTrue(primaryIndex.update(tx2, SimpleKey.of(1), new Object[]{ 1, "v2" }));
+        Assert.assertTrue(primaryIndex.remove(tx2, SimpleKey.of(2)));
+        primaryIndex.installWrites(tx2);
+
+        // a write after the max TID must not be applied
+        TransactionContext tx3 = new TransactionContext(3, 2, false);
+        Assert.assertTrue(primaryIndex.remove(tx3, SimpleKey.of(1)));
+        primaryIndex.installWrites(tx3);
+
+        primaryIndex.checkpoint(1, 2);
+        Assert.assertEquals(9999, bufferIndex.size());
+        Assert.assertEquals("v2", bufferIndex.lookupByKey(SimpleKey.of(1))[1]);
+        Assert.assertFalse(bufferIndex.exists(SimpleKey.of(2)));
+        Assert.assertEquals("v1", bufferIndex.lookupByKey(SimpleKey.of(9999))[1]);
+        Assert.assertEquals(2, bufferIndex.checkpointTid());
+
+        primaryIndex.checkpoint(2, 3);
+        Assert.assertFalse(bufferIndex.exists(SimpleKey.of(1)));
+        Assert.assertEquals(9998, bufferIndex.size());
+        bufferIndex.reset();
+    }
+
+    @Test
+    public void testPrimaryIndexLookupByKeys() {
+        Schema schema = new Schema(new String[]{"id", "test"}, new DataType[]{ DataType.INT, DataType.STRING },
+                new int[]{ 0 }, null, false );
+        int capacity = UniqueHashBufferIndex.capacityFor(100);
+        var bufCtx = RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity));
+        var bufferIndex = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), capacity, IRecordBufferFactory.inMemory());
+        for(int i = 0; i < 100; i++){
+            bufferIndex.insert(SimpleKey.of(i), new Object[]{ i, "v1" });
+        }
+        PrimaryIndex primaryIndex = PrimaryIndex.build(bufferIndex);
+
+        TransactionContext tx1 = new TransactionContext(1, 0, false);
+        Assert.assertTrue(primaryIndex.update(tx1, SimpleKey.of(7), new Object[]{ 7, "v2" }));
+        Assert.assertTrue(primaryIndex.remove(tx1, SimpleKey.of(8)));
+        primaryIndex.installWrites(tx1);
+
+        IKey[] keys = { SimpleKey.of(99), SimpleKey.of(7), SimpleKey.of(1000), SimpleKey.of(8), SimpleKey.of(0) };
+        Object[][] records = primaryIndex.lookupByKeys(new TransactionContext(2, 1, false), keys);
+        Assert.assertEquals(99, records[0][0]);
+        Assert.assertEquals("v2", records[1][1]);
+        Assert.assertNull(records[2]);
+        Assert.assertNull(records[3]);
+        Assert.assertEquals(0, records[4][0]);
+
+        // a reader does not see the writes of transactions after its snapshot
+        TransactionContext tx3 = new TransactionContext(3, 2, false);
+        Assert.assertTrue(primaryIndex.update(tx3, SimpleKey.of(99), new Object[]{ 99, "v3" }));
+        records = primaryIndex.lookupByKeys(new TransactionContext(2, 1, true), keys);
+        Assert.assertEquals("v1", records[0][1]);
+        Assert.assertEquals("v2", records[1][1]);
+        Assert.assertNull(records[3]);
+        bufferIndex.reset();
+    }
+
     @Test
     public void testMemoryMapping() throws IOException {
         Schema schema = new Schema(new String[]{"id", "test"}, new DataType[]{ DataType.INT, DataType.STRING },
@@ -79,7 +341,7 @@ public final class PersistenceTest {
                     StandardOpenOption.WRITE
                 );
         MemorySegment memorySegment = fc.map(FileChannel.MapMode.READ_WRITE, 0,
-                10L * schema.getRecordSize(), Arena.ofShared());
+                (10L * schema.getRecordSize()) + RecordBufferContext.FOOTER_SIZE, Arena.ofShared());
 
         var bufCtx = new RecordBufferContext(memorySegment);
         var index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), 10);
@@ -96,7 +358,7 @@ public final class PersistenceTest {
         fc = FileChannel.open(path, StandardOpenOption.READ);
 
         memorySegment = fc.map(FileChannel.MapMode.READ_ONLY, 0,
-                10L * schema.getRecordSize(), Arena.ofShared());
+                (10L * schema.getRecordSize()) + RecordBufferContext.FOOTER_SIZE, Arena.ofShared());
         bufCtx = new RecordBufferContext(memorySegment);
         index = new UniqueHashBufferIndex(bufCtx, schema, schema.getPrimaryKeyColumns(), 10);
 
@@ -0,0 +1,102 @@
+package dk.ku.di.dms.vms.modb.query;
+
+import dk.ku.di.dms.vms.modb.api.query.enums.GroupByOperationEnum;
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.ColumnReference;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.Table;
+import dk.ku.di.dms.vms.modb.definition.key.SimpleKey;
+import dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.query.analyzer.predicate.GroupByPredicate;
+import dk.ku.di.dms.vms.modb.query.execution.operators.IndexMultiAggregateScan;
+import dk.ku.di.dms.vms.modb.storage.record.RecordBufferContext;
+import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.NonUniqueSecondaryIndex;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public final class AggregationTest {
+
+    // id, order_id, quantity, price
+    private static final Schema SCHEMA = new Schema(new String[]{"id", "order_id", "quantity", "price"},
+            new DataType[]{ DataType.INT, DataType.INT, DataType.INT, DataType.FLOAT },
+            new int[]{ 0 }, null, false);
+
+    @Test
+    public void testMultiAggregateScan() {
+        PrimaryIndex primaryIndex = PrimaryIndex.build(new UniqueHashMapIndex(SCHEMA, SCHEMA.getPrimaryKeyColumns()));
+        NonUniqueSecondaryIndex secondaryIndex = new NonUniqueSecondaryIndex(primaryIndex, new NonUniqueHashMapIndex(SCHEMA, new int[]{ 1 }));
+        TransactionContext tx1 = new TransactionContext(1, 0, false);
+        // more entries per order than a batch holds
+        for(int i = 0; i < 1000; i++){
+            Object[] record = { i, i % 5, i, 0.5f };
+            Assert.assertTrue(primaryIndex.insert(tx1, SimpleKey.of(i), record));
+            secondaryIndex.insert(tx1, SimpleKey.of(i), record);
+        }
+        primaryIndex.installWrites(tx1);
+        secondaryIndex.installWrites(tx1);
+
+        Table table = new Table("order_entries", SCHEMA, primaryIndex);
+        IndexMultiAggregateScan scan = new IndexMultiAggregateScan(List.of(
+                new GroupByPredicate(new ColumnReference("quantity", 2, table), GroupByOperationEnum.SUM),
+                new GroupByPredicate(new ColumnReference("price", 3, table), GroupByOperationEnum.SUM),
+                new GroupByPredicate(new ColumnReference("id", 0, table), GroupByOperationEnum.COUNT)),
+                secondaryIndex, List.of(1), 0);
+
+        List<Object[]> result = scan.runAsEmbedded(new TransactionContext(2, 1, true), SimpleKey.of(3));
+        Assert.assertEquals(1, result.size());
+        Object[] row = result.getFirst();
+        Assert.assertEquals(3, row[0]);
+        int expected = 0;
+        for(int i = 3; i < 1000; i = i + 5) expected += i;
+        Assert.assertEquals(expected, row[1]);
+        Assert.assertEquals(100f, row[2]);
+        Assert.assertEquals(200, row[3]);
+
+        // nothing is visible before tid 1
+        row = scan.runAsEmbedded(new TransactionContext(2, 0, true), SimpleKey.of(3)).getFirst();
+        Assert.assertEquals(0, row[1]);
+        Assert.assertEquals(0, row[3]);
+    }
+
+    @Test
+    public void testMultiAggregateScanOffHeap() {
+        int capacity = UniqueHashBufferIndex.capacityFor(1000);
+        UniqueHashBufferIndex bufferIndex = new UniqueHashBufferIndex(
+                RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(SCHEMA, capacity)),
+                SCHEMA, SCHEMA.getPrimaryKeyColumns(), capacity);
+        PrimaryIndex primaryIndex = PrimaryIndex.build(bufferIndex, null, true);
+        NonUniqueSecondaryIndex secondaryIndex = new NonUniqueSecondaryIndex(primaryIndex, new NonUniqueHashMapIndex(SCHEMA, new int[]{ 1 }));
+        TransactionContext tx1 = new TransactionContext(1, 0, false);
+        for(int i = 0; i < 1000; i++){
+            Object[] record = { i, i % 5, i, 0.5f };
+            Assert.assertTrue(primaryIndex.insert(tx1, SimpleKey.of(i), record));
+            secondaryIndex.insert(tx1, SimpleKey.of(i), record);
+        }
+        primaryIndex.installWrites(tx1);
+        secondaryIndex.installWrites(tx1);
+
+        Table table = new Table("order_entries", SCHEMA, primaryIndex);
+        IndexMultiAggregateScan scan = new IndexMultiAggregateScan(List.of(
+                new GroupByPredicate(new ColumnReference("quantity", 2, table), GroupByOperationEnum.SUM),
+                new GroupByPredicate(new ColumnReference("price", 3, table), GroupByOperationEnum.SUM)),
+                secondaryIndex, List.of(1), 0);
+        int expected = 0;
+        for(int i = 3; i < 1000; i = i + 5) expected += i;
+
+        // versions written off-heap
+        Object[] row = scan.runAsEmbedded(new TransactionContext(2, 1, true), SimpleKey.of(3)).getFirst();
+        Assert.assertArrayEquals(new Object[]{ 3, expected, 100f }, row);
+
+        // records copied into the buffer
+        primaryIndex.checkpoint(1, 1);
+        row = scan.runAsEmbedded(new TransactionContext(2, 1, true), SimpleKey.of(3)).getFirst();
+        Assert.assertArrayEquals(new Object[]{ 3, expected, 100f }, row);
+    }
+
+}
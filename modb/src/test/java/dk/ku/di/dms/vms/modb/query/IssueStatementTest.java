@@ -0,0 +1,175 @@
+package dk.ku.di.dms.vms.modb.query;
+
+import dk.ku.di.dms.vms.modb.api.query.builder.QueryBuilderFactory;
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.Table;
+import dk.ku.di.dms.vms.modb.definition.key.SimpleKey;
+import dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.query.analyzer.exception.AnalyzerException;
+import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
+import dk.ku.di.dms.vms.modb.transaction.TransactionManager;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.NonUniqueSecondaryIndex;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import static dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum.EQUALS;
+import static dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum.GREATER_THAN;
+
+public final class IssueStatementTest {
+
+    private static final Schema PRODUCT_SCHEMA = new Schema(new String[]{"p_id", "p_seller_id", "p_price"},
+            new DataType[]{ DataType.INT, DataType.INT, DataType.INT },
+            new int[]{ 0 }, null, false);
+
+    private Table product;
+
+    private NonUniqueSecondaryIndex productBySeller;
+
+    private TransactionManager transactionManager;
+
+    @Before
+    public void setUp() {
+        PrimaryIndex productIndex = PrimaryIndex.build(new UniqueHashMapIndex(PRODUCT_SCHEMA, PRODUCT_SCHEMA.getPrimaryKeyColumns()));
+        NonUniqueHashMapIndex sellerColumnIndex = new NonUniqueHashMapIndex(PRODUCT_SCHEMA, new int[]{ 1 });
+        this.productBySeller = new NonUniqueSecondaryIndex(productIndex, sellerColumnIndex);
+        this.product = new Table("product", PRODUCT_SCHEMA, productIndex, Map.of(),
+                Map.of(sellerColumnIndex.key(), this.productBySeller), Map.of(), Map.of());
+        this.transactionManager = new TransactionManager(Map.of("product", this.product), false);
+
+        // 10 sellers with 10 products each
+        this.transactionManager.beginTransaction(1, 0, 0, false);
+        for(int i = 0; i < 100; i++){
+            this.transactionManager.issue(this.product, QueryBuilderFactory.insert().insert(i, i % 10, i).into("product").build());
+        }
+        this.transactionManager.commit();
+    }
+
+    private int countBySeller(TransactionContext txCtx, int sellerId){
+        int count = 0;
+        Iterator<Object[]> iterator = this.productBySeller.iterator(txCtx, SimpleKey.of(sellerId));
+        while(iterator.hasNext()){
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testUpdate() {
+        // bucket of a secondary index
+        this.transactionManager.beginTransaction(2, 0, 1, false);
+        this.transactionManager.issue(this.product, QueryBuilderFactory.update().update("product")
+                .set("p_price", 0)
+                .where("p_seller_id", EQUALS, 3).build());
+        this.transactionManager.commit();
+
+        // full scan. moves products between buckets
+        this.transactionManager.beginTransaction(3, 0, 2, false);
+        this.transactionManager.issue(this.product, QueryBuilderFactory.update().update("product")
+                .set("p_seller_id", 10).set("p_price", 1)
+                .where("p_price", GREATER_THAN, 89).build());
+        this.transactionManager.commit();
+
+        TransactionContext reader = new TransactionContext(4, 3, true);
+        PrimaryIndex productIndex = this.product.primaryKeyIndex();
+        Assert.assertEquals(0, productIndex.lookupByKey(reader, SimpleKey.of(13))[2]);
+        Assert.assertEquals(14, productIndex.lookupByKey(reader, SimpleKey.of(14))[2]);
+        Object[] moved = productIndex.lookupByKey(reader, SimpleKey.of(95));
+        Assert.assertEquals(10, moved[1]);
+        Assert.assertEquals(1, moved[2]);
+        // product 93 no longer costs more than 89
+        Assert.assertEquals(9, this.countBySeller(reader, 10));
+        Assert.assertEquals(10, this.countBySeller(reader, 3));
+        Assert.assertEquals(9, this.countBySeller(reader, 5));
+
+        // previous versions remain visible to older transactions
+        TransactionContext olderReader = new TransactionContext(2, 1, true);
+        Assert.assertEquals(13, productIndex.lookupByKey(olderReader, SimpleKey.of(13))[2]);
+        Assert.assertEquals(0, this.countBySeller(olderReader, 10));
+    }
+
+    @Test
+    public void testDelete() {
+        this.transactionManager.beginTransaction(2, 0, 1, false);
+        this.transactionManager.issue(this.product, QueryBuilderFactory.delete().from("product")
+                .where("p_seller_id", EQUALS, 7).and("p_price", GREATER_THAN, 50).build());
+        this.transactionManager.commit();
+
+        TransactionContext reader = new TransactionContext(3, 2, true);
+        Assert.assertEquals(5, this.countBySeller(reader, 7));
+        Assert.assertFalse(this.product.primaryKeyIndex().exists(reader, SimpleKey.of(57)));
+        Assert.assertTrue(this.product.primaryKeyIndex().exists(reader, SimpleKey.of(47)));
+    }
+
+    @Test
+    public void testRunInTransaction() throws InterruptedException {
+        // a handler running on a virtual thread
+        Thread thread = Thread.ofVirtual().start(() ->
+                this.transactionManager.runInTransaction(2, 0, 1, false, txCtx -> {
+                    this.transactionManager.issue(this.product, QueryBuilderFactory.delete().from("product")
+                            .where("p_seller_id", EQUALS, 4).build());
+                    this.transactionManager.commit();
+                    txCtx.release();
+                }));
+        thread.join();
+
+        // the context bound to the task takes precedence over the one registered for the thread
+        this.transactionManager.beginTransaction(3, 0, 2, true);
+        PrimaryIndex productIndex = this.product.primaryKeyIndex();
+        Object[] key = new Object[]{ 14 };
+        this.transactionManager.runInTransaction(2, 0, 1, true, txCtx ->
+                Assert.assertTrue(this.transactionManager.exists(productIndex, key)));
+        Assert.assertFalse(this.transactionManager.exists(productIndex, key));
+    }
+
+    @Test
+    public void testInvalidStatements() {
+        this.transactionManager.beginTransaction(2, 0, 1, false);
+        Assert.assertThrows(AnalyzerException.class, () -> this.transactionManager.issue(this.product,
+                QueryBuilderFactory.update().update("product").set("p_id", 1).where("p_price", EQUALS, 1).build()));
+        Assert.assertThrows(AnalyzerException.class, () -> this.transactionManager.issue(this.product,
+                QueryBuilderFactory.update().update("product").set("p_stock", 1).where("p_price", EQUALS, 1).build()));
+        Assert.assertThrows(AnalyzerException.class, () -> this.transactionManager.issue(this.product,
+                QueryBuilderFactory.insert().insert(100, 1).into("product").build()));
+    }
+
+    @Test
+    public void testValuesCheckedAgainstColumnType() {
+        Schema itemSchema = new Schema(new String[]{"i_id", "i_price", "i_name"},
+                new DataType[]{ DataType.INT, DataType.FLOAT, DataType.STRING },
+                new int[]{ 0 }, null, false);
+        PrimaryIndex itemIndex = PrimaryIndex.build(new UniqueHashMapIndex(itemSchema, itemSchema.getPrimaryKeyColumns()));
+        Table item = new Table("item", itemSchema, itemIndex, Map.of(), Map.of(), Map.of(), Map.of());
+        TransactionManager transactionManager = new TransactionManager(Map.of("item", item), false);
+
+        transactionManager.beginTransaction(1, 0, 0, false);
+        // ints are widened to the float column
+        transactionManager.issue(item, QueryBuilderFactory.insert().insert(1, 10, "item").into("item").build());
+        transactionManager.issue(item, QueryBuilderFactory.insert().insert(2, 20.5f, "item").into("item").build());
+        transactionManager.issue(item, QueryBuilderFactory.update().update("item")
+                .set("i_price", 0).where("i_id", EQUALS, 2).build());
+        Assert.assertThrows(AnalyzerException.class, () -> transactionManager.issue(item,
+                QueryBuilderFactory.update().update("item").set("i_price", "free").where("i_id", EQUALS, 1).build()));
+        Assert.assertThrows(AnalyzerException.class, () -> transactionManager.issue(item,
+                QueryBuilderFactory.update().update("item").set("i_name", 1).where("i_id", EQUALS, 1).build()));
+        Assert.assertThrows(AnalyzerException.class, () -> transactionManager.issue(item,
+                QueryBuilderFactory.insert().insert(3, 1.0, "item").into("item").build()));
+        // above 2^24, not every int has a float
+        Assert.assertThrows(AnalyzerException.class, () -> transactionManager.issue(item,
+                QueryBuilderFactory.insert().insert(3, (1 << 24) + 1, "item").into("item").build()));
+        transactionManager.commit();
+
+        TransactionContext reader = new TransactionContext(2, 1, true);
+        Assert.assertArrayEquals(new Object[]{ 1, 10.0f, "item" }, itemIndex.lookupByKey(reader, SimpleKey.of(1)));
+        Assert.assertArrayEquals(new Object[]{ 2, 0.0f, "item" }, itemIndex.lookupByKey(reader, SimpleKey.of(2)));
+        Assert.assertFalse(itemIndex.exists(reader, SimpleKey.of(3)));
+    }
+
+}
@@ -0,0 +1,192 @@
+package dk.ku.di.dms.vms.modb.query;
+
+import dk.ku.di.dms.vms.modb.api.query.builder.QueryBuilderFactory;
+import dk.ku.di.dms.vms.modb.api.query.statement.SelectStatement;
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.Table;
+import dk.ku.di.dms.vms.modb.definition.key.IKey;
+import dk.ku.di.dms.vms.modb.definition.key.SimpleKey;
+import dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.query.analyzer.Analyzer;
+import dk.ku.di.dms.vms.modb.query.analyzer.QueryTree;
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContextBuilder;
+import dk.ku.di.dms.vms.modb.query.execution.operators.AbstractSimpleOperator;
+import dk.ku.di.dms.vms.modb.query.execution.operators.RecordCursor;
+import dk.ku.di.dms.vms.modb.query.execution.operators.join.AbstractHashJoin;
+import dk.ku.di.dms.vms.modb.query.execution.operators.join.UniqueHashJoinNonUniqueHashWithProjection;
+import dk.ku.di.dms.vms.modb.query.planner.QueryPlan;
+import dk.ku.di.dms.vms.modb.query.planner.SimplePlanner;
+import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
+import dk.ku.di.dms.vms.modb.transaction.TransactionManager;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.NonUniqueSecondaryIndex;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum.EQUALS;
+import static dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum.GREATER_THAN;
+
+public final class PlannerCostTest {
+
+    private static final Schema SELLER_SCHEMA = new Schema(new String[]{"s_id", "s_name"},
+            new DataType[]{ DataType.INT, DataType.STRING },
+            new int[]{ 0 }, null, false);
+
+    private static final Schema PRODUCT_SCHEMA = new Schema(new String[]{"p_id", "p_seller_id", "p_price"},
+            new DataType[]{ DataType.INT, DataType.INT, DataType.INT },
+            new int[]{ 0 }, null, false);
+
+    private static Map<String, Table> buildCatalog(){
+        PrimaryIndex sellerIndex = PrimaryIndex.build(new UniqueHashMapIndex(SELLER_SCHEMA, SELLER_SCHEMA.getPrimaryKeyColumns()));
+        PrimaryIndex productIndex = PrimaryIndex.build(new UniqueHashMapIndex(PRODUCT_SCHEMA, PRODUCT_SCHEMA.getPrimaryKeyColumns()));
+        NonUniqueHashMapIndex sellerColumnIndex = new NonUniqueHashMapIndex(PRODUCT_SCHEMA, new int[]{ 1 });
+        NonUniqueSecondaryIndex productBySeller = new NonUniqueSecondaryIndex(productIndex, sellerColumnIndex);
+
+        // 10 sellers with 10 products each
+        TransactionContext tx1 = new TransactionContext(1, 0, false);
+        for(int i = 0; i < 10; i++){
+            Assert.assertTrue(sellerIndex.insert(tx1, SimpleKey.of(i), new Object[]{ i, "seller"+i }));
+        }
+        for(int i = 0; i < 100; i++){
+            Object[] record = { i, i % 10, i };
+            Assert.assertTrue(productIndex.insert(tx1, SimpleKey.of(i), record));
+            productBySeller.insert(tx1, SimpleKey.of(i), record);
+        }
+        sellerIndex.installWrites(tx1);
+        productIndex.installWrites(tx1);
+        productBySeller.installWrites(tx1);
+
+        Table seller = new Table("seller", SELLER_SCHEMA, sellerIndex);
+        Table product = new Table("product", PRODUCT_SCHEMA, productIndex, Map.of(),
+                Map.of(sellerColumnIndex.key(), productBySeller), Map.of(), Map.of());
+        return Map.of("seller", seller, "product", product);
+    }
+
+    @Test
+    public void testIndexSelection() {
+        Map<String, Table> catalog = buildCatalog();
+        Analyzer analyzer = new Analyzer(catalog);
+        SimplePlanner planner = new SimplePlanner();
+
+        SelectStatement bySeller = QueryBuilderFactory.select().project("p_id, p_price").from("product")
+                .where("p_seller_id", EQUALS, 3).build();
+        AbstractSimpleOperator operator = planner.plan(analyzer.analyze(bySeller));
+        Assert.assertTrue(operator.isIndexScan());
+        Assert.assertTrue(operator.asIndexScan().index() instanceof NonUniqueSecondaryIndex);
+        Assert.assertFalse(operator.asIndexScan().filterRequired());
+
+        // the unique lookup is cheaper than the bucket, and the seller is left to the filter
+        SelectStatement byIdAndSeller = QueryBuilderFactory.select().project("p_id, p_price").from("product")
+                .where("p_id", EQUALS, 13).and("p_seller_id", EQUALS, 3).build();
+        operator = planner.plan(analyzer.analyze(byIdAndSeller));
+        Assert.assertTrue(operator.isIndexScan());
+        Assert.assertTrue(operator.asIndexScan().index() instanceof PrimaryIndex);
+        Assert.assertTrue(operator.asIndexScan().filterRequired());
+
+        SelectStatement byPrice = QueryBuilderFactory.select().project("p_id").from("product")
+                .where("p_price", GREATER_THAN, 10).build();
+        Assert.assertTrue(planner.plan(analyzer.analyze(byPrice)).isFullScan());
+    }
+
+    @Test
+    public void testJoin() {
+        Map<String, Table> catalog = buildCatalog();
+        Analyzer analyzer = new Analyzer(catalog);
+        SimplePlanner planner = new SimplePlanner();
+
+        SelectStatement join = QueryBuilderFactory.select().project("s_name, p_price").from("seller")
+                .join("seller", "s_id").on(EQUALS, "product", "p_seller_id")
+                .and("s_id", EQUALS, 3).build();
+        AbstractSimpleOperator operator = planner.plan(analyzer.analyze(join));
+        Assert.assertTrue(operator.isHashJoin());
+        // the seller is found by its key and the bucket of its products is probed,
+        // instead of scanning all products and probing the sellers
+        Assert.assertTrue(operator instanceof UniqueHashJoinNonUniqueHashWithProjection);
+        AbstractHashJoin hashJoin = operator.asHashJoin();
+        Assert.assertEquals("seller", hashJoin.leftTable().getName());
+        Assert.assertTrue(hashJoin.leftScan().isIndexScan());
+
+        TransactionContext reader = new TransactionContext(2, 1, true);
+        RecordCursor sellers = hashJoin.leftScan().asIndexScan().cursor(reader, new IKey[]{ SimpleKey.of(3) }, null, null, RecordCursor.NO_LIMIT);
+        List<Object[]> rows = hashJoin.runAsEmbedded(reader, sellers, null);
+        Assert.assertEquals(10, rows.size());
+        for(Object[] row : rows){
+            Assert.assertEquals("seller3", row[0]);
+            Assert.assertEquals(3, (int) row[1] % 10);
+        }
+
+        // filter on the inner table
+        sellers = hashJoin.leftScan().asIndexScan().cursor(reader, new IKey[]{ SimpleKey.of(3) }, null, null, RecordCursor.NO_LIMIT);
+        rows = hashJoin.runAsEmbedded(reader, sellers, FilterContextBuilder.build(
+                analyzer.analyze(QueryBuilderFactory.select().project("p_id").from("product")
+                        .where("p_price", GREATER_THAN, 50).build()).wherePredicates));
+        Assert.assertEquals(5, rows.size());
+    }
+
+    @Test
+    public void testPreparedJoin() {
+        Map<String, Table> catalog = buildCatalog();
+        TransactionManager transactionManager = new TransactionManager(catalog, false);
+        transactionManager.beginTransaction(2, 0, 1, true);
+
+        // parameters bind in the order of the where clause, across both tables
+        SelectStatement join = QueryBuilderFactory.select().project("s_name, p_price").from("seller")
+                .join("seller", "s_id").on(EQUALS, "product", "p_seller_id")
+                .and("s_id", EQUALS, 3).and("p_price", GREATER_THAN, 50).build();
+        int preparedQueryId = transactionManager.prepare(catalog.get("seller"), join);
+        List<Object[]> rows = transactionManager.fetch(preparedQueryId, new Object[]{ 7, 0 });
+        Assert.assertEquals(10, rows.size());
+        for(Object[] row : rows){
+            Assert.assertEquals("seller7", row[0]);
+        }
+        Assert.assertEquals(5, transactionManager.fetch(preparedQueryId, new Object[]{ 5, 50 }).size());
+        // values found on preparation
+        Assert.assertEquals(5, transactionManager.fetch(preparedQueryId, new Object[]{ 3 }).size());
+
+        Iterator<Object[]> cursor = transactionManager.cursor(preparedQueryId, new Object[]{ 2, 50 }, 2);
+        int count = 0;
+        while(cursor.hasNext()){
+            Assert.assertEquals("seller2", cursor.next()[0]);
+            count++;
+        }
+        Assert.assertEquals(2, count);
+    }
+
+    @Test
+    public void testPlanStaleOnCardinalityDrift() {
+        Map<String, Table> catalog = buildCatalog();
+        Analyzer analyzer = new Analyzer(catalog);
+        SimplePlanner planner = new SimplePlanner();
+
+        SelectStatement join = QueryBuilderFactory.select().project("s_name, p_price").from("seller")
+                .join("seller", "s_id").on(EQUALS, "product", "p_seller_id")
+                .and("s_id", EQUALS, 3).and("p_price", GREATER_THAN, 50).build();
+        QueryTree queryTree = analyzer.analyze(join);
+        QueryPlan queryPlan = QueryPlan.of(planner.plan(queryTree), queryTree);
+        Assert.assertFalse(queryPlan.isStale());
+        // the where clause is split by table once
+        Assert.assertEquals(1, queryPlan.leftPredicates().size());
+        Assert.assertEquals("seller", queryPlan.leftPredicates().getFirst().columnReference.table.getName());
+        Assert.assertEquals(1, queryPlan.rightPredicates().size());
+
+        // twice as many products do not justify planning again, but four times as many do
+        PrimaryIndex productIndex = catalog.get("product").primaryKeyIndex();
+        TransactionContext tx2 = new TransactionContext(2, 1, false);
+        for(int i = 100; i < 200; i++){
+            Assert.assertTrue(productIndex.insert(tx2, SimpleKey.of(i), new Object[]{ i, i % 10, i }));
+        }
+        Assert.assertFalse(queryPlan.isStale());
+        for(int i = 200; i < 400; i++){
+            Assert.assertTrue(productIndex.insert(tx2, SimpleKey.of(i), new Object[]{ i, i % 10, i }));
+        }
+        Assert.assertTrue(queryPlan.isStale());
+        Assert.assertFalse(QueryPlan.of(planner.plan(queryTree), queryTree).isStale());
+    }
+
+}
@@ -0,0 +1,62 @@
+package dk.ku.di.dms.vms.modb.query;
+
+import dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum;
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.ColumnReference;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.Table;
+import dk.ku.di.dms.vms.modb.definition.key.SimpleKey;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.query.analyzer.predicate.WherePredicate;
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContext;
+import dk.ku.di.dms.vms.modb.query.execution.filter.FilterContextBuilder;
+import dk.ku.di.dms.vms.modb.query.execution.operators.RecordCursor;
+import dk.ku.di.dms.vms.modb.query.execution.operators.scan.FullScanWithProjection;
+import dk.ku.di.dms.vms.modb.transaction.TransactionContext;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public final class RecordCursorTest {
+
+    // id, seller_id, name
+    private static final Schema SCHEMA = new Schema(new String[]{"id", "seller_id", "name"},
+            new DataType[]{ DataType.INT, DataType.INT, DataType.STRING },
+            new int[]{ 0 }, null, false);
+
+    @Test
+    public void testFullScanCursor() {
+        PrimaryIndex primaryIndex = PrimaryIndex.build(new UniqueHashMapIndex(SCHEMA, SCHEMA.getPrimaryKeyColumns()));
+        TransactionContext tx1 = new TransactionContext(1, 0, false);
+        for(int i = 0; i < 100; i++){
+            Assert.assertTrue(primaryIndex.insert(tx1, SimpleKey.of(i), new Object[]{ i, i % 10, "item"+i }));
+        }
+        primaryIndex.installWrites(tx1);
+
+        Table table = new Table("items", SCHEMA, primaryIndex);
+        FilterContext filterContext = FilterContextBuilder.build(List.of(
+                new WherePredicate(new ColumnReference("seller_id", 1, table), ExpressionTypeEnum.EQUALS, 3)));
+        FullScanWithProjection scan = new FullScanWithProjection(primaryIndex, new int[]{ 2, 0 }, 0);
+        TransactionContext reader = new TransactionContext(2, 1, true);
+
+        // projection applied record by record
+        RecordCursor cursor = scan.cursor(reader, filterContext, scan.projectionColumns(), RecordCursor.NO_LIMIT);
+        int count = 0;
+        while(cursor.hasNext()){
+            Object[] row = cursor.next();
+            Assert.assertEquals(2, row.length);
+            Assert.assertEquals("item"+row[1], row[0]);
+            Assert.assertEquals(3, (int) row[1] % 10);
+            count++;
+        }
+        Assert.assertEquals(10, count);
+
+        // the cursor stops at the limit
+        Assert.assertEquals(4, scan.cursor(reader, filterContext, null, 4).toList().size());
+        Assert.assertEquals(100, scan.runAsEmbedded(reader).size());
+        Assert.assertEquals(3, scan.runAsEmbedded(reader).getFirst().length);
+    }
+
+}
@@ -0,0 +1,129 @@
+package dk.ku.di.dms.vms.modb.query;
+
+import dk.ku.di.dms.vms.modb.api.query.builder.QueryBuilderFactory;
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import dk.ku.di.dms.vms.modb.definition.Table;
+import dk.ku.di.dms.vms.modb.definition.key.SimpleKey;
+import dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
+import dk.ku.di.dms.vms.modb.query.execution.operators.RecordReferenceCursor;
+import dk.ku.di.dms.vms.modb.storage.record.RecordBufferContext;
+import dk.ku.di.dms.vms.modb.storage.record.RecordReference;
+import dk.ku.di.dms.vms.modb.transaction.TransactionManager;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.NonUniqueSecondaryIndex;
+import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum.EQUALS;
+import static dk.ku.di.dms.vms.modb.api.query.enums.ExpressionTypeEnum.GREATER_THAN;
+
+public final class RecordReferenceTest {
+
+    private static final Schema ITEM_SCHEMA = new Schema(new String[]{"i_id", "i_available", "i_seller_id", "i_name", "i_price"},
+            new DataType[]{ DataType.INT, DataType.BOOL, DataType.INT, DataType.STRING, DataType.DOUBLE },
+            new int[]{ 0 }, null, false);
+
+    private Table item;
+
+    private TransactionManager transactionManager;
+
+    @Before
+    public void setUp() {
+        int capacity = UniqueHashBufferIndex.capacityFor(64);
+        UniqueHashBufferIndex bufferIndex = new UniqueHashBufferIndex(
+                RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(ITEM_SCHEMA, capacity)),
+                ITEM_SCHEMA, ITEM_SCHEMA.getPrimaryKeyColumns(), capacity);
+        // items 0 to 9 are only found in the buffer, as if recovered from a checkpoint
+        for(int i = 0; i < 10; i++){
+            bufferIndex.insert(SimpleKey.of(i), record(i));
+        }
+        PrimaryIndex itemIndex = PrimaryIndex.build(bufferIndex);
+        NonUniqueHashMapIndex sellerColumnIndex = new NonUniqueHashMapIndex(ITEM_SCHEMA, new int[]{ 2 });
+        NonUniqueSecondaryIndex itemBySeller = new NonUniqueSecondaryIndex(itemIndex, sellerColumnIndex);
+        itemBySeller.rebuild();
+        this.item = new Table("item", ITEM_SCHEMA, itemIndex, Map.of(),
+                Map.of(sellerColumnIndex.key(), itemBySeller), Map.of(), Map.of());
+        this.transactionManager = new TransactionManager(Map.of("item", this.item), false);
+
+        // items 10 to 19 are versions in memory
+        this.transactionManager.beginTransaction(1, 0, 0, false);
+        for(int i = 10; i < 20; i++){
+            this.transactionManager.insert(this.item, record(i));
+        }
+        this.transactionManager.commit();
+    }
+
+    // 4 sellers with 5 items each
+    private static Object[] record(int id){
+        return new Object[]{ id, id % 2 == 0, id % 4, "item"+id, id * 1.5 };
+    }
+
+    @Test
+    public void testBufferAndVersionedRecords() {
+        // a new version of item 5
+        this.transactionManager.beginTransaction(2, 0, 1, false);
+        this.transactionManager.update(this.item, new Object[]{ 5, false, 1, "renamed", 100.0 });
+        this.transactionManager.commit();
+
+        this.transactionManager.beginTransaction(3, 0, 2, true);
+        RecordReferenceCursor cursor = this.transactionManager.fetchMemoryReference(this.item,
+                QueryBuilderFactory.select().project("i_id").from("item").where("i_id", EQUALS, 4).build());
+        Assert.assertTrue(cursor.hasNext());
+        RecordReference reference = cursor.next();
+        Assert.assertTrue(reference.isOffHeap());
+        Assert.assertEquals(4, reference.getInt(0));
+        Assert.assertTrue(reference.getBoolean(1));
+        Assert.assertEquals(0, reference.getInt(2));
+        Assert.assertEquals("item4", reference.getString(3));
+        Assert.assertEquals(6.0, reference.getDouble(4), 0.0);
+        Assert.assertArrayEquals(record(4), reference.toArray());
+        Assert.assertFalse(cursor.hasNext());
+
+        // the bucket mixes records in the buffer with versions in memory
+        cursor = this.transactionManager.fetchMemoryReference(this.item,
+                QueryBuilderFactory.select().project("i_id").from("item").where("i_seller_id", EQUALS, 1).build());
+        int count = 0;
+        while(cursor.hasNext()){
+            reference = cursor.next();
+            int id = reference.getInt(0);
+            if(id == 5){
+                Assert.assertFalse(reference.isOffHeap());
+                Assert.assertEquals("renamed", reference.getString(3));
+                Assert.assertEquals(100.0, reference.getDouble(4), 0.0);
+            } else {
+                Assert.assertEquals(id < 10, reference.isOffHeap());
+                Assert.assertEquals("item"+id, reference.getString(3));
+            }
+            Assert.assertEquals(1, reference.getInt(2));
+            count++;
+        }
+        Assert.assertEquals(5, count);
+    }
+
+    @Test
+    public void testFullScanWithFilter() {
+        this.transactionManager.beginTransaction(2, 0, 1, false);
+        this.transactionManager.delete(this.item, record(18));
+        this.transactionManager.commit();
+
+        this.transactionManager.beginTransaction(3, 0, 2, true);
+        RecordReferenceCursor cursor = this.transactionManager.fetchMemoryReference(this.item,
+                QueryBuilderFactory.select().project("i_id").from("item")
+                        .where("i_price", GREATER_THAN, 20.0).and("i_available", EQUALS, true).build());
+        int count = 0;
+        while(cursor.hasNext()){
+            RecordReference reference = cursor.next();
+            Assert.assertTrue(reference.getDouble(4) > 20.0);
+            Assert.assertTrue(reference.getBoolean(1));
+            count++;
+        }
+        // items 14 and 16. item 18 is deleted, and the full scan only traverses the versions in memory
+        Assert.assertEquals(2, count);
+    }
+
+}
@@ -0,0 +1,45 @@
+package dk.ku.di.dms.vms.modb.storage;
+
+import dk.ku.di.dms.vms.modb.storage.bloom.BlockedBloomFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class BloomFilterTest {
+
+    private static final int NUM_KEYS = 100_000;
+
+    @Test
+    public void testNoFalseNegatives() {
+        var filter = BlockedBloomFilter.build(NUM_KEYS);
+        for(int i = 0; i < NUM_KEYS; i++){
+            filter.add(i);
+        }
+        for(int i = 0; i < NUM_KEYS; i++){
+            Assert.assertTrue(filter.mightContain(i));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        var filter = BlockedBloomFilter.build(NUM_KEYS);
+        // sequential keys, as generated by most primary keys
+        for(int i = 0; i < NUM_KEYS; i++){
+            filter.add(i);
+        }
+        int falsePositives = 0;
+        for(int i = NUM_KEYS; i < NUM_KEYS * 2; i++){
+            if(filter.mightContain(i)) falsePositives++;
+        }
+        Assert.assertTrue("False positives: "+falsePositives, falsePositives < NUM_KEYS / 100);
+    }
+
+    @Test
+    public void testClear() {
+        var filter = BlockedBloomFilter.build(16);
+        filter.add(42);
+        Assert.assertTrue(filter.mightContain(42));
+        filter.clear();
+        Assert.assertFalse(filter.mightContain(42));
+    }
+
+}
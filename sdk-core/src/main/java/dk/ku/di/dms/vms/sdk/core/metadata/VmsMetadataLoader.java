@@ -29,12 +29,16 @@ import javax.persistence.Column;
 import javax.persistence.Id;
 import javax.validation.constraints.*;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import static java.lang.System.Logger.Level.DEBUG;
@@ -501,6 +505,8 @@ public final class VmsMetadataLoader {
             // default
             ExecutionModeEnum executionMode = ExecutionModeEnum.SINGLE_THREADED;
 
+            Function<Object, Object> handler = bindHandler(obj, method);
+
             Optional<Annotation> optionalPartitionBy = Arrays.stream(annotations).filter(p -> p.annotationType() == PartitionBy.class ).findFirst();
             if(optionalPartitionBy.isPresent()) {
                 executionMode = ExecutionModeEnum.PARTITIONED;
@@ -508,17 +514,18 @@ public final class VmsMetadataLoader {
                 String partitionMethodStr = ( (PartitionBy)optionalPartitionBy.get() ).method();
                 try {
                     Method partitionMethod = inputClazz.getMethod(partitionMethodStr);
-                    vmsTransactionSignature = new VmsTransactionSignature(obj, method, transactionType, executionMode, Optional.of(partitionMethod), inputQueues, outputQueue);
+                    vmsTransactionSignature = new VmsTransactionSignature(obj, method, handler, transactionType, executionMode,
+                            partitionMethod, bindPartitionKey(partitionMethod), inputQueues, outputQueue);
                 } catch (NoSuchMethodException e) {
                     // leave as single threaded
-                    vmsTransactionSignature = new VmsTransactionSignature(obj, method, transactionType, executionMode, inputQueues, outputQueue);
+                    vmsTransactionSignature = new VmsTransactionSignature(obj, method, handler, transactionType, executionMode, inputQueues, outputQueue);
                 }
             } else {
 
                 Optional<Annotation> optionalParallel = Arrays.stream(annotations).filter(p -> p.annotationType() == Parallel.class).findFirst();
                 if (optionalParallel.isPresent()) executionMode = ExecutionModeEnum.PARALLEL;
 
-                vmsTransactionSignature = new VmsTransactionSignature(obj, method, transactionType, executionMode, inputQueues, outputQueue);
+                vmsTransactionSignature = new VmsTransactionSignature(obj, method, handler, transactionType, executionMode, inputQueues, outputQueue);
             }
 
             for (int i = 0; i < inputQueues.length; i++) {
@@ -557,6 +564,78 @@ public final class VmsMetadataLoader {
         }
     }
 
+    /**
+     * Binds a transactional method to its vms instance through a generated functional interface,
+     * so tasks call the application code directly and the JIT is able to inline it.
+     * Methods with more than one input and classes the lookup cannot access fall back to reflection.
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> bindHandler(Object vmsInstance, Method method) {
+        if(method.getParameterCount() == 1 && !Modifier.isStatic(method.getModifiers())) {
+            try {
+                Class<?> vmsClass = method.getDeclaringClass();
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(vmsClass, MethodHandles.lookup());
+                MethodHandle methodHandle = lookup.unreflect(method);
+                Class<?> inputType = method.getParameterTypes()[0];
+                if (method.getReturnType() == void.class) {
+                    CallSite callSite = LambdaMetafactory.metafactory(lookup, "accept",
+                            MethodType.methodType(Consumer.class, vmsClass),
+                            MethodType.methodType(void.class, Object.class),
+                            methodHandle,
+                            MethodType.methodType(void.class, inputType));
+                    Consumer<Object> consumer = (Consumer<Object>) callSite.getTarget().invoke(vmsInstance);
+                    return input -> {
+                        consumer.accept(input);
+                        return null;
+                    };
+                }
+                CallSite callSite = LambdaMetafactory.metafactory(lookup, "apply",
+                        MethodType.methodType(Function.class, vmsClass),
+                        MethodType.methodType(Object.class, Object.class),
+                        methodHandle,
+                        MethodType.methodType(method.getReturnType(), inputType));
+                return (Function<Object, Object>) callSite.getTarget().invoke(vmsInstance);
+            } catch (Throwable e) {
+                logger.log(WARNING, "Cannot bind method "+method.getName()+" to a functional interface. Falling back to reflection: "+e);
+            }
+        }
+        return input -> invokeReflectively(method, vmsInstance, input);
+    }
+
+    /**
+     * The partition key of an input event, boxed if the getter returns a primitive
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> bindPartitionKey(Method partitionMethod) {
+        if(partitionMethod.getParameterCount() == 0 && !Modifier.isStatic(partitionMethod.getModifiers())) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(partitionMethod.getDeclaringClass(), MethodHandles.lookup());
+                MethodHandle methodHandle = lookup.unreflect(partitionMethod);
+                CallSite callSite = LambdaMetafactory.metafactory(lookup, "apply",
+                        MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class),
+                        methodHandle,
+                        MethodType.methodType(partitionMethod.getReturnType(), partitionMethod.getDeclaringClass()).wrap());
+                return (Function<Object, Object>) callSite.getTarget().invoke();
+            } catch (Throwable e) {
+                logger.log(WARNING, "Cannot bind partition method "+partitionMethod.getName()+" to a functional interface. Falling back to reflection: "+e);
+            }
+        }
+        return input -> invokeReflectively(partitionMethod, input);
+    }
+
+    private static Object invokeReflectively(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            // surface the application exception the same way as a directly bound method
+            if(e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new RuntimeException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static Class<?> getOutputType(Method method) {
         Class<?> outputType;
         try{
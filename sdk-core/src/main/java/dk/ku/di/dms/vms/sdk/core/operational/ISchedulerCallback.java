@@ -1,11 +1,15 @@
 package dk.ku.di.dms.vms.sdk.core.operational;
 
-import dk.ku.di.dms.vms.modb.api.enums.ExecutionModeEnum;
+import dk.ku.di.dms.vms.sdk.core.operational.VmsTransactionTaskBuilder.VmsTransactionTask;
 
+/**
+ * The task is handed back so the scheduler does not have to look it up
+ * in its tracking structures, which are only accessed by the scheduler thread.
+ */
 public interface ISchedulerCallback {
 
-    void success(ExecutionModeEnum executionMode, OutboundEventResult outboundEventResult);
+    void success(VmsTransactionTask task, OutboundEventResult outboundEventResult);
 
-    void error(ExecutionModeEnum executionMode, long tid, Exception e);
+    void error(VmsTransactionTask task, Exception e);
 
 }
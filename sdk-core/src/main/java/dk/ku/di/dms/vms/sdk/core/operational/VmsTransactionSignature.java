@@ -5,6 +5,7 @@ import dk.ku.di.dms.vms.modb.api.enums.TransactionTypeEnum;
 
 import java.lang.reflect.Method;
 import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * A data class that stores the method, respective class,
@@ -21,6 +22,9 @@ public final class VmsTransactionSignature {
     // the method to run, i.e., the sub-transaction to be called
     private final Method method;
 
+    // the method bound to the vms instance, avoiding reflection on every call
+    private final Function<Object, Object> handler;
+
     // the type of the transaction, R, W, RW
     private final TransactionTypeEnum transactionType;
 
@@ -29,27 +33,34 @@ public final class VmsTransactionSignature {
     // only used if execution mode is partitioned
     private final Optional<Method> partitionByMethod;
 
+    private final Function<Object, Object> partitionKey;
+
     // the identification of the input queues. i.e., these events must have arrived in order to execute the method
     private final String[] inputQueues;
 
     private final String outputQueue;
 
-    public VmsTransactionSignature(Object vmsInstance, Method method, TransactionTypeEnum transactionType, ExecutionModeEnum executionMode, Optional<Method> partitionByMethod, String[] inputQueues, String outputQueue) {
+    public VmsTransactionSignature(Object vmsInstance, Method method, Function<Object, Object> handler, TransactionTypeEnum transactionType, ExecutionModeEnum executionMode,
+                                   Method partitionByMethod, Function<Object, Object> partitionKey, String[] inputQueues, String outputQueue) {
         this.vmsInstance = vmsInstance;
         this.method = method;
+        this.handler = handler;
         this.transactionType = transactionType;
         this.executionMode = executionMode;
-        this.partitionByMethod = partitionByMethod;
+        this.partitionByMethod = Optional.of(partitionByMethod);
+        this.partitionKey = partitionKey;
         this.inputQueues = inputQueues;
         this.outputQueue = outputQueue;
     }
 
-    public VmsTransactionSignature(Object vmsInstance, Method method, TransactionTypeEnum transactionType, ExecutionModeEnum executionMode, String[] inputQueues, String outputQueue) {
+    public VmsTransactionSignature(Object vmsInstance, Method method, Function<Object, Object> handler, TransactionTypeEnum transactionType, ExecutionModeEnum executionMode, String[] inputQueues, String outputQueue) {
         this.vmsInstance = vmsInstance;
         this.method = method;
+        this.handler = handler;
         this.transactionType = transactionType;
         this.executionMode = executionMode;
         this.partitionByMethod = Optional.empty();
+        this.partitionKey = null;
         this.inputQueues = inputQueues;
         this.outputQueue = outputQueue;
     }
@@ -62,6 +73,10 @@ public final class VmsTransactionSignature {
         return method;
     }
 
+    public Function<Object, Object> handler() {
+        return handler;
+    }
+
     public TransactionTypeEnum transactionType() {
         return transactionType;
     }
@@ -82,4 +97,8 @@ public final class VmsTransactionSignature {
         return partitionByMethod.get();
     }
 
+    public Function<Object, Object> partitionKey() {
+        return partitionKey;
+    }
+
 }
\ No newline at end of file
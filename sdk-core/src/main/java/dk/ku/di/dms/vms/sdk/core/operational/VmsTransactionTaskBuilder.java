@@ -5,7 +5,6 @@ import dk.ku.di.dms.vms.modb.api.enums.TransactionTypeEnum;
 import dk.ku.di.dms.vms.modb.common.transaction.ITransactionContext;
 import dk.ku.di.dms.vms.modb.common.transaction.ITransactionManager;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Optional;
 
 import static java.lang.System.Logger.Level.ERROR;
@@ -63,60 +62,56 @@ public final class VmsTransactionTaskBuilder {
             this.input = input;
             Optional<Object> partitionIdAux;
             try {
-                if (signature.executionMode() == ExecutionModeEnum.PARTITIONED) {
-                    partitionIdAux = Optional.of(signature.partitionByMethod().invoke(input()));
+                if (signature.executionMode() == ExecutionModeEnum.PARTITIONED && signature.partitionKey() != null) {
+                    // no key means the input spans partitions
+                    partitionIdAux = Optional.ofNullable(signature.partitionKey().apply(input()));
                 } else {
                     partitionIdAux = Optional.empty();
                 }
-            } catch (InvocationTargetException | IllegalAccessException e){
-                LOGGER.log(ERROR, "Failed to obtain partition key from method "+signature.partitionByMethod().getName());
+            } catch (RuntimeException e){
+                LOGGER.log(ERROR, "Failed to obtain partition key from method "+signature.partitionByMethod().getName()+"\n"+e);
                 partitionIdAux = Optional.empty();
             }
             this.partitionId = partitionIdAux;
         }
 
-        private void readOnlyRun(){
+        private void readOnlyRun(ITransactionContext txCtx){
             try{
-                ITransactionContext txCtx = transactionManager.beginTransaction(this.tid, -1, this.lastTid, true);
-                Object output = this.signature.method().invoke(this.signature.vmsInstance(), this.input);
+                Object output = this.signature.handler().apply(this.input);
                 OutboundEventResult eventOutput = new OutboundEventResult(this.tid, this.batch, this.signature.outputQueue(), output);
-                schedulerCallback.success(this.signature.executionMode(), eventOutput);
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                this.handleErrorOnTask(e);
+                schedulerCallback.success(this, eventOutput);
             } catch (Exception e){
-                this.handleGenericError(e);
+                this.handleErrorOnTask(e);
             }
         }
 
-        private void handleGenericError(Exception e) {
-            LOGGER.log(ERROR, "Error not related to invoking task "+this.toString()+"\n"+ e);
-            e.printStackTrace(System.out);
-            schedulerCallback.error(signature.executionMode(), this.tid, e);
-        }
-
-        private void handleErrorOnTask(ReflectiveOperationException e) {
+        /**
+         * Since the handler is called directly, exceptions thrown by the application code arrive unwrapped
+         */
+        private void handleErrorOnTask(Exception e) {
             LOGGER.log(ERROR, "Error during invoking task "+this.toString()+"\n"+ e);
             e.printStackTrace(System.out);
-            schedulerCallback.error(signature.executionMode(), this.tid, e);
+            schedulerCallback.error(this, e);
         }
 
         @Override
         public void run() {
             this.signalRunning();
             if(this.signature.transactionType() == TransactionTypeEnum.R){
-                this.readOnlyRun();
+                transactionManager.runInTransaction(this.tid, -1, this.lastTid, true, this::readOnlyRun);
                 return;
             }
-            ITransactionContext txCtx = transactionManager.beginTransaction(this.tid, -1, this.lastTid, false);
+            transactionManager.runInTransaction(this.tid, -1, this.lastTid, false, this::writeRun);
+        }
+
+        private void writeRun(ITransactionContext txCtx){
             try {
-                Object output = this.signature.method().invoke(this.signature.vmsInstance(), this.input);
+                Object output = this.signature.handler().apply(this.input);
                 OutboundEventResult eventOutput = new OutboundEventResult(this.tid, this.batch, this.signature.outputQueue(), output);
                 transactionManager.commit();
-                schedulerCallback.success(this.signature.executionMode(), eventOutput);
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                this.handleErrorOnTask(e);
+                schedulerCallback.success(this, eventOutput);
             } catch (Exception e){
-                this.handleGenericError(e);
+                this.handleErrorOnTask(e);
             }
             // avoid returning indexes to pool before committing
             txCtx.release();
@@ -185,7 +180,7 @@ public final class VmsTransactionTaskBuilder {
     }
 
     public VmsTransactionTask buildFinished(long tid){
-        var sig = new VmsTransactionSignature(null, null, null, ExecutionModeEnum.SINGLE_THREADED, null, null);
+        var sig = new VmsTransactionSignature(null, null, null, null, ExecutionModeEnum.SINGLE_THREADED, null, null);
         var deadTask = new VmsTransactionTask(tid, 0, 0, sig, null);
         deadTask.status = FINISHED;
         return deadTask;
@@ -10,6 +10,9 @@ import dk.ku.di.dms.vms.sdk.core.operational.OutboundEventResult;
 import dk.ku.di.dms.vms.sdk.core.operational.VmsTransactionTaskBuilder;
 import dk.ku.di.dms.vms.sdk.core.operational.VmsTransactionTaskBuilder.VmsTransactionTask;
 import dk.ku.di.dms.vms.sdk.core.scheduler.complex.VmsComplexTransactionScheduler;
+import dk.ku.di.dms.vms.sdk.core.scheduler.executor.TaskExecutorTypeEnum;
+import dk.ku.di.dms.vms.sdk.core.scheduler.executor.WorkStealingTaskPool;
+import dk.ku.di.dms.vms.sdk.core.scheduler.tracking.TidRingBuffer;
 
 import java.util.*;
 import java.util.concurrent.*;
@@ -28,11 +31,13 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
 
     private static final System.Logger LOGGER = System.getLogger(VmsTransactionScheduler.class.getName());
 
-    // must be concurrent since different threads are writing and reading from it concurrently
-    private final Map<Long, VmsTransactionTask> transactionTaskMap;
+    private static final int INITIAL_TRACKING_CAPACITY = 1 << 14;
 
-    // map the last tid
-    private final Map<Long, Long> lastTidToTidMap;
+    // tasks in flight and the link from each last tid to its next tid. only accessed by the scheduler thread
+    private final TidRingBuffer<VmsTransactionTask> transactionTaskBuffer;
+
+    // all tasks up to this tid have finished. entries before it are no longer tracked
+    private long lowWatermark;
 
     /**
      * Thread pool for partitioned and parallel tasks
@@ -67,18 +72,56 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
                                                 ITransactionManager transactionalHandler,
                                                 Consumer<IVmsTransactionResult> eventHandler,
                                                 int vmsThreadPoolSize){
-        LOGGER.log(INFO, vmsIdentifier+ ": Building transaction scheduler with thread pool size of "+ vmsThreadPoolSize);
+        return build(vmsIdentifier, transactionInputQueue, transactionMetadataMap, transactionalHandler, eventHandler, vmsThreadPoolSize, 0);
+    }
+
+    /**
+     * @param lastTid The last TID committed, as recovered from storage. 0 if starting from scratch.
+     */
+    public static VmsTransactionScheduler build(String vmsIdentifier,
+                                                BlockingQueue<InboundEvent> transactionInputQueue,
+                                                Map<String, VmsTransactionMetadata> transactionMetadataMap,
+                                                ITransactionManager transactionalHandler,
+                                                Consumer<IVmsTransactionResult> eventHandler,
+                                                int vmsThreadPoolSize,
+                                                long lastTid){
+        return build(vmsIdentifier, transactionInputQueue, transactionMetadataMap, transactionalHandler, eventHandler,
+                TaskExecutorTypeEnum.fromPoolSize(vmsThreadPoolSize), vmsThreadPoolSize, lastTid);
+    }
+
+    public static VmsTransactionScheduler build(String vmsIdentifier,
+                                                BlockingQueue<InboundEvent> transactionInputQueue,
+                                                Map<String, VmsTransactionMetadata> transactionMetadataMap,
+                                                ITransactionManager transactionalHandler,
+                                                Consumer<IVmsTransactionResult> eventHandler,
+                                                TaskExecutorTypeEnum taskExecutorType,
+                                                int vmsThreadPoolSize,
+                                                long lastTid){
+        LOGGER.log(INFO, vmsIdentifier+ ": Building transaction scheduler with "+taskExecutorType+" task executor and thread pool size of "+ vmsThreadPoolSize);
         return new VmsTransactionScheduler(
                 vmsIdentifier,
-                vmsThreadPoolSize == 0 ? ForkJoinPool.commonPool() :
-                        Executors.newFixedThreadPool( vmsThreadPoolSize,
-                                Thread.ofPlatform().name("vms-task-thread")
-                                        //.priority(Thread.MAX_PRIORITY)
-                                        .factory() ),
+                buildTaskPool(taskExecutorType, vmsThreadPoolSize),
                 transactionInputQueue,
                 transactionMetadataMap,
                 transactionalHandler,
-                eventHandler);
+                eventHandler,
+                lastTid);
+    }
+
+    private static ExecutorService buildTaskPool(TaskExecutorTypeEnum taskExecutorType, int vmsThreadPoolSize){
+        // as in the properties, 0 picks half of the cpus
+        int poolSize = vmsThreadPoolSize == 0 ? Math.max(1, Runtime.getRuntime().availableProcessors() / 2) : vmsThreadPoolSize;
+        return switch (taskExecutorType){
+            case COMMON -> ForkJoinPool.commonPool();
+            case FIXED -> Executors.newFixedThreadPool( poolSize,
+                    Thread.ofPlatform().name("vms-task-thread")
+                            //.priority(Thread.MAX_PRIORITY)
+                            .factory() );
+            case WORK_STEALING -> new WorkStealingTaskPool( poolSize, "vms-task-thread" );
+            // tasks blocking on I/O release their carrier thread
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("vms-task-thread-", 0).factory() );
+        };
     }
 
     private VmsTransactionScheduler(String vmsIdentifier,
@@ -86,7 +129,8 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
                                     BlockingQueue<InboundEvent> transactionInputQueue,
                                     Map<String, VmsTransactionMetadata> transactionMetadataMap,
                                     ITransactionManager transactionalHandler,
-                                    Consumer<IVmsTransactionResult> eventHandler){
+                                    Consumer<IVmsTransactionResult> eventHandler,
+                                    long lastTid){
         super();
 
         this.vmsIdentifier = vmsIdentifier;
@@ -98,13 +142,13 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
         this.transactionInputQueue = transactionInputQueue;
 
         // operational (internal control of transactions and tasks)
-        this.transactionTaskMap = new ConcurrentHashMap<>(1000000);
+        this.transactionTaskBuffer = new TidRingBuffer<>(INITIAL_TRACKING_CAPACITY);
         SchedulerCallback callback = new SchedulerCallback(eventHandler);
         this.vmsTransactionTaskBuilder = new VmsTransactionTaskBuilder(transactionalHandler, callback);
-        this.transactionTaskMap.put( 0L, this.vmsTransactionTaskBuilder.buildFinished(0) );
-        this.lastTidToTidMap = new HashMap<>(1000000);
+        this.transactionTaskBuffer.put( lastTid, this.vmsTransactionTaskBuilder.buildFinished(lastTid) );
+        this.lowWatermark = lastTid;
 
-        this.lastTidFinished = new AtomicLong(0);
+        this.lastTidFinished = new AtomicLong(lastTid);
     }
 
     /**
@@ -119,6 +163,7 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
             try {
                 this.checkForNewEvents();
                 this.executeReadyTasks();
+                this.releaseFinishedTasks();
             } catch(Exception e){
                 e.printStackTrace(System.out);
                 LOGGER.log(ERROR, this.vmsIdentifier+": Error on scheduler loop: "+(e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
@@ -136,25 +181,23 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
         }
 
         @Override
-        public void success(ExecutionModeEnum executionMode, OutboundEventResult outboundEventResult) {
-            VmsTransactionTask task = transactionTaskMap.get(outboundEventResult.tid());
+        public void success(VmsTransactionTask task, OutboundEventResult outboundEventResult) {
             task.signalFinished();
             updateLastFinishedTid(outboundEventResult.tid());
             this.eventHandler.accept(outboundEventResult);
-            this.updateSchedulerTaskStats(executionMode, task);
+            this.updateSchedulerTaskStats(task.signature().executionMode(), task);
         }
 
         @Override
-        public void error(ExecutionModeEnum executionMode, long tid, Exception e) {
+        public void error(VmsTransactionTask task, Exception e) {
             // a simple mechanism to handle error is by re-executing, depending on the nature of the error
             // if constraint violation, it cannot be re-executed
             // in this case, the error must be informed to the event handler, so the event handler
             // can forward the error to downstream VMSs. if input VMS, easier to handle, just send a noop to them
-            LOGGER.log(WARNING, "Error captured during application execution: \n"+e.getCause().getMessage());
-            // remove from map to avoid reescheduling? no, it will lead to null pointer in scheduler loop
-            VmsTransactionTask task = transactionTaskMap.get(tid);
+            LOGGER.log(WARNING, "Error captured during application execution: \n"+(e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            // a failed task is never released, so the scheduler does not move past it
             task.signalFailed();
-            this.updateSchedulerTaskStats(executionMode, task);
+            this.updateSchedulerTaskStats(task.signature().executionMode(), task);
         }
 
         @Override
@@ -196,14 +239,14 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
     private boolean mustWaitForInputEvent = false;
 
     private void executeReadyTasks() {
-        Long nextTid = this.lastTidToTidMap.get(this.lastTidFinished.get());
-        // if nextTid == null then the scheduler must block until a new event arrive to progress
-        if(nextTid == null) {
+        long nextTid = this.transactionTaskBuffer.next(this.lastTidFinished.get());
+        // if there is no next tid then the scheduler must block until a new event arrive to progress
+        if(nextTid == TidRingBuffer.NONE) {
             // keep scheduler sleeping since next tid is unknown
             this.mustWaitForInputEvent = true;
             return;
         }
-        VmsTransactionTask task = this.transactionTaskMap.get( nextTid );
+        VmsTransactionTask task = this.transactionTaskBuffer.get( nextTid );
         while(true) {
             if(task.isScheduled()){
                 return;
@@ -233,7 +276,7 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
                 case PARTITIONED -> {
                     if(task.partitionId().isEmpty()){
                         if(this.canSingleThreadTaskRun()){
-                            LOGGER.log(WARNING, this.vmsIdentifier + ": Task will run as single-threaded even though it is marked as partitioned:\n"+task);
+                            LOGGER.log(DEBUG, this.vmsIdentifier + ": Task has no partition, so it will run as single-threaded:\n"+task);
                             this.submitSingleThreadTaskForExecution(task);
                         }
                         return;
@@ -245,8 +288,8 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
                 }
             }
             // bypass the single-thread execution if possible
-            if(!this.singleThreadTaskRunning && this.lastTidToTidMap.containsKey( task.tid() )){
-                task = this.transactionTaskMap.get( this.lastTidToTidMap.get( task.tid() ) );
+            if(!this.singleThreadTaskRunning && this.transactionTaskBuffer.next( task.tid() ) != TidRingBuffer.NONE){
+                task = this.transactionTaskBuffer.get( this.transactionTaskBuffer.next( task.tid() ) );
             }
         }
     }
@@ -257,7 +300,12 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
         this.numPartitionedTasksRunning.incrementAndGet();
         task.signalReady();
         LOGGER.log(DEBUG, this.vmsIdentifier+": Scheduling partitioned task for execution:\n"+ task);
-        this.sharedTaskPool.submit(task);
+        // keep the tasks of a partition on the same worker, so they find its records in cache
+        if(this.sharedTaskPool instanceof WorkStealingTaskPool workStealingTaskPool){
+            workStealingTaskPool.execute(task, task.partitionId().get());
+        } else {
+            this.sharedTaskPool.submit(task);
+        }
     }
 
     private void submitSingleThreadTaskForExecution(VmsTransactionTask task) {
@@ -280,11 +328,23 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
         return !this.singleThreadTaskRunning && this.numPartitionedTasksRunning.get() == 0;
     }
 
+    // invoked by the scheduler thread before it blocks waiting for new events
+    private Runnable idleListener = () -> { };
+
+    /**
+     * Must be set before the scheduler starts. Allows tests to inspect
+     * the state only accessed by the scheduler thread once it is idle
+     */
+    void setIdleListener(Runnable idleListener){
+        this.idleListener = idleListener;
+    }
+
     private final List<InboundEvent> drained = new ArrayList<>(1024*10);
 
     private void checkForNewEvents() throws InterruptedException {
         InboundEvent inboundEvent;
         if(this.mustWaitForInputEvent) {
+            this.idleListener.run();
             inboundEvent = this.transactionInputQueue.take();
             // disable block
             this.mustWaitForInputEvent = false;
@@ -302,11 +362,11 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
     }
 
     private void processNewEvent(InboundEvent inboundEvent) {
-        if (this.transactionTaskMap.containsKey(inboundEvent.tid())) {
+        if (inboundEvent.tid() <= this.lowWatermark || this.transactionTaskBuffer.get(inboundEvent.tid()) != null) {
             LOGGER.log(WARNING, this.vmsIdentifier+": Event TID has already been processed! Queue '" + inboundEvent.event() + "' Batch: " + inboundEvent.batch() + " TID: " + inboundEvent.tid());
             return;
         }
-        this.transactionTaskMap.put(inboundEvent.tid(), this.vmsTransactionTaskBuilder.build(
+        this.transactionTaskBuffer.put(inboundEvent.tid(), this.vmsTransactionTaskBuilder.build(
                 inboundEvent.tid(),
                 inboundEvent.lastTid(),
                 inboundEvent.batch(),
@@ -316,14 +376,45 @@ public final class VmsTransactionScheduler extends StoppableRunnable {
                 inboundEvent.input()
         ));
         // mark the last tid, so we can get the next to execute when appropriate
-        if(this.lastTidToTidMap.containsKey(inboundEvent.lastTid())){
+        // a last tid behind the watermark has already been followed by another tid
+        if(inboundEvent.lastTid() < this.lowWatermark || this.transactionTaskBuffer.next(inboundEvent.lastTid()) != TidRingBuffer.NONE){
             LOGGER.log(ERROR, "Inbound event is attempting to overwrite precedence of TIDs. \nOriginal last TID:" +
-                    this.lastTidToTidMap.get(inboundEvent.lastTid()) + "\n Corrupt event:" + inboundEvent);
+                    this.transactionTaskBuffer.next(inboundEvent.lastTid()) + "\n Corrupt event:" + inboundEvent);
         } else {
-            this.lastTidToTidMap.put(inboundEvent.lastTid(), inboundEvent.tid());
+            this.transactionTaskBuffer.link(inboundEvent.lastTid(), inboundEvent.tid());
         }
     }
 
+    /**
+     * Advances the watermark over the contiguous sequence of finished tasks and stops tracking them.
+     * No component reads a task after it finishes, so there is no need to wait for its batch to commit.
+     * The watermark never passes the last tid finished, since the next task to schedule is found from it.
+     */
+    private void releaseFinishedTasks(){
+        long lastFinished = this.lastTidFinished.get();
+        long nextTid = this.transactionTaskBuffer.next(this.lowWatermark);
+        while(nextTid != TidRingBuffer.NONE && nextTid <= lastFinished){
+            VmsTransactionTask next = this.transactionTaskBuffer.get(nextTid);
+            if(next == null) return;
+            if(!next.isFinished()){
+                // a task behind the last finished tid is still running. blocking for new events now
+                // would leave it and the tasks finished after it tracked until the next event arrives
+                if(next.isScheduled()) this.mustWaitForInputEvent = false;
+                return;
+            }
+            this.transactionTaskBuffer.remove(this.lowWatermark);
+            this.lowWatermark = nextTid;
+            nextTid = this.transactionTaskBuffer.next(nextTid);
+        }
+    }
+
+    /**
+     * Number of tasks still tracked, including the last finished one
+     */
+    public int numTrackedTasks(){
+        return this.transactionTaskBuffer.size();
+    }
+
     public long lastTidFinished(){
         return this.lastTidFinished.get();
     }
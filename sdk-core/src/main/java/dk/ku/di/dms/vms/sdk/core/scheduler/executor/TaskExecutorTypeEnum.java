@@ -0,0 +1,23 @@
+package dk.ku.di.dms.vms.sdk.core.scheduler.executor;
+
+/**
+ * Threads the scheduler hands its tasks to
+ */
+public enum TaskExecutorTypeEnum {
+    // the JVM-wide fork-join pool, shared with everything else
+    COMMON,
+    // a fixed pool of platform threads with a single queue
+    FIXED,
+    // platform threads with a queue each. partitioned tasks go to the queue of their partition
+    WORK_STEALING,
+    // a new virtual thread per task, for handlers that block on I/O
+    VIRTUAL;
+
+    /**
+     * The executor picked by the pool size alone, as before the type could be configured
+     */
+    public static TaskExecutorTypeEnum fromPoolSize(int poolSize){
+        return poolSize == 0 ? COMMON : FIXED;
+    }
+
+}
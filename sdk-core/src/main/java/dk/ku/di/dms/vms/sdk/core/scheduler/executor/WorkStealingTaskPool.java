@@ -0,0 +1,205 @@
+package dk.ku.di.dms.vms.sdk.core.scheduler.executor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.System.Logger.Level.ERROR;
+
+/**
+ * A dedicated pool of platform threads, each owning a local queue.
+ * Tasks of a partition are always queued to the same worker, so consecutive tasks
+ * of a partition tend to run on the same core and find the partition records in its cache.
+ * Other tasks are spread round-robin. A worker that runs out of tasks
+ * takes the oldest task queued to another worker, as long as it has waited
+ * long enough for its owner to be considered busy. Taking the oldest keeps tasks in TID order
+ * and leaves the newest, which the owner reaches last, to the owner.
+ * Stealing is safe for partitioned tasks because the scheduler never
+ * dispatches two tasks of the same partition at the same time.
+ */
+public final class WorkStealingTaskPool extends AbstractExecutorService {
+
+    private static final System.Logger LOGGER = System.getLogger(WorkStealingTaskPool.class.getName());
+
+    // the owner usually finishes its current task within this time, keeping the affinity
+    private static final long STEAL_DELAY_NANOS = 50_000;
+
+    private final Worker[] workers;
+
+    private final AtomicInteger nextWorker = new AtomicInteger(0);
+
+    private volatile boolean shutdown;
+
+    public WorkStealingTaskPool(int poolSize, String threadName){
+        if(poolSize <= 0) throw new IllegalArgumentException("Pool size must be positive: "+poolSize);
+        this.workers = new Worker[poolSize];
+        for(int i = 0; i < poolSize; i++){
+            this.workers[i] = new Worker(i);
+        }
+        for(int i = 0; i < poolSize; i++){
+            this.workers[i].thread = Thread.ofPlatform().name(threadName + "-" + i).daemon().start(this.workers[i]);
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        this.enqueue(Math.floorMod(this.nextWorker.getAndIncrement(), this.workers.length), task);
+    }
+
+    /**
+     * Queue the task to the worker owning the partition
+     */
+    public void execute(Runnable task, Object partitionKey) {
+        this.enqueue(Math.floorMod(partitionKey.hashCode(), this.workers.length), task);
+    }
+
+    private void enqueue(int workerIdx, Runnable task){
+        if(this.shutdown) throw new RejectedExecutionException("Pool has been shut down");
+        Worker owner = this.workers[workerIdx];
+        QueuedTask queuedTask = new QueuedTask(task, System.nanoTime());
+        owner.queue.offerFirst(queuedTask);
+        if(owner.idle){
+            LockSupport.unpark(owner.thread);
+            // unless older tasks are queued, which the owner takes first
+            if(owner.queue.peekLast() == queuedTask) return;
+        }
+        // the owner is busy, wake up someone to steal the task
+        for(Worker worker : this.workers){
+            if(worker != owner && worker.idle){
+                LockSupport.unpark(worker.thread);
+                return;
+            }
+        }
+    }
+
+    private record QueuedTask(Runnable task, long queuedAt) { }
+
+    private final class Worker implements Runnable {
+
+        private final int id;
+
+        // tasks are pushed to the head. the owner and thieves take the oldest from the tail
+        private final ConcurrentLinkedDeque<QueuedTask> queue = new ConcurrentLinkedDeque<>();
+
+        private volatile boolean idle;
+
+        private Thread thread;
+
+        private Worker(int id) {
+            this.id = id;
+        }
+
+        // the earliest time a task seen in another queue can be stolen. 0 if none seen
+        private long nextStealAt;
+
+        @Override
+        public void run() {
+            while(!shutdown){
+                Runnable task = this.take();
+                if(task == null){
+                    this.idle = true;
+                    // a task may have been queued before the flag was visible to the producer
+                    task = this.take();
+                    if(task == null){
+                        if(this.nextStealAt == 0){
+                            LockSupport.park(this);
+                        } else {
+                            LockSupport.parkNanos(this, this.nextStealAt - System.nanoTime());
+                        }
+                        this.idle = false;
+                        continue;
+                    }
+                    this.idle = false;
+                }
+                try {
+                    task.run();
+                } catch (Throwable e){
+                    LOGGER.log(ERROR, "Error running task in worker "+this.id, e);
+                }
+            }
+        }
+
+        private Runnable take(){
+            QueuedTask queuedTask = this.queue.pollLast();
+            if(queuedTask != null) return queuedTask.task();
+            this.nextStealAt = 0;
+            long now = System.nanoTime();
+            for(int i = 1; i < workers.length; i++){
+                ConcurrentLinkedDeque<QueuedTask> victimQueue = workers[(this.id + i) % workers.length].queue;
+                queuedTask = victimQueue.peekLast();
+                if(queuedTask == null) continue;
+                long stealAt = queuedTask.queuedAt() + STEAL_DELAY_NANOS;
+                if(stealAt - now > 0){
+                    if(this.nextStealAt == 0 || stealAt - this.nextStealAt < 0) this.nextStealAt = stealAt;
+                    continue;
+                }
+                // the owner or another thief may have taken it in the meantime
+                if(victimQueue.removeLastOccurrence(queuedTask)) return queuedTask.task();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Number of tasks waiting in all queues
+     */
+    public int queued(){
+        int queued = 0;
+        for(Worker worker : this.workers){
+            queued += worker.queue.size();
+        }
+        return queued;
+    }
+
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+        for(Worker worker : this.workers){
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        this.shutdown();
+        List<Runnable> pending = new ArrayList<>();
+        for(Worker worker : this.workers){
+            QueuedTask queuedTask;
+            while((queuedTask = worker.queue.pollLast()) != null){
+                pending.add(queuedTask.task());
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        if(!this.shutdown) return false;
+        for(Worker worker : this.workers){
+            if(worker.thread.isAlive()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for(Worker worker : this.workers){
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0 || !worker.thread.join(Duration.ofNanos(remaining))) return false;
+        }
+        return true;
+    }
+
+}
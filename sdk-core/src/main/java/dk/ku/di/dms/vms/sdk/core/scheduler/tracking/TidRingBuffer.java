@@ -0,0 +1,147 @@
+package dk.ku.di.dms.vms.sdk.core.scheduler.tracking;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the tasks in flight in a VMS, indexed by TID, together with
+ * the precedence link from each TID (i.e., the lastTid of an incoming event) to the TID that follows it.
+ * Every entry lives in its home slot (TID modulo the capacity), so lookups never probe.
+ * When the home slot is taken by another live TID, the buffer doubles until all live TIDs map to distinct slots.
+ * Since entries are removed as soon as the scheduler moves past them, the capacity
+ * only depends on the distance between the oldest and the newest TID in flight.
+ * Not thread-safe. Must only be accessed by the scheduler thread.
+ */
+public final class TidRingBuffer<T> {
+
+    public static final long NONE = -1;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] tids;
+
+    private Object[] values;
+
+    private long[] nextTids;
+
+    private int mask;
+
+    private int size;
+
+    public TidRingBuffer(int capacity){
+        if(capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid capacity: "+capacity);
+        }
+        int pow2Capacity = Integer.highestOneBit(capacity);
+        if(pow2Capacity < capacity) pow2Capacity = pow2Capacity << 1;
+        this.allocate(pow2Capacity);
+    }
+
+    private void allocate(int capacity){
+        this.tids = new long[capacity];
+        Arrays.fill(this.tids, NONE);
+        this.values = new Object[capacity];
+        this.nextTids = new long[capacity];
+        Arrays.fill(this.nextTids, NONE);
+        this.mask = capacity - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(long tid){
+        int slot = (int) (tid & this.mask);
+        if(this.tids[slot] != tid) return null;
+        return (T) this.values[slot];
+    }
+
+    public void put(long tid, T value){
+        // the slot must be resolved first, since the arrays are replaced on growth
+        int slot = this.slotFor(tid);
+        this.values[slot] = value;
+    }
+
+    /**
+     * @return the TID that follows the given one, or {@link #NONE} if it has not arrived yet
+     */
+    public long next(long tid){
+        int slot = (int) (tid & this.mask);
+        if(this.tids[slot] != tid) return NONE;
+        return this.nextTids[slot];
+    }
+
+    /**
+     * The entry of the last TID may be created before its value arrives, since events are not received in order
+     */
+    public void link(long lastTid, long tid){
+        int slot = this.slotFor(lastTid);
+        this.nextTids[slot] = tid;
+    }
+
+    public void remove(long tid){
+        int slot = (int) (tid & this.mask);
+        if(this.tids[slot] != tid) return;
+        this.tids[slot] = NONE;
+        this.values[slot] = null;
+        this.nextTids[slot] = NONE;
+        this.size--;
+    }
+
+    public int size(){
+        return this.size;
+    }
+
+    public int capacity(){
+        return this.mask + 1;
+    }
+
+    private int slotFor(long tid){
+        int slot = (int) (tid & this.mask);
+        while(this.tids[slot] != tid){
+            if(this.tids[slot] == NONE){
+                this.tids[slot] = tid;
+                this.size++;
+                return slot;
+            }
+            this.grow(tid);
+            slot = (int) (tid & this.mask);
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the capacity until the live TIDs, plus the one being inserted, fall into distinct slots
+     */
+    private void grow(long incomingTid){
+        long[] oldTids = this.tids;
+        Object[] oldValues = this.values;
+        long[] oldNextTids = this.nextTids;
+        int newCapacity = oldTids.length;
+        boolean distinct = false;
+        while(!distinct){
+            newCapacity = newCapacity << 1;
+            if(newCapacity > MAX_CAPACITY || newCapacity <= 0){
+                throw new IllegalStateException("Cannot track TIDs spanning more than "+MAX_CAPACITY+" positions");
+            }
+            distinct = fitsInto(oldTids, incomingTid, newCapacity - 1);
+        }
+        this.allocate(newCapacity);
+        for(int i = 0; i < oldTids.length; i++){
+            if(oldTids[i] == NONE) continue;
+            int slot = (int) (oldTids[i] & this.mask);
+            this.tids[slot] = oldTids[i];
+            this.values[slot] = oldValues[i];
+            this.nextTids[slot] = oldNextTids[i];
+        }
+    }
+
+    private static boolean fitsInto(long[] liveTids, long incomingTid, int mask){
+        boolean[] taken = new boolean[mask + 1];
+        taken[(int) (incomingTid & mask)] = true;
+        for(long tid : liveTids){
+            if(tid == NONE) continue;
+            int slot = (int) (tid & mask);
+            if(taken[slot]) return false;
+            taken[slot] = true;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,42 @@
+package dk.ku.di.dms.vms.sdk.core.metadata;
+
+import dk.ku.di.dms.vms.sdk.core.example.InputEventExample1;
+import dk.ku.di.dms.vms.sdk.core.example.InputEventExample2;
+import dk.ku.di.dms.vms.sdk.core.example.OutputEventExample1;
+import dk.ku.di.dms.vms.sdk.core.operational.VmsTransactionSignature;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VmsMetadataLoaderTest {
+
+    @Test
+    public void testBoundHandlers() throws Exception {
+        VmsRuntimeMetadata vmsRuntimeMetadata = VmsMetadataLoader.load("dk.ku.di.dms.vms.sdk.core.example");
+
+        VmsTransactionSignature partitioned = vmsRuntimeMetadata.queueToVmsTransactionMap().get("in_").signatures.getFirst().object();
+        Assert.assertEquals(new InputEventExample2.Id(3, 4), partitioned.partitionKey().apply(new InputEventExample2(3, 4)));
+        Object output = partitioned.handler().apply(new InputEventExample2(3, 4));
+        Assert.assertTrue(output instanceof OutputEventExample1);
+
+        // getter returning a primitive
+        for(var signature : vmsRuntimeMetadata.queueToVmsTransactionMap().get("in").signatures){
+            if(signature.object().partitionKey() != null){
+                Assert.assertEquals(7, signature.object().partitionKey().apply(new InputEventExample1(7)));
+            }
+        }
+    }
+
+    @Test
+    public void testApplicationExceptionIsNotWrapped() throws Exception {
+        VmsRuntimeMetadata vmsRuntimeMetadata = VmsMetadataLoader.load("dk.ku.di.dms.vms.sdk.core.example");
+        VmsTransactionSignature signature = vmsRuntimeMetadata.queueToVmsTransactionMap().get("in_").signatures.getFirst().object();
+        try {
+            // wrong input type reaches the application method
+            signature.handler().apply(new InputEventExample1(1));
+            Assert.fail();
+        } catch (ClassCastException e) {
+            // expected
+        }
+    }
+
+}
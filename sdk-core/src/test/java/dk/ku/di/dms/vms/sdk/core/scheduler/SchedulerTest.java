@@ -16,6 +16,10 @@ import org.junit.Test;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.Thread.sleep;
 
@@ -60,6 +64,33 @@ public class SchedulerTest {
         Assert.assertEquals(5, list.size());
     }
 
+    @Test
+    public void testFinishedTasksAreReleased() throws Exception {
+        VmsRuntimeMetadata vmsRuntimeMetadata = VmsMetadataLoader.load("dk.ku.di.dms.vms.sdk.core.example");
+        BlockingQueue<InboundEvent> inputQueue = new LinkedBlockingQueue<>();
+        var scheduler = VmsTransactionScheduler.build("example1", inputQueue,
+                vmsRuntimeMetadata.queueToVmsTransactionMap(), new ITransactionManager() {}, x -> { }, 4);
+
+        int numEvents = 1000;
+        // read by the scheduler thread once it has nothing left to do
+        CompletableFuture<Integer> trackedWhenIdle = new CompletableFuture<>();
+        scheduler.setIdleListener(() -> {
+            if(scheduler.lastTidFinished() == numEvents){
+                trackedWhenIdle.complete(scheduler.numTrackedTasks());
+            }
+        });
+        for(int i = 1; i <= numEvents; i++){
+            inputQueue.add(new InboundEvent(i, i-1, 1 + (i / 100), "in_", InputEventExample2.class, new InputEventExample2(i, i)));
+        }
+
+        Thread schedulerThread = new Thread(scheduler);
+        schedulerThread.start();
+
+        // only the last finished task is kept, so the next event can find its predecessor
+        Assert.assertEquals(1, (int) trackedWhenIdle.get(30, TimeUnit.SECONDS));
+        scheduler.stop();
+    }
+
     @Test
     public void test() throws ClassNotFoundException, InvocationTargetException, InstantiationException, IllegalAccessException, InterruptedException {
 
@@ -0,0 +1,84 @@
+package dk.ku.di.dms.vms.sdk.core.scheduler.executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class WorkStealingTaskPoolTest {
+
+    @Test
+    public void testPartitionAffinity() throws InterruptedException {
+        WorkStealingTaskPool pool = new WorkStealingTaskPool(4, "test-worker");
+        Map<String, Integer> tasksPerThread = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(100);
+        // one task at a time, as the scheduler does for a partition
+        for(int i = 0; i < 100; i++){
+            CountDownLatch taskDone = new CountDownLatch(1);
+            pool.execute(() -> {
+                tasksPerThread.merge(Thread.currentThread().getName(), 1, Integer::sum);
+                taskDone.countDown();
+                done.countDown();
+            }, 7);
+            Assert.assertTrue(taskDone.await(5, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        // no other worker has tasks to run, so the owner takes them,
+        // unless it is slow to wake up and the task is stolen
+        Assert.assertTrue(tasksPerThread.values().stream().anyMatch(count -> count >= 90));
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStealFromBusyWorker() throws InterruptedException {
+        WorkStealingTaskPool pool = new WorkStealingTaskPool(2, "test-worker");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch stolen = new CountDownLatch(1);
+        // block the owner of the partition
+        pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) { }
+        }, 0);
+        // the owner cannot take it while blocked, so the other worker must
+        pool.execute(stolen::countDown, 0);
+        Assert.assertTrue(stolen.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStealOldestFirst() throws InterruptedException {
+        WorkStealingTaskPool pool = new WorkStealingTaskPool(2, "test-worker");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(10);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) { }
+        }, 0);
+        for(int i = 0; i < 10; i++){
+            int task = i;
+            pool.execute(() -> {
+                order.add(task);
+                done.countDown();
+            }, 0);
+        }
+        // a single thief, so the tasks run in the order they were queued
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), order);
+        release.countDown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+}
@@ -0,0 +1,56 @@
+package dk.ku.di.dms.vms.sdk.core.scheduler.tracking;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TidRingBufferTest {
+
+    @Test
+    public void testLinkBeforeValueArrives() {
+        TidRingBuffer<String> buffer = new TidRingBuffer<>(4);
+        buffer.put(0, "t0");
+        // tid 7 arrives before tid 3, which it depends on
+        buffer.put(7, "t7");
+        buffer.link(3, 7);
+        Assert.assertNull(buffer.get(3));
+        Assert.assertEquals(7, buffer.next(3));
+        buffer.put(3, "t3");
+        buffer.link(0, 3);
+        Assert.assertEquals("t3", buffer.get(3));
+        Assert.assertEquals(3, buffer.next(0));
+        Assert.assertEquals(TidRingBuffer.NONE, buffer.next(7));
+        Assert.assertEquals(3, buffer.size());
+    }
+
+    @Test
+    public void testGrowOnCollision() {
+        TidRingBuffer<Long> buffer = new TidRingBuffer<>(4);
+        // all map to the same slot in the initial capacity
+        for(long tid = 0; tid < 64; tid = tid + 4){
+            buffer.put(tid, tid);
+            if(tid > 0) buffer.link(tid - 4, tid);
+        }
+        Assert.assertEquals(16, buffer.size());
+        Assert.assertTrue(buffer.capacity() >= 64);
+        for(long tid = 0; tid < 64; tid = tid + 4){
+            Assert.assertEquals(Long.valueOf(tid), buffer.get(tid));
+            Assert.assertEquals(tid < 60 ? tid + 4 : TidRingBuffer.NONE, buffer.next(tid));
+        }
+    }
+
+    @Test
+    public void testCapacityStaysFlatWhenReleasing() {
+        TidRingBuffer<Long> buffer = new TidRingBuffer<>(8);
+        buffer.put(0, 0L);
+        for(long tid = 1; tid <= 1_000_000; tid++){
+            buffer.put(tid, tid);
+            buffer.link(tid - 1, tid);
+            buffer.remove(tid - 1);
+        }
+        Assert.assertEquals(1, buffer.size());
+        Assert.assertEquals(8, buffer.capacity());
+        Assert.assertNull(buffer.get(999_999));
+        Assert.assertEquals(Long.valueOf(1_000_000), buffer.get(1_000_000));
+    }
+
+}
@@ -100,14 +100,35 @@ public final class VmsApplication {
             }
         }
 
+        boolean isRecovery = options.isRecovery();
+        if(!isRecovery){
+            String recoveryStr = System.getProperty("recovery");
+            if(Boolean.parseBoolean(recoveryStr)){
+                isRecovery = true;
+            }
+        }
+        // recovery is only possible from checkpointed files
+        isRecovery = isRecovery && isCheckpointing;
+
         // load catalog so we can pass the table instance to proxy repository
-        Map<String, Table> catalog = EmbedMetadataLoader.loadCatalog(vmsDataModelMap, entityToTableNameMap, isCheckpointing, options.getMaxRecords());
+        Map<String, Table> catalog = EmbedMetadataLoader.loadCatalog(vmsDataModelMap, entityToTableNameMap, isCheckpointing, isRecovery, options.getMaxRecords());
+
+        long lastBatch = 0;
+        long lastTid = 0;
+        if(isRecovery){
+            Optional<EmbedMetadataLoader.CheckpointMetadata> checkpointMetadata = EmbedMetadataLoader.loadCheckpointMetadata(catalog);
+            if(checkpointMetadata.isPresent()){
+                lastBatch = checkpointMetadata.get().batch();
+                lastTid = checkpointMetadata.get().lastTid();
+            }
+        }
 
         // operational API and checkpoint API
         TransactionManager transactionManager = new TransactionManager(catalog, isCheckpointing);
 
         Map<String, Object> tableToRepositoryMap = EmbedMetadataLoader.loadRepositoryClasses( vmsClasses, entityToTableNameMap, catalog,  transactionManager );
         Map<String, List<Object>> vmsToRepositoriesMap = EmbedMetadataLoader.mapRepositoriesToVms(vmsClasses, entityToTableNameMap, tableToRepositoryMap);
+        EmbedMetadataLoader.loadPreparedStatements(vmsClasses, catalog, transactionManager);
 
         VmsRuntimeMetadata vmsMetadata = VmsMetadataLoader.load(
                 reflections,
@@ -124,10 +145,10 @@ public final class VmsApplication {
 
         IVmsSerdesProxy serdes = VmsSerdesProxyBuilder.build();
 
-        // ideally lastTid and lastBatch must be read from the storage
+        // lastTid and lastBatch are read from the storage on recovery
         VmsNode vmsIdentifier = new VmsNode(
                 options.host(), options.port(), vmsName,
-                0, 0,0,
+                lastBatch, lastTid, lastBatch,
                 vmsMetadata.dataModel(),
                 vmsMetadata.inputEventSchema(),
                 vmsMetadata.outputEventSchema());
@@ -142,7 +163,9 @@ public final class VmsApplication {
                 vmsMetadata.queueToVmsTransactionMap(),
                 transactionManager,
                 eventHandler::processOutputEvent,
-                options.vmsThreadPoolSize());
+                options.vmsTaskExecutor(),
+                options.vmsThreadPoolSize(),
+                lastTid);
 
         return new VmsApplication( vmsName, vmsMetadata, catalog, eventHandler, transactionManager, transactionScheduler, vmsInternalPubSubService );
     }
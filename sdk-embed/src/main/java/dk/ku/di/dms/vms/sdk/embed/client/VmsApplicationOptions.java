@@ -2,6 +2,7 @@ package dk.ku.di.dms.vms.sdk.embed.client;
 
 import dk.ku.di.dms.vms.modb.common.memory.MemoryUtils;
 import dk.ku.di.dms.vms.modb.common.utils.ConfigUtils;
+import dk.ku.di.dms.vms.sdk.core.scheduler.executor.TaskExecutorTypeEnum;
 
 import java.util.Properties;
 
@@ -21,6 +22,8 @@ public final class VmsApplicationOptions {
 
     private final int vmsThreadPoolSize;
 
+    private final TaskExecutorTypeEnum vmsTaskExecutor;
+
     private final int networkSendTimeout;
 
     private final int osBufferSize;
@@ -31,6 +34,8 @@ public final class VmsApplicationOptions {
 
     private final boolean checkpointing;
 
+    private final boolean recovery;
+
     private final int maxRecords;
 
     public static VmsApplicationOptions build(String host, int port, String[] packages) {
@@ -47,10 +52,15 @@ public final class VmsApplicationOptions {
         int networkSendTimeout = Integer.parseInt(properties.getProperty("network_send_timeout"));
         int networkThreadPoolSize = Integer.parseInt(properties.getProperty("network_thread_pool_size"));
         int vmsThreadPoolSize = Integer.parseInt(properties.getProperty("vms_thread_pool_size"));
+        // absent in older configurations, in which case the pool size decides
+        String vmsTaskExecutorProp = properties.getProperty("vms_task_executor");
+        TaskExecutorTypeEnum vmsTaskExecutor = vmsTaskExecutorProp == null || vmsTaskExecutorProp.isBlank() ?
+                TaskExecutorTypeEnum.fromPoolSize(vmsThreadPoolSize) : TaskExecutorTypeEnum.valueOf(vmsTaskExecutorProp.trim().toUpperCase());
         int numVmsWorkers = Integer.parseInt(properties.getProperty("num_vms_workers"));
         int maxSleep = Integer.parseInt(properties.getProperty("max_sleep"));
         boolean logging = Boolean.parseBoolean(properties.getProperty("logging"));
         boolean checkpointing = Boolean.parseBoolean(properties.getProperty("checkpointing"));
+        boolean recovery = Boolean.parseBoolean(properties.getProperty("recovery"));
         int maxRecords = Integer.parseInt(properties.getProperty("max_records"));
 
         return new VmsApplicationOptions(
@@ -61,18 +71,20 @@ public final class VmsApplicationOptions {
                 networkThreadPoolSize,
                 numVmsWorkers,
                 vmsThreadPoolSize,
+                vmsTaskExecutor,
                 networkSendTimeout,
                 soBufferSize,
                 logging,
                 checkpointing,
+                recovery,
                 maxRecords == 0 ? 100000 : maxRecords,
                 maxSleep);
     }
 
     private VmsApplicationOptions(String host, int port, String[] packages,
                                   int networkBufferSize, int networkThreadPoolSize, int numVmsWorkers,
-                                  int vmsThreadPoolSize, int networkSendTimeout, int osBufferSize,
-                                  boolean logging, boolean checkpointing, int maxRecords, int maxSleep) {
+                                  int vmsThreadPoolSize, TaskExecutorTypeEnum vmsTaskExecutor, int networkSendTimeout, int osBufferSize,
+                                  boolean logging, boolean checkpointing, boolean recovery, int maxRecords, int maxSleep) {
         this.host = host;
         this.port = port;
         this.packages = packages;
@@ -80,10 +92,12 @@ public final class VmsApplicationOptions {
         this.networkThreadPoolSize = networkThreadPoolSize;
         this.numVmsWorkers = numVmsWorkers;
         this.vmsThreadPoolSize = vmsThreadPoolSize;
+        this.vmsTaskExecutor = vmsTaskExecutor;
         this.networkSendTimeout = networkSendTimeout;
         this.osBufferSize = osBufferSize;
         this.logging = logging;
         this.checkpointing = checkpointing;
+        this.recovery = recovery;
         this.maxRecords = maxRecords;
         this.maxSleep = maxSleep;
     }
@@ -116,6 +130,10 @@ public final class VmsApplicationOptions {
         return this.vmsThreadPoolSize;
     }
 
+    public TaskExecutorTypeEnum vmsTaskExecutor() {
+        return this.vmsTaskExecutor;
+    }
+
     public int osBufferSize() {
         return this.osBufferSize;
     }
@@ -136,6 +154,10 @@ public final class VmsApplicationOptions {
         return this.checkpointing;
     }
 
+    public boolean isRecovery() {
+        return this.recovery;
+    }
+
     public int getMaxRecords() {
         return this.maxRecords;
     }
@@ -0,0 +1,13 @@
+package dk.ku.di.dms.vms.sdk.embed.entity;
+
+/**
+ * Converts entities to and from records, whose columns follow the order of the table schema.
+ * Implementations are generated per entity on startup. See {@link EntityUtils#generateEntityCodec}
+ */
+public interface EntityCodec<T> {
+
+    T decode(Object[] record);
+
+    Object[] encode(T entity);
+
+}
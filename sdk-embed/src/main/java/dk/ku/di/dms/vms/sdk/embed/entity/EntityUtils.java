@@ -4,13 +4,38 @@ import dk.ku.di.dms.vms.modb.api.interfaces.IEntity;
 import dk.ku.di.dms.vms.modb.common.type.DataType;
 import dk.ku.di.dms.vms.modb.common.type.DataTypeUtils;
 import dk.ku.di.dms.vms.modb.definition.Schema;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.field.FieldDescription;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.bytecode.Duplication;
+import net.bytebuddy.implementation.bytecode.StackManipulation;
+import net.bytebuddy.implementation.bytecode.TypeCreation;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.implementation.bytecode.assign.TypeCasting;
+import net.bytebuddy.implementation.bytecode.collection.ArrayAccess;
+import net.bytebuddy.implementation.bytecode.collection.ArrayFactory;
+import net.bytebuddy.implementation.bytecode.constant.ClassConstant;
+import net.bytebuddy.implementation.bytecode.constant.IntegerConstant;
+import net.bytebuddy.implementation.bytecode.member.FieldAccess;
+import net.bytebuddy.implementation.bytecode.member.MethodInvocation;
+import net.bytebuddy.implementation.bytecode.member.MethodReturn;
+import net.bytebuddy.implementation.bytecode.member.MethodVariableAccess;
+import net.bytebuddy.matcher.ElementMatchers;
+import net.bytebuddy.utility.RandomString;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public final class EntityUtils {
@@ -91,4 +116,157 @@ public final class EntityUtils {
         return fieldMap;
     }
 
+    /**
+     * Generates a codec that reads and writes the fields of the entity in schema order,
+     * without reflection or lookups per call.
+     * The codec is defined in the package of the entity, so it can access non-private fields.
+     * As in the conversion field by field, null values leave the field as the constructor set it,
+     * and enum columns read as strings (e.g., from a checkpointed buffer) are converted to the enum of the field.
+     * @return null if a column is mapped to a private or final field, or the entity lacks an accessible default constructor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityCodec<T> generateEntityCodec(Class<T> entityClazz, Schema schema) {
+        Constructor<T> constructor = getEntityConstructor(entityClazz);
+        if(Modifier.isPrivate(entityClazz.getModifiers()) || Modifier.isPrivate(constructor.getModifiers())) return null;
+        String[] columnNames = schema.columnNames();
+        FieldDescription.InDefinedShape[] fields = new FieldDescription.InDefinedShape[columnNames.length];
+        MethodDescription[] conversions = new MethodDescription[columnNames.length];
+        for(int i = 0; i < columnNames.length; i++){
+            Field field;
+            try {
+                field = entityClazz.getDeclaredField(columnNames[i]);
+            } catch (NoSuchFieldException e) {
+                return null;
+            }
+            if(Modifier.isPrivate(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) return null;
+            fields[i] = new FieldDescription.ForLoadedField(field);
+            if(field.getType().isEnum()){
+                conversions[i] = ENUM_OR_ELSE;
+            } else if(field.getType().isPrimitive()){
+                conversions[i] = PRIMITIVE_OR_ELSE.get(field.getType());
+                if(conversions[i] == null) return null;
+            } else {
+                conversions[i] = OR_ELSE;
+            }
+        }
+
+        TypeDescription entityType = TypeDescription.ForLoadedType.of(entityClazz);
+        TypeDescription.Generic objectType = TypeDescription.Generic.OBJECT;
+
+        // new entity, then for each column: entity.field = orElse(entity.field, record[i])
+        List<StackManipulation> decode = new ArrayList<>(3 + (fields.length * 9) + 1);
+        decode.add(TypeCreation.of(entityType));
+        decode.add(Duplication.SINGLE);
+        decode.add(MethodInvocation.invoke(new MethodDescription.ForLoadedConstructor(constructor)));
+        for(int i = 0; i < fields.length; i++){
+            decode.add(Duplication.SINGLE);
+            decode.add(Duplication.SINGLE);
+            decode.add(FieldAccess.forField(fields[i]).read());
+            decode.add(MethodVariableAccess.REFERENCE.loadFrom(1));
+            decode.add(IntegerConstant.forValue(i));
+            decode.add(ArrayAccess.REFERENCE.load());
+            if(conversions[i] == ENUM_OR_ELSE){
+                decode.add(ClassConstant.of(fields[i].getType().asErasure()));
+            }
+            decode.add(MethodInvocation.invoke(conversions[i]));
+            if(!fields[i].getType().isPrimitive()){
+                decode.add(TypeCasting.to(fields[i].getType().asErasure()));
+            }
+            decode.add(FieldAccess.forField(fields[i]).write());
+        }
+        decode.add(MethodReturn.REFERENCE);
+
+        // new Object[]{ entity.field0, entity.field1, ... }
+        List<StackManipulation> values = new ArrayList<>(fields.length);
+        for (FieldDescription.InDefinedShape field : fields) {
+            values.add(new StackManipulation.Compound(
+                    MethodVariableAccess.REFERENCE.loadFrom(1),
+                    Assigner.DEFAULT.assign(objectType, entityType.asGenericType(), Assigner.Typing.DYNAMIC),
+                    FieldAccess.forField(field).read(),
+                    Assigner.DEFAULT.assign(field.getType(), objectType, Assigner.Typing.STATIC)));
+        }
+        StackManipulation encode = new StackManipulation.Compound(
+                ArrayFactory.forType(objectType).withValues(values),
+                MethodReturn.REFERENCE);
+
+        try (DynamicType.Unloaded<?> dynamicType = new ByteBuddy()
+                .subclass(Object.class)
+                .implement(EntityCodec.class)
+                .name(entityClazz.getName() + "Codec$" + RandomString.make())
+                .method(ElementMatchers.named("decode"))
+                .intercept(new Implementation.Simple(decode.toArray(StackManipulation[]::new)))
+                .method(ElementMatchers.named("encode"))
+                .intercept(new Implementation.Simple(encode))
+                .make()) {
+            return (EntityCodec<T>) dynamicType
+                    .load(entityClazz.getClassLoader(), ClassLoadingStrategy.Default.INJECTION)
+                    .getLoaded()
+                    .getConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final MethodDescription OR_ELSE = conversion("orElse", Object.class, Object.class);
+
+    private static final MethodDescription ENUM_OR_ELSE = conversion("enumOrElse", Object.class, Object.class, Class.class);
+
+    private static final Map<Class<?>, MethodDescription> PRIMITIVE_OR_ELSE = Map.of(
+            int.class, conversion("orElse", int.class, Object.class),
+            long.class, conversion("orElse", long.class, Object.class),
+            float.class, conversion("orElse", float.class, Object.class),
+            double.class, conversion("orElse", double.class, Object.class),
+            boolean.class, conversion("orElse", boolean.class, Object.class),
+            char.class, conversion("orElse", char.class, Object.class));
+
+    private static MethodDescription conversion(String name, Class<?>... parameterTypes){
+        try {
+            return new MethodDescription.ForLoadedMethod(EntityUtils.class.getMethod(name, parameterTypes));
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // conversions called by the generated codecs. a null value keeps the current value of the field
+
+    public static Object orElse(Object current, Object value){
+        return value == null ? current : value;
+    }
+
+    public static int orElse(int current, Object value){
+        return value == null ? current : (Integer) value;
+    }
+
+    public static long orElse(long current, Object value){
+        return value == null ? current : (Long) value;
+    }
+
+    public static float orElse(float current, Object value){
+        return value == null ? current : (Float) value;
+    }
+
+    public static double orElse(double current, Object value){
+        return value == null ? current : (Double) value;
+    }
+
+    public static boolean orElse(boolean current, Object value){
+        return value == null ? current : (Boolean) value;
+    }
+
+    public static char orElse(char current, Object value){
+        return value == null ? current : (Character) value;
+    }
+
+    /**
+     * Enum columns read from a buffer come as the name of the enum, empty if none was written
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Object enumOrElse(Object current, Object value, Class enumClazz){
+        if(value instanceof String name){
+            return name.isBlank() ? current : Enum.valueOf(enumClazz, name);
+        }
+        return value == null ? current : value;
+    }
+
 }
@@ -2,12 +2,14 @@ package dk.ku.di.dms.vms.sdk.embed.facade;
 
 import dk.ku.di.dms.vms.modb.api.interfaces.IEntity;
 import dk.ku.di.dms.vms.modb.api.interfaces.IRepository;
-import dk.ku.di.dms.vms.modb.api.query.clause.WhereClauseElement;
+import dk.ku.di.dms.vms.modb.api.query.statement.IStatement;
 import dk.ku.di.dms.vms.modb.api.query.statement.SelectStatement;
 import dk.ku.di.dms.vms.modb.common.transaction.ITransactionManager;
 import dk.ku.di.dms.vms.modb.common.type.DataType;
 import dk.ku.di.dms.vms.modb.definition.Table;
+import dk.ku.di.dms.vms.modb.query.execution.operators.RecordCursor;
 import dk.ku.di.dms.vms.modb.transaction.OperationalAPI;
+import dk.ku.di.dms.vms.sdk.embed.entity.EntityCodec;
 import dk.ku.di.dms.vms.sdk.embed.entity.EntityUtils;
 import net.bytebuddy.implementation.bind.annotation.AllArguments;
 import net.bytebuddy.implementation.bind.annotation.Origin;
@@ -22,6 +24,8 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -41,10 +45,16 @@ public abstract class AbstractProxyRepository<PK extends Serializable, T extends
      */
     private final Table table;
 
-    private final Map<String, VarHandle> entityFieldMap;
+    // the fields of the entity and their respective column positions, resolved once for all conversions
+    private final VarHandle[] entityFieldHandles;
+
+    private final int[] entityFieldColumns;
 
     private final Map<String, VarHandle> pkFieldMap;
 
+    // generated on startup. null if the entity fields cannot be accessed, so the field handles are used
+    private final EntityCodec<T> entityCodec;
+
     /**
      * Attribute set after database is loaded
      * Not when the metadata is loaded
@@ -53,25 +63,40 @@ public abstract class AbstractProxyRepository<PK extends Serializable, T extends
      */
     private final OperationalAPI operationalAPI;
 
-    private final Map<String, SelectStatement> repositoryQueriesMap;
+    // key: method name, value: prepared query identifier
+    private final Map<String, Integer> preparedQueryMap;
 
     public AbstractProxyRepository(Class<PK> pkClazz,
                                   Class<T> entityClazz,
                                   Table table,
                                   OperationalAPI operationalAPI,
                                   // key: method name, value: select stmt
-                                  Map<String, SelectStatement> repositoryQueriesMap)
+                                  Map<String, SelectStatement> repositoryQueriesMap,
+                                  EntityCodec<T> entityCodec)
             throws NoSuchFieldException, IllegalAccessException {
+        this.entityCodec = entityCodec;
         this.entityConstructor = EntityUtils.getEntityConstructor(entityClazz);
-        this.entityFieldMap = EntityUtils.getVarHandleFieldsFromEntity(entityClazz, table.schema());
+        Map<String, VarHandle> entityFieldMap = EntityUtils.getVarHandleFieldsFromEntity(entityClazz, table.schema());
         if(pkClazz.getPackageName().equalsIgnoreCase("java.lang") || pkClazz.isPrimitive()){
             this.pkFieldMap = EntityUtils.getVarHandleFieldFromPk(entityClazz, table.schema());
         } else {
             this.pkFieldMap = EntityUtils.getVarHandleFieldsFromCompositePk(pkClazz);
         }
         this.table = table;
+        this.entityFieldHandles = new VarHandle[entityFieldMap.size()];
+        this.entityFieldColumns = new int[entityFieldMap.size()];
+        int fieldIdx = 0;
+        for(Map.Entry<String,VarHandle> entry : entityFieldMap.entrySet()){
+            this.entityFieldHandles[fieldIdx] = entry.getValue();
+            this.entityFieldColumns[fieldIdx] = table.schema().columnPosition(entry.getKey());
+            fieldIdx++;
+        }
         this.operationalAPI = operationalAPI;
-        this.repositoryQueriesMap = repositoryQueriesMap;
+        // queries are analyzed and planned once, so calls only bind the arguments
+        this.preparedQueryMap = new HashMap<>(repositoryQueriesMap.size());
+        for(Map.Entry<String, SelectStatement> entry : repositoryQueriesMap.entrySet()){
+            this.preparedQueryMap.put(entry.getKey(), operationalAPI.prepare(table, entry.getValue()));
+        }
     }
 
     /**
@@ -89,21 +114,12 @@ public abstract class AbstractProxyRepository<PK extends Serializable, T extends
     }
 
     public final List<T> intercept(String methodName, Object[] args) {
-        // retrieve statically defined query
-        SelectStatement selectStatement = this.repositoryQueriesMap.get(methodName);
-
-        // set query arguments
-        List<WhereClauseElement> whereClauseElements = new ArrayList<>(args.length);
-        for(int i = 0; i < args.length; i++) {
-            whereClauseElements.add(selectStatement.whereClause.get(i).overwriteValue( args[i] ));
-        }
-        selectStatement = selectStatement.clone(whereClauseElements);
-
-        // submit for execution
-        List<Object[]> records = this.operationalAPI.fetch(this.table, selectStatement);
-        List<T> result = new ArrayList<>(records.size());
-        for(Object[] record : records) {
-            result.add( this.parseObjectIntoEntity(record) );
+        // retrieve statically defined query and submit the arguments for execution
+        // records are parsed as they are read, so they are not held in an intermediate list
+        Iterator<Object[]> cursor = this.operationalAPI.cursor(this.preparedQueryMap.get(methodName), args, RecordCursor.NO_LIMIT);
+        List<T> result = new ArrayList<>();
+        while(cursor.hasNext()) {
+            result.add( this.parseObjectIntoEntity(cursor.next()) );
         }
         return result;
     }
@@ -138,13 +154,21 @@ public abstract class AbstractProxyRepository<PK extends Serializable, T extends
         return this.parseObjectIntoEntity(object);
     }
 
+    /**
+     * The keys are resolved in a single call to the database. Keys not found are skipped.
+     */
     @Override
     public final List<T> lookupByKeys(Collection<PK> keys){
-        List<T> resultList = new ArrayList<>(keys.size());
+        Object[][] valuesOfKeys = new Object[keys.size()][];
+        int i = 0;
         for(PK obj : keys){
-            Object[] valuesOfKey = this.extractFieldValuesFromKeyObject(obj);
-            Object[] object = this.operationalAPI.lookupByKey(this.table.primaryKeyIndex(), valuesOfKey);
-            resultList.add( this.parseObjectIntoEntity(object) );
+            valuesOfKeys[i++] = this.extractFieldValuesFromKeyObject(obj);
+        }
+        Object[][] records = this.operationalAPI.lookupByKeys(this.table.primaryKeyIndex(), valuesOfKeys);
+        List<T> resultList = new ArrayList<>(records.length);
+        for(Object[] record : records){
+            if(record == null) continue;
+            resultList.add( this.parseObjectIntoEntity(record) );
         }
         return resultList;
     }
@@ -230,24 +254,48 @@ public abstract class AbstractProxyRepository<PK extends Serializable, T extends
         this.operationalAPI.deleteAll(this.table, parsedEntities);
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
+    /**
+     * The statement must name the table of this repository, since it is run against it
+     */
+    @Override
+    public final void issue(IStatement statement) {
+        String tableName = switch (statement.getType()){
+            case UPDATE -> statement.asUpdateStatement().table;
+            case INSERT -> statement.asInsertStatement().table;
+            case DELETE -> statement.asDeleteStatement().table;
+            default -> this.table.getName();
+        };
+        if(!this.table.getName().equals(tableName)){
+            throw new IllegalStateException("Statement on table "+tableName+" cannot be issued by the repository of table "+this.table.getName());
+        }
+        this.operationalAPI.issue(this.table, statement);
+    }
+
     public final T parseObjectIntoEntity(Object[] object){
+        if(this.entityCodec != null){
+            return this.entityCodec.decode(object);
+        }
+        return this.parseObjectIntoEntityByField(object);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private T parseObjectIntoEntityByField(Object[] object){
         try {
             // all entities must have default constructor
             T entity = this.entityConstructor.newInstance();
             int i;
-            for(Map.Entry<String,VarHandle> entry : this.entityFieldMap.entrySet()){
-                // must get the index of the column first
-                i = this.table.schema().columnPosition(entry.getKey());
+            for(int fieldIdx = 0; fieldIdx < this.entityFieldHandles.length; fieldIdx++){
+                i = this.entityFieldColumns[fieldIdx];
                 if(object[i] == null){
                     continue;
                 }
+                VarHandle fieldHandle = this.entityFieldHandles[fieldIdx];
                 try {
-                    entry.getValue().set(entity, object[i]);
+                    fieldHandle.set(entity, object[i]);
                 } catch (ClassCastException e){
                     // has the entry come from raw index?
                     if(this.table.schema().columnDataType(i) == DataType.ENUM && object[i] instanceof String objStr && !objStr.isEmpty() && !objStr.isBlank()){
-                        entry.getValue().set(entity, Enum.valueOf((Class)entry.getValue().varType(), objStr));
+                        fieldHandle.set(entity, Enum.valueOf((Class)fieldHandle.varType(), objStr));
                     } else {
                         System.out.println("Cannot cast column "+table.schema().columnName(i)+" for value "+object[i]);
                         throw new RuntimeException(e);
@@ -279,11 +327,12 @@ public abstract class AbstractProxyRepository<PK extends Serializable, T extends
     }
 
     public final Object[] extractFieldValuesFromEntityObject(T entity) {
-        Object[] values = new Object[this.table.schema().columnNames().length];
-        int fieldIdx = 0;
-        for(String columnName : this.table.schema().columnNames()){
-            values[fieldIdx] = this.entityFieldMap.get(columnName).get(entity);
-            fieldIdx++;
+        if(this.entityCodec != null){
+            return this.entityCodec.encode(entity);
+        }
+        Object[] values = new Object[this.entityFieldHandles.length];
+        for(int fieldIdx = 0; fieldIdx < this.entityFieldHandles.length; fieldIdx++){
+            values[this.entityFieldColumns[fieldIdx]] = this.entityFieldHandles[fieldIdx].get(entity);
         }
         return values;
     }
@@ -329,25 +378,30 @@ public abstract class AbstractProxyRepository<PK extends Serializable, T extends
     }
      */
 
+    /**
+     * The fields of the DTO are set in the order of the select clause.
+     * The scan stops at the first row found.
+     */
     @Override
     public <DTO> DTO fetchOne(SelectStatement statement, Class<DTO> clazz){
-        List<Object[]> objects = this.operationalAPI.fetch(this.table, statement);
-        assert objects.size() == 1;
-        Object[] object = objects.getFirst();
+        Iterator<Object[]> cursor = this.operationalAPI.cursor(this.table, statement, 1);
+        if(!cursor.hasNext()) return null;
         Constructor<?> constructor = clazz.getDeclaredConstructors()[0];
         Field[] fields = clazz.getFields();
-        return this.buildDtoInstance(object, constructor, fields);
+        return this.buildDtoInstance(cursor.next(), constructor, fields);
     }
 
+    /**
+     * The fields of the DTO are set in the order of the select clause
+     */
     @Override
     public <DTO> List<DTO> fetchMany(SelectStatement statement, Class<DTO> clazz){
-        List<Object[]> objects = this.operationalAPI.fetch(this.table, statement);
+        Iterator<Object[]> cursor = this.operationalAPI.cursor(this.table, statement, RecordCursor.NO_LIMIT);
         Constructor<?> constructor = clazz.getDeclaredConstructors()[0];
         Field[] fields = clazz.getFields();
         List<DTO> result = new ArrayList<>();
-        for(Object[] object : objects){
-            DTO dto = buildDtoInstance(object, constructor, fields);
-            result.add(dto);
+        while(cursor.hasNext()){
+            result.add(this.buildDtoInstance(cursor.next(), constructor, fields));
         }
         return result;
     }
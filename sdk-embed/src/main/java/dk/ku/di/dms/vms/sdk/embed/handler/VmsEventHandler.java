@@ -60,6 +60,9 @@ public final class VmsEventHandler extends ModbHttpServer {
     /** VMS METADATA **/
     private final VmsNode me; // this merges network and semantic data about the vms
 
+    // to find this vms entry in binary precedence maps
+    private final byte[] identifierBytes;
+
     private final VmsRuntimeMetadata vmsMetadata;
 
     /** EXTERNAL VMSs **/
@@ -119,8 +122,9 @@ public final class VmsEventHandler extends ModbHttpServer {
     /**
      * It is necessary a way to store the tid received to a
      * corresponding dependence map.
+     * Maps are kept in the binary form received from the network.
      */
-    private final Map<Long, Map<String, Long>> tidToPrecedenceMap;
+    private final Map<Long, byte[]> tidToPrecedenceMap;
 
     public static VmsEventHandler build(// to identify which vms this is
                                         VmsNode me,
@@ -181,6 +185,7 @@ public final class VmsEventHandler extends ModbHttpServer {
 
         this.vmsInternalChannels = vmsInternalChannels;
         this.me = me;
+        this.identifierBytes = me.identifier.getBytes(StandardCharsets.UTF_8);
 
         this.vmsMetadata = vmsMetadata;
         // no concurrent threads modifying them
@@ -220,11 +225,10 @@ public final class VmsEventHandler extends ModbHttpServer {
         LOGGER.log(DEBUG,this.me.identifier+": New transaction result in event handler. TID = "+ txResult.tid());
         // it is a void method that executed, nothing to send
         if (txResult.getOutboundEventResult().outputQueue() != null) {
-            Map<String, Long> precedenceMap = this.tidToPrecedenceMap.get(txResult.tid());
+            byte[] precedenceMap = this.tidToPrecedenceMap.get(txResult.tid());
             if (precedenceMap != null) {
                 // remove ourselves (which also saves some bytes)
-                precedenceMap.remove(this.me.identifier);
-                String precedenceMapUpdated = this.serdesProxy.serializeMap(precedenceMap);
+                byte[] precedenceMapUpdated = TransactionEvent.precedenceMapWithout(precedenceMap, this.identifierBytes);
                 this.processOutputEvent(txResult.getOutboundEventResult(), precedenceMapUpdated);
             } else {
                 LOGGER.log(ERROR, this.me.identifier + ": No precedence map found for TID: " + txResult.tid());
@@ -298,21 +302,25 @@ public final class VmsEventHandler extends ModbHttpServer {
         // of course, I do not need to stop the scheduler on commit
         // I need to make access to the data versions data race free
         // so new transactions get data versions from the version map or the store
-        //long initTs = System.currentTimeMillis();
-        this.transactionManager.checkpoint(maxTid);
-        //LOGGER.log(WARNING, me.identifier+": Checkpointing latency is "+(System.currentTimeMillis()-initTs));
-        this.batchContextMap.get(batch).setStatus(BatchContext.BATCH_COMMITTED);
-        // it may not be necessary. the leader has already moved on at this point
-        if(INFORM_BATCH_ACK) {
-            this.leaderWorker.queueMessage(BatchCommitAck.of(batch, this.me.identifier));
-        }
+        // the checkpoint proceeds in the transaction manager threads, so the background thread is not held
+        this.transactionManager.checkpointAsync(batch, maxTid).whenComplete((ignored, e) -> {
+            if(e != null){
+                LOGGER.log(ERROR, this.me.identifier + ": Checkpoint for batch " + batch + " failed: " + e.getMessage());
+                return;
+            }
+            this.batchContextMap.get(batch).setStatus(BatchContext.BATCH_COMMITTED);
+            // it may not be necessary. the leader has already moved on at this point
+            if(INFORM_BATCH_ACK) {
+                this.leaderWorker.queueMessage(BatchCommitAck.of(batch, this.me.identifier));
+            }
+        });
     }
 
     /**
      * It creates the payload to be sent downstream
      * @param outputEvent the event to be sent to the respective consumer vms
      */
-    private void processOutputEvent(OutboundEventResult outputEvent, String precedenceMap){
+    private void processOutputEvent(OutboundEventResult outputEvent, byte[] precedenceMap){
         Class<?> clazz = this.vmsMetadata.queueToEventMap().get(outputEvent.outputQueue());
         String objStr = this.serdesProxy.serialize(outputEvent.output(), clazz);
         /*
@@ -559,7 +567,7 @@ public final class VmsEventHandler extends ModbHttpServer {
                             MemoryManager.getTemporaryDirectBuffer(options.networkBufferSize),
                             httpHandler);
                     try { NetworkUtils.configure(this.channel, options.osBufferSize()); } catch (IOException ignored) { }
-                    readCompletionHandler.process(request);
+                    readCompletionHandler.start();
                 } else {
                     LOGGER.log(WARNING, me.identifier + ": A node is trying to connect without a presentation message.\n"+request);
                     this.buffer.clear();
@@ -772,10 +780,10 @@ public final class VmsEventHandler extends ModbHttpServer {
                 String vmsDataSchemaStr = serdesProxy.serializeDataSchema(me.dataSchema);
                 String vmsInputEventSchemaStr = serdesProxy.serializeEventSchema(me.inputEventSchema);
                 String vmsOutputEventSchemaStr = serdesProxy.serializeEventSchema(me.outputEventSchema);
-                Presentation.writeVms(this.buffer, me, me.identifier, me.batch, 0, me.previousBatch, vmsDataSchemaStr, vmsInputEventSchemaStr, vmsOutputEventSchemaStr);
+                Presentation.writeVms(this.buffer, me, me.identifier, me.batch, me.lastTid, me.previousBatch, vmsDataSchemaStr, vmsInputEventSchemaStr, vmsOutputEventSchemaStr);
                 // the protocol requires the leader to wait for the metadata in order to start sending messages
             } else {
-                Presentation.writeVms(this.buffer, me, me.identifier, me.batch, 0, me.previousBatch);
+                Presentation.writeVms(this.buffer, me, me.identifier, me.batch, me.lastTid, me.previousBatch);
             }
             this.buffer.flip();
             this.state = State.PRESENTATION_PROCESSED;
@@ -787,15 +795,12 @@ public final class VmsEventHandler extends ModbHttpServer {
     private InboundEvent buildInboundEvent(TransactionEvent.Payload payload){
         Class<?> clazz = this.vmsMetadata.queueToEventMap().get(payload.event());
         Object input = this.serdesProxy.deserialize(payload.payload(), clazz);
-        Map<String, Long> precedenceMap = this.serdesProxy.deserializeDependenceMap(payload.precedenceMap());
-        if(precedenceMap == null){
-            throw new IllegalStateException("Precedence map is null.");
-        }
-        if(!precedenceMap.containsKey(this.me.identifier)){
+        long lastTid = TransactionEvent.lastTidOf(payload.precedenceMap(), this.identifierBytes);
+        if(lastTid < 0){
             throw new IllegalStateException("Precedent tid of "+payload.tid()+" is unknown.");
         }
-        this.tidToPrecedenceMap.put(payload.tid(), precedenceMap);
-        return new InboundEvent( payload.tid(), precedenceMap.get(this.me.identifier),
+        this.tidToPrecedenceMap.put(payload.tid(), payload.precedenceMap());
+        return new InboundEvent( payload.tid(), lastTid,
                 payload.batch(), payload.event(), clazz, input );
     }
 
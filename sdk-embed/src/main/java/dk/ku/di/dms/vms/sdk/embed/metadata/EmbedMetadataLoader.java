@@ -3,6 +3,8 @@ package dk.ku.di.dms.vms.sdk.embed.metadata;
 import dk.ku.di.dms.vms.modb.api.annotations.Query;
 import dk.ku.di.dms.vms.modb.api.annotations.VmsIndex;
 import dk.ku.di.dms.vms.modb.api.annotations.VmsPartialIndex;
+import dk.ku.di.dms.vms.modb.api.annotations.VmsPreparedStatement;
+import dk.ku.di.dms.vms.modb.api.query.statement.SelectStatement;
 import dk.ku.di.dms.vms.modb.common.constraint.ForeignKeyReference;
 import dk.ku.di.dms.vms.modb.common.data_structure.Tuple;
 import dk.ku.di.dms.vms.modb.common.memory.MemoryUtils;
@@ -15,10 +17,10 @@ import dk.ku.di.dms.vms.modb.index.IIndexKey;
 import dk.ku.di.dms.vms.modb.index.interfaces.ReadWriteIndex;
 import dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueHashBufferIndex;
 import dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueHashMapIndex;
+import dk.ku.di.dms.vms.modb.index.non_unique.NonUniqueIndex;
 import dk.ku.di.dms.vms.modb.index.unique.UniqueHashBufferIndex;
 import dk.ku.di.dms.vms.modb.index.unique.UniqueHashMapIndex;
-import dk.ku.di.dms.vms.modb.storage.record.AppendOnlyBuffer;
-import dk.ku.di.dms.vms.modb.storage.record.OrderedRecordBuffer;
+import dk.ku.di.dms.vms.modb.storage.record.IRecordBufferFactory;
 import dk.ku.di.dms.vms.modb.storage.record.RecordBufferContext;
 import dk.ku.di.dms.vms.modb.transaction.OperationalAPI;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.IntegerPrimaryKeyGenerator;
@@ -26,6 +28,8 @@ import dk.ku.di.dms.vms.modb.transaction.multiversion.index.NonUniqueSecondaryIn
 import dk.ku.di.dms.vms.modb.transaction.multiversion.index.PrimaryIndex;
 import dk.ku.di.dms.vms.modb.transaction.multiversion.index.UniqueSecondaryIndex;
 import dk.ku.di.dms.vms.sdk.core.metadata.VmsMetadataLoader;
+import dk.ku.di.dms.vms.sdk.embed.entity.EntityCodec;
+import dk.ku.di.dms.vms.sdk.embed.entity.EntityUtils;
 import dk.ku.di.dms.vms.sdk.embed.facade.AbstractProxyRepository;
 import net.bytebuddy.ByteBuddy;
 import net.bytebuddy.description.type.TypeDescription;
@@ -42,7 +46,9 @@ import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.reflect.*;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -55,13 +61,19 @@ public final class EmbedMetadataLoader {
 
     private static final System.Logger LOGGER = System.getLogger(EmbedMetadataLoader.class.getName());
 
-    private static final boolean SEC_IDX_IN_MEMORY_STORAGE = true;
+    // secondary indexes are kept on heap unless configured otherwise
+    private static final boolean SEC_IDX_OFF_HEAP = Boolean.parseBoolean(ConfigUtils.loadProperties().getProperty("secondary_index_off_heap"));
+
+    // versions written by transactions are kept on heap unless configured otherwise. only applies when checkpointing
+    private static final boolean VERSIONS_OFF_HEAP = Boolean.parseBoolean(ConfigUtils.loadProperties().getProperty("off_heap_versions"));
 
     public static Map<String, Object> loadRepositoryClasses(Set<Class<?>> vmsClasses,
                                                           Map<Class<?>, String> entityToTableNameMap,
                                                           Map<String, Table> catalog,
                                                           OperationalAPI operationalAPI) throws InvocationTargetException, InstantiationException, IllegalAccessException, ClassNotFoundException {
         Map<String, Object> tableToRepositoryMap = new HashMap<>();
+        // an entity may be served by more than one repository
+        Map<Class<?>, EntityCodec<?>> entityCodecMap = new HashMap<>();
         for(Class<?> clazz : vmsClasses) {
             String clazzName = clazz.getCanonicalName();
             Class<?> cls = Class.forName(clazzName);
@@ -104,12 +116,20 @@ public final class EmbedMetadataLoader {
                 // read queries
                 var repositoryQueriesMap = VmsMetadataLoader.loadStaticQueries(queryMethods);
 
+                Table table = catalog.get( tableName );
+                EntityCodec<?> entityCodec = entityCodecMap.computeIfAbsent(entityClazz,
+                        k -> EntityUtils.generateEntityCodec(k, table.schema()));
+                if(entityCodec == null){
+                    LOGGER.log(WARNING, "Fields of entity "+entityClazz.getSimpleName()+" cannot be accessed by a generated codec. Conversions rely on field handles.");
+                }
+
                 Object instance = type.getConstructors()[0].newInstance(
                         pkClazz,
                         entityClazz,
-                        catalog.get( tableName ),
+                        table,
                         operationalAPI,
-                        repositoryQueriesMap
+                        repositoryQueriesMap,
+                        entityCodec
                 );
                 tableToRepositoryMap.put(tableName, instance);
             }
@@ -147,6 +167,27 @@ public final class EmbedMetadataLoader {
         return repositoryClassMap;
     }
 
+    /**
+     * Prepares the select statements declared as static fields annotated with {@link VmsPreparedStatement},
+     * so calls passing these statements do not require analyzing and planning them again
+     */
+    public static void loadPreparedStatements(Set<Class<?>> vmsClasses,
+                                              Map<String, Table> catalog,
+                                              OperationalAPI operationalAPI) throws IllegalAccessException {
+        for(Class<?> clazz : vmsClasses) {
+            for(Field field : clazz.getDeclaredFields()){
+                if(!field.isAnnotationPresent(VmsPreparedStatement.class) || !Modifier.isStatic(field.getModifiers())
+                        || !(field.get(null) instanceof SelectStatement selectStatement)) continue;
+                Table table = catalog.get(selectStatement.fromClause.getFirst());
+                if(table == null){
+                    throw new IllegalStateException("Cannot find the table of prepared statement "+field.getAnnotation(VmsPreparedStatement.class).value());
+                }
+                operationalAPI.prepare(table, selectStatement);
+                LOGGER.log(INFO, "Prepared statement "+field.getAnnotation(VmsPreparedStatement.class).value()+" loaded");
+            }
+        }
+    }
+
     private static Type[] getPkAndEntityTypesFromRepositoryClazz(Class<?> repositoryClazz){
         return ((ParameterizedType) repositoryClazz.getGenericInterfaces()[0]).getActualTypeArguments();
     }
@@ -166,6 +207,18 @@ public final class EmbedMetadataLoader {
                                                  Map<Class<?>, String> entityToTableNameMap,
                                                  boolean isCheckpointing,
                                                  int maxRecords) throws NoSuchFieldException {
+        return loadCatalog(vmsDataModelMap, entityToTableNameMap, isCheckpointing, false, maxRecords);
+    }
+
+    /**
+     * @param isRecovery If true (and checkpointing is enabled), the existing data files are reopened
+     *                   instead of being truncated, as long as they hold a valid checkpoint
+     */
+    public static Map<String, Table> loadCatalog(Map<String, VmsDataModel> vmsDataModelMap,
+                                                 Map<Class<?>, String> entityToTableNameMap,
+                                                 boolean isCheckpointing,
+                                                 boolean isRecovery,
+                                                 int maxRecords) throws NoSuchFieldException {
         Map<String, Table> catalog = new HashMap<>(vmsDataModelMap.size());
         Map<VmsDataModel, SchemaMapping> dataSchemaToPkMap = new HashMap<>(vmsDataModelMap.size());
 
@@ -209,7 +262,7 @@ public final class EmbedMetadataLoader {
         }
 
         Map<String, PrimaryIndex> tableToPrimaryIndexMap = new HashMap<>(dataSchemaToPkMap.size());
-        Map<String, List<ReadWriteIndex<IKey>>> tableToSecondaryIndexMap = new HashMap<>();
+        Map<String, List<NonUniqueIndex>> tableToSecondaryIndexMap = new HashMap<>();
         Map<String, List<ReadWriteIndex<IKey>>> tableToPartialIndexMap = new HashMap<>();
 
         // partial indexes metadata
@@ -219,11 +272,11 @@ public final class EmbedMetadataLoader {
         for (var entry : dataSchemaToPkMap.entrySet()) {
 
             Schema schema = entry.getValue().schema();
-            PrimaryIndex consistentIndex = createPrimaryIndex(entry.getKey().tableName, schema, isCheckpointing, maxRecords);
+            PrimaryIndex consistentIndex = createPrimaryIndex(entry.getKey().tableName, schema, isCheckpointing, isRecovery, maxRecords);
             tableToPrimaryIndexMap.put(entry.getKey().tableName, consistentIndex);
 
             // normal indexes (i.e., non partial) and foreign key indexes go here?
-            List<ReadWriteIndex<IKey>> listSecondaryIndexes = new ArrayList<>();
+            List<NonUniqueIndex> listSecondaryIndexes = new ArrayList<>();
             tableToSecondaryIndexMap.put(entry.getKey().tableName, listSecondaryIndexes);
 
             List<ReadWriteIndex<IKey>> listPartialIndexes = new ArrayList<>();
@@ -233,7 +286,7 @@ public final class EmbedMetadataLoader {
             if(!entry.getValue().secondaryIndexMap().isEmpty()) {
                 // now create the secondary index (a - based on foreign keys and b - based on non-foreign keys)
                 for (var secIdx : entry.getValue().secondaryIndexMap().entrySet()) {
-                    ReadWriteIndex<IKey> nuhi = createNonUniqueIndex(schema, secIdx.getValue().t1(), "FK_"+secIdx.getKey() );
+                    NonUniqueIndex nuhi = createNonUniqueIndex(schema, secIdx.getValue().t1(), maxRecords);
                     listSecondaryIndexes.add(nuhi);
                 }
             }
@@ -242,12 +295,12 @@ public final class EmbedMetadataLoader {
                 Map<String, List<IndexMetadata>> indexMetadataByName = entry.getValue().indexMetadataList().stream()
                         .collect(Collectors.groupingBy(IndexMetadata::indexName));
                 for (var idxEntry : indexMetadataByName.entrySet()) {
-                    ReadWriteIndex<IKey> nuhi;
+                    NonUniqueIndex nuhi;
                     if(idxEntry.getValue().size() == 1) {
-                        nuhi = createNonUniqueIndex(schema, new int[]{idxEntry.getValue().getFirst().columnPos()}, idxEntry.getKey());
+                        nuhi = createNonUniqueIndex(schema, new int[]{idxEntry.getValue().getFirst().columnPos()}, maxRecords);
                     } else {
                         int[] columnList = idxEntry.getValue().stream().mapToInt(c-> c.columnPos).toArray();
-                        nuhi = createNonUniqueIndex(schema, columnList, idxEntry.getKey() );
+                        nuhi = createNonUniqueIndex(schema, columnList, maxRecords);
                     }
                     listSecondaryIndexes.add(nuhi);
                 }
@@ -257,7 +310,7 @@ public final class EmbedMetadataLoader {
             if(!entry.getValue().partialIndexMetadataList().isEmpty()) {
                 for (PartialIndexMetadata partialIdx : entry.getValue().partialIndexMetadataList()) {
                     // not all partial indexes are unique.... how is it working?
-                    ReadWriteIndex<IKey> uniquePartialIndex = createUniqueIndex(schema, new int[]{ partialIdx.columnPos() }, partialIdx.indexName() );
+                    ReadWriteIndex<IKey> uniquePartialIndex = createUniqueIndex(schema, new int[]{ partialIdx.columnPos() }, maxRecords);
                     partialIndexMetaMap.put( uniquePartialIndex.key(), new Tuple<>(partialIdx.columnPos(), partialIdx.value() ) );
                     listPartialIndexes.add(uniquePartialIndex);
                 }
@@ -282,14 +335,24 @@ public final class EmbedMetadataLoader {
 
             // build foreign key secondary indexes
             Map<IIndexKey, NonUniqueSecondaryIndex> secondaryIndexMap = new HashMap<>();
-            for (ReadWriteIndex<IKey> idx : tableToSecondaryIndexMap.get(vmsDataSchema.tableName)) {
-                secondaryIndexMap.put(idx.key(), new NonUniqueSecondaryIndex(primaryIndex, idx));
+            for (NonUniqueIndex idx : tableToSecondaryIndexMap.get(vmsDataSchema.tableName)) {
+                NonUniqueSecondaryIndex secondaryIndex = new NonUniqueSecondaryIndex(primaryIndex, idx);
+                if(isRecovery){
+                    // secondary indexes are not checkpointed, but built from the records recovered
+                    secondaryIndex.rebuild();
+                }
+                secondaryIndexMap.put(idx.key(), secondaryIndex);
             }
 
             // build partial indexes
             Map<IIndexKey, UniqueSecondaryIndex> partialIndexMap = new HashMap<>();
             for(ReadWriteIndex<IKey> idx : tableToPartialIndexMap.get(vmsDataSchema.tableName)){
-                partialIndexMap.put(idx.key(), new UniqueSecondaryIndex(primaryIndex));
+                UniqueSecondaryIndex partialIndex = new UniqueSecondaryIndex(primaryIndex);
+                if(isRecovery){
+                    Tuple<Integer, Object> criterion = partialIndexMetaMap.get(idx.key());
+                    partialIndex.rebuild(criterion.t1(), criterion.t2());
+                }
+                partialIndexMap.put(idx.key(), partialIndex);
             }
 
             Table table = new Table(vmsDataSchema.tableName,
@@ -317,43 +380,65 @@ public final class EmbedMetadataLoader {
                 vmsDataModel.primaryKeyColumns, vmsDataModel.constraintReferences, generated);
     }
 
-    private static ReadWriteIndex<IKey> createUniqueIndex(Schema schema, int[] columnsIndex, String indexName){
-        if(SEC_IDX_IN_MEMORY_STORAGE){
-            return new UniqueHashMapIndex(schema, columnsIndex);
+    private static ReadWriteIndex<IKey> createUniqueIndex(Schema schema, int[] columnsIndex, int maxRecords){
+        if(SEC_IDX_OFF_HEAP){
+            // secondary indexes are not checkpointed, so the buffer is not mapped to a file. the index grows on demand
+            int capacity = UniqueHashBufferIndex.capacityFor(maxRecords);
+            RecordBufferContext recordBufferContext = RecordBufferContext.allocate(UniqueHashBufferIndex.bufferSize(schema, capacity));
+            return new UniqueHashBufferIndex(recordBufferContext, schema, columnsIndex, capacity, IRecordBufferFactory.inMemory());
         }
-        RecordBufferContext recordBufferContext = loadRecordBuffer(10, schema.getRecordSize(), indexName);
-        return new UniqueHashBufferIndex(recordBufferContext, schema, columnsIndex, 10);
+        return new UniqueHashMapIndex(schema, columnsIndex);
     }
 
-    private static ReadWriteIndex<IKey> createNonUniqueIndex(Schema schema, int[] columnsIndex, String indexName){
-        if(SEC_IDX_IN_MEMORY_STORAGE){
-            return new NonUniqueHashMapIndex(schema, columnsIndex);
-        } else {
-            OrderedRecordBuffer[] buffers = loadOrderedBuffers(MemoryUtils.DEFAULT_NUM_BUCKETS, MemoryUtils.DEFAULT_PAGE_SIZE, indexName);
-            return new NonUniqueHashBufferIndex(buffers, schema, columnsIndex);
+    private static NonUniqueIndex createNonUniqueIndex(Schema schema, int[] columnsIndex, int maxRecords){
+        if(SEC_IDX_OFF_HEAP){
+            // the index grows on demand
+            return new NonUniqueHashBufferIndex(schema, columnsIndex, UniqueHashBufferIndex.capacityFor(maxRecords));
         }
+        return new NonUniqueHashMapIndex(schema, columnsIndex);
     }
 
-    private static OrderedRecordBuffer[] loadOrderedBuffers(int numBuckets, int bucketSize, String fileName){
-        long sizeInBytes = (long) numBuckets * bucketSize;
-        MemorySegment segment;
-        try {
-            segment = mapFileIntoMemorySegment(sizeInBytes, fileName);
-        } catch (Exception e){
-            try (Arena arena = Arena.ofShared()) {
-                segment = arena.allocate(sizeInBytes);
+    /**
+     * The state of the last checkpoint shared by all tables
+     */
+    public record CheckpointMetadata(long batch, long lastTid){}
+
+    /**
+     * Tables are checkpointed on every batch commit, so all of them must agree on the last batch checkpointed.
+     * Otherwise, the state is inconsistent and the VMS must start from scratch.
+     */
+    public static Optional<CheckpointMetadata> loadCheckpointMetadata(Map<String, Table> catalog){
+        CheckpointMetadata checkpointMetadata = null;
+        boolean consistent = !catalog.isEmpty();
+        for(Table table : catalog.values()){
+            if(!(table.primaryKeyIndex().underlyingIndex() instanceof UniqueHashBufferIndex bufferIndex) || !bufferIndex.hasCheckpoint()){
+                consistent = false;
+                break;
+            }
+            CheckpointMetadata tableMetadata = new CheckpointMetadata(bufferIndex.checkpointBatch(), bufferIndex.checkpointTid());
+            if(checkpointMetadata == null){
+                checkpointMetadata = tableMetadata;
+            } else if(!checkpointMetadata.equals(tableMetadata)){
+                LOGGER.log(WARNING, "Table "+table.getName()+" checkpoint ("+tableMetadata+") diverges from other tables ("+checkpointMetadata+")");
+                consistent = false;
+                break;
             }
         }
-        long address = segment.address();
-        OrderedRecordBuffer[] buffers = new OrderedRecordBuffer[numBuckets];
-        for(int i = 0; i < numBuckets; i++){
-            buffers[i] = loadOrderedRecordBuffer(address, bucketSize);
-            address = address + bucketSize;
+        if(consistent) {
+            LOGGER.log(INFO, "Recovered checkpoint: "+checkpointMetadata);
+            return Optional.of(checkpointMetadata);
+        }
+        LOGGER.log(WARNING, "Recovered state is not consistent across tables. Starting from scratch.");
+        for(Table table : catalog.values()){
+            table.primaryKeyIndex().underlyingIndex().reset();
+            for(NonUniqueSecondaryIndex secIdx : table.secondaryIndexMap.values()){
+                secIdx.reset();
+            }
         }
-        return buffers;
+        return Optional.empty();
     }
 
-    private static PrimaryIndex createPrimaryIndex(String tableName, Schema schema, boolean isCheckpointing, int maxRecords) {
+    private static PrimaryIndex createPrimaryIndex(String tableName, Schema schema, boolean isCheckpointing, boolean isRecovery, int maxRecords) {
         if(isCheckpointing){
             // map this to a file, so whenever a batch commit event arrives, it can trigger checkpointing the entire file
 
@@ -364,12 +449,20 @@ public final class EmbedMetadataLoader {
                 maxRecords_ = Integer.parseInt(numRec);
             }
 
-            RecordBufferContext recordBufferContext = loadRecordBuffer(maxRecords_, schema.getRecordSizeWithHeader(), tableName);
-            UniqueHashBufferIndex pkIndex = new UniqueHashBufferIndex(recordBufferContext, schema, schema.getPrimaryKeyColumns(), maxRecords_);
+            if(isRecovery){
+                PrimaryIndex recoveredIndex = recoverPrimaryIndex(tableName, schema);
+                if(recoveredIndex != null) return recoveredIndex;
+            }
+
+            // max records is only the initial capacity, the index grows on demand
+            int capacity = UniqueHashBufferIndex.capacityFor(maxRecords_);
+            RecordBufferContext recordBufferContext = loadRecordBuffer(UniqueHashBufferIndex.bufferSize(schema, capacity), tableName);
+            UniqueHashBufferIndex pkIndex = new UniqueHashBufferIndex(recordBufferContext, schema, schema.getPrimaryKeyColumns(), capacity,
+                    recordBufferContext.isMapped() ? fileRecordBufferFactory(tableName) : IRecordBufferFactory.inMemory());
             if(schema.isPrimaryKeyAutoGenerated()) {
-                return PrimaryIndex.build(pkIndex, new IntegerPrimaryKeyGenerator());
+                return PrimaryIndex.build(pkIndex, new IntegerPrimaryKeyGenerator(), VERSIONS_OFF_HEAP);
             } else {
-                return PrimaryIndex.build(pkIndex);
+                return PrimaryIndex.build(pkIndex, null, VERSIONS_OFF_HEAP);
             }
         } else {
             if(schema.isPrimaryKeyAutoGenerated()){
@@ -379,6 +472,70 @@ public final class EmbedMetadataLoader {
         }
     }
 
+    /**
+     * Reopens the data file of the table without truncating it.
+     * @return null if the file does not exist or does not hold a valid checkpoint
+     */
+    private static PrimaryIndex recoverPrimaryIndex(String tableName, Schema schema){
+        String filePath = getFilePath(tableName);
+        File file = new File(filePath);
+        // the index may have grown since the start, so the capacity is given by the file size
+        long recordsSize = file.length() - RecordBufferContext.FOOTER_SIZE;
+        long capacity = recordsSize / schema.getRecordSize();
+        if(!file.exists() || recordsSize <= 0 || recordsSize % schema.getRecordSize() != 0 || Long.bitCount(capacity) != 1){
+            LOGGER.log(WARNING, "Cannot recover table "+tableName+". File "+filePath+" does not exist or its size does not match the schema.");
+            return null;
+        }
+        long sizeInBytes = file.length();
+        Arena arena = Arena.ofShared();
+        RecordBufferContext recordBufferContext;
+        try (FileChannel fc = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            recordBufferContext = new RecordBufferContext(fc.map(FileChannel.MapMode.READ_WRITE, 0, sizeInBytes, arena), arena);
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "Cannot recover table "+tableName+". Error mapping file "+filePath+": \n"+e);
+            arena.close();
+            return null;
+        }
+        UniqueHashBufferIndex pkIndex = new UniqueHashBufferIndex(recordBufferContext, schema, schema.getPrimaryKeyColumns(), (int) capacity, fileRecordBufferFactory(tableName));
+        if(!pkIndex.recover()){
+            recordBufferContext.close();
+            return null;
+        }
+        LOGGER.log(INFO, "Table "+tableName+" recovered from file "+filePath);
+        if(schema.isPrimaryKeyAutoGenerated()) {
+            // the generated key is the single primary key column
+            long pkOffset = schema.columnOffset()[schema.getPrimaryKeyColumns()[0]];
+            int[] maxKey = { 0 };
+            pkIndex.forEachRecord(address -> maxKey[0] = Math.max(maxKey[0], MemoryUtils.UNSAFE.getInt(null, address + pkOffset)));
+            return PrimaryIndex.build(pkIndex, new IntegerPrimaryKeyGenerator(maxKey[0]), VERSIONS_OFF_HEAP);
+        }
+        return PrimaryIndex.build(pkIndex, null, VERSIONS_OFF_HEAP);
+    }
+
+    /**
+     * On resize, the records are rehashed into a new file that then replaces the table file.
+     * The old file remains mapped until the index releases it.
+     */
+    private static IRecordBufferFactory fileRecordBufferFactory(String tableName){
+        String resizeFileName = tableName + ".resize";
+        return new IRecordBufferFactory() {
+            @Override
+            public RecordBufferContext allocate(long sizeInBytes) {
+                Arena arena = Arena.ofShared();
+                return new RecordBufferContext(mapFileIntoMemorySegment(sizeInBytes, resizeFileName, arena), arena);
+            }
+            @Override
+            public void onResize(RecordBufferContext oldBuffer, RecordBufferContext newBuffer) {
+                try {
+                    Files.move(Paths.get(getFilePath(resizeFileName)), Paths.get(getFilePath(tableName)),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
     private static Map<String, Tuple<int[],int[]>> buildSchemaForeignKeyMap(VmsDataModel childDataModel,
             Map<String, List<ForeignKeyReference>> fksPerTable, Map<String, VmsDataModel> dataModelMap) {
         Map<String, Tuple<int[],int[]>> res = new HashMap<>();
@@ -405,30 +562,26 @@ public final class EmbedMetadataLoader {
         return res;
     }
 
-    private static OrderedRecordBuffer loadOrderedRecordBuffer(long address, int size){
-        AppendOnlyBuffer appendOnlyBuffer = new AppendOnlyBuffer(address, size);
-        return new OrderedRecordBuffer(appendOnlyBuffer);
-    }
-
     /**
-     * Must consider the header in the record size
+     * Must consider the header and the checkpoint footer in the size
      */
-    private static RecordBufferContext loadRecordBuffer(int maxNumberOfRecords, int recordSize, String fileName){
-        long sizeInBytes = (long) maxNumberOfRecords * recordSize;
+    private static RecordBufferContext loadRecordBuffer(long sizeInBytes, String fileName){
         try {
-            MemorySegment segment = mapFileIntoMemorySegment(sizeInBytes, fileName);
-            return new RecordBufferContext(segment);
+            Arena arena = Arena.ofShared();
+            MemorySegment segment = mapFileIntoMemorySegment(sizeInBytes, fileName, arena);
+            return new RecordBufferContext(segment, arena);
         } catch (Exception e){
             LOGGER.log(WARNING, "Could not map file. Resorting to direct memory allocation attempt: \n"+e);
-            try (Arena arena = Arena.ofShared()) {
-                return new RecordBufferContext(arena.allocate(sizeInBytes));
-            }
+            return RecordBufferContext.allocate(sizeInBytes);
         }
     }
 
-    private static MemorySegment mapFileIntoMemorySegment(long bytes, String fileName) {
-        String userHome = ConfigUtils.getUserHome();
-        String filePath = userHome + "/vms/" + fileName + ".data";
+    private static String getFilePath(String fileName){
+        return ConfigUtils.getUserHome() + "/vms/" + fileName + ".data";
+    }
+
+    private static MemorySegment mapFileIntoMemorySegment(long bytes, String fileName, Arena arena) {
+        String filePath = getFilePath(fileName);
         LOGGER.log(INFO, "Attempt to delete existing file in directory: "+filePath);
         File file = new File(filePath);
         if (file.exists()) {
@@ -448,7 +601,7 @@ public final class EmbedMetadataLoader {
                     StandardOpenOption.READ,
                     StandardOpenOption.WRITE);
             LOGGER.log(INFO, "Attempt to create new file in directory completed successfully: "+filePath);
-            return fc.map(FileChannel.MapMode.READ_WRITE, 0, bytes, Arena.ofShared());
+            return fc.map(FileChannel.MapMode.READ_WRITE, 0, bytes, arena);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
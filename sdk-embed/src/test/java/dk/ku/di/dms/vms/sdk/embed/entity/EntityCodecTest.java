@@ -0,0 +1,76 @@
+package dk.ku.di.dms.vms.sdk.embed.entity;
+
+import dk.ku.di.dms.vms.modb.common.type.DataType;
+import dk.ku.di.dms.vms.modb.definition.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+
+public final class EntityCodecTest {
+
+    public enum Status { OPEN, CLOSED }
+
+    public static final class Order {
+        public int id;
+        public double total;
+        public boolean paid;
+        public String customer;
+        public Date created_at;
+        public Status status;
+        public Order(){}
+    }
+
+    public static final class PrivateOrder {
+        public int id;
+        private double total;
+        public PrivateOrder(){}
+    }
+
+    // columns in a different order than the fields
+    private static final Schema ORDER_SCHEMA = new Schema(new String[]{ "id", "customer", "total", "status", "paid", "created_at" },
+            new DataType[]{ DataType.INT, DataType.STRING, DataType.DOUBLE, DataType.ENUM, DataType.BOOL, DataType.DATE },
+            new int[]{ 0 }, null, false);
+
+    @Test
+    public void testEncodeAndDecode() {
+        EntityCodec<Order> codec = EntityUtils.generateEntityCodec(Order.class, ORDER_SCHEMA);
+        Assert.assertNotNull(codec);
+
+        Date date = new Date();
+        Object[] record = new Object[]{ 1, "customer", 10.5, Status.CLOSED, true, date };
+        Order order = codec.decode(record);
+        Assert.assertEquals(1, order.id);
+        Assert.assertEquals("customer", order.customer);
+        Assert.assertEquals(10.5, order.total, 0.0);
+        Assert.assertEquals(Status.CLOSED, order.status);
+        Assert.assertTrue(order.paid);
+        Assert.assertEquals(date, order.created_at);
+
+        Assert.assertArrayEquals(record, codec.encode(order));
+
+        // null values leave the fields as constructed
+        Order withNulls = codec.decode(new Object[]{ null, null, 10.5, null, true, date });
+        Assert.assertEquals(0, withNulls.id);
+        Assert.assertNull(withNulls.customer);
+        Assert.assertNull(withNulls.status);
+    }
+
+    @Test
+    public void testDecodeEnumReadAsString() {
+        EntityCodec<Order> codec = EntityUtils.generateEntityCodec(Order.class, ORDER_SCHEMA);
+        Assert.assertNotNull(codec);
+        // as read from a checkpointed buffer or an off-heap version
+        Order order = codec.decode(new Object[]{ 1, "customer", 10.5, "OPEN", true, new Date() });
+        Assert.assertEquals(Status.OPEN, order.status);
+        Assert.assertNull(codec.decode(new Object[]{ 1, "customer", 10.5, "", true, new Date() }).status);
+    }
+
+    @Test
+    public void testInaccessibleEntity() {
+        Schema schema = new Schema(new String[]{ "id", "total" }, new DataType[]{ DataType.INT, DataType.DOUBLE },
+                new int[]{ 0 }, null, false);
+        Assert.assertNull(EntityUtils.generateEntityCodec(PrivateOrder.class, schema));
+    }
+
+}
@@ -345,7 +345,7 @@ public class EventHandlerTest {
         Map<String,Long> precedenceMap = new HashMap<>();
         precedenceMap.put("example1", 0L);
 
-        TransactionEvent.PayloadRaw eventInput = TransactionEvent.of(1,1,"in", inputPayload, serdes.serializeMap(precedenceMap));
+        TransactionEvent.PayloadRaw eventInput = TransactionEvent.of(1,1,"in", inputPayload, TransactionEvent.precedenceMapOf(precedenceMap));
         TransactionEvent.writeWithinBatch(buffer, eventInput);
         buffer.flip();
         channel.write(buffer).get(); // no need to wait
@@ -548,7 +548,7 @@ public class EventHandlerTest {
         Map<String,Long> precedenceMap = new HashMap<>();
         precedenceMap.put("example1", 0L);
 
-        TransactionEvent.PayloadRaw eventInput = TransactionEvent.of(1,0,"in", inputPayload, serdes.serializeMap(precedenceMap));
+        TransactionEvent.PayloadRaw eventInput = TransactionEvent.of(1,0,"in", inputPayload, TransactionEvent.precedenceMapOf(precedenceMap));
         TransactionEvent.writeWithinBatch(buffer, eventInput);
         buffer.flip();
         channel.write(buffer).get(); // no need to wait
@@ -0,0 +1,342 @@
+package dk.ku.di.dms.vms.web_common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Incremental HTTP/1.1 request parser.
+ * Bytes are fed as they are read from the channel, so a request may arrive in many reads
+ * and a read may carry many (pipelined) requests. The parser keeps the position reached
+ * in the current request, so no byte is scanned twice across reads.
+ * Bodies are delimited either by Content-Length or by chunked transfer encoding.
+ * Sizes are declared by the client, so lines and bodies are bounded before anything is allocated.
+ * Not thread-safe. Each connection has its own parser.
+ */
+public final class HttpRequestParser {
+
+    public record HttpRequest(String method, String uri, Map<String, String> headers, String body) {
+        public boolean keepAlive(){
+            String connection = this.headers.get("Connection");
+            return connection == null || !connection.equalsIgnoreCase("close");
+        }
+    }
+
+    private enum State {
+        REQUEST_LINE,
+        HEADERS,
+        BODY,
+        CHUNK_SIZE,
+        CHUNK_DATA,
+        CHUNK_END,
+        TRAILERS
+    }
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    // a request line or header block (or a chunk line or trailer block) larger than this is considered malformed
+    private static final int MAX_HEADER_SIZE = 1 << 16;
+
+    private static final int DEFAULT_MAX_BODY_SIZE = 1 << 24;
+
+    private final int maxBodySize;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+    // unconsumed bytes lie in [readPos, writePos)
+    private int readPos;
+
+    private int writePos;
+
+    // where the search for the next line end resumes
+    private int scanPos;
+
+    private State state = State.REQUEST_LINE;
+
+    // size of the request line and headers of the current request
+    private int headerSize;
+
+    private String method;
+
+    private String uri;
+
+    private Map<String, String> headers;
+
+    private byte[] body = EMPTY;
+
+    private int bodyLength;
+
+    // bytes still to copy into the body, for the whole body or for the current chunk
+    private int remaining;
+
+    public HttpRequestParser(){
+        this(DEFAULT_MAX_BODY_SIZE);
+    }
+
+    public HttpRequestParser(int maxBodySize){
+        this.maxBodySize = maxBodySize;
+    }
+
+    public void feed(ByteBuffer src){
+        int length = src.remaining();
+        this.ensureCapacity(length);
+        src.get(this.buffer, this.writePos, length);
+        this.writePos += length;
+    }
+
+    private void ensureCapacity(int length){
+        if(this.buffer.length - this.writePos >= length) return;
+        int pending = this.writePos - this.readPos;
+        byte[] target = this.buffer;
+        if(this.buffer.length - pending < length){
+            target = new byte[Integer.highestOneBit(pending + length) << 1];
+        }
+        System.arraycopy(this.buffer, this.readPos, target, 0, pending);
+        this.buffer = target;
+        this.scanPos -= this.readPos;
+        this.writePos = pending;
+        this.readPos = 0;
+    }
+
+    /**
+     * @return the next complete request or null if more bytes are needed
+     * @throws IllegalStateException if the request is malformed. The parser must be reset then.
+     */
+    public HttpRequest next(){
+        while(true) {
+            switch (this.state) {
+                case REQUEST_LINE -> {
+                    int lineEnd = this.findLineEnd();
+                    if (lineEnd == -1) return null;
+                    // tolerate empty lines between requests
+                    if (this.contentEnd(lineEnd) > this.readPos) {
+                        this.parseRequestLine(this.contentEnd(lineEnd));
+                        this.state = State.HEADERS;
+                    }
+                    this.consumeLine(lineEnd);
+                }
+                case HEADERS -> {
+                    int lineEnd = this.findLineEnd();
+                    if (lineEnd == -1) return null;
+                    int contentEnd = this.contentEnd(lineEnd);
+                    if (contentEnd == this.readPos) {
+                        this.consumeLine(lineEnd);
+                        this.startBody();
+                        if (this.state == State.REQUEST_LINE) return this.complete();
+                    } else {
+                        this.parseHeader(contentEnd);
+                        this.consumeLine(lineEnd);
+                    }
+                }
+                case BODY -> {
+                    if (!this.copyBody()) return null;
+                    return this.complete();
+                }
+                case CHUNK_SIZE -> {
+                    int lineEnd = this.findLineEnd();
+                    if (lineEnd == -1) return null;
+                    int chunkSize = this.parseChunkSize(this.contentEnd(lineEnd));
+                    this.consumeLine(lineEnd);
+                    if (chunkSize == 0) {
+                        this.headerSize = 0;
+                        this.state = State.TRAILERS;
+                    } else {
+                        this.growBody(chunkSize);
+                        this.remaining = chunkSize;
+                        this.state = State.CHUNK_DATA;
+                    }
+                }
+                case CHUNK_DATA -> {
+                    if (!this.copyBody()) return null;
+                    this.state = State.CHUNK_END;
+                }
+                case CHUNK_END -> {
+                    int lineEnd = this.findLineEnd();
+                    if (lineEnd == -1) return null;
+                    if (this.contentEnd(lineEnd) != this.readPos) {
+                        throw new IllegalStateException("Chunk data exceeds its declared size");
+                    }
+                    this.consumeLine(lineEnd);
+                    this.state = State.CHUNK_SIZE;
+                }
+                case TRAILERS -> {
+                    int lineEnd = this.findLineEnd();
+                    if (lineEnd == -1) return null;
+                    boolean last = this.contentEnd(lineEnd) == this.readPos;
+                    // trailer fields are not exposed
+                    this.consumeLine(lineEnd);
+                    if (last) {
+                        this.state = State.REQUEST_LINE;
+                        return this.complete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard the bytes buffered and the request being parsed
+     */
+    public void reset(){
+        this.readPos = 0;
+        this.writePos = 0;
+        this.scanPos = 0;
+        this.headerSize = 0;
+        this.state = State.REQUEST_LINE;
+        this.headers = null;
+        this.body = EMPTY;
+        this.bodyLength = 0;
+    }
+
+    /**
+     * @return the position of the LF ending the current line or -1 if the line is incomplete
+     */
+    private int findLineEnd(){
+        int pos = Math.max(this.scanPos, this.readPos);
+        while(pos < this.writePos){
+            if(this.buffer[pos] == '\n'){
+                this.scanPos = pos;
+                return pos;
+            }
+            pos++;
+        }
+        this.scanPos = pos;
+        // the header size is only accumulated while reading headers and trailers, otherwise the line is bounded on its own
+        if(this.headerSize + (pos - this.readPos) > MAX_HEADER_SIZE){
+            throw new IllegalStateException("Request line is too large in state "+this.state);
+        }
+        return -1;
+    }
+
+    // the line content ends before the CRLF, or before a bare LF
+    private int contentEnd(int lineEnd){
+        return lineEnd > this.readPos && this.buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+    }
+
+    private void consumeLine(int lineEnd){
+        if(this.state == State.HEADERS || this.state == State.TRAILERS) this.headerSize += lineEnd + 1 - this.readPos;
+        this.readPos = lineEnd + 1;
+        this.compactIfEmpty();
+    }
+
+    private void compactIfEmpty(){
+        if(this.readPos == this.writePos){
+            this.readPos = 0;
+            this.writePos = 0;
+            this.scanPos = 0;
+        }
+    }
+
+    private void parseRequestLine(int contentEnd){
+        int firstSpace = this.indexOf((byte) ' ', this.readPos, contentEnd);
+        int secondSpace = firstSpace == -1 ? -1 : this.indexOf((byte) ' ', firstSpace + 1, contentEnd);
+        if(secondSpace == -1){
+            throw new IllegalStateException("Malformed request line: "+this.ascii(this.readPos, contentEnd));
+        }
+        this.method = this.ascii(this.readPos, firstSpace);
+        this.uri = this.ascii(firstSpace + 1, secondSpace);
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.headerSize = 0;
+    }
+
+    private void parseHeader(int contentEnd){
+        int colon = this.indexOf((byte) ':', this.readPos, contentEnd);
+        if(colon <= this.readPos){
+            throw new IllegalStateException("Malformed header: "+this.ascii(this.readPos, contentEnd));
+        }
+        int valueStart = colon + 1;
+        while(valueStart < contentEnd && (this.buffer[valueStart] == ' ' || this.buffer[valueStart] == '\t')) valueStart++;
+        int valueEnd = contentEnd;
+        while(valueEnd > valueStart && (this.buffer[valueEnd - 1] == ' ' || this.buffer[valueEnd - 1] == '\t')) valueEnd--;
+        this.headers.put(this.ascii(this.readPos, colon), new String(this.buffer, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8));
+    }
+
+    private void startBody(){
+        this.headerSize = 0;
+        this.body = EMPTY;
+        this.bodyLength = 0;
+        String transferEncoding = this.headers.get("Transfer-Encoding");
+        if(transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")){
+            this.state = State.CHUNK_SIZE;
+            return;
+        }
+        String contentLength = this.headers.get("Content-Length");
+        long length;
+        try {
+            length = contentLength == null ? 0 : Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e){
+            throw new IllegalStateException("Invalid Content-Length: "+contentLength);
+        }
+        if(length < 0) throw new IllegalStateException("Invalid Content-Length: "+contentLength);
+        if(length > this.maxBodySize) throw new IllegalStateException("Request body is too large: "+contentLength);
+        if(length == 0){
+            this.state = State.REQUEST_LINE;
+            return;
+        }
+        this.body = new byte[(int) length];
+        this.remaining = (int) length;
+        this.state = State.BODY;
+    }
+
+    private int parseChunkSize(int contentEnd){
+        // chunk extensions are ignored
+        int end = this.indexOf((byte) ';', this.readPos, contentEnd);
+        if(end == -1) end = contentEnd;
+        String size = this.ascii(this.readPos, end).trim();
+        try {
+            int chunkSize = Integer.parseInt(size, 16);
+            if(chunkSize < 0) throw new NumberFormatException();
+            return chunkSize;
+        } catch (NumberFormatException e){
+            throw new IllegalStateException("Invalid chunk size: "+size);
+        }
+    }
+
+    private void growBody(int chunkSize){
+        // chunks are summed as long, so their sizes cannot overflow past the limit
+        long required = (long) this.bodyLength + chunkSize;
+        if(required > this.maxBodySize) throw new IllegalStateException("Request body is too large: "+required);
+        if(this.body.length - this.bodyLength >= chunkSize) return;
+        byte[] newBody = new byte[(int) Math.min(Math.max(required, (long) this.body.length * 2), this.maxBodySize)];
+        System.arraycopy(this.body, 0, newBody, 0, this.bodyLength);
+        this.body = newBody;
+    }
+
+    /**
+     * @return whether all the remaining bytes have been copied
+     */
+    private boolean copyBody(){
+        int length = Math.min(this.writePos - this.readPos, this.remaining);
+        System.arraycopy(this.buffer, this.readPos, this.body, this.bodyLength, length);
+        this.readPos += length;
+        this.bodyLength += length;
+        this.remaining -= length;
+        this.compactIfEmpty();
+        return this.remaining == 0;
+    }
+
+    private HttpRequest complete(){
+        this.state = State.REQUEST_LINE;
+        HttpRequest request = new HttpRequest(this.method, this.uri, this.headers,
+                this.bodyLength == 0 ? "" : new String(this.body, 0, this.bodyLength, StandardCharsets.UTF_8));
+        this.headers = null;
+        this.body = EMPTY;
+        this.bodyLength = 0;
+        return request;
+    }
+
+    private int indexOf(byte b, int from, int to){
+        for(int i = from; i < to; i++){
+            if(this.buffer[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private String ascii(int from, int to){
+        return new String(this.buffer, from, to - from, StandardCharsets.US_ASCII);
+    }
+
+}
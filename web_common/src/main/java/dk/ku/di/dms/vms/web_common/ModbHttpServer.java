@@ -5,12 +5,13 @@ import dk.ku.di.dms.vms.modb.common.memory.MemoryUtils;
 import dk.ku.di.dms.vms.modb.common.runnable.StoppableRunnable;
 import dk.ku.di.dms.vms.web_common.meta.ConnectionMetadata;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.CompletionHandler;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
 
@@ -33,12 +34,43 @@ public abstract class ModbHttpServer extends StoppableRunnable {
         TRACKED_FUTURES.clear();
     }
 
+    /**
+     * Serves the requests of an HTTP client connection.
+     * Requests are parsed incrementally as bytes arrive, so a request may span many reads
+     * and pipelined requests may share one. Requests are answered one at a time, in order:
+     * the next request is only processed after the response to the previous one is fully written.
+     * Writes are chained through {@link ResponseWriteCompletionHandler}, so no thread blocks on the channel.
+     * Responses and events pushed to SSE clients share a single queue per connection,
+     * since the channel does not accept a write while another is in flight.
+     */
     protected static final class HttpReadCompletionHandler implements CompletionHandler<Integer, Integer> {
 
         private final ConnectionMetadata connectionMetadata;
         private final ByteBuffer readBuffer;
         private final ByteBuffer writeBuffer;
         private final IHttpHandler httpHandler;
+        private final HttpRequestParser parser;
+        private final ResponseWriteCompletionHandler writeCompletionHandler;
+
+        // whether to close the connection once the response is written
+        private boolean closeAfterWrite;
+
+        // whether to start sending events once the response is written
+        private boolean registerSseClientAfterWrite;
+
+        /**
+         * @param response Whether the connection proceeds to the next request once written. Otherwise, it is an event
+         */
+        private record PendingWrite(ByteBuffer buffer, boolean response){}
+
+        // a slow SSE client must not hold events indefinitely
+        private static final int MAX_PENDING_WRITES = 1024;
+
+        // writes waiting for the one in flight. guarded by itself
+        private final Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+
+        // whether a write is in flight. guarded by the pending writes
+        private boolean writing;
 
         public HttpReadCompletionHandler(ConnectionMetadata connectionMetadata,
                                          ByteBuffer readBuffer, ByteBuffer writeBuffer,
@@ -47,34 +79,8 @@ public abstract class ModbHttpServer extends StoppableRunnable {
             this.readBuffer = readBuffer;
             this.writeBuffer = writeBuffer;
             this.httpHandler = httpHandler;
-        }
-
-        private record HttpRequestInternal(String httpMethod, Map<String, String> headers, String uri, String body) {}
-
-        private static HttpRequestInternal parseRequest(String request){
-            String[] requestLines = request.split("\r\n");
-            String requestLine = requestLines[0];  // First line is the request line
-            String[] requestLineParts = requestLine.split(" ");
-            String method = requestLineParts[0];
-            String url = requestLineParts[1];
-            String httpVersion = requestLineParts[2];
-            // process header
-            Map<String, String> headers = new HashMap<>();
-            int i = 1;
-            while (requestLines.length > i && !requestLines[i].isEmpty()) {
-                String[] headerParts = requestLines[i].split(": ");
-                headers.put(headerParts[0], headerParts[1]);
-                i++;
-            }
-            if(method.contentEquals("GET")){
-                return new HttpRequestInternal(method, headers, url, "");
-            }
-            StringBuilder body = new StringBuilder();
-            for (i += 1; i < requestLines.length; i++) {
-                body.append(requestLines[i]).append("\r\n");
-            }
-            String payload = body.toString().trim();
-            return new HttpRequestInternal(method, headers, url, payload);
+            this.parser = new HttpRequestParser();
+            this.writeCompletionHandler = new ResponseWriteCompletionHandler();
         }
 
         private static String createHttpHeaders(int contentLength) {
@@ -84,180 +90,258 @@ public abstract class ModbHttpServer extends StoppableRunnable {
                     "Connection: keep-alive\r\n\r\n";
         }
 
-        public void process(String request){
+        private static byte[] createBadRequest(String message){
+            byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+            byte[] headerBytes = ("HTTP/1.1 400 Bad Request\r\nContent-Type: text/plain\r\nContent-Length: "+
+                    messageBytes.length+"\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+            byte[] response = new byte[headerBytes.length + messageBytes.length];
+            System.arraycopy(headerBytes, 0, response, 0, headerBytes.length);
+            System.arraycopy(messageBytes, 0, response, headerBytes.length, messageBytes.length);
+            return response;
+        }
+
+        /**
+         * Start serving the connection. The read buffer holds the first bytes received from the client,
+         * already flipped, and possibly consumed to identify the client as an HTTP one.
+         */
+        public void start(){
+            this.readBuffer.rewind();
+            this.parser.feed(this.readBuffer);
+            this.readBuffer.clear();
+            this.processNextRequest();
+        }
+
+        /**
+         * Process the next request buffered or, if there is none, wait for more bytes
+         */
+        private void processNextRequest(){
+            HttpRequestParser.HttpRequest httpRequest;
             try {
-                HttpRequestInternal httpRequest = parseRequest(request);
-                Future<Integer> ft = null;
-                switch (httpRequest.httpMethod()){
+                httpRequest = this.parser.next();
+            } catch (IllegalStateException e){
+                // the request boundaries are lost, so whatever is buffered is discarded
+                this.parser.reset();
+                this.write(createBadRequest(e.getMessage()));
+                return;
+            }
+            if(httpRequest == null){
+                this.connectionMetadata.channel.read(this.readBuffer, 0, this);
+                return;
+            }
+            this.closeAfterWrite = !httpRequest.keepAlive();
+            this.process(httpRequest);
+        }
+
+        private void process(HttpRequestParser.HttpRequest httpRequest){
+            try {
+                switch (httpRequest.method()){
                     case "GET" -> {
-                        if(!httpRequest.headers.containsKey("Accept")){
-                            var noContentType = "HTTP/1.1 400 Bad Request\r\nContent-Type: text/plain\r\nContent-Length: 11\r\n\r\nNo accept type in header".getBytes(StandardCharsets.UTF_8);
-                            this.writeBuffer.put(noContentType);
-                        } else {
-                            switch (httpRequest.headers.get("Accept")) {
-                                case "*/*", "application/json" -> {
-                                    String dashJson = httpHandler.getAsJson(httpRequest.uri());
-                                    byte[] dashJsonBytes = dashJson.getBytes(StandardCharsets.UTF_8);
-                                    String headers = createHttpHeaders(dashJsonBytes.length);
-                                    byte[] headerBytes = headers.getBytes(StandardCharsets.UTF_8);
-                                    // ask memory utils for a byte buffer big enough to fit the seller dashboard
-                                    int totalBytes = headerBytes.length + dashJsonBytes.length;
-                                    // use remaining to be error-proof
-                                    if(this.writeBuffer.remaining() < totalBytes) {
-                                        ByteBuffer bigBB = MemoryManager.getTemporaryDirectBuffer(MemoryUtils.nextPowerOfTwo(totalBytes));
-                                        bigBB.put(headerBytes);
-                                        bigBB.put(dashJsonBytes);
-                                        bigBB.flip();
-                                        int result = 0;
-                                        do {
-                                            result += this.connectionMetadata.channel.write(bigBB).get();
-                                        } while (bigBB.hasRemaining());
-                                        assert result == bigBB.limit();
-                                        bigBB.clear();
-                                        MemoryManager.releaseTemporaryDirectBuffer(bigBB);
-                                    } else {
-                                        if(this.writeBuffer.position() != 0){
-                                            System.out.println("This buffer has not been cleaned appropriately!");
-                                            this.writeBuffer.clear();
-                                        }
-                                        this.writeBuffer.put(headerBytes);
-                                        this.writeBuffer.put(dashJsonBytes);
-                                        this.writeBuffer.flip();
-                                        ft = this.connectionMetadata.channel.write(this.writeBuffer);
-                                    }
-                                }
-                                case "application/octet-stream" -> {
-                                    byte[] byteArray = httpHandler.getAsBytes(httpRequest.uri());
-                                    String headers = "HTTP/1.1 200 OK\r\nContent-Length: " + byteArray.length +
-                                            "\r\nContent-Type: application/octet-stream\r\n\r\n";
-                                    this.writeBuffer.put(headers.getBytes(StandardCharsets.UTF_8));
-                                    this.writeBuffer.put(byteArray);
-                                    this.writeBuffer.flip();
-                                    ft = this.connectionMetadata.channel.write(this.writeBuffer);
-                                }
-                                case "text/event-stream" -> {
-                                    this.processSseClient();
-                                    return;
-                                }
-                                case null, default -> {
-                                    this.writeBuffer.put(ERROR_RESPONSE_BYTES);
-                                    this.writeBuffer.flip();
-                                    ft = this.connectionMetadata.channel.write(this.writeBuffer);
-                                }
+                        String accept = httpRequest.headers().get("Accept");
+                        if(accept == null){
+                            this.write(NO_ACCEPT_RESPONSE_BYTES);
+                            return;
+                        }
+                        switch (accept) {
+                            case "*/*", "application/json" -> {
+                                String dashJson = this.httpHandler.getAsJson(httpRequest.uri());
+                                byte[] dashJsonBytes = dashJson.getBytes(StandardCharsets.UTF_8);
+                                byte[] headerBytes = createHttpHeaders(dashJsonBytes.length).getBytes(StandardCharsets.UTF_8);
+                                this.write(headerBytes, dashJsonBytes);
+                            }
+                            case "application/octet-stream" -> {
+                                byte[] byteArray = this.httpHandler.getAsBytes(httpRequest.uri());
+                                String headers = "HTTP/1.1 200 OK\r\nContent-Length: " + byteArray.length +
+                                        "\r\nContent-Type: application/octet-stream\r\n\r\n";
+                                this.write(headers.getBytes(StandardCharsets.UTF_8), byteArray);
+                            }
+                            case "text/event-stream" -> {
+                                // the connection is kept open to push events
+                                this.closeAfterWrite = false;
+                                this.registerSseClientAfterWrite = true;
+                                this.write(SSE_RESPONSE_BYTES);
                             }
+                            default -> this.write(ERROR_RESPONSE_BYTES);
                         }
                     }
                     case "POST" -> {
-                        httpHandler.post(httpRequest.uri(), httpRequest.body());
-                        this.writeBuffer.put(OK_RESPONSE_BYTES);
-                        this.writeBuffer.flip();
-                        ft = this.connectionMetadata.channel.write(this.writeBuffer);
+                        this.httpHandler.post(httpRequest.uri(), httpRequest.body());
+                        this.write(OK_RESPONSE_BYTES);
                     }
                     case "PATCH" -> {
                         if(httpRequest.uri().contains("reset")) {
                             cancelBackgroundTasks();
                         }
-                        httpHandler.patch(httpRequest.uri(), httpRequest.body());
-                        this.writeBuffer.put(OK_RESPONSE_BYTES);
-                        this.writeBuffer.flip();
-                        ft = this.connectionMetadata.channel.write(this.writeBuffer);
+                        this.httpHandler.patch(httpRequest.uri(), httpRequest.body());
+                        this.write(OK_RESPONSE_BYTES);
                     }
                     case "PUT" -> {
-                        httpHandler.put(httpRequest.uri(), httpRequest.body());
-                        this.writeBuffer.put(OK_RESPONSE_BYTES);
-                        this.writeBuffer.flip();
-                        ft = this.connectionMetadata.channel.write(this.writeBuffer);
+                        this.httpHandler.put(httpRequest.uri(), httpRequest.body());
+                        this.write(OK_RESPONSE_BYTES);
                     }
+                    default -> this.write(createBadRequest("Method not supported: "+httpRequest.method()));
                 }
-                if(ft != null){
-                    int result = ft.get();
-                    // send remaining to avoid http client to hang
-                    while (this.writeBuffer.hasRemaining()){
-                        result += this.connectionMetadata.channel.write(this.writeBuffer).get();
-                    }
-                    assert result == this.writeBuffer.limit();
-                    this.writeBuffer.clear();
-                }
-                this.readBuffer.clear();
-                this.connectionMetadata.channel.read(this.readBuffer, 0, this);
             } catch (Exception e){
                 // LOGGER.log(WARNING, me.identifier+": Error caught in HTTP handler.\n"+e);
-                this.writeBuffer.clear();
-                byte[] errorBytes;
                 if(e.getMessage() == null){
                     System.out.println("Exception without message has been caught:\n"+e);
                     e.printStackTrace(System.out);
-                    errorBytes = ERROR_RESPONSE_BYTES;
+                    this.write(ERROR_RESPONSE_BYTES);
                 } else {
-                    errorBytes = ("HTTP/1.1 400 Bad Request\r\nContent-Type: text/plain\r\nContent-Length: "+
-                            e.getMessage().length()+"\r\n\r\n" + e.getMessage()).getBytes(StandardCharsets.UTF_8);
+                    this.write(createBadRequest(e.getMessage()));
                 }
-                this.writeBuffer.put(errorBytes);
-                this.writeBuffer.flip();
-                try {
-                    this.connectionMetadata.channel.write(this.writeBuffer).get();
-                } catch (Exception ignored) {}
-                this.writeBuffer.clear();
-                this.readBuffer.clear();
-                this.connectionMetadata.channel.read(this.readBuffer, 0, this);
             }
         }
 
-        private void processSseClient() throws InterruptedException, ExecutionException {
-            // Write HTTP response headers for SSE
-            String headers = "HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\nConnection: keep-alive\r\n\r\n";
-            this.writeBuffer.put(headers.getBytes(StandardCharsets.UTF_8));
-            this.writeBuffer.flip();
-            this.connectionMetadata.channel.write(this.writeBuffer).get();
-            // need to set up read before adding this connection to sse client
-            this.writeBuffer.clear();
-            this.readBuffer.clear();
-            this.connectionMetadata.channel.read(this.readBuffer, 0, this);
-            SSE_CLIENTS.add(this);
+        private void write(byte[] response){
+            this.write(response, EMPTY_BYTES);
+        }
+
+        /**
+         * Write the response asynchronously. The next request is processed on completion
+         */
+        private void write(byte[] head, byte[] body){
+            int totalBytes = head.length + body.length;
+            ByteBuffer buffer;
+            // use remaining to be error-proof
+            if(this.writeBuffer.remaining() < totalBytes) {
+                // ask memory utils for a byte buffer big enough to fit the response
+                buffer = MemoryManager.getTemporaryDirectBuffer(MemoryUtils.nextPowerOfTwo(totalBytes));
+            } else {
+                if(this.writeBuffer.position() != 0){
+                    System.out.println("This buffer has not been cleaned appropriately!");
+                    this.writeBuffer.clear();
+                }
+                buffer = this.writeBuffer;
+            }
+            buffer.put(head);
+            buffer.put(body);
+            buffer.flip();
+            this.enqueue(new PendingWrite(buffer, true));
+        }
+
+        /**
+         * Writes now if no write is in flight, otherwise once the writes queued before are done
+         * @return false if too many writes are pending
+         */
+        private boolean enqueue(PendingWrite pendingWrite){
+            synchronized (this.pendingWrites){
+                if(this.writing){
+                    if(this.pendingWrites.size() == MAX_PENDING_WRITES) return false;
+                    this.pendingWrites.addLast(pendingWrite);
+                    return true;
+                }
+                this.writing = true;
+            }
+            this.connectionMetadata.channel.write(pendingWrite.buffer(), pendingWrite, this.writeCompletionHandler);
+            return true;
+        }
+
+        private void writeNext(){
+            PendingWrite next;
+            synchronized (this.pendingWrites){
+                next = this.pendingWrites.pollFirst();
+                if(next == null){
+                    this.writing = false;
+                    return;
+                }
+            }
+            this.connectionMetadata.channel.write(next.buffer(), next, this.writeCompletionHandler);
         }
 
+        private final class ResponseWriteCompletionHandler implements CompletionHandler<Integer, PendingWrite> {
+
+            @Override
+            public void completed(Integer result, PendingWrite pendingWrite) {
+                ByteBuffer buffer = pendingWrite.buffer();
+                // send remaining to avoid http client to hang
+                if(buffer.hasRemaining()){
+                    connectionMetadata.channel.write(buffer, pendingWrite, this);
+                    return;
+                }
+                this.release(buffer);
+                if(pendingWrite.response()){
+                    if(closeAfterWrite){
+                        close();
+                        return;
+                    }
+                    if(registerSseClientAfterWrite){
+                        registerSseClientAfterWrite = false;
+                        SSE_CLIENTS.add(HttpReadCompletionHandler.this);
+                    }
+                    // a response to the next request is queued, so it is written after the events queued before it
+                    processNextRequest();
+                }
+                writeNext();
+            }
+
+            @Override
+            public void failed(Throwable exc, PendingWrite pendingWrite) {
+                this.release(pendingWrite.buffer());
+                close();
+            }
+
+            private void release(ByteBuffer buffer){
+                buffer.clear();
+                if(buffer != writeBuffer){
+                    MemoryManager.releaseTemporaryDirectBuffer(buffer);
+                }
+            }
+        }
+
+        /**
+         * Called from outside the connection threads. The events are small,
+         * so they are written from their own buffer to not interfere with the responses queued.
+         * A client that does not keep up with the events is disconnected
+         */
         public void sendToSseClient(long numTIDsCommitted){
             String eventData = "data: " + numTIDsCommitted + "\n\n";
-            this.writeBuffer.put(eventData.getBytes(StandardCharsets.UTF_8));
-            this.writeBuffer.flip();
-            try {
-                do {
-                    this.connectionMetadata.channel.write(this.writeBuffer).get();
-                } while (this.writeBuffer.hasRemaining());
-            } catch (InterruptedException | ExecutionException e) {
-                System.out.println("Error caught: "+e.getMessage());
-                SSE_CLIENTS.remove(this);
-                // e.printStackTrace(System.out);
+            ByteBuffer eventBuffer = ByteBuffer.wrap(eventData.getBytes(StandardCharsets.UTF_8));
+            if(!this.enqueue(new PendingWrite(eventBuffer, false))){
+                System.out.println("SSE client is not keeping up with the events. Closing the connection.");
+                this.close();
             }
+        }
+
+        private void close(){
+            SSE_CLIENTS.remove(this);
+            synchronized (this.pendingWrites){
+                this.pendingWrites.clear();
+            }
+            this.readBuffer.clear();
             this.writeBuffer.clear();
+            MemoryManager.releaseTemporaryDirectBuffer(this.readBuffer);
+            MemoryManager.releaseTemporaryDirectBuffer(this.writeBuffer);
+            try { this.connectionMetadata.channel.close(); } catch (IOException ignored) { }
         }
 
+        private static final byte[] EMPTY_BYTES = new byte[0];
+
         private static final byte[] OK_RESPONSE_BYTES = "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.UTF_8);
 
         private static final String UNKNOWN_ACCEPT = "Accept header value is not supported";
 
-        private static final byte[] ERROR_RESPONSE_BYTES = ("HTTP/1.1 400 Bad Request\r\nContent-Type: text/plain\r\nContent-Length: "+UNKNOWN_ACCEPT.length()+"\r\n\r\n"+UNKNOWN_ACCEPT).getBytes(StandardCharsets.UTF_8);
+        private static final byte[] ERROR_RESPONSE_BYTES = createBadRequest(UNKNOWN_ACCEPT);
+
+        private static final byte[] NO_ACCEPT_RESPONSE_BYTES = createBadRequest("No accept type in header");
+
+        private static final byte[] SSE_RESPONSE_BYTES = "HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\nConnection: keep-alive\r\n\r\n".getBytes(StandardCharsets.UTF_8);
 
         @Override
         public void completed(Integer result, Integer attachment) {
             if(result == -1){
-                this.readBuffer.clear();
-                this.writeBuffer.clear();
-                MemoryManager.releaseTemporaryDirectBuffer(this.readBuffer);
-                MemoryManager.releaseTemporaryDirectBuffer(this.writeBuffer);
                 // LOGGER.log(DEBUG,me.identifier+": HTTP client has disconnected!");
-                SSE_CLIENTS.remove(this);
+                this.close();
                 return;
             }
             this.readBuffer.flip();
-            String request = StandardCharsets.UTF_8.decode(this.readBuffer).toString();
-            this.process(request);
+            this.parser.feed(this.readBuffer);
+            this.readBuffer.clear();
+            this.processNextRequest();
         }
 
         @Override
         public void failed(Throwable exc, Integer attachment) {
-            this.readBuffer.clear();
-            this.connectionMetadata.channel.read(this.readBuffer, 0, this);
+            this.close();
         }
     }
 
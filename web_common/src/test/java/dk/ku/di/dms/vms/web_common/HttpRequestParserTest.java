@@ -0,0 +1,104 @@
+package dk.ku.di.dms.vms.web_common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class HttpRequestParserTest {
+
+    private static ByteBuffer bytes(String str){
+        return ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPartialReads() {
+        String request = "POST /product HTTP/1.1\r\nHost: localhost\r\ncontent-length: 13\r\n\r\n{\"price\": 10}";
+        HttpRequestParser parser = new HttpRequestParser();
+        // one byte per read
+        for(int i = 0; i < request.length() - 1; i++){
+            parser.feed(bytes(request.substring(i, i + 1)));
+            Assert.assertNull(parser.next());
+        }
+        parser.feed(bytes(request.substring(request.length() - 1)));
+        HttpRequestParser.HttpRequest httpRequest = parser.next();
+        Assert.assertNotNull(httpRequest);
+        Assert.assertEquals("POST", httpRequest.method());
+        Assert.assertEquals("/product", httpRequest.uri());
+        Assert.assertEquals("localhost", httpRequest.headers().get("host"));
+        Assert.assertEquals("{\"price\": 10}", httpRequest.body());
+        Assert.assertNull(parser.next());
+    }
+
+    @Test
+    public void testPipelinedAndChunked() {
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.feed(bytes("GET /seller/1 HTTP/1.1\r\nAccept: application/json\r\n\r\n" +
+                "PUT /cart/1 HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nabcd\r\n3;ext=1\r\nefg\r\n0\r\nTrailer: x\r\n\r\n" +
+                "PATCH /reset HTTP/1.1\r\nConnection: close\r\nContent-Length: 2\r\n\r\nok" +
+                "GET /se"));
+        HttpRequestParser.HttpRequest get = parser.next();
+        Assert.assertEquals("GET", get.method());
+        Assert.assertEquals("application/json", get.headers().get("Accept"));
+        Assert.assertEquals("", get.body());
+        Assert.assertTrue(get.keepAlive());
+        HttpRequestParser.HttpRequest put = parser.next();
+        Assert.assertEquals("PUT", put.method());
+        Assert.assertEquals("abcdefg", put.body());
+        HttpRequestParser.HttpRequest patch = parser.next();
+        Assert.assertEquals("/reset", patch.uri());
+        Assert.assertEquals("ok", patch.body());
+        Assert.assertFalse(patch.keepAlive());
+        // the last request is incomplete
+        Assert.assertNull(parser.next());
+        parser.feed(bytes("ller/2 HTTP/1.1\r\nAccept: */*\r\n\r\n"));
+        Assert.assertEquals("/seller/2", parser.next().uri());
+    }
+
+    @Test
+    public void testMalformed() {
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.feed(bytes("POST /product HTTP/1.1\r\nContent-Length: abc\r\n\r\n"));
+        Assert.assertThrows(IllegalStateException.class, parser::next);
+        parser.reset();
+        parser.feed(bytes("GET / HTTP/1.1\r\n\r\n"));
+        Assert.assertEquals("/", parser.next().uri());
+    }
+
+    @Test
+    public void testSizeLimits() {
+        HttpRequestParser parser = new HttpRequestParser(1024);
+        // nothing is allocated for sizes declared beyond the limit
+        parser.feed(bytes("POST /product HTTP/1.1\r\nContent-Length: 2147483647\r\n\r\n"));
+        Assert.assertThrows(IllegalStateException.class, parser::next);
+        parser.reset();
+        parser.feed(bytes("POST /product HTTP/1.1\r\nContent-Length: 99999999999\r\n\r\n"));
+        Assert.assertThrows(IllegalStateException.class, parser::next);
+        parser.reset();
+        parser.feed(bytes("PUT /cart/1 HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n7fffffff\r\n"));
+        Assert.assertThrows(IllegalStateException.class, parser::next);
+        parser.reset();
+        // chunks that only exceed the limit once summed
+        parser.feed(bytes("PUT /cart/1 HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n200\r\n" + "a".repeat(512) + "\r\n201\r\n"));
+        Assert.assertThrows(IllegalStateException.class, parser::next);
+        parser.reset();
+        // a chunk size line without end
+        parser.feed(bytes("PUT /cart/1 HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nabcd\r\n"));
+        Assert.assertNull(parser.next());
+        parser.feed(bytes("1".repeat(1 << 17)));
+        Assert.assertThrows(IllegalStateException.class, parser::next);
+        parser.reset();
+        // trailers without end
+        parser.feed(bytes("PUT /cart/1 HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n"));
+        Assert.assertNull(parser.next());
+        for(int i = 0; i < 1024; i++){
+            parser.feed(bytes("Trailer: " + "x".repeat(64) + "\r\n"));
+        }
+        Assert.assertThrows(IllegalStateException.class, parser::next);
+        parser.reset();
+        parser.feed(bytes("PUT /cart/1 HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n200\r\n" + "a".repeat(512) + "\r\n200\r\n" + "b".repeat(512) + "\r\n0\r\n\r\n"));
+        Assert.assertEquals(1024, parser.next().body().length());
+    }
+
+}